@@ -25,10 +25,14 @@ import org.openremote.model.asset.agent.AgentDescriptor;
 import org.openremote.model.asset.agent.DefaultAgentLink;
 import org.openremote.model.value.AttributeDescriptor;
 import org.openremote.model.value.ValueDescriptor;
+import org.openremote.model.value.ValueType;
 
 import jakarta.persistence.Entity;
 import java.util.Optional;
 
+import static org.openremote.model.Constants.UNITS_MILLI;
+import static org.openremote.model.Constants.UNITS_SECOND;
+
 /**
  * This is an example of a custom {@link Agent} type; this must be registered via an
  * {@link org.openremote.model.AssetModelProvider} and must conform to the same requirements as custom {@link Asset}s and
@@ -55,6 +59,37 @@ public class CustomAgent extends Agent<CustomAgent, CustomProtocol, DefaultAgent
 
     public static final AttributeDescriptor<Option> OPTION_ATTRIBUTE_DESCRIPTOR = new AttributeDescriptor<>("option", OPTION_VALUE_DESCRIPTOR);
 
+    /*
+     * Settings of the tree sensor simulation, see TreeSensorSimulation for the defaults
+     */
+    public static final AttributeDescriptor<Integer> SIMULATION_INTERVAL = new AttributeDescriptor<>("simulationInterval", ValueType.POSITIVE_INTEGER)
+        .withUnits(UNITS_MILLI, UNITS_SECOND).withOptional(true);
+    /**
+     * Simulated seconds per real second, e.g. 3600 to simulate an hour every second.
+     */
+    public static final AttributeDescriptor<Double> SIMULATION_TIME_SCALE = new AttributeDescriptor<>("simulationTimeScale", ValueType.POSITIVE_NUMBER)
+        .withOptional(true);
+    /**
+     * Water level lost per hour at 20 degrees.
+     */
+    public static final AttributeDescriptor<Double> EVAPORATION_RATE = new AttributeDescriptor<>("evaporationRate", ValueType.POSITIVE_NUMBER)
+        .withOptional(true);
+    /**
+     * Expected number of showers per hour.
+     */
+    public static final AttributeDescriptor<Double> RAIN_RATE = new AttributeDescriptor<>("rainRate", ValueType.POSITIVE_NUMBER)
+        .withOptional(true);
+    /**
+     * Water level gained per shower.
+     */
+    public static final AttributeDescriptor<Double> RAIN_AMOUNT = new AttributeDescriptor<>("rainAmount", ValueType.POSITIVE_NUMBER)
+        .withOptional(true);
+    /**
+     * Relative spread between trees and between updates, e.g. 0.2 for 20%.
+     */
+    public static final AttributeDescriptor<Double> JITTER = new AttributeDescriptor<>("jitter", ValueType.POSITIVE_NUMBER)
+        .withOptional(true);
+
     public static final AgentDescriptor<CustomAgent, CustomProtocol, DefaultAgentLink> DESCRIPTOR = new AgentDescriptor<>(
         CustomAgent.class, CustomProtocol.class, DefaultAgentLink.class
     );
@@ -79,5 +114,58 @@ public class CustomAgent extends Agent<CustomAgent, CustomProtocol, DefaultAgent
         getAttributes().getOrCreate(OPTION_ATTRIBUTE_DESCRIPTOR).setValue(value);
         return this;
     }
-}
 
+    public Optional<Integer> getSimulationInterval() {
+        return getAttributes().getValue(SIMULATION_INTERVAL);
+    }
+
+    public CustomAgent setSimulationInterval(Integer value) {
+        getAttributes().getOrCreate(SIMULATION_INTERVAL).setValue(value);
+        return this;
+    }
+
+    public Optional<Double> getSimulationTimeScale() {
+        return getAttributes().getValue(SIMULATION_TIME_SCALE);
+    }
+
+    public CustomAgent setSimulationTimeScale(Double value) {
+        getAttributes().getOrCreate(SIMULATION_TIME_SCALE).setValue(value);
+        return this;
+    }
+
+    public Optional<Double> getEvaporationRate() {
+        return getAttributes().getValue(EVAPORATION_RATE);
+    }
+
+    public CustomAgent setEvaporationRate(Double value) {
+        getAttributes().getOrCreate(EVAPORATION_RATE).setValue(value);
+        return this;
+    }
+
+    public Optional<Double> getRainRate() {
+        return getAttributes().getValue(RAIN_RATE);
+    }
+
+    public CustomAgent setRainRate(Double value) {
+        getAttributes().getOrCreate(RAIN_RATE).setValue(value);
+        return this;
+    }
+
+    public Optional<Double> getRainAmount() {
+        return getAttributes().getValue(RAIN_AMOUNT);
+    }
+
+    public CustomAgent setRainAmount(Double value) {
+        getAttributes().getOrCreate(RAIN_AMOUNT).setValue(value);
+        return this;
+    }
+
+    public Optional<Double> getJitter() {
+        return getAttributes().getValue(JITTER);
+    }
+
+    public CustomAgent setJitter(Double value) {
+        getAttributes().getOrCreate(JITTER).setValue(value);
+        return this;
+    }
+}
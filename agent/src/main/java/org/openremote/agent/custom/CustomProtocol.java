@@ -21,11 +21,20 @@ package org.openremote.agent.custom;
 
 import org.openremote.agent.protocol.AbstractProtocol;
 import org.openremote.model.Container;
+import org.openremote.model.asset.agent.ConnectionStatus;
 import org.openremote.model.asset.agent.DefaultAgentLink;
 import org.openremote.model.attribute.Attribute;
 import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.attribute.AttributeState;
 import org.openremote.model.syslog.SyslogCategory;
 
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
@@ -33,13 +42,21 @@ import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
 /**
  * A custom protocol that is used by the {@link CustomAgent}; there is a one-to-one mapping between an {@link
  * CustomAgent} {@link org.openremote.model.asset.Asset} and its' {@link org.openremote.model.asset.agent.Protocol}.
- * This example does nothing useful but is intended to show where protocol classes should be created.
+ * <p>
+ * The protocol simulates the {@code waterLevel} and {@code soilTemperature} sensors of the linked tree attributes
+ * with a {@link TreeSensorSimulation}, so the manager can be load tested without hardware. Every
+ * {@link CustomAgent#SIMULATION_INTERVAL} all linked attributes are advanced together and published as one batch;
+ * writes to a linked attribute (e.g. after watering) reset the simulated value.
  */
 public class CustomProtocol extends AbstractProtocol<CustomAgent, DefaultAgentLink> {
 
     public static final String PROTOCOL_DISPLAY_NAME = "Custom";
     private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, CustomProtocol.class);
     protected boolean running;
+    protected TreeSensorSimulation simulation;
+    protected ScheduledFuture<?> simulationTask;
+    protected double timeScale;
+    protected long lastTick;
 
     public CustomProtocol(CustomAgent agent) {
         super(agent);
@@ -47,27 +64,69 @@ public class CustomProtocol extends AbstractProtocol<CustomAgent, DefaultAgentLi
 
     @Override
     protected void doStart(Container container) throws Exception {
+        long now = timerService.getCurrentTimeMillis();
+        LocalTime time = Instant.ofEpochMilli(now).atZone(ZoneOffset.UTC).toLocalTime();
+        simulation = new TreeSensorSimulation(
+            agent.getEvaporationRate().orElse(TreeSensorSimulation.DEFAULT_EVAPORATION_RATE),
+            agent.getRainRate().orElse(TreeSensorSimulation.DEFAULT_RAIN_RATE),
+            agent.getRainAmount().orElse(TreeSensorSimulation.DEFAULT_RAIN_AMOUNT),
+            agent.getJitter().orElse(TreeSensorSimulation.DEFAULT_JITTER),
+            time.toSecondOfDay() / 3600d,
+            now);
+        timeScale = agent.getSimulationTimeScale().orElse(TreeSensorSimulation.DEFAULT_TIME_SCALE);
+        long interval = agent.getSimulationInterval().orElse(TreeSensorSimulation.DEFAULT_INTERVAL_MILLIS);
+        lastTick = now;
+        simulationTask = executorService.scheduleAtFixedRate(this::tick, interval, interval, TimeUnit.MILLISECONDS);
         running = true;
+        setConnectionStatus(ConnectionStatus.CONNECTED);
     }
 
     @Override
     protected void doStop(Container container) throws Exception {
+        if (simulationTask != null) {
+            simulationTask.cancel(false);
+            simulationTask = null;
+        }
+        running = false;
+        setConnectionStatus(ConnectionStatus.STOPPED);
+    }
 
+    protected void tick() {
+        long now = timerService.getCurrentTimeMillis();
+        double elapsedSeconds = (now - lastTick) / 1000d * timeScale;
+        lastTick = now;
+        try {
+            simulation.advance(elapsedSeconds, (ref, value) -> updateLinkedAttribute(new AttributeState(ref, value), now));
+        } catch (Exception e) {
+            // An exception would cancel the scheduled task, so log it and carry on with the next tick
+            LOG.log(Level.WARNING, "Failed to publish simulated sensor values: " + this, e);
+        }
     }
 
     @Override
     protected void doLinkAttribute(String assetId, Attribute<?> attribute, DefaultAgentLink agentLink) throws RuntimeException {
-
+        AttributeRef ref = new AttributeRef(assetId, attribute.getName());
+        Double initialValue = attribute.getValue()
+            .filter(Number.class::isInstance)
+            .map(value -> ((Number) value).doubleValue())
+            .orElse(null);
+        if (!simulation.add(ref, initialValue)) {
+            LOG.warning("Only " + TreeSensorSimulation.WATER_LEVEL + " and " + TreeSensorSimulation.SOIL_TEMPERATURE
+                + " attributes can be simulated: " + ref);
+        }
     }
 
     @Override
     protected void doUnlinkAttribute(String assetId, Attribute<?> attribute, DefaultAgentLink agentLink) {
-
+        simulation.remove(new AttributeRef(assetId, attribute.getName()));
     }
 
     @Override
     protected void doLinkedAttributeWrite(DefaultAgentLink agentLink, AttributeEvent event, Object processedValue) {
-
+        if (processedValue instanceof Number) {
+            simulation.set(event.getRef(), ((Number) processedValue).doubleValue());
+        }
+        updateLinkedAttribute(new AttributeState(event.getRef(), processedValue));
     }
 
     @Override
@@ -0,0 +1,169 @@
+package org.openremote.agent.custom;
+
+import org.openremote.model.attribute.AttributeRef;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Simulates the water level and soil temperature sensors of trees. Soil temperature follows a daily cycle with a
+ * per tree offset; water evaporates faster when it is warm and is replenished by showers that hit all trees at once.
+ * Every tree gets a fixed evaporation factor and temperature offset derived from its asset ID so runs are
+ * reproducible, and each update adds random noise scaled by the jitter.
+ */
+public class TreeSensorSimulation {
+
+    public static final String WATER_LEVEL = "waterLevel";
+    public static final String SOIL_TEMPERATURE = "soilTemperature";
+    public static final int DEFAULT_INTERVAL_MILLIS = 1000;
+    public static final double DEFAULT_TIME_SCALE = 1d;
+    public static final double DEFAULT_EVAPORATION_RATE = 150d;
+    public static final double DEFAULT_RAIN_RATE = 0.02d;
+    public static final double DEFAULT_RAIN_AMOUNT = 2500d;
+    public static final double DEFAULT_JITTER = 0.2d;
+    public static final double MAX_WATER_LEVEL = 10000d;
+    public static final double MEAN_TEMPERATURE = 15d;
+    public static final double DAILY_TEMPERATURE_AMPLITUDE = 6d;
+    /**
+     * Time in hours for the soil to follow a change in air temperature.
+     */
+    public static final double SOIL_TEMPERATURE_LAG_HOURS = 3d;
+
+    protected enum Quantity {
+        WATER_LEVEL,
+        SOIL_TEMPERATURE
+    }
+
+    protected static class Sensor {
+        protected final Quantity quantity;
+        protected final double evaporationFactor;
+        protected final double temperatureOffset;
+        protected double value;
+
+        protected Sensor(Quantity quantity, double evaporationFactor, double temperatureOffset, double value) {
+            this.quantity = quantity;
+            this.evaporationFactor = evaporationFactor;
+            this.temperatureOffset = temperatureOffset;
+            this.value = value;
+        }
+    }
+
+    protected final Map<AttributeRef, Sensor> sensors = new ConcurrentHashMap<>();
+    protected final Random random;
+    protected final double evaporationRate;
+    protected final double rainRate;
+    protected final double rainAmount;
+    protected final double jitter;
+    protected double hourOfDay;
+
+    /**
+     * @param evaporationRate Water level lost per hour at 20 degrees.
+     * @param rainRate        Expected number of showers per hour.
+     * @param rainAmount      Water level gained per shower.
+     * @param jitter          Relative spread between trees and between updates.
+     * @param hourOfDay       Simulated time of day (UTC) to start at.
+     * @param seed            Seed for the shower and noise generator.
+     */
+    public TreeSensorSimulation(double evaporationRate, double rainRate, double rainAmount, double jitter, double hourOfDay, long seed) {
+        this.evaporationRate = evaporationRate;
+        this.rainRate = rainRate;
+        this.rainAmount = rainAmount;
+        this.jitter = jitter;
+        this.hourOfDay = hourOfDay;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Starts simulating an attribute.
+     *
+     * @param initialValue The current value, or {@code null} to start from a full tank or the current air temperature.
+     * @return {@code false} when the attribute is neither a water level nor a soil temperature.
+     */
+    public boolean add(AttributeRef ref, Double initialValue) {
+        Quantity quantity;
+        if (WATER_LEVEL.equals(ref.getName())) {
+            quantity = Quantity.WATER_LEVEL;
+        } else if (SOIL_TEMPERATURE.equals(ref.getName())) {
+            quantity = Quantity.SOIL_TEMPERATURE;
+        } else {
+            return false;
+        }
+        SplittableRandom treeRandom = new SplittableRandom(ref.getId().hashCode());
+        double evaporationFactor = 1d + jitter * (2d * treeRandom.nextDouble() - 1d);
+        double temperatureOffset = jitter * 10d * (2d * treeRandom.nextDouble() - 1d);
+        double value = initialValue != null
+                ? initialValue
+                : quantity == Quantity.WATER_LEVEL ? MAX_WATER_LEVEL : airTemperature() + temperatureOffset;
+        sensors.put(ref, new Sensor(quantity, evaporationFactor, temperatureOffset, value));
+        return true;
+    }
+
+    public void remove(AttributeRef ref) {
+        sensors.remove(ref);
+    }
+
+    /**
+     * Overrides the simulated value, e.g. after a tree has been watered.
+     */
+    public void set(AttributeRef ref, double value) {
+        Sensor sensor = sensors.get(ref);
+        if (sensor != null) {
+            sensor.value = value;
+        }
+    }
+
+    public int size() {
+        return sensors.size();
+    }
+
+    /**
+     * Advances the simulation and publishes the new value of every sensor. The values are computed first so that a
+     * whole tick is published as one batch.
+     *
+     * @param elapsedSeconds Simulated time since the previous call.
+     * @param publisher      Receives the new values; water levels as {@link Integer}, temperatures as {@link Double}.
+     */
+    public void advance(double elapsedSeconds, BiConsumer<AttributeRef, Object> publisher) {
+        double hours = elapsedSeconds / 3600d;
+        hourOfDay = (hourOfDay + hours) % 24d;
+        double airTemperature = airTemperature();
+        // Showers arrive as a Poisson process
+        boolean raining = random.nextDouble() < 1d - Math.exp(-rainRate * hours);
+        double temperatureFactor = Math.max(0.2d, 1d + (airTemperature - 20d) / 20d);
+        double soilResponse = Math.min(1d, hours / SOIL_TEMPERATURE_LAG_HOURS);
+
+        List<AttributeRef> refs = new ArrayList<>(sensors.size());
+        List<Object> values = new ArrayList<>(sensors.size());
+        sensors.forEach((ref, sensor) -> {
+            double noise = jitter * random.nextGaussian();
+            if (sensor.quantity == Quantity.WATER_LEVEL) {
+                double value = sensor.value - evaporationRate * sensor.evaporationFactor * temperatureFactor * hours * (1d + noise);
+                if (raining) {
+                    value += rainAmount * Math.max(0d, 1d + noise);
+                }
+                sensor.value = Math.max(0d, Math.min(MAX_WATER_LEVEL, value));
+                values.add((int) Math.round(sensor.value));
+            } else {
+                double target = airTemperature + sensor.temperatureOffset;
+                sensor.value += (target - sensor.value) * soilResponse + noise * 0.1d;
+                values.add(Math.round(sensor.value * 10d) / 10d);
+            }
+            refs.add(ref);
+        });
+        for (int i = 0; i < refs.size(); i++) {
+            publisher.accept(refs.get(i), values.get(i));
+        }
+    }
+
+    /**
+     * @return The air temperature at the current time of day, peaking at 15:00.
+     */
+    protected double airTemperature() {
+        return MEAN_TEMPERATURE + DAILY_TEMPERATURE_AMPLITUDE * Math.sin(2d * Math.PI * (hourOfDay - 9d) / 24d);
+    }
+}
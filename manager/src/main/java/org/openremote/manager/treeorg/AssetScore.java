@@ -0,0 +1,24 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.asset.Asset;
+
+/**
+ * An asset with its composite score.
+ */
+public class AssetScore {
+    private final Asset<?> asset;
+    private final double score;
+
+    public AssetScore(Asset<?> asset, double score) {
+        this.asset = asset;
+        this.score = score;
+    }
+
+    public Asset<?> getAsset() {
+        return asset;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,250 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.asset.Asset;
+import org.openremote.model.geo.GeoJSONPoint;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Compact binary encoding of routes and rankings for clients that only need the stop order and the coordinates, served
+ * as {@link #MEDIA_TYPE}. A payload is:
+ * <pre>
+ * payload  = version:varint legCount:varint leg*
+ * leg      = depot:entry stopCount:varint stop:entry*
+ * entry    = header:varint id:byte[header &gt;&gt; 1] [dLongitude:zigzag dLatitude:zigzag]
+ * </pre>
+ * Varints are unsigned LEB128. The low bit of an entry header tells whether the entry has a location, the other bits
+ * are the length of the UTF-8 ID. Coordinates are in 10<sup>-6</sup> degrees and are deltas to the previous location in
+ * the payload, starting from 0,0; consecutive stops are close together, so most deltas take two or three bytes.
+ * <p>
+ * A route split over several depots has one leg per depot; its depot entry has an empty ID when the default starting
+ * position was used. Any other route, like a ranking, is a single leg whose depot entry has neither an ID nor a
+ * location, its stops in visiting or rank order.
+ */
+public final class CompactRouteEncoding {
+
+    public static final String MEDIA_TYPE = "application/x-treeorg-compact";
+    public static final int VERSION = 1;
+    private static final double SCALE = 1e6d;
+
+    private CompactRouteEncoding() {
+    }
+
+    /**
+     * One leg of a decoded payload.
+     */
+    public static class Leg {
+        private final String depotId;
+        private final double[] depotLocation;
+        private final List<String> ids = new ArrayList<>();
+        private final List<double[]> locations = new ArrayList<>();
+
+        Leg(String depotId, double[] depotLocation) {
+            this.depotId = depotId;
+            this.depotLocation = depotLocation;
+        }
+
+        /**
+         * @return The depot asset ID, empty when the default starting position or no depot was used.
+         */
+        public String getDepotId() {
+            return depotId;
+        }
+
+        /**
+         * @return The depot location in [longitude, latitude] format, or {@code null} when the leg has no depot.
+         */
+        public double[] getDepotLocation() {
+            return depotLocation;
+        }
+
+        public List<String> getIds() {
+            return ids;
+        }
+
+        /**
+         * @return The stop locations in [longitude, latitude] format, {@code null} for stops without a location.
+         */
+        public List<double[]> getLocations() {
+            return locations;
+        }
+    }
+
+    public static byte[] encodeRoute(RouteResponse response) {
+        Writer writer = new Writer();
+        writer.varint(VERSION);
+        List<DepotRoute> depotRoutes = response.getDepotRoutes();
+        if (depotRoutes == null || depotRoutes.isEmpty()) {
+            List<Asset<?>> assets = response.getOrderedAssets() != null ? response.getOrderedAssets() : List.of();
+            writer.varint(assets.isEmpty() ? 0 : 1);
+            if (!assets.isEmpty()) {
+                writer.entry("", null);
+                writeStops(writer, assets);
+            }
+            return writer.toByteArray();
+        }
+        writer.varint(depotRoutes.size());
+        for (DepotRoute depotRoute : depotRoutes) {
+            List<double[]> route = depotRoute.getRoute();
+            double[] depot = route != null && !route.isEmpty() ? route.get(0) : RouteService.DEFAULT_STARTING_POSITION;
+            writer.entry(depotRoute.getDepotId() != null ? depotRoute.getDepotId() : "", depot);
+            writeStops(writer, depotRoute.getOrderedAssets());
+        }
+        return writer.toByteArray();
+    }
+
+    public static byte[] encodeAssets(List<Asset<?>> assets) {
+        Writer writer = new Writer();
+        writer.varint(VERSION);
+        writer.varint(1);
+        writer.entry("", null);
+        writeStops(writer, assets);
+        return writer.toByteArray();
+    }
+
+    public static byte[] encodeScores(List<AssetScore> scores) {
+        List<Asset<?>> assets = new ArrayList<>(scores.size());
+        for (AssetScore score : scores) {
+            assets.add(score.getAsset());
+        }
+        return encodeAssets(assets);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the payload is truncated or has an unknown version.
+     */
+    public static List<Leg> decode(byte[] payload) {
+        Reader reader = new Reader(payload);
+        int version = (int) reader.varint();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported compact encoding version: " + version);
+        }
+        int legCount = (int) reader.varint();
+        List<Leg> legs = new ArrayList<>(legCount);
+        for (int l = 0; l < legCount; l++) {
+            String depotId = reader.id();
+            Leg leg = new Leg(depotId, reader.location());
+            int stopCount = (int) reader.varint();
+            for (int s = 0; s < stopCount; s++) {
+                leg.ids.add(reader.id());
+                leg.locations.add(reader.location());
+            }
+            legs.add(leg);
+        }
+        return legs;
+    }
+
+    private static void writeStops(Writer writer, List<Asset<?>> assets) {
+        writer.varint(assets.size());
+        for (Asset<?> asset : assets) {
+            Optional<GeoJSONPoint> location = asset.getAttributes().getValue(Asset.LOCATION);
+            writer.entry(asset.getId(), location.map(point -> new double[]{point.getX(), point.getY()}).orElse(null));
+        }
+    }
+
+    private static final class Writer {
+        private byte[] bytes = new byte[256];
+        private int length;
+        private long longitude;
+        private long latitude;
+
+        void entry(String id, double[] location) {
+            byte[] utf8 = id.getBytes(StandardCharsets.UTF_8);
+            varint(((long) utf8.length << 1) | (location != null ? 1 : 0));
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            length += utf8.length;
+            if (location != null) {
+                long x = Math.round(location[0] * SCALE);
+                long y = Math.round(location[1] * SCALE);
+                zigzag(x - longitude);
+                zigzag(y - latitude);
+                longitude = x;
+                latitude = y;
+            }
+        }
+
+        void zigzag(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+        private long longitude;
+        private long latitude;
+        private boolean located;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        String id() {
+            long header = varint();
+            int idLength = (int) (header >>> 1);
+            located = (header & 1) != 0;
+            if (idLength < 0 || position + idLength > bytes.length) {
+                throw new IllegalArgumentException("Truncated compact payload");
+            }
+            String id = new String(bytes, position, idLength, StandardCharsets.UTF_8);
+            position += idLength;
+            return id;
+        }
+
+        /**
+         * Reads the location of the entry whose ID was read last.
+         */
+        double[] location() {
+            if (!located) {
+                return null;
+            }
+            longitude += zigzag();
+            latitude += zigzag();
+            return new double[]{longitude / SCALE, latitude / SCALE};
+        }
+
+        long zigzag() {
+            long value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long varint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= bytes.length) {
+                    throw new IllegalArgumentException("Truncated compact payload");
+                }
+                byte b = bytes[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in compact payload");
+        }
+    }
+}
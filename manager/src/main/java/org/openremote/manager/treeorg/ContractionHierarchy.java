@@ -0,0 +1,533 @@
+package org.openremote.manager.treeorg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Contraction hierarchy over a {@link RoadGraph} for fast many-to-many shortest path queries.
+ * <p>
+ * Nodes are contracted in order of importance (edge difference, contracted neighbours and depth), adding shortcuts
+ * where no witness path exists. Queries then only search upwards in the hierarchy: distance tables use the bucket-based
+ * algorithm, where one backward search per target fills node buckets and one forward search per source scans them.
+ * <p>
+ * The upward graphs are kept in CSR arrays and can be written to and memory-mapped from a file, so the contraction
+ * only has to run once per graph file.
+ */
+public class ContractionHierarchy {
+
+    protected static final int MAGIC = 0x54524348;
+    protected static final int VERSION = 1;
+    protected static final int WITNESS_SETTLE_LIMIT = 200;
+    protected static final int SIMULATION_SETTLE_LIMIT = 20;
+    protected static final int TARGETS_PER_TASK = 32;
+
+    private final int nodeCount;
+    private final String fingerprint;
+    private final IntBuffer forwardFirst;
+    private final IntBuffer forwardTargets;
+    private final FloatBuffer forwardWeights;
+    private final IntBuffer backwardFirst;
+    private final IntBuffer backwardSources;
+    private final FloatBuffer backwardWeights;
+
+    protected ContractionHierarchy(int nodeCount, String fingerprint, IntBuffer forwardFirst, IntBuffer forwardTargets,
+                                   FloatBuffer forwardWeights, IntBuffer backwardFirst, IntBuffer backwardSources,
+                                   FloatBuffer backwardWeights) {
+        this.nodeCount = nodeCount;
+        this.fingerprint = fingerprint;
+        this.forwardFirst = forwardFirst;
+        this.forwardTargets = forwardTargets;
+        this.forwardWeights = forwardWeights;
+        this.backwardFirst = backwardFirst;
+        this.backwardSources = backwardSources;
+        this.backwardWeights = backwardWeights;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Computes shortest path distances between graph nodes.
+     *
+     * @param sources  Source node indices.
+     * @param targets  Target node indices.
+     * @param executor Executor the searches are spread over.
+     * @return Row-major {@code sources.length * targets.length} distances in meters; unreachable pairs are
+     * {@link Float#POSITIVE_INFINITY}.
+     */
+    public float[] manyToMany(int[] sources, int[] targets, Executor executor) {
+        // Backward searches: every node reached from a target gets a bucket entry (target, distance)
+        int[][] bucketNodes = new int[(targets.length + TARGETS_PER_TASK - 1) / TARGETS_PER_TASK][];
+        int[][] bucketTargets = new int[bucketNodes.length][];
+        float[][] bucketDistances = new float[bucketNodes.length][];
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int block = 0; block < bucketNodes.length; block++) {
+            int blockIndex = block;
+            tasks.add(CompletableFuture.runAsync(() -> {
+                RoadGraph.Workspace workspace = new RoadGraph.Workspace(nodeCount);
+                int start = blockIndex * TARGETS_PER_TASK;
+                int end = Math.min(targets.length, start + TARGETS_PER_TASK);
+                int size = 0;
+                int[] nodes = new int[256];
+                int[] owners = new int[256];
+                float[] distances = new float[256];
+                for (int t = start; t < end; t++) {
+                    search(targets[t], backwardFirst, backwardSources, backwardWeights,
+                            forwardFirst, forwardTargets, forwardWeights, workspace);
+                    int reached = workspace.touchedCount();
+                    if (size + reached > nodes.length) {
+                        int capacity = Math.max(nodes.length * 2, size + reached);
+                        nodes = Arrays.copyOf(nodes, capacity);
+                        owners = Arrays.copyOf(owners, capacity);
+                        distances = Arrays.copyOf(distances, capacity);
+                    }
+                    for (int i = 0; i < reached; i++) {
+                        int node = workspace.touched(i);
+                        nodes[size] = node;
+                        owners[size] = t;
+                        distances[size++] = (float) workspace.distance(node);
+                    }
+                }
+                bucketNodes[blockIndex] = Arrays.copyOf(nodes, size);
+                bucketTargets[blockIndex] = Arrays.copyOf(owners, size);
+                bucketDistances[blockIndex] = Arrays.copyOf(distances, size);
+            }, executor));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+
+        // Group the bucket entries by node (counting sort)
+        int[] bucketFirst = new int[nodeCount + 1];
+        int entries = 0;
+        for (int[] nodes : bucketNodes) {
+            for (int node : nodes) {
+                bucketFirst[node + 1]++;
+            }
+            entries += nodes.length;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            bucketFirst[i + 1] += bucketFirst[i];
+        }
+        int[] next = Arrays.copyOf(bucketFirst, nodeCount);
+        int[] entryTargets = new int[entries];
+        float[] entryDistances = new float[entries];
+        for (int block = 0; block < bucketNodes.length; block++) {
+            for (int i = 0; i < bucketNodes[block].length; i++) {
+                int position = next[bucketNodes[block][i]]++;
+                entryTargets[position] = bucketTargets[block][i];
+                entryDistances[position] = bucketDistances[block][i];
+            }
+        }
+
+        // Forward searches: scan the buckets of every node reached from a source
+        float[] result = new float[sources.length * targets.length];
+        Arrays.fill(result, Float.POSITIVE_INFINITY);
+        tasks.clear();
+        for (int from = 0; from < sources.length; from += TARGETS_PER_TASK) {
+            int start = from;
+            int end = Math.min(sources.length, from + TARGETS_PER_TASK);
+            tasks.add(CompletableFuture.runAsync(() -> {
+                RoadGraph.Workspace workspace = new RoadGraph.Workspace(nodeCount);
+                for (int s = start; s < end; s++) {
+                    search(sources[s], forwardFirst, forwardTargets, forwardWeights,
+                            backwardFirst, backwardSources, backwardWeights, workspace);
+                    int row = s * targets.length;
+                    for (int i = 0; i < workspace.touchedCount(); i++) {
+                        int node = workspace.touched(i);
+                        float distance = (float) workspace.distance(node);
+                        for (int e = bucketFirst[node]; e < bucketFirst[node + 1]; e++) {
+                            float total = distance + entryDistances[e];
+                            if (total < result[row + entryTargets[e]]) {
+                                result[row + entryTargets[e]] = total;
+                            }
+                        }
+                    }
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+        return result;
+    }
+
+    /**
+     * Upward search that settles every node reachable from {@code origin}. Nodes that can be reached more cheaply
+     * through a higher neighbour (checked with the opposite direction's edges) are not expanded (stall-on-demand).
+     */
+    private static void search(int origin, IntBuffer first, IntBuffer neighbours, FloatBuffer weights,
+                               IntBuffer stallFirst, IntBuffer stallNeighbours, FloatBuffer stallWeights,
+                               RoadGraph.Workspace workspace) {
+        workspace.reset();
+        workspace.relax(origin, 0d);
+        while (!workspace.isEmpty()) {
+            int node = workspace.poll();
+            if (node < 0) {
+                continue;
+            }
+            double distance = workspace.distance(node);
+            boolean stalled = false;
+            int stallEnd = stallFirst.get(node + 1);
+            for (int e = stallFirst.get(node); e < stallEnd && !stalled; e++) {
+                stalled = workspace.distance(stallNeighbours.get(e)) + stallWeights.get(e) < distance;
+            }
+            if (stalled) {
+                continue;
+            }
+            int end = first.get(node + 1);
+            for (int e = first.get(node); e < end; e++) {
+                workspace.relax(neighbours.get(e), distance + weights.get(e));
+            }
+        }
+    }
+
+    /**
+     * Contracts all nodes of a graph.
+     */
+    public static ContractionHierarchy build(RoadGraph graph) {
+        return new Builder(graph).build();
+    }
+
+    /**
+     * Memory-maps a hierarchy written by {@link #write}.
+     *
+     * @return The hierarchy, or {@code null} if the file belongs to a different graph.
+     */
+    public static ContractionHierarchy load(Path file, RoadGraph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != graph.getNodeCount()) {
+                return null;
+            }
+            byte[] fingerprintBytes = new byte[buffer.getInt(12)];
+            buffer.position(16);
+            buffer.get(fingerprintBytes);
+            String fingerprint = new String(fingerprintBytes, StandardCharsets.UTF_8);
+            if (!fingerprint.equals(graph.getFingerprint())) {
+                return null;
+            }
+            int nodeCount = graph.getNodeCount();
+            int offset = 16 + fingerprintBytes.length;
+            int forwardEdges = buffer.getInt(offset);
+            int backwardEdges = buffer.getInt(offset + 4);
+            offset += 8;
+            IntBuffer forwardFirst = section(buffer, offset, (nodeCount + 1) * Integer.BYTES).asIntBuffer();
+            offset += (nodeCount + 1) * Integer.BYTES;
+            IntBuffer forwardTargets = section(buffer, offset, forwardEdges * Integer.BYTES).asIntBuffer();
+            offset += forwardEdges * Integer.BYTES;
+            FloatBuffer forwardWeights = section(buffer, offset, forwardEdges * Float.BYTES).asFloatBuffer();
+            offset += forwardEdges * Float.BYTES;
+            IntBuffer backwardFirst = section(buffer, offset, (nodeCount + 1) * Integer.BYTES).asIntBuffer();
+            offset += (nodeCount + 1) * Integer.BYTES;
+            IntBuffer backwardSources = section(buffer, offset, backwardEdges * Integer.BYTES).asIntBuffer();
+            offset += backwardEdges * Integer.BYTES;
+            FloatBuffer backwardWeights = section(buffer, offset, backwardEdges * Float.BYTES).asFloatBuffer();
+            return new ContractionHierarchy(nodeCount, fingerprint, forwardFirst, forwardTargets, forwardWeights,
+                    backwardFirst, backwardSources, backwardWeights);
+        }
+    }
+
+    /**
+     * Writes the hierarchy so it can be memory-mapped with {@link #load}.
+     */
+    public void write(Path file) throws IOException {
+        byte[] fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+        int forwardEdges = forwardTargets.limit();
+        int backwardEdges = backwardSources.limit();
+        ByteBuffer buffer = ByteBuffer.allocate(16 + fingerprintBytes.length + 8
+                + 2 * (nodeCount + 1) * Integer.BYTES
+                + (forwardEdges + backwardEdges) * (Integer.BYTES + Float.BYTES));
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(nodeCount).putInt(fingerprintBytes.length);
+        buffer.put(fingerprintBytes);
+        buffer.putInt(forwardEdges).putInt(backwardEdges);
+        putInts(buffer, forwardFirst);
+        putInts(buffer, forwardTargets);
+        putFloats(buffer, forwardWeights);
+        putInts(buffer, backwardFirst);
+        putInts(buffer, backwardSources);
+        putFloats(buffer, backwardWeights);
+        buffer.rewind();
+        Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), "ch-", ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void putInts(ByteBuffer buffer, IntBuffer values) {
+        IntBuffer duplicate = values.duplicate();
+        duplicate.rewind();
+        buffer.asIntBuffer().put(duplicate);
+        buffer.position(buffer.position() + values.limit() * Integer.BYTES);
+    }
+
+    private static void putFloats(ByteBuffer buffer, FloatBuffer values) {
+        FloatBuffer duplicate = values.duplicate();
+        duplicate.rewind();
+        buffer.asFloatBuffer().put(duplicate);
+        buffer.position(buffer.position() + values.limit() * Float.BYTES);
+    }
+
+    private static ByteBuffer section(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset).limit(offset + length);
+        return duplicate.slice();
+    }
+
+    /**
+     * Mutable adjacency lists used while contracting.
+     */
+    protected static class Builder {
+        private final RoadGraph graph;
+        private final int nodeCount;
+        private final int[][] outTargets;
+        private final float[][] outWeights;
+        private final int[] outSize;
+        private final int[][] inSources;
+        private final float[][] inWeights;
+        private final int[] inSize;
+        private final boolean[] contracted;
+        private final int[] rank;
+        private final int[] contractedNeighbours;
+        private final int[] depth;
+        private final RoadGraph.Workspace workspace;
+
+        protected Builder(RoadGraph graph) {
+            this.graph = graph;
+            this.nodeCount = graph.getNodeCount();
+            outTargets = new int[nodeCount][];
+            outWeights = new float[nodeCount][];
+            outSize = new int[nodeCount];
+            inSources = new int[nodeCount][];
+            inWeights = new float[nodeCount][];
+            inSize = new int[nodeCount];
+            contracted = new boolean[nodeCount];
+            rank = new int[nodeCount];
+            contractedNeighbours = new int[nodeCount];
+            depth = new int[nodeCount];
+            workspace = new RoadGraph.Workspace(nodeCount);
+            for (int node = 0; node < nodeCount; node++) {
+                outTargets[node] = new int[4];
+                outWeights[node] = new float[4];
+                inSources[node] = new int[4];
+                inWeights[node] = new float[4];
+            }
+            for (int node = 0; node < nodeCount; node++) {
+                int end = graph.getFirstEdge(node + 1);
+                for (int e = graph.getFirstEdge(node); e < end; e++) {
+                    int target = graph.getEdgeTarget(e);
+                    if (target != node) {
+                        addEdge(node, target, graph.getEdgeLength(e));
+                    }
+                }
+            }
+        }
+
+        protected ContractionHierarchy build() {
+            PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+            long[] priorities = new long[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                priorities[node] = priority(node);
+                queue.add(new long[]{priorities[node], node});
+            }
+            int level = 0;
+            while (!queue.isEmpty()) {
+                long[] entry = queue.poll();
+                int node = (int) entry[1];
+                if (contracted[node] || entry[0] != priorities[node]) {
+                    continue;
+                }
+                // Lazy update: re-evaluate and postpone if the node is no longer the cheapest
+                long current = priority(node);
+                if (!queue.isEmpty() && current > queue.peek()[0]) {
+                    priorities[node] = current;
+                    queue.add(new long[]{current, node});
+                    continue;
+                }
+                contract(node, false, WITNESS_SETTLE_LIMIT);
+                contracted[node] = true;
+                rank[node] = level++;
+                // Neighbours lose an edge to this node, so their priorities are refreshed right away
+                for (int i = 0; i < outSize[node] + inSize[node]; i++) {
+                    int neighbour = i < outSize[node] ? outTargets[node][i] : inSources[node][i - outSize[node]];
+                    if (contracted[neighbour]) {
+                        continue;
+                    }
+                    contractedNeighbours[neighbour]++;
+                    depth[neighbour] = Math.max(depth[neighbour], depth[node] + 1);
+                    long updated = priority(neighbour);
+                    if (updated != priorities[neighbour]) {
+                        priorities[neighbour] = updated;
+                        queue.add(new long[]{updated, neighbour});
+                    }
+                }
+            }
+            return toHierarchy();
+        }
+
+        private long priority(int node) {
+            int shortcuts = contract(node, true, SIMULATION_SETTLE_LIMIT);
+            int removed = 0;
+            for (int i = 0; i < outSize[node]; i++) {
+                if (!contracted[outTargets[node][i]]) {
+                    removed++;
+                }
+            }
+            for (int i = 0; i < inSize[node]; i++) {
+                if (!contracted[inSources[node][i]]) {
+                    removed++;
+                }
+            }
+            return 2L * (shortcuts - removed) + contractedNeighbours[node] + depth[node];
+        }
+
+        /**
+         * Adds (or when {@code simulate} only counts) the shortcuts needed to remove {@code node}.
+         */
+        private int contract(int node, boolean simulate, int settleLimit) {
+            int shortcuts = 0;
+            for (int i = 0; i < inSize[node]; i++) {
+                int source = inSources[node][i];
+                if (contracted[source]) {
+                    continue;
+                }
+                float toNode = inWeights[node][i];
+                double maxDistance = 0d;
+                for (int j = 0; j < outSize[node]; j++) {
+                    int target = outTargets[node][j];
+                    if (!contracted[target] && target != source) {
+                        maxDistance = Math.max(maxDistance, toNode + outWeights[node][j]);
+                    }
+                }
+                if (maxDistance == 0d) {
+                    continue;
+                }
+                witnessSearch(source, node, maxDistance, settleLimit);
+                for (int j = 0; j < outSize[node]; j++) {
+                    int target = outTargets[node][j];
+                    if (contracted[target] || target == source) {
+                        continue;
+                    }
+                    float viaNode = toNode + outWeights[node][j];
+                    if (workspace.distance(target) > viaNode) {
+                        shortcuts++;
+                        if (!simulate) {
+                            addEdge(source, target, viaNode);
+                        }
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        private void witnessSearch(int source, int excluded, double maxDistance, int settleLimit) {
+            workspace.reset();
+            workspace.relax(source, 0d);
+            int settled = 0;
+            while (!workspace.isEmpty() && settled < settleLimit) {
+                int node = workspace.poll();
+                if (node < 0) {
+                    continue;
+                }
+                double distance = workspace.distance(node);
+                if (distance > maxDistance) {
+                    break;
+                }
+                settled++;
+                for (int i = 0; i < outSize[node]; i++) {
+                    int target = outTargets[node][i];
+                    if (target != excluded && !contracted[target]) {
+                        workspace.relax(target, distance + outWeights[node][i]);
+                    }
+                }
+            }
+        }
+
+        private void addEdge(int source, int target, float weight) {
+            for (int i = 0; i < outSize[source]; i++) {
+                if (outTargets[source][i] == target) {
+                    if (weight < outWeights[source][i]) {
+                        outWeights[source][i] = weight;
+                        for (int j = 0; j < inSize[target]; j++) {
+                            if (inSources[target][j] == source) {
+                                inWeights[target][j] = weight;
+                            }
+                        }
+                    }
+                    return;
+                }
+            }
+            if (outSize[source] == outTargets[source].length) {
+                outTargets[source] = Arrays.copyOf(outTargets[source], outSize[source] * 2);
+                outWeights[source] = Arrays.copyOf(outWeights[source], outSize[source] * 2);
+            }
+            outTargets[source][outSize[source]] = target;
+            outWeights[source][outSize[source]++] = weight;
+            if (inSize[target] == inSources[target].length) {
+                inSources[target] = Arrays.copyOf(inSources[target], inSize[target] * 2);
+                inWeights[target] = Arrays.copyOf(inWeights[target], inSize[target] * 2);
+            }
+            inSources[target][inSize[target]] = source;
+            inWeights[target][inSize[target]++] = weight;
+        }
+
+        private ContractionHierarchy toHierarchy() {
+            int[] forwardFirst = new int[nodeCount + 1];
+            int[] backwardFirst = new int[nodeCount + 1];
+            for (int node = 0; node < nodeCount; node++) {
+                for (int i = 0; i < outSize[node]; i++) {
+                    if (rank[outTargets[node][i]] > rank[node]) {
+                        forwardFirst[node + 1]++;
+                    }
+                }
+                for (int i = 0; i < inSize[node]; i++) {
+                    if (rank[inSources[node][i]] > rank[node]) {
+                        backwardFirst[node + 1]++;
+                    }
+                }
+            }
+            for (int node = 0; node < nodeCount; node++) {
+                forwardFirst[node + 1] += forwardFirst[node];
+                backwardFirst[node + 1] += backwardFirst[node];
+            }
+            int[] forwardTargets = new int[forwardFirst[nodeCount]];
+            float[] forwardWeights = new float[forwardTargets.length];
+            int[] backwardSources = new int[backwardFirst[nodeCount]];
+            float[] backwardWeights = new float[backwardSources.length];
+            for (int node = 0; node < nodeCount; node++) {
+                int f = forwardFirst[node];
+                for (int i = 0; i < outSize[node]; i++) {
+                    if (rank[outTargets[node][i]] > rank[node]) {
+                        forwardTargets[f] = outTargets[node][i];
+                        forwardWeights[f++] = outWeights[node][i];
+                    }
+                }
+                int b = backwardFirst[node];
+                for (int i = 0; i < inSize[node]; i++) {
+                    if (rank[inSources[node][i]] > rank[node]) {
+                        backwardSources[b] = inSources[node][i];
+                        backwardWeights[b++] = inWeights[node][i];
+                    }
+                }
+            }
+            return new ContractionHierarchy(nodeCount, graph.getFingerprint(),
+                    IntBuffer.wrap(forwardFirst), IntBuffer.wrap(forwardTargets), FloatBuffer.wrap(forwardWeights),
+                    IntBuffer.wrap(backwardFirst), IntBuffer.wrap(backwardSources), FloatBuffer.wrap(backwardWeights));
+        }
+    }
+}
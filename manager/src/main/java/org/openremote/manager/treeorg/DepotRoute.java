@@ -0,0 +1,74 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.asset.Asset;
+
+import java.util.List;
+
+/**
+ * The tour served from a single depot.
+ */
+public class DepotRoute {
+    private final String depotId;
+    private final String googleMapsURL;
+    private final List<String> googleMapsLegURLs;
+    private final List<Asset<?>> orderedAssets;
+    private final List<double[]> route;
+    private final double totalDistance;
+    private final String solver;
+
+    public DepotRoute(String depotId, List<String> googleMapsLegURLs, List<Asset<?>> orderedAssets, List<double[]> route, double totalDistance, String solver) {
+        this.depotId = depotId;
+        this.googleMapsURL = RouteResponse.firstLeg(googleMapsLegURLs);
+        this.googleMapsLegURLs = googleMapsLegURLs;
+        this.orderedAssets = orderedAssets;
+        this.route = route;
+        this.totalDistance = totalDistance;
+        this.solver = solver;
+    }
+
+    /**
+     * @return The depot asset ID, or {@code null} when the default starting position was used.
+     */
+    public String getDepotId() {
+        return depotId;
+    }
+
+    /**
+     * @return The Google Maps URL of the first leg of the route.
+     */
+    public String getGoogleMapsURL() {
+        return googleMapsURL;
+    }
+
+    /**
+     * @return The Google Maps URLs of all legs in driving order.
+     */
+    public List<String> getGoogleMapsLegURLs() {
+        return googleMapsLegURLs;
+    }
+
+    public List<Asset<?>> getOrderedAssets() {
+        return orderedAssets;
+    }
+
+    /**
+     * @return The route coordinates in [longitude, latitude] format, starting and ending at the depot.
+     */
+    public List<double[]> getRoute() {
+        return route;
+    }
+
+    /**
+     * @return The length of the route in meters.
+     */
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    /**
+     * @return The name of the solver that produced the route, see {@link RoutePlanService}.
+     */
+    public String getSolver() {
+        return solver;
+    }
+}
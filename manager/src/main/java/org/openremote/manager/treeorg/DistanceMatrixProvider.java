@@ -0,0 +1,24 @@
+package org.openremote.manager.treeorg;
+
+import java.util.List;
+
+/**
+ * Computes the distance matrix the route solvers work on.
+ */
+public interface DistanceMatrixProvider {
+
+    /**
+     * Straight-line (great-circle) distances.
+     */
+    DistanceMatrixProvider HAVERSINE = RouteHeuristics::distanceMatrix;
+
+    /**
+     * Builds the distance matrix for the depot followed by the given points; the matrix does not have to be
+     * symmetric.
+     *
+     * @param depot  Depot position in [longitude, latitude] format, stored at index 0.
+     * @param points Stop positions in [longitude, latitude] format, stored at index 1..n.
+     * @return Distance matrix in meters where {@code matrix[i][j]} is the distance from i to j.
+     */
+    double[][] distanceMatrix(double[] depot, List<double[]> points);
+}
@@ -0,0 +1,75 @@
+package org.openremote.manager.treeorg;
+
+/**
+ * Water level statistics and the predicted time until a tree reaches the critical water level.
+ */
+public class DroughtForecast {
+    private final String assetId;
+    private final double waterLevel;
+    private final double averageWaterLevel;
+    private final double minWaterLevel;
+    private final double maxWaterLevel;
+    private final double trend;
+    private final Double hoursUntilCritical;
+    private final long timestamp;
+
+    public DroughtForecast(String assetId, double waterLevel, double averageWaterLevel, double minWaterLevel,
+                           double maxWaterLevel, double trend, Double hoursUntilCritical, long timestamp) {
+        this.assetId = assetId;
+        this.waterLevel = waterLevel;
+        this.averageWaterLevel = averageWaterLevel;
+        this.minWaterLevel = minWaterLevel;
+        this.maxWaterLevel = maxWaterLevel;
+        this.trend = trend;
+        this.hoursUntilCritical = hoursUntilCritical;
+        this.timestamp = timestamp;
+    }
+
+    public String getAssetId() {
+        return assetId;
+    }
+
+    /**
+     * @return The most recent reading.
+     */
+    public double getWaterLevel() {
+        return waterLevel;
+    }
+
+    /**
+     * @return The exponentially weighted moving average of the readings.
+     */
+    public double getAverageWaterLevel() {
+        return averageWaterLevel;
+    }
+
+    public double getMinWaterLevel() {
+        return minWaterLevel;
+    }
+
+    public double getMaxWaterLevel() {
+        return maxWaterLevel;
+    }
+
+    /**
+     * @return The change in water level per hour; negative while the tree is drying out.
+     */
+    public double getTrend() {
+        return trend;
+    }
+
+    /**
+     * @return Hours from now until the critical water level is reached, or {@code null} when the tree is not drying
+     * out or there are too few readings.
+     */
+    public Double getHoursUntilCritical() {
+        return hoursUntilCritical;
+    }
+
+    /**
+     * @return The time of the most recent reading in epoch milliseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,150 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.container.persistence.PersistenceService;
+import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.event.ClientEventService;
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.AssetEvent;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.datapoint.AssetDatapoint;
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.treeorg.TreeAsset;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Forecasts when trees run dry from the trend of their water level. Aggregates are kept in a {@link TreeTrendStore}
+ * that is updated in constant time from water level attribute events and drops trees when they are deleted; on start
+ * the store is seeded from the datapoint history in the background by the {@link TreeOrgWarmupService}.
+ */
+public class DroughtForecastService implements ContainerService {
+
+    public static final double CRITICAL_WATER_LEVEL = 2000d;
+    public static final double TREND_TIME_CONSTANT_HOURS = 24d;
+    public static final long MIN_MAX_WINDOW_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final long HISTORY_MILLIS = 7 * MIN_MAX_WINDOW_MILLIS;
+    /**
+     * The number of trees whose history is loaded with one datapoint query.
+     */
+    public static final int HISTORY_BATCH_SIZE = 500;
+    private static final Logger LOG = Logger.getLogger(DroughtForecastService.class.getName());
+
+    private final TreeTrendStore store = new TreeTrendStore(TREND_TIME_CONSTANT_HOURS, MIN_MAX_WINDOW_MILLIS);
+    private AssetStorageService assetStorageService;
+    private PersistenceService persistenceService;
+    private ClientEventService clientEventService;
+    private TreeOrgWarmupService treeOrgWarmupService;
+
+    @Override
+    public void init(Container container) throws Exception {
+        assetStorageService = container.getService(AssetStorageService.class);
+        persistenceService = container.getService(PersistenceService.class);
+        clientEventService = container.getService(ClientEventService.class);
+        treeOrgWarmupService = container.getService(TreeOrgWarmupService.class);
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+        // Subscribe before loading the history; older datapoints of trees that already received a live reading are skipped
+        if (clientEventService != null) {
+            clientEventService.addInternalSubscription(AttributeEvent.class, null, this::onAttributeEvent);
+            clientEventService.addInternalSubscription(AssetEvent.class, null, this::onAssetEvent);
+        }
+        if (treeOrgWarmupService != null) {
+            treeOrgWarmupService.submit("waterLevelHistory", this::loadHistory);
+        }
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+    }
+
+    protected void onAttributeEvent(AttributeEvent event) {
+        if (!TreeAsset.WATER_LEVEL.getName().equals(event.getName())) {
+            return;
+        }
+        event.getValue().ifPresent(value -> {
+            if (value instanceof Number) {
+                record(event.getId(), event.getRealm(), event.getTimestamp(), ((Number) value).doubleValue());
+            }
+        });
+    }
+
+    protected void onAssetEvent(AssetEvent event) {
+        if (event.getCause() == AssetEvent.Cause.DELETE) {
+            store.remove(event.getId());
+        }
+    }
+
+    /**
+     * Adds a water level reading for a tree.
+     *
+     * @param realm The realm of the tree, or {@code null} when unknown.
+     */
+    public void record(String assetId, String realm, long timestamp, double waterLevel) {
+        store.record(assetId, realm, timestamp, waterLevel);
+    }
+
+    /**
+     * Loads the recent water levels of all trees; until it has, and when it fails, forecasts start from live readings.
+     */
+    protected void loadHistory() {
+        Date since = new Date(System.currentTimeMillis() - HISTORY_MILLIS);
+        Map<String, String> realms = new HashMap<>();
+        for (Asset<?> asset : assetStorageService.findAll(new AssetQuery().types(TreeAsset.class))) {
+            realms.put(asset.getId(), asset.getRealm());
+        }
+        // Only the datapoints within the history window are loaded, for a batch of trees per query
+        List<String> ids = new ArrayList<>(realms.keySet());
+        for (int from = 0; from < ids.size(); from += HISTORY_BATCH_SIZE) {
+            List<String> batch = ids.subList(from, Math.min(ids.size(), from + HISTORY_BATCH_SIZE));
+            List<AssetDatapoint> datapoints = persistenceService.doReturningTransaction(entityManager -> entityManager.createQuery(
+                    "select dp from AssetDatapoint dp where dp.assetId in :assetIds and dp.attributeName = :attributeName"
+                            + " and dp.timestamp >= :since order by dp.timestamp", AssetDatapoint.class)
+                    .setParameter("assetIds", batch)
+                    .setParameter("attributeName", TreeAsset.WATER_LEVEL.getName())
+                    .setParameter("since", since)
+                    .getResultList());
+            for (AssetDatapoint datapoint : datapoints) {
+                if (datapoint.getValue() instanceof Number) {
+                    record(datapoint.getAssetId(), realms.get(datapoint.getAssetId()), datapoint.getTimestamp(), ((Number) datapoint.getValue()).doubleValue());
+                }
+            }
+        }
+        LOG.info("Loaded water level history of " + ids.size() + " trees");
+    }
+
+    /**
+     * @return The forecast of a tree, or {@code null} when it has no readings.
+     */
+    public DroughtForecast getForecast(String assetId) {
+        return store.forecast(assetId, CRITICAL_WATER_LEVEL, System.currentTimeMillis());
+    }
+
+    /**
+     * Finds the trees that reach the critical water level first.
+     *
+     * @param realm        The realm to search, or {@code null} to search all realms.
+     * @param horizonHours Only include trees that reach the critical level within this many hours, or {@code null}
+     *                     to include all drying trees.
+     * @param limit        The maximum number of forecasts, or {@code null} for all.
+     * @return The forecasts, soonest first.
+     */
+    public List<DroughtForecast> findMostUrgent(String realm, Double horizonHours, Integer limit) {
+        return store.forecasts(realm, CRITICAL_WATER_LEVEL, System.currentTimeMillis()).stream()
+                .filter(forecast -> forecast.getHoursUntilCritical() != null)
+                .filter(forecast -> horizonHours == null || forecast.getHoursUntilCritical() <= horizonHours)
+                .sorted(Comparator.comparingDouble(DroughtForecast::getHoursUntilCritical))
+                .limit(limit != null ? limit : Long.MAX_VALUE)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,207 @@
+package org.openremote.manager.treeorg;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Exact tour solvers for the small daily routes, over a distance matrix where index 0 is the depot and index i + 1 is
+ * stop i; asymmetric road distances are supported. Both return indices into the stops in visiting order, like the
+ * heuristic solvers of {@link RouteService}.
+ * <p>
+ * Up to {@link #HELD_KARP_MAX_STOPS} stops the Held-Karp dynamic program finds the optimum in O(2^n n^2) time. Its
+ * table holds the cost of every subset of stops, as a bit mask, ending at every stop, in one flat {@code double} array
+ * with a {@code byte} array of predecessors, about 4 MB at 15 stops. Beyond that the table grows too fast and a depth
+ * first branch-and-bound takes over, which stops at a deadline with the best tour found so far.
+ */
+final class ExactRouteSolver {
+
+    static final int HELD_KARP_MAX_STOPS = 15;
+    static final int BRANCH_AND_BOUND_MAX_STOPS = 24;
+    /**
+     * Number of search nodes between deadline checks of the branch-and-bound.
+     */
+    private static final int DEADLINE_CHECK_INTERVAL = 4096;
+
+    private ExactRouteSolver() {
+    }
+
+    /**
+     * Finds the shortest tour with the Held-Karp dynamic program.
+     *
+     * @throws IllegalArgumentException if there are more than {@link #HELD_KARP_MAX_STOPS} stops.
+     */
+    static int[] heldKarp(double[][] distances) {
+        int stops = distances.length - 1;
+        if (stops > HELD_KARP_MAX_STOPS) {
+            throw new IllegalArgumentException("Too many stops for Held-Karp: " + stops);
+        }
+        if (stops == 0) {
+            return new int[0];
+        }
+        int subsets = 1 << stops;
+        // cost[subset * stops + last]: shortest path from the depot over the subset, ending at the last stop
+        double[] cost = new double[subsets * stops];
+        byte[] previous = new byte[subsets * stops];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        for (int j = 0; j < stops; j++) {
+            cost[(1 << j) * stops + j] = distances[0][j + 1];
+            previous[(1 << j) * stops + j] = -1;
+        }
+        for (int subset = 1; subset < subsets; subset++) {
+            for (int last = 0; last < stops; last++) {
+                double base = cost[subset * stops + last];
+                if ((subset & (1 << last)) == 0 || base == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                double[] from = distances[last + 1];
+                for (int next = 0; next < stops; next++) {
+                    if ((subset & (1 << next)) != 0) {
+                        continue;
+                    }
+                    int state = (subset | (1 << next)) * stops + next;
+                    double candidate = base + from[next + 1];
+                    if (candidate < cost[state]) {
+                        cost[state] = candidate;
+                        previous[state] = (byte) last;
+                    }
+                }
+            }
+        }
+
+        int full = subsets - 1;
+        int last = 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < stops; j++) {
+            double length = cost[full * stops + j] + distances[j + 1][0];
+            if (length < best) {
+                best = length;
+                last = j;
+            }
+        }
+        int[] order = new int[stops];
+        int subset = full;
+        for (int i = stops - 1; i >= 0; i--) {
+            order[i] = last;
+            int before = previous[subset * stops + last];
+            subset &= ~(1 << last);
+            last = before;
+        }
+        return order;
+    }
+
+    /**
+     * Searches for the shortest tour with depth first branch-and-bound, starting from an upper bound.
+     *
+     * @param initial       A tour to start from, as indices into the stops in visiting order.
+     * @param deadlineNanos The {@link System#nanoTime()} at which to stop searching.
+     * @return The shortest tour found; it is optimal if the search finished before the deadline.
+     */
+    static int[] branchAndBound(double[][] distances, int[] initial, long deadlineNanos) {
+        return new BranchAndBound(distances, initial, deadlineNanos).solve();
+    }
+
+    private static final class BranchAndBound {
+        private final double[][] distances;
+        private final int stops;
+        private final long deadlineNanos;
+        /**
+         * Cheapest edge out of and into every node; every unvisited stop still has to be left and entered once.
+         */
+        private final double[] cheapestExit;
+        private final double[] cheapestEntry;
+        /**
+         * Stops ordered by distance from each node, so the search tries near stops first and finds good tours early.
+         */
+        private final int[][] nearest;
+        private final int[] path;
+        private final boolean[] visited;
+        private int[] best;
+        private double bestLength;
+        private long searched;
+        private boolean expired;
+
+        BranchAndBound(double[][] distances, int[] initial, long deadlineNanos) {
+            this.distances = distances;
+            this.stops = distances.length - 1;
+            this.deadlineNanos = deadlineNanos;
+            cheapestExit = new double[stops + 1];
+            cheapestEntry = new double[stops + 1];
+            nearest = new int[stops + 1][];
+            for (int i = 0; i <= stops; i++) {
+                double exit = Double.POSITIVE_INFINITY;
+                double entry = Double.POSITIVE_INFINITY;
+                for (int j = 0; j <= stops; j++) {
+                    if (j != i) {
+                        exit = Math.min(exit, distances[i][j]);
+                        entry = Math.min(entry, distances[j][i]);
+                    }
+                }
+                cheapestExit[i] = exit;
+                cheapestEntry[i] = entry;
+                double[] row = distances[i];
+                nearest[i] = IntStream.range(0, stops).boxed()
+                        .sorted((a, b) -> Double.compare(row[a + 1], row[b + 1]))
+                        .mapToInt(Integer::intValue).toArray();
+            }
+            path = new int[stops];
+            visited = new boolean[stops];
+            best = initial.clone();
+            bestLength = length(initial);
+        }
+
+        int[] solve() {
+            double remainingExits = 0d;
+            double remainingEntries = cheapestEntry[0];
+            for (int i = 1; i <= stops; i++) {
+                remainingExits += cheapestExit[i];
+                remainingEntries += cheapestEntry[i];
+            }
+            search(0, 0, 0d, remainingExits, remainingEntries);
+            return best;
+        }
+
+        private void search(int depth, int node, double length, double remainingExits, double remainingEntries) {
+            if (expired || (++searched % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() > deadlineNanos)) {
+                expired = true;
+                return;
+            }
+            if (depth == stops) {
+                double total = length + distances[node][0];
+                if (total < bestLength) {
+                    bestLength = total;
+                    best = path.clone();
+                }
+                return;
+            }
+            // The current node and every unvisited stop are left exactly once more, every unvisited stop and the depot
+            // are entered exactly once more
+            if (length + Math.max(cheapestExit[node] + remainingExits, remainingEntries) >= bestLength) {
+                return;
+            }
+            for (int next : nearest[node]) {
+                if (visited[next]) {
+                    continue;
+                }
+                double extended = length + distances[node][next + 1];
+                double entries = remainingEntries - cheapestEntry[next + 1];
+                if (extended + Math.max(remainingExits, entries) >= bestLength) {
+                    continue;
+                }
+                visited[next] = true;
+                path[depth] = next;
+                search(depth + 1, next + 1, extended, remainingExits - cheapestExit[next + 1], entries);
+                visited[next] = false;
+            }
+        }
+
+        private double length(int[] order) {
+            double total = 0d;
+            int previous = 0;
+            for (int index : order) {
+                total += distances[previous][index + 1];
+                previous = index + 1;
+            }
+            return total + distances[previous][0];
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.openremote.manager.treeorg;
+
+/**
+ * The outcome of submitting a batch of sensor readings.
+ */
+public class IngestResult {
+    private final int accepted;
+    private final int rejected;
+    private final int pending;
+
+    public IngestResult(int accepted, int rejected, int pending) {
+        this.accepted = accepted;
+        this.rejected = rejected;
+        this.pending = pending;
+    }
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @return The number of readings without an asset ID or value, or for an attribute that cannot be ingested.
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return The number of distinct tree attributes waiting for the next flush, after coalescing.
+     */
+    public int getPending() {
+        return pending;
+    }
+}
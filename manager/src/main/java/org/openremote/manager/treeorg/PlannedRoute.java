@@ -0,0 +1,112 @@
+package org.openremote.manager.treeorg;
+
+import java.util.List;
+
+/**
+ * The route of one vehicle on one day of a {@link WateringPlanResponse}.
+ */
+public class PlannedRoute {
+    private final String date;
+    private final String depotId;
+    private final String vehicleId;
+    private final List<String> stopIds;
+    private final List<double[]> route;
+    private final double totalDistance;
+    private final double workload;
+    private final String googleMapsURL;
+    private final List<String> googleMapsLegURLs;
+    private final String solver;
+    private final int planVersion;
+
+    public PlannedRoute(String date, String depotId, String vehicleId, List<String> stopIds, List<double[]> route, double totalDistance, double workload, List<String> googleMapsLegURLs, String solver, int planVersion) {
+        this.date = date;
+        this.depotId = depotId;
+        this.vehicleId = vehicleId;
+        this.stopIds = stopIds;
+        this.route = route;
+        this.totalDistance = totalDistance;
+        this.workload = workload;
+        this.googleMapsURL = RouteResponse.firstLeg(googleMapsLegURLs);
+        this.googleMapsLegURLs = googleMapsLegURLs;
+        this.solver = solver;
+        this.planVersion = planVersion;
+    }
+
+    /**
+     * @return The day of the route as an ISO-8601 date.
+     */
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * @return The depot asset ID, or {@code null} when the default starting position was used.
+     */
+    public String getDepotId() {
+        return depotId;
+    }
+
+    /**
+     * @return The vehicle asset ID, or {@code null} when the depot has no vehicles.
+     */
+    public String getVehicleId() {
+        return vehicleId;
+    }
+
+    /**
+     * @return The IDs of the trees in visiting order.
+     */
+    public List<String> getStopIds() {
+        return stopIds;
+    }
+
+    /**
+     * @return The route coordinates in [longitude, latitude] format, starting and ending at the depot.
+     */
+    public List<double[]> getRoute() {
+        return route;
+    }
+
+    /**
+     * @return The length of the route in meters.
+     */
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    /**
+     * @return The driving and watering time of the route in seconds.
+     */
+    public double getWorkload() {
+        return workload;
+    }
+
+    /**
+     * @return The Google Maps URL of the first leg of the route.
+     */
+    public String getGoogleMapsURL() {
+        return googleMapsURL;
+    }
+
+    /**
+     * @return The Google Maps URLs of all legs in driving order.
+     */
+    public List<String> getGoogleMapsLegURLs() {
+        return googleMapsLegURLs;
+    }
+
+    /**
+     * @return The name of the solver that produced the route, see {@link RoutePlanService}.
+     */
+    public String getSolver() {
+        return solver;
+    }
+
+    /**
+     * @return The version of the stored {@link org.openremote.model.treeorg.RoutePlanAsset}, or 0 when it was not
+     * stored.
+     */
+    public int getPlanVersion() {
+        return planVersion;
+    }
+}
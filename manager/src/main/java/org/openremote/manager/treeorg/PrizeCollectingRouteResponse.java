@@ -0,0 +1,61 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.asset.Asset;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link RouteResponse} for a budgeted selection; the ordered assets are the chosen subset in visiting order and the
+ * remaining fields break down the objective.
+ */
+public class PrizeCollectingRouteResponse extends RouteResponse {
+    private final int candidateCount;
+    private final double distanceBudget;
+    private final double totalDistance;
+    private final double totalUrgency;
+    private final double deficitUrgency;
+    private final double temperatureUrgency;
+    private final double priorityUrgency;
+
+    public PrizeCollectingRouteResponse(List<String> googleMapsLegURLs, List<Asset<?>> orderedAssets, int candidateCount,
+                                        double distanceBudget, double totalDistance, double deficitUrgency,
+                                        double temperatureUrgency, double priorityUrgency) {
+        super(firstLeg(googleMapsLegURLs), googleMapsLegURLs, orderedAssets, Collections.emptyList());
+        this.candidateCount = candidateCount;
+        this.distanceBudget = distanceBudget;
+        this.totalDistance = totalDistance;
+        this.deficitUrgency = deficitUrgency;
+        this.temperatureUrgency = temperatureUrgency;
+        this.priorityUrgency = priorityUrgency;
+        this.totalUrgency = deficitUrgency + temperatureUrgency + priorityUrgency;
+    }
+
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    public double getDistanceBudget() {
+        return distanceBudget;
+    }
+
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    public double getTotalUrgency() {
+        return totalUrgency;
+    }
+
+    public double getDeficitUrgency() {
+        return deficitUrgency;
+    }
+
+    public double getTemperatureUrgency() {
+        return temperatureUrgency;
+    }
+
+    public double getPriorityUrgency() {
+        return priorityUrgency;
+    }
+}
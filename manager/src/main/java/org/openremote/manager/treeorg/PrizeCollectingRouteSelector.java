@@ -0,0 +1,119 @@
+package org.openremote.manager.treeorg;
+
+import java.util.List;
+
+/**
+ * Orienteering heuristic that selects the subset of stops with the highest total prize whose closed tour from the
+ * depot fits within a distance budget.
+ * <p>
+ * Stops are added greedily by prize per meter of cheapest insertion cost; whenever no further stop fits the tour is
+ * tightened with 2-opt and Or-opt and insertion is retried with the freed budget.
+ */
+public class PrizeCollectingRouteSelector {
+
+    private final double[][] distances;
+    private final double[] prizes;
+    private final double budget;
+
+    /**
+     * @param depot  Depot position in [longitude, latitude] format; the tour starts and ends here.
+     * @param points Candidate stop positions in [longitude, latitude] format.
+     * @param prizes Prize for visiting each candidate, in the same order as {@code points}.
+     * @param budget Maximum closed tour length in meters.
+     */
+    public PrizeCollectingRouteSelector(double[] depot, List<double[]> points, double[] prizes, double budget) {
+        this(RouteHeuristics.distanceMatrix(depot, points), prizes, budget);
+    }
+
+    /**
+     * @param distances Distance matrix where index 0 is the depot and index i + 1 is candidate i.
+     */
+    public PrizeCollectingRouteSelector(double[][] distances, double[] prizes, double budget) {
+        this.distances = distances;
+        this.prizes = prizes;
+        this.budget = budget;
+    }
+
+    /**
+     * Runs the selection.
+     *
+     * @return Indices into the candidate list in visiting order.
+     */
+    public int[] select() {
+        int candidates = prizes.length;
+        int[] tour = new int[candidates + 1];
+        int size = 1;
+        boolean[] inTour = new boolean[candidates];
+        double length = 0d;
+
+        boolean added = true;
+        while (added) {
+            added = false;
+            while (true) {
+                int bestCandidate = -1;
+                int bestPosition = -1;
+                double bestCost = 0d;
+                double bestRatio = -1d;
+                for (int c = 0; c < candidates; c++) {
+                    if (inTour[c] || prizes[c] <= 0d) {
+                        continue;
+                    }
+                    double[] insertion = RouteHeuristics.cheapestInsertion(tour, size, c + 1, distances);
+                    double cost = insertion[1];
+                    if (length + cost > budget) {
+                        continue;
+                    }
+                    double ratio = prizes[c] / Math.max(cost, 1d);
+                    if (ratio > bestRatio) {
+                        bestRatio = ratio;
+                        bestCandidate = c;
+                        bestPosition = (int) insertion[0];
+                        bestCost = cost;
+                    }
+                }
+                if (bestCandidate < 0) {
+                    break;
+                }
+                RouteHeuristics.insertAfter(tour, size, bestPosition, bestCandidate + 1);
+                size++;
+                inTour[bestCandidate] = true;
+                length += bestCost;
+                added = true;
+            }
+            if (added && size > 3) {
+                // 2-opt assumes symmetric distances, so measure the actual result and keep the old tour if it got worse
+                int[] previous = tour.clone();
+                RouteHeuristics.twoOpt(tour, size, distances);
+                RouteHeuristics.orOpt(tour, size, distances);
+                double improved = RouteHeuristics.tourLength(tour, size, distances);
+                if (improved < length - 1e-6) {
+                    length = improved;
+                    // Only retry insertion when local search actually freed some budget
+                    added = true;
+                } else {
+                    System.arraycopy(previous, 0, tour, 0, size);
+                    added = false;
+                }
+            } else {
+                added = false;
+            }
+        }
+
+        int[] selection = new int[size - 1];
+        for (int i = 1; i < size; i++) {
+            selection[i - 1] = tour[i] - 1;
+        }
+        return selection;
+    }
+
+    /**
+     * Calculates the closed tour length in meters for a selection returned by {@link #select()}.
+     */
+    public double tourLength(int[] selection) {
+        int[] tour = new int[selection.length + 1];
+        for (int i = 0; i < selection.length; i++) {
+            tour[i + 1] = selection[i] + 1;
+        }
+        return RouteHeuristics.tourLength(tour, tour.length, distances);
+    }
+}
@@ -0,0 +1,69 @@
+package org.openremote.manager.treeorg;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of treeorg computations that run at the same time for each realm. Every realm gets its own
+ * permits, so a realm with many trees and many concurrent requests can only occupy its own share of the request
+ * threads while other realms keep running.
+ */
+public class RealmConcurrencyLimiter {
+
+    public static final String TREEORG_REALM_CONCURRENCY = "TREEORG_REALM_CONCURRENCY";
+    public static final int TREEORG_REALM_CONCURRENCY_DEFAULT = 2;
+    public static final String TREEORG_REALM_QUEUE_MILLIS = "TREEORG_REALM_QUEUE_MILLIS";
+    public static final int TREEORG_REALM_QUEUE_MILLIS_DEFAULT = 5000;
+
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+    private final int permitsPerRealm;
+    private final long queueMillis;
+
+    /**
+     * @param permitsPerRealm The number of computations that may run at the same time in one realm.
+     * @param queueMillis     How long a computation waits for a permit before it is rejected.
+     */
+    public RealmConcurrencyLimiter(int permitsPerRealm, long queueMillis) {
+        if (permitsPerRealm < 1) {
+            throw new IllegalArgumentException("At least one permit per realm is required");
+        }
+        this.permitsPerRealm = permitsPerRealm;
+        this.queueMillis = queueMillis;
+    }
+
+    /**
+     * Runs the computation on the calling thread once a permit for the realm is available.
+     *
+     * @throws RejectedExecutionException If no permit became available in time.
+     */
+    public <T> T call(String realm, Supplier<T> computation) {
+        Semaphore semaphore = permits.computeIfAbsent(realm, r -> new Semaphore(permitsPerRealm, true));
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(queueMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for realm " + realm, e);
+        }
+        if (!acquired) {
+            throw new RejectedExecutionException("Too many concurrent computations for realm " + realm);
+        }
+        try {
+            return computation.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * @return The number of computations currently running for the realm.
+     */
+    public int getActive(String realm) {
+        Semaphore semaphore = permits.get(realm);
+        return semaphore == null ? 0 : permitsPerRealm - semaphore.availablePermits();
+    }
+}
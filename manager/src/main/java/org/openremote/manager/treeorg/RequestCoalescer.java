@@ -0,0 +1,50 @@
+package org.openremote.manager.treeorg;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares one computation between concurrent identical requests. The first caller for a key runs the computation on
+ * its own thread; callers that arrive with the same key while it is running wait for and receive the same result.
+ * Nothing is cached once the computation completes, so a later request always computes again.
+ */
+public class RequestCoalescer<K> {
+
+    private final Map<K, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <V> V run(K key, Supplier<V> computation) {
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            try {
+                return (V) running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            V result = computation.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * @return The number of computations currently running.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,81 @@
+package org.openremote.manager.treeorg;
+
+import java.util.List;
+
+/**
+ * The re-optimized rest of the route of a vehicle, see {@link VehicleRouteService}.
+ */
+public class RerouteResponse {
+    private final String vehicleId;
+    private final List<String> stopIds;
+    private final List<String> unroutedStopIds;
+    private final List<double[]> route;
+    private final double totalDistance;
+    private final String googleMapsURL;
+    private final List<String> googleMapsLegURLs;
+    private final String solver;
+
+    public RerouteResponse(String vehicleId, List<String> stopIds, List<String> unroutedStopIds, List<double[]> route, double totalDistance, List<String> googleMapsLegURLs, String solver) {
+        this.vehicleId = vehicleId;
+        this.stopIds = stopIds;
+        this.unroutedStopIds = unroutedStopIds;
+        this.route = route;
+        this.totalDistance = totalDistance;
+        this.googleMapsURL = RouteResponse.firstLeg(googleMapsLegURLs);
+        this.googleMapsLegURLs = googleMapsLegURLs;
+        this.solver = solver;
+    }
+
+    public String getVehicleId() {
+        return vehicleId;
+    }
+
+    /**
+     * @return The IDs of the remaining stops in their new visiting order.
+     */
+    public List<String> getStopIds() {
+        return stopIds;
+    }
+
+    /**
+     * @return The IDs of requested stops that were left out because they have no location or are in another realm.
+     */
+    public List<String> getUnroutedStopIds() {
+        return unroutedStopIds;
+    }
+
+    /**
+     * @return The route coordinates in [longitude, latitude] format, from the vehicle over the stops to its depot.
+     */
+    public List<double[]> getRoute() {
+        return route;
+    }
+
+    /**
+     * @return The length of the route in meters.
+     */
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    /**
+     * @return The Google Maps URL of the first leg of the route.
+     */
+    public String getGoogleMapsURL() {
+        return googleMapsURL;
+    }
+
+    /**
+     * @return The Google Maps URLs of all legs in driving order.
+     */
+    public List<String> getGoogleMapsLegURLs() {
+        return googleMapsLegURLs;
+    }
+
+    /**
+     * @return The name of the solver that produced the route, see {@link RoutePlanService}.
+     */
+    public String getSolver() {
+        return solver;
+    }
+}
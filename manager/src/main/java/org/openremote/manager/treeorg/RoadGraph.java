@@ -0,0 +1,413 @@
+package org.openremote.manager.treeorg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A directed road network read from a prebuilt graph file. The file is memory-mapped so node coordinates and the
+ * adjacency arrays are never copied onto the heap; only a coarse grid index used to snap coordinates onto the network
+ * is built when the graph is loaded.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * int     magic ("TRGR")
+ * int     version
+ * int     nodeCount
+ * int     edgeCount
+ * double  longitude[nodeCount]
+ * double  latitude[nodeCount]
+ * int     firstEdge[nodeCount + 1]   (edges of node n are firstEdge[n] until firstEdge[n + 1])
+ * int     edgeTarget[edgeCount]
+ * float   edgeLength[edgeCount]      (meters)
+ * </pre>
+ * One-way streets are simply edges without a reverse counterpart.
+ */
+public class RoadGraph {
+
+    public static final int MAGIC = 0x54524752;
+    public static final int VERSION = 1;
+    protected static final int HEADER_BYTES = 16;
+    protected static final double CELL_SIZE = 0.005d;
+    protected static final int MAX_SNAP_RING = 20;
+
+    private final int nodeCount;
+    private final int edgeCount;
+    private final DoubleBuffer longitudes;
+    private final DoubleBuffer latitudes;
+    private final IntBuffer firstEdges;
+    private final IntBuffer edgeTargets;
+    private final FloatBuffer edgeLengths;
+    private final Map<Long, int[]> cells;
+    private final String fingerprint;
+
+    protected RoadGraph(ByteBuffer buffer, String fingerprint) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a road graph file or unsupported version");
+        }
+        this.nodeCount = buffer.getInt(8);
+        this.edgeCount = buffer.getInt(12);
+        this.fingerprint = fingerprint;
+        int offset = HEADER_BYTES;
+        longitudes = section(buffer, offset, nodeCount * Double.BYTES).asDoubleBuffer();
+        offset += nodeCount * Double.BYTES;
+        latitudes = section(buffer, offset, nodeCount * Double.BYTES).asDoubleBuffer();
+        offset += nodeCount * Double.BYTES;
+        firstEdges = section(buffer, offset, (nodeCount + 1) * Integer.BYTES).asIntBuffer();
+        offset += (nodeCount + 1) * Integer.BYTES;
+        edgeTargets = section(buffer, offset, edgeCount * Integer.BYTES).asIntBuffer();
+        offset += edgeCount * Integer.BYTES;
+        edgeLengths = section(buffer, offset, edgeCount * Float.BYTES).asFloatBuffer();
+        cells = buildCells();
+    }
+
+    /**
+     * Memory-maps a graph file.
+     */
+    public static RoadGraph load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            String fingerprint = Long.toHexString(channel.size()) + "-" + Long.toHexString(Files.getLastModifiedTime(file).toMillis());
+            return new RoadGraph(buffer, fingerprint);
+        }
+    }
+
+    /**
+     * Writes a graph file from an edge list, e.g. as produced by an OSM extract conversion.
+     *
+     * @param longitudes  Node longitudes.
+     * @param latitudes   Node latitudes.
+     * @param edgeSources Source node of each directed edge.
+     * @param edgeTargets Target node of each directed edge.
+     * @param edgeLengths Length of each edge in meters.
+     */
+    public static void write(Path file, double[] longitudes, double[] latitudes, int[] edgeSources, int[] edgeTargets, float[] edgeLengths) throws IOException {
+        int nodeCount = longitudes.length;
+        int edgeCount = edgeSources.length;
+        int[] firstEdge = new int[nodeCount + 1];
+        for (int source : edgeSources) {
+            firstEdge[source + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            firstEdge[i + 1] += firstEdge[i];
+        }
+        int[] next = Arrays.copyOf(firstEdge, nodeCount);
+        int[] targets = new int[edgeCount];
+        float[] lengths = new float[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            int position = next[edgeSources[e]]++;
+            targets[position] = edgeTargets[e];
+            lengths[position] = edgeLengths[e];
+        }
+
+        int size = HEADER_BYTES + 2 * nodeCount * Double.BYTES + (nodeCount + 1) * Integer.BYTES
+                + edgeCount * (Integer.BYTES + Float.BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(nodeCount).putInt(edgeCount);
+        buffer.asDoubleBuffer().put(longitudes);
+        buffer.position(buffer.position() + nodeCount * Double.BYTES);
+        buffer.asDoubleBuffer().put(latitudes);
+        buffer.position(buffer.position() + nodeCount * Double.BYTES);
+        buffer.asIntBuffer().put(firstEdge);
+        buffer.position(buffer.position() + (nodeCount + 1) * Integer.BYTES);
+        buffer.asIntBuffer().put(targets);
+        buffer.position(buffer.position() + edgeCount * Integer.BYTES);
+        buffer.asFloatBuffer().put(lengths);
+        buffer.rewind();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return A value that changes whenever the underlying graph file changes; used to key derived caches.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public double getLongitude(int node) {
+        return longitudes.get(node);
+    }
+
+    public double getLatitude(int node) {
+        return latitudes.get(node);
+    }
+
+    /**
+     * @return The index of the first outgoing edge of {@code node}; its edges end at the first edge of node + 1.
+     */
+    public int getFirstEdge(int node) {
+        return firstEdges.get(node);
+    }
+
+    public int getEdgeTarget(int edge) {
+        return edgeTargets.get(edge);
+    }
+
+    public float getEdgeLength(int edge) {
+        return edgeLengths.get(edge);
+    }
+
+    /**
+     * Finds the graph node nearest to a coordinate.
+     *
+     * @return The node index, or -1 if no node is within {@link #MAX_SNAP_RING} grid cells.
+     */
+    public int snap(double longitude, double latitude) {
+        int cellX = (int) Math.floor(longitude / CELL_SIZE);
+        int cellY = (int) Math.floor(latitude / CELL_SIZE);
+        double lonScale = Math.cos(Math.toRadians(latitude));
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        int foundRing = -1;
+        for (int ring = 0; ring <= MAX_SNAP_RING; ring++) {
+            // A node in the next ring can still be closer than one found in this ring
+            if (foundRing >= 0 && ring > foundRing + 1) {
+                break;
+            }
+            for (int dy = -ring; dy <= ring; dy++) {
+                for (int dx = -ring; dx <= ring; dx++) {
+                    if (Math.abs(dx) != ring && Math.abs(dy) != ring) {
+                        continue;
+                    }
+                    int[] nodes = cells.get(cellKey(cellX + dx, cellY + dy));
+                    if (nodes == null) {
+                        continue;
+                    }
+                    for (int node : nodes) {
+                        double x = (longitudes.get(node) - longitude) * lonScale;
+                        double y = latitudes.get(node) - latitude;
+                        double distance = x * x + y * y;
+                        if (distance < nearestDistance) {
+                            nearestDistance = distance;
+                            nearest = node;
+                        }
+                    }
+                }
+            }
+            if (nearest >= 0 && foundRing < 0) {
+                foundRing = ring;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Runs Dijkstra from {@code source} until all {@code targets} are settled.
+     *
+     * @param result Receives the distance to each target in meters, or {@link Double#POSITIVE_INFINITY} when it is
+     *               unreachable.
+     */
+    public void shortestPaths(int source, int[] targets, double[] result, Workspace workspace) {
+        workspace.reset();
+        int remaining = 0;
+        for (int target : targets) {
+            if (workspace.markTarget(target)) {
+                remaining++;
+            }
+        }
+        workspace.relax(source, 0d);
+        while (remaining > 0 && !workspace.isEmpty()) {
+            int node = workspace.poll();
+            if (node < 0) {
+                continue;
+            }
+            if (workspace.isTarget(node)) {
+                remaining--;
+            }
+            double distance = workspace.distance(node);
+            int end = firstEdges.get(node + 1);
+            for (int e = firstEdges.get(node); e < end; e++) {
+                workspace.relax(edgeTargets.get(e), distance + edgeLengths.get(e));
+            }
+        }
+        for (int i = 0; i < targets.length; i++) {
+            result[i] = workspace.distance(targets[i]);
+        }
+    }
+
+    /**
+     * Creates the per-thread state needed by {@link #shortestPaths}; a workspace can be reused for many searches but
+     * must not be shared between threads.
+     */
+    public Workspace createWorkspace() {
+        return new Workspace(nodeCount);
+    }
+
+    private Map<Long, int[]> buildCells() {
+        Map<Long, List<Integer>> lists = new HashMap<>();
+        for (int node = 0; node < nodeCount; node++) {
+            long key = cellKey((int) Math.floor(longitudes.get(node) / CELL_SIZE), (int) Math.floor(latitudes.get(node) / CELL_SIZE));
+            lists.computeIfAbsent(key, k -> new ArrayList<>()).add(node);
+        }
+        Map<Long, int[]> result = new HashMap<>(lists.size() * 2);
+        lists.forEach((key, nodes) -> result.put(key, nodes.stream().mapToInt(Integer::intValue).toArray()));
+        return result;
+    }
+
+    private static long cellKey(int cellX, int cellY) {
+        return ((long) cellY << 32) ^ (cellX & 0xffffffffL);
+    }
+
+    private static ByteBuffer section(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset).limit(offset + length);
+        return duplicate.slice();
+    }
+
+    /**
+     * Distance labels and a lazy binary heap for Dijkstra; only touched entries are reset between searches.
+     */
+    public static class Workspace {
+        private final double[] distances;
+        private final boolean[] settled;
+        private final int[] targetStamp;
+        private int stamp;
+        private int[] touched = new int[64];
+        private int touchedCount;
+        private int[] heapNodes = new int[64];
+        private double[] heapKeys = new double[64];
+        private int heapSize;
+
+        protected Workspace(int nodeCount) {
+            distances = new double[nodeCount];
+            settled = new boolean[nodeCount];
+            targetStamp = new int[nodeCount];
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                distances[touched[i]] = Double.POSITIVE_INFINITY;
+                settled[touched[i]] = false;
+            }
+            touchedCount = 0;
+            heapSize = 0;
+            stamp++;
+        }
+
+        boolean markTarget(int node) {
+            if (targetStamp[node] == stamp) {
+                return false;
+            }
+            targetStamp[node] = stamp;
+            return true;
+        }
+
+        boolean isTarget(int node) {
+            return targetStamp[node] == stamp;
+        }
+
+        double distance(int node) {
+            return distances[node];
+        }
+
+        boolean isEmpty() {
+            return heapSize == 0;
+        }
+
+        /**
+         * @return The number of nodes reached since the last reset; after a search has run until the heap is empty
+         * these are exactly the settled nodes.
+         */
+        int touchedCount() {
+            return touchedCount;
+        }
+
+        int touched(int index) {
+            return touched[index];
+        }
+
+        void relax(int node, double distance) {
+            if (distance >= distances[node]) {
+                return;
+            }
+            if (distances[node] == Double.POSITIVE_INFINITY) {
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touched.length * 2);
+                }
+                touched[touchedCount++] = node;
+            }
+            distances[node] = distance;
+            push(node, distance);
+        }
+
+        /**
+         * @return The next node to settle, or -1 for a stale heap entry.
+         */
+        int poll() {
+            int node = heapNodes[0];
+            double key = heapKeys[0];
+            heapSize--;
+            if (heapSize > 0) {
+                siftDown(heapNodes[heapSize], heapKeys[heapSize]);
+            }
+            if (settled[node] || key > distances[node]) {
+                return -1;
+            }
+            settled[node] = true;
+            return node;
+        }
+
+        private void push(int node, double key) {
+            if (heapSize == heapNodes.length) {
+                heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+                heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heapKeys[parent] <= key) {
+                    break;
+                }
+                heapNodes[i] = heapNodes[parent];
+                heapKeys[i] = heapKeys[parent];
+                i = parent;
+            }
+            heapNodes[i] = node;
+            heapKeys[i] = key;
+        }
+
+        private void siftDown(int node, double key) {
+            int i = 0;
+            int half = heapSize >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                    child++;
+                }
+                if (key <= heapKeys[child]) {
+                    break;
+                }
+                heapNodes[i] = heapNodes[child];
+                heapKeys[i] = heapKeys[child];
+                i = child;
+            }
+            heapNodes[i] = node;
+            heapKeys[i] = key;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package org.openremote.manager.treeorg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link DistanceMatrixProvider} that measures distances along a {@link RoadGraph}.
+ * <p>
+ * Every point is snapped to its nearest graph node and the walk to and from that node is added to the road distance.
+ * The matrix is computed with the {@link ContractionHierarchy} when one is available, otherwise with one Dijkstra
+ * search per distinct source node; either way the searches are spread over the executor. Computed matrices are written
+ * to the cache directory so an identical matrix is memory-mapped instead of recomputed, also after a restart; the least
+ * recently used matrices are removed once the cache exceeds its size limit.
+ * <p>
+ * Matrices of more than {@link #MAX_ROAD_POINTS} points use straight-line distances instead, as their road distances
+ * would not fit in memory.
+ */
+public class RoadNetworkDistanceProvider implements DistanceMatrixProvider {
+
+    /**
+     * Factor applied to the straight-line distance between points that are not connected in the graph.
+     */
+    public static final double UNREACHABLE_DETOUR_FACTOR = 3d;
+    /**
+     * The most points of a road distance matrix, a 64 MiB matrix of floats.
+     */
+    public static final int MAX_ROAD_POINTS = 4096;
+    public static final long DEFAULT_MAX_CACHE_BYTES = 1024L * 1024L * 1024L;
+    protected static final int CACHE_MAGIC = 0x54524d58;
+    protected static final int SOURCES_PER_TASK = 16;
+
+    private static final Logger LOG = Logger.getLogger(RoadNetworkDistanceProvider.class.getName());
+    private final RoadGraph graph;
+    private final ContractionHierarchy hierarchy;
+    private final Path cacheDir;
+    private final Executor executor;
+    private final long maxCacheBytes;
+
+    /**
+     * @param hierarchy The contraction hierarchy of the graph, or {@code null} to use plain Dijkstra searches.
+     * @param cacheDir  Directory for cached matrices, or {@code null} to disable caching.
+     * @param executor  Executor for the searches, or {@code null} to use the common pool. The calling thread waits for
+     *                  the searches, so this must not be a bounded pool the caller itself may be running on.
+     */
+    public RoadNetworkDistanceProvider(RoadGraph graph, ContractionHierarchy hierarchy, Path cacheDir, Executor executor) {
+        this(graph, hierarchy, cacheDir, executor, DEFAULT_MAX_CACHE_BYTES);
+    }
+
+    /**
+     * @param maxCacheBytes The total size of the cached matrices above which the least recently used are removed.
+     */
+    public RoadNetworkDistanceProvider(RoadGraph graph, ContractionHierarchy hierarchy, Path cacheDir, Executor executor, long maxCacheBytes) {
+        this.graph = graph;
+        this.hierarchy = hierarchy;
+        this.cacheDir = cacheDir;
+        this.executor = executor != null ? executor : ForkJoinPool.commonPool();
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    @Override
+    public double[][] distanceMatrix(double[] depot, List<double[]> points) {
+        int size = points.size() + 1;
+        if (size > MAX_ROAD_POINTS) {
+            LOG.warning("Using straight-line distances for " + size + " points, road distances support at most " + MAX_ROAD_POINTS);
+            return HAVERSINE.distanceMatrix(depot, points);
+        }
+        int[] nodes = new int[size];
+        double[] snapDistances = new double[size];
+        for (int i = 0; i < size; i++) {
+            double[] point = i == 0 ? depot : points.get(i - 1);
+            nodes[i] = graph.snap(point[0], point[1]);
+            snapDistances[i] = nodes[i] < 0 ? 0d : RouteHeuristics.haversineDistance(point,
+                    new double[]{graph.getLongitude(nodes[i]), graph.getLatitude(nodes[i])});
+        }
+
+        float[] roadDistances = readCache(nodes);
+        if (roadDistances == null) {
+            roadDistances = computeRoadDistances(nodes);
+            writeCache(nodes, roadDistances);
+        }
+
+        double[][] matrix = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            double[] from = i == 0 ? depot : points.get(i - 1);
+            for (int j = 0; j < size; j++) {
+                if (i == j) {
+                    continue;
+                }
+                float road = roadDistances[i * size + j];
+                if (Float.isInfinite(road)) {
+                    double[] to = j == 0 ? depot : points.get(j - 1);
+                    matrix[i][j] = UNREACHABLE_DETOUR_FACTOR * RouteHeuristics.haversineDistance(from, to);
+                } else {
+                    matrix[i][j] = snapDistances[i] + road + snapDistances[j];
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * @return Road distances between the snapped nodes as a row-major {@code size * size} array.
+     */
+    protected float[] computeRoadDistances(int[] nodes) {
+        int size = nodes.length;
+        int[] distinct = Arrays.stream(nodes).filter(node -> node >= 0).distinct().sorted().toArray();
+        float[] distances = new float[size * size];
+        Arrays.fill(distances, Float.POSITIVE_INFINITY);
+        if (distinct.length == 0) {
+            return distances;
+        }
+        int[] targetIndex = new int[size];
+        for (int i = 0; i < size; i++) {
+            targetIndex[i] = nodes[i] >= 0 ? Arrays.binarySearch(distinct, nodes[i]) : -1;
+        }
+
+        if (hierarchy != null) {
+            float[] table = hierarchy.manyToMany(distinct, distinct, executor);
+            for (int i = 0; i < size; i++) {
+                if (targetIndex[i] < 0) {
+                    continue;
+                }
+                int row = targetIndex[i] * distinct.length;
+                for (int j = 0; j < size; j++) {
+                    if (targetIndex[j] >= 0) {
+                        distances[i * size + j] = table[row + targetIndex[j]];
+                    }
+                }
+            }
+            return distances;
+        }
+
+        // Each task searches from a block of distinct sources and fills the rows of all points on those sources
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < distinct.length; from += SOURCES_PER_TASK) {
+            int start = from;
+            int end = Math.min(distinct.length, from + SOURCES_PER_TASK);
+            tasks.add(CompletableFuture.runAsync(() -> {
+                RoadGraph.Workspace workspace = graph.createWorkspace();
+                double[] result = new double[distinct.length];
+                for (int s = start; s < end; s++) {
+                    graph.shortestPaths(distinct[s], distinct, result, workspace);
+                    for (int i = 0; i < size; i++) {
+                        if (nodes[i] != distinct[s]) {
+                            continue;
+                        }
+                        for (int j = 0; j < size; j++) {
+                            if (targetIndex[j] >= 0) {
+                                distances[i * size + j] = (float) result[targetIndex[j]];
+                            }
+                        }
+                    }
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+        return distances;
+    }
+
+    protected Path cacheFile(int[] nodes) {
+        long hash = 0xcbf29ce484222325L;
+        for (int node : nodes) {
+            hash ^= node;
+            hash *= 0x100000001b3L;
+        }
+        return cacheDir.resolve("matrix-" + graph.getFingerprint() + "-" + nodes.length + "-" + Long.toHexString(hash) + ".bin");
+    }
+
+    protected float[] readCache(int[] nodes) {
+        if (cacheDir == null) {
+            return null;
+        }
+        Path file = cacheFile(nodes);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            // The modification time orders the matrices for eviction
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOG.fine("Failed to mark cached distance matrix " + file + " as used: " + e.getMessage());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != CACHE_MAGIC || buffer.getInt(4) != nodes.length) {
+                return null;
+            }
+            buffer.position(8);
+            int[] cachedNodes = new int[nodes.length];
+            IntBuffer nodeBuffer = buffer.asIntBuffer();
+            nodeBuffer.get(cachedNodes);
+            if (!Arrays.equals(nodes, cachedNodes)) {
+                return null;
+            }
+            buffer.position(8 + nodes.length * Integer.BYTES);
+            float[] distances = new float[nodes.length * nodes.length];
+            FloatBuffer distanceBuffer = buffer.asFloatBuffer();
+            distanceBuffer.get(distances);
+            return distances;
+        } catch (IOException | RuntimeException e) {
+            LOG.warning("Failed to read cached distance matrix " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    protected void writeCache(int[] nodes, float[] distances) {
+        if (cacheDir == null) {
+            return;
+        }
+        Path file = cacheFile(nodes);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + nodes.length * Integer.BYTES + distances.length * Float.BYTES);
+        buffer.putInt(CACHE_MAGIC).putInt(nodes.length);
+        buffer.asIntBuffer().put(nodes);
+        buffer.position(8 + nodes.length * Integer.BYTES);
+        buffer.asFloatBuffer().put(distances);
+        buffer.rewind();
+        Path tempFile = null;
+        try {
+            Files.createDirectories(cacheDir);
+            // Write to a temporary file first so a concurrent reader never maps a partial matrix
+            tempFile = Files.createTempFile(cacheDir, "matrix-", ".tmp");
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warning("Failed to cache distance matrix " + file + ": " + e.getMessage());
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    LOG.warning("Failed to delete temporary distance matrix " + tempFile + ": " + e.getMessage());
+                }
+            }
+        }
+        evictCache();
+    }
+
+    /**
+     * Removes the least recently used matrices until the cache fits within its size limit.
+     */
+    protected void evictCache() {
+        Map<Path, Long> lastUsed;
+        try (Stream<Path> list = Files.list(cacheDir)) {
+            lastUsed = list.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith("matrix-") && name.endsWith(".bin");
+            }).collect(Collectors.toMap(file -> file, RoadNetworkDistanceProvider::lastModified));
+        } catch (IOException e) {
+            LOG.warning("Failed to list distance matrix cache " + cacheDir + ": " + e.getMessage());
+            return;
+        }
+        // Most recently used first; files removed meanwhile sort last and are skipped below
+        List<Path> files = new ArrayList<>(lastUsed.keySet());
+        files.sort(Comparator.comparing(lastUsed::get, Comparator.reverseOrder()));
+        long total = 0L;
+        for (Path file : files) {
+            try {
+                total += Files.size(file);
+                if (total > maxCacheBytes) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                // Removed by a concurrent eviction
+            }
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.container.util.MapAccess.getString;
+
+/**
+ * Provides road-network distances from a local, prebuilt {@link RoadGraph} file configured with
+ * {@link #TREEORG_ROAD_GRAPH_FILE}; without one the straight-line {@link DistanceMatrixProvider#HAVERSINE} distances
+ * are used.
+ * <p>
+ * The contraction hierarchy of the graph is read from the cache directory when present; otherwise it is built in the
+ * background and Dijkstra searches are used until it is ready.
+ */
+public class RoadNetworkService implements ContainerService {
+
+    public static final String TREEORG_ROAD_GRAPH_FILE = "TREEORG_ROAD_GRAPH_FILE";
+    public static final String TREEORG_ROAD_CACHE_DIR = "TREEORG_ROAD_CACHE_DIR";
+    private static final Logger LOG = Logger.getLogger(RoadNetworkService.class.getName());
+
+    private ExecutorService executorService;
+    /**
+     * Runs the searches of the distance provider. Routes are solved on the container executor and wait for their
+     * matrix, so the searches need a pool of their own.
+     */
+    private ExecutorService searchExecutor;
+    private RoadGraph graph;
+    private Path cacheDir;
+    private volatile DistanceMatrixProvider distanceProvider = DistanceMatrixProvider.HAVERSINE;
+
+    @Override
+    public void init(Container container) throws Exception {
+        executorService = container.getExecutor();
+        String graphFile = getString(container.getConfig(), TREEORG_ROAD_GRAPH_FILE, null);
+        if (graphFile == null || graphFile.isEmpty()) {
+            LOG.info("No road graph configured, using straight-line distances");
+            return;
+        }
+        Path graphPath = Paths.get(graphFile);
+        String cache = getString(container.getConfig(), TREEORG_ROAD_CACHE_DIR, null);
+        cacheDir = cache != null && !cache.isEmpty() ? Paths.get(cache) : graphPath.toAbsolutePath().resolveSibling("treeorg-cache");
+        try {
+            graph = RoadGraph.load(graphPath);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to load road graph " + graphPath + ", using straight-line distances", e);
+            return;
+        }
+        LOG.info("Loaded road graph " + graphPath + " with " + graph.getNodeCount() + " nodes and " + graph.getEdgeCount() + " edges");
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+        if (graph == null) {
+            return;
+        }
+        Path hierarchyFile = cacheDir.resolve("hierarchy-" + graph.getFingerprint() + ".bin");
+        searchExecutor = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        ContractionHierarchy hierarchy = Files.isRegularFile(hierarchyFile) ? ContractionHierarchy.load(hierarchyFile, graph) : null;
+        if (hierarchy != null) {
+            distanceProvider = new RoadNetworkDistanceProvider(graph, hierarchy, cacheDir, searchExecutor);
+            return;
+        }
+
+        distanceProvider = new RoadNetworkDistanceProvider(graph, null, cacheDir, searchExecutor);
+        executorService.submit(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                ContractionHierarchy built = ContractionHierarchy.build(graph);
+                Files.createDirectories(cacheDir);
+                built.write(hierarchyFile);
+                distanceProvider = new RoadNetworkDistanceProvider(graph, ContractionHierarchy.load(hierarchyFile, graph), cacheDir, searchExecutor);
+                LOG.info("Built road graph contraction hierarchy in " + (System.currentTimeMillis() - start) + "ms");
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to build road graph contraction hierarchy, continuing with Dijkstra", e);
+            }
+        });
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+        if (searchExecutor != null) {
+            distanceProvider = DistanceMatrixProvider.HAVERSINE;
+            searchExecutor.shutdownNow();
+            searchExecutor = null;
+        }
+    }
+
+    /**
+     * @return The provider for route distance matrices; never {@code null}.
+     */
+    public DistanceMatrixProvider getDistanceProvider() {
+        return distanceProvider;
+    }
+}
@@ -0,0 +1,230 @@
+package org.openremote.manager.treeorg;
+
+import java.util.List;
+
+/**
+ * Shared geometry and tour improvement helpers for the treeorg route solvers. Tours are represented as {@code int}
+ * arrays of node indices into a distance matrix, where index 0 is the depot.
+ */
+final class RouteHeuristics {
+
+    static final double EARTH_RADIUS_METERS = 6_371_000d;
+
+    private RouteHeuristics() {
+    }
+
+    /**
+     * Calculates the great-circle distance between two coordinates.
+     *
+     * @param point1 First point in [longitude, latitude] format.
+     * @param point2 Second point in [longitude, latitude] format.
+     * @return Distance between the two points in meters.
+     */
+    static double haversineDistance(double[] point1, double[] point2) {
+        double lat1 = Math.toRadians(point1[1]);
+        double lat2 = Math.toRadians(point2[1]);
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(point2[0] - point1[0]);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1d, Math.sqrt(a)));
+    }
+
+    /**
+     * Builds a symmetric haversine distance matrix for the depot followed by the given points.
+     *
+     * @param depot  Depot position, stored at index 0.
+     * @param points Stop positions, stored at index 1..n.
+     * @return Distance matrix in meters.
+     */
+    static double[][] distanceMatrix(double[] depot, List<double[]> points) {
+        int size = points.size() + 1;
+        double[][] matrix = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            double[] from = i == 0 ? depot : points.get(i - 1);
+            for (int j = i + 1; j < size; j++) {
+                double[] to = j == 0 ? depot : points.get(j - 1);
+                double distance = haversineDistance(from, to);
+                matrix[i][j] = distance;
+                matrix[j][i] = distance;
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Calculates the length of a closed tour that starts and ends at the first element.
+     */
+    static double tourLength(int[] tour, int size, double[][] distances) {
+        if (size < 2) {
+            return 0d;
+        }
+        double length = 0d;
+        for (int i = 0; i < size - 1; i++) {
+            length += distances[tour[i]][tour[i + 1]];
+        }
+        return length + distances[tour[size - 1]][tour[0]];
+    }
+
+    /**
+     * Improves a closed tour in place with first-improvement 2-opt moves; the element at index 0 stays fixed. Moves are
+     * evaluated on the symmetrised matrix because reversing a segment changes its direction; for asymmetric road
+     * distances callers should re-measure the tour with {@link #tourLength}.
+     *
+     * @return The total length reduction achieved.
+     */
+    static double twoOpt(int[] tour, int size, double[][] distances) {
+        double gained = 0d;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 0; i < size - 1; i++) {
+                int a = tour[i];
+                int b = tour[i + 1];
+                for (int j = i + 2; j < size; j++) {
+                    int c = tour[j];
+                    int d = tour[(j + 1) % size];
+                    if (d == a) {
+                        continue;
+                    }
+                    double delta = symmetric(distances, a, c) + symmetric(distances, b, d)
+                            - symmetric(distances, a, b) - symmetric(distances, c, d);
+                    if (delta < -1e-9) {
+                        reverse(tour, i + 1, j);
+                        gained -= delta;
+                        improved = true;
+                        b = tour[i + 1];
+                    }
+                }
+            }
+        }
+        return gained;
+    }
+
+    /**
+     * Improves a closed tour in place by relocating segments of one to three stops to a cheaper position (Or-opt);
+     * the element at index 0 stays fixed.
+     *
+     * @return The total length reduction achieved.
+     */
+    static double orOpt(int[] tour, int size, double[][] distances) {
+        double gained = 0d;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int segmentLength = 1; segmentLength <= 3 && !improved; segmentLength++) {
+                for (int start = 1; start + segmentLength <= size && !improved; start++) {
+                    int end = start + segmentLength - 1;
+                    int prev = tour[start - 1];
+                    int next = tour[(end + 1) % size];
+                    double removeGain = distances[prev][tour[start]] + distances[tour[end]][next] - distances[prev][next];
+                    for (int k = 0; k < size && !improved; k++) {
+                        if (k >= start - 1 && k <= end) {
+                            continue;
+                        }
+                        int p = tour[k];
+                        int q = tour[(k + 1) % size];
+                        double forward = distances[p][tour[start]] + distances[tour[end]][q] - distances[p][q];
+                        if (forward < removeGain - 1e-9) {
+                            moveSegment(tour, size, start, end, k);
+                            gained += removeGain - forward;
+                            improved = true;
+                        }
+                    }
+                }
+            }
+        }
+        return gained;
+    }
+
+    /**
+     * Finds the cheapest position to insert {@code node} into a closed tour.
+     *
+     * @return A two element array of {insertAfterPosition, addedLength}.
+     */
+    static double[] cheapestInsertion(int[] tour, int size, int node, double[][] distances) {
+        int bestPosition = 0;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            int a = tour[i];
+            int b = tour[(i + 1) % size];
+            double cost = distances[a][node] + distances[node][b] - (size > 1 ? distances[a][b] : 0d);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestPosition = i;
+            }
+        }
+        return new double[]{bestPosition, bestCost};
+    }
+
+    /**
+     * Repairs a previous tour for the current nodes: nodes of the previous tour keep their relative order, nodes that
+     * are no longer present are dropped and new nodes are added by cheapest insertion.
+     *
+     * @param previous Nodes in their previous visiting order, without the depot; entries outside 1..nodes - 1 and
+     *                 duplicates are skipped.
+     * @param nodes    Number of nodes including the depot at index 0.
+     * @return A closed tour of all nodes, starting with the depot.
+     */
+    static int[] repairTour(int[] previous, int nodes, double[][] distances) {
+        int[] tour = new int[nodes];
+        boolean[] inTour = new boolean[nodes];
+        int size = 1;
+        inTour[0] = true;
+        for (int node : previous) {
+            if (node > 0 && node < nodes && !inTour[node]) {
+                tour[size++] = node;
+                inTour[node] = true;
+            }
+        }
+        for (int node = 1; node < nodes; node++) {
+            if (!inTour[node]) {
+                insertAfter(tour, size, (int) cheapestInsertion(tour, size, node, distances)[0], node);
+                size++;
+            }
+        }
+        return tour;
+    }
+
+    /**
+     * Inserts {@code node} after the given position, shifting the remainder of the tour; the array must have spare
+     * capacity.
+     */
+    static void insertAfter(int[] tour, int size, int position, int node) {
+        System.arraycopy(tour, position + 1, tour, position + 2, size - position - 1);
+        tour[position + 1] = node;
+    }
+
+    /**
+     * Removes the element at the given position, shifting the remainder of the tour.
+     */
+    static void removeAt(int[] tour, int size, int position) {
+        System.arraycopy(tour, position + 1, tour, position, size - position - 1);
+    }
+
+    private static double symmetric(double[][] distances, int from, int to) {
+        return 0.5d * (distances[from][to] + distances[to][from]);
+    }
+
+    static void reverse(int[] tour, int from, int to) {
+        while (from < to) {
+            int tmp = tour[from];
+            tour[from++] = tour[to];
+            tour[to--] = tmp;
+        }
+    }
+
+    private static void moveSegment(int[] tour, int size, int start, int end, int insertAfter) {
+        int length = end - start + 1;
+        int[] segment = new int[length];
+        System.arraycopy(tour, start, segment, 0, length);
+        removeRange(tour, size, start, length);
+        int target = insertAfter > end ? insertAfter - length : insertAfter;
+        System.arraycopy(tour, target + 1, tour, target + 1 + length, size - length - target - 1);
+        System.arraycopy(segment, 0, tour, target + 1, length);
+    }
+
+    private static void removeRange(int[] tour, int size, int start, int length) {
+        System.arraycopy(tour, start + length, tour, start, size - start - length);
+    }
+}
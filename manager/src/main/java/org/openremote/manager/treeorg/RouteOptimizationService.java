@@ -1,22 +1,46 @@
 package org.openremote.manager.treeorg;
 
+import org.openremote.manager.asset.AssetStorageService;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
 import org.openremote.model.asset.Asset;
+import org.openremote.model.geo.GeoJSONPoint;
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.query.filter.RealmPredicate;
+import org.openremote.model.treeorg.TreeAsset;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 public class RouteOptimizationService implements ContainerService {
     private static final Logger LOG = Logger.getLogger(RouteService.class.getName());
+    /**
+     * The most urgent trees a budgeted selection considers; bounds the distance matrix to about 8 MB.
+     */
+    public static final int MAX_PRIZE_CANDIDATES = 1000;
+    private AssetStorageService assetStorageService;
     private SortingService sortingService;
     private RouteService routeService;
+    private DroughtForecastService droughtForecastService;
+    private TreeSnapshotService treeSnapshotService;
+    /**
+     * Identical optimizations that arrive while one is running share its result instead of solving and storing the
+     * same route again.
+     */
+    private final RequestCoalescer<List<Object>> requests = new RequestCoalescer<>();
 
     @Override
     public void init(Container container) throws Exception {
+        this.assetStorageService = container.getService(AssetStorageService.class);
         this.sortingService = container.getService(SortingService.class);
         this.routeService = container.getService(RouteService.class);
+        this.droughtForecastService = container.getService(DroughtForecastService.class);
+        this.treeSnapshotService = container.getService(TreeSnapshotService.class);
     }
 
     @Override
@@ -31,20 +55,263 @@ public class RouteOptimizationService implements ContainerService {
         // Any cleanup logic if needed
     }
 
+    /**
+     * Optimizes the route for the assets of all realms sorted by the specified attribute.
+     */
     public RouteResponse optimizeRouteForSensors(Class<?> assetType, String attributeName) {
+        return optimizeRouteForSensors(null, assetType, attributeName);
+    }
+
+    /**
+     * Optimizes the route for the assets of a realm sorted by the specified attribute.
+     *
+     * @param realm The realm to route, or {@code null} to route all realms together.
+     */
+    public RouteResponse optimizeRouteForSensors(String realm, Class<?> assetType, String attributeName) {
+        return optimizeRouteForSensors(realm, assetType, attributeName, false);
+    }
+
+    /**
+     * Optimizes the route for the assets of a realm sorted by the specified attribute.
+     *
+     * @param realm     The realm to route, or {@code null} to route all realms together.
+     * @param warmStart Whether to improve the previous tour of the assets instead of solving from scratch, see
+     *                  {@link RouteService#optimizeRouteForSortedAssets(List, String, boolean)}.
+     */
+    public RouteResponse optimizeRouteForSensors(String realm, Class<?> assetType, String attributeName, boolean warmStart) {
+        return requests.run(Arrays.asList("optimizeRoute", realm, assetType, attributeName, warmStart),
+                () -> computeRouteForSensors(realm, assetType, attributeName, warmStart));
+    }
+
+    private RouteResponse computeRouteForSensors(String realm, Class<?> assetType, String attributeName, boolean warmStart) {
         if (assetType == null || attributeName == null || attributeName.isEmpty()) {
             LOG.severe("Asset type or attribute name is null or empty. Unable to optimize route.");
             return new RouteResponse(null, Collections.emptyList());
         }
 
-        List<Asset<?>> sortedSensors = sortingService.findAllAssetsSortedByAttributeAndType(assetType, attributeName);
+        List<Asset<?>> sortedSensors = findSortedAssets(realm, assetType, attributeName);
         if (sortedSensors == null || sortedSensors.isEmpty()) {
             LOG.severe("No sorted sensors found for the given attribute. Unable to optimize route.");
             return new RouteResponse(null, Collections.emptyList());
         }
 
         // Delegate route optimization to RouteService
-        return routeService.optimizeRouteForSortedAssets(sortedSensors, attributeName);
+        return routeService.optimizeRouteForSortedAssets(sortedSensors, attributeName, warmStart);
     }
 
+    private List<Asset<?>> findSortedAssets(String realm, Class<?> assetType, String attributeName) {
+        return realm != null
+                ? sortingService.findAllAssetsSortedByAttributeAndType(realm, assetType, attributeName)
+                : sortingService.findAllAssetsSortedByAttributeAndType(assetType, attributeName);
+    }
+
+    /**
+     * Optimizes the route for the trees that are forecast to reach the critical water level within the horizon, most
+     * urgent first.
+     *
+     * @param realm        The realm to route, or {@code null} to route all realms together.
+     * @param horizonHours The forecast horizon in hours, or {@code null} for all drying trees.
+     */
+    public RouteResponse optimizeRouteForForecast(String realm, Class<?> assetType, Double horizonHours) {
+        return requests.run(Arrays.asList("optimizeRouteForForecast", realm, assetType, horizonHours),
+                () -> computeRouteForForecast(realm, assetType, horizonHours));
+    }
+
+    private RouteResponse computeRouteForForecast(String realm, Class<?> assetType, Double horizonHours) {
+        if (assetType == null) {
+            LOG.severe("Asset type is null. Unable to optimize route.");
+            return new RouteResponse(null, Collections.emptyList());
+        }
+        List<DroughtForecast> forecasts = droughtForecastService.findMostUrgent(realm, horizonHours, null);
+        if (forecasts.isEmpty()) {
+            LOG.info("No trees forecast to run dry within " + horizonHours + " hours.");
+            return new RouteResponse(null, Collections.emptyList());
+        }
+
+        String[] ids = forecasts.stream().map(DroughtForecast::getAssetId).toArray(String[]::new);
+        AssetQuery query = new AssetQuery().types((Class<? extends Asset<?>>) assetType).ids(ids);
+        if (realm != null) {
+            query.realm(new RealmPredicate(realm));
+        }
+        Map<String, Asset<?>> assetsById = new HashMap<>();
+        assetStorageService.findAll(query).forEach(asset -> assetsById.put(asset.getId(), asset));
+        List<Asset<?>> sortedAssets = new ArrayList<>(assetsById.size());
+        for (String id : ids) {
+            Asset<?> asset = assetsById.get(id);
+            if (asset != null) {
+                sortedAssets.add(asset);
+            }
+        }
+        if (sortedAssets.isEmpty()) {
+            return new RouteResponse(null, Collections.emptyList());
+        }
+        return routeService.optimizeRouteForSortedAssets(sortedAssets, TreeAsset.WATER_LEVEL.getName());
+    }
+
+    /**
+     * Schedules a route for the assets sorted by the specified attribute, taking time windows and service durations
+     * into account.
+     *
+     * @param realm     The realm to route, or {@code null} to route all realms together.
+     * @param startTime The departure time in epoch milliseconds, or {@code null} to depart now.
+     */
+    public ScheduledRouteResponse scheduleRouteForSensors(String realm, Class<?> assetType, String attributeName, Long startTime) {
+        return requests.run(Arrays.asList("scheduleRoute", realm, assetType, attributeName, startTime),
+                () -> computeScheduledRoute(realm, assetType, attributeName, startTime));
+    }
+
+    private ScheduledRouteResponse computeScheduledRoute(String realm, Class<?> assetType, String attributeName, Long startTime) {
+        long departure = startTime != null ? startTime : System.currentTimeMillis();
+        if (assetType == null || attributeName == null || attributeName.isEmpty()) {
+            LOG.severe("Asset type or attribute name is null or empty. Unable to schedule route.");
+            return new ScheduledRouteResponse(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), departure);
+        }
+
+        List<Asset<?>> sortedSensors = findSortedAssets(realm, assetType, attributeName);
+        if (sortedSensors == null || sortedSensors.isEmpty()) {
+            LOG.severe("No sorted sensors found for the given attribute. Unable to schedule route.");
+            return new ScheduledRouteResponse(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), departure);
+        }
+
+        return routeService.scheduleRouteForSortedAssets(sortedSensors, departure);
+    }
+
+    /**
+     * Selects the trees that give the most urgency for the travel cost and routes them, staying within a distance
+     * and/or time budget. Urgency combines water deficit, soil temperature and the priority flag (see
+     * {@link TreeUrgency}).
+     *
+     * @param realm       The realm to route, or {@code null} to route all realms together.
+     * @param assetType   The type of assets to consider.
+     * @param maxDistance The maximum tour length in meters, or {@code null} for no distance limit.
+     * @param maxDuration The maximum driving time in seconds, or {@code null} for no time limit.
+     * @return A response containing the chosen assets in visiting order and the objective breakdown.
+     */
+    public PrizeCollectingRouteResponse optimizePrizeCollectingRoute(String realm, Class<?> assetType, Double maxDistance, Double maxDuration) {
+        return requests.run(Arrays.asList("optimizeRouteWithinBudget", realm, assetType, maxDistance, maxDuration),
+                () -> computePrizeCollectingRoute(realm, assetType, maxDistance, maxDuration));
+    }
+
+    private PrizeCollectingRouteResponse computePrizeCollectingRoute(String realm, Class<?> assetType, Double maxDistance, Double maxDuration) {
+        if (assetType == null || (maxDistance == null && maxDuration == null)) {
+            LOG.severe("Asset type or budget is missing. Unable to select route.");
+            return new PrizeCollectingRouteResponse(Collections.emptyList(), Collections.emptyList(), 0, 0d, 0d, 0d, 0d, 0d);
+        }
+        double budget = Math.min(
+                maxDistance != null ? maxDistance : Double.MAX_VALUE,
+                maxDuration != null ? maxDuration * RouteService.AVERAGE_SPEED : Double.MAX_VALUE);
+
+        // Candidates come from the tree snapshot when available; then only the selected trees are loaded
+        TreeSnapshot.View view = treeSnapshotService != null && TreeAsset.class.equals(assetType)
+                ? treeSnapshotService.view(realm, TreeAsset.WATER_LEVEL.getName(), TreeAsset.SOIL_TEMPERATURE.getName(), TreeAsset.PRIORITY.getName())
+                : null;
+        List<String> candidates = new ArrayList<>();
+        List<double[]> points = new ArrayList<>();
+        List<TreeUrgency> urgencies = new ArrayList<>();
+        Map<String, Asset<?>> loadedAssets = new HashMap<>();
+        String candidateRealm = realm;
+        if (view != null) {
+            for (int r = 0; r < view.size; r++) {
+                if (Double.isNaN(view.longitudes[r]) || Double.isNaN(view.latitudes[r])) {
+                    continue;
+                }
+                candidates.add(view.ids[r]);
+                points.add(new double[]{view.longitudes[r], view.latitudes[r]});
+                urgencies.add(TreeUrgency.of(view.values[0][r], view.values[1][r], view.values[2][r]));
+                candidateRealm = candidateRealm != null ? candidateRealm : view.realms[r];
+            }
+        } else {
+            AssetQuery query = new AssetQuery().types((Class<? extends Asset<?>>) assetType);
+            if (realm != null) {
+                query.realm(new RealmPredicate(realm));
+            }
+            for (Asset<?> asset : assetStorageService.findAll(query)) {
+                GeoJSONPoint point = asset.getAttributes().getValue(Asset.LOCATION).orElse(null);
+                if (point == null) {
+                    continue;
+                }
+                candidates.add(asset.getId());
+                points.add(new double[]{point.getX(), point.getY()});
+                urgencies.add(TreeUrgency.of(asset));
+                loadedAssets.put(asset.getId(), asset);
+                candidateRealm = candidateRealm != null ? candidateRealm : asset.getRealm();
+            }
+        }
+        if (candidates.isEmpty()) {
+            LOG.severe("No assets with a location found. Unable to select route.");
+            return new PrizeCollectingRouteResponse(Collections.emptyList(), Collections.emptyList(), 0, budget, 0d, 0d, 0d, 0d);
+        }
+
+        double[] prizes = new double[candidates.size()];
+        for (int i = 0; i < prizes.length; i++) {
+            prizes[i] = urgencies.get(i).getTotal();
+        }
+        Asset<?> depotAsset = routeService.resolveDepot(candidateRealm, points);
+        double[] depot = depotAsset == null ? RouteService.DEFAULT_STARTING_POSITION
+                : depotAsset.getAttributes().getValue(Asset.LOCATION)
+                        .map(point -> new double[]{point.getX(), point.getY()})
+                        .orElse(RouteService.DEFAULT_STARTING_POSITION);
+
+        // The distance matrix is dense, so only the trees that can be part of a tour are routed
+        int[] reachable = selectCandidates(depot, points, prizes, budget, MAX_PRIZE_CANDIDATES);
+        List<double[]> reachablePoints = new ArrayList<>(reachable.length);
+        double[] reachablePrizes = new double[reachable.length];
+        for (int i = 0; i < reachable.length; i++) {
+            reachablePoints.add(points.get(reachable[i]));
+            reachablePrizes[i] = prizes[reachable[i]];
+        }
+        PrizeCollectingRouteSelector selector = new PrizeCollectingRouteSelector(routeService.distanceMatrix(depot, reachablePoints), reachablePrizes, budget);
+        int[] selection = selector.select();
+
+        List<String> selectedIds = new ArrayList<>(selection.length);
+        List<double[]> route = new ArrayList<>(selection.length + 2);
+        route.add(depot);
+        double deficit = 0d, temperature = 0d, priority = 0d;
+        for (int selected : selection) {
+            int index = reachable[selected];
+            selectedIds.add(candidates.get(index));
+            route.add(points.get(index));
+            TreeUrgency urgency = urgencies.get(index);
+            deficit += urgency.getDeficit();
+            temperature += urgency.getTemperature();
+            priority += urgency.getPriority();
+        }
+        route.add(depot);
+        List<Asset<?>> orderedAssets;
+        if (view != null) {
+            orderedAssets = treeSnapshotService.findAssets(selectedIds);
+        } else {
+            orderedAssets = new ArrayList<>(selectedIds.size());
+            for (String id : selectedIds) {
+                orderedAssets.add(loadedAssets.get(id));
+            }
+        }
+        LOG.info("Selected " + selection.length + " of " + candidates.size() + " assets within a budget of " + budget + "m");
+
+        double totalDistance = selector.tourLength(selection);
+        List<String> googleMapsLegURLs = orderedAssets.isEmpty() ? Collections.emptyList()
+                : routeService.applyRoute(route, orderedAssets, depotAsset != null ? depotAsset.getId() : null,
+                        totalDistance, RoutePlanService.SOLVER_PRIZE_COLLECTING);
+        return new PrizeCollectingRouteResponse(googleMapsLegURLs, orderedAssets, candidates.size(), budget,
+                totalDistance, deficit, temperature, priority);
+    }
+
+    /**
+     * Selects the candidates worth routing within a budget: trees without urgency are skipped, as are trees farther
+     * than half the budget from the depot, since the straight line is the shortest way there and back. Of the rest only
+     * the most urgent are kept.
+     *
+     * @param limit The maximum number of candidates.
+     * @return Indices into the points, most urgent first.
+     */
+    static int[] selectCandidates(double[] depot, List<double[]> points, double[] prizes, double budget, int limit) {
+        List<Integer> reachable = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++) {
+            if (prizes[i] > 0d && RouteHeuristics.haversineDistance(depot, points.get(i)) * 2d <= budget) {
+                reachable.add(i);
+            }
+        }
+        reachable.sort((a, b) -> Double.compare(prizes[b], prizes[a]));
+        return reachable.stream().limit(limit).mapToInt(Integer::intValue).toArray();
+    }
 }
@@ -0,0 +1,91 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.treeorg.RoutePlanAsset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between two versions of a route plan.
+ */
+public class RoutePlanComparison {
+    private final int fromVersion;
+    private final int toVersion;
+    private final double distanceDelta;
+    private final List<String> addedStopIds;
+    private final List<String> removedStopIds;
+    private final List<String> movedStopIds;
+
+    public RoutePlanComparison(int fromVersion, int toVersion, double distanceDelta, List<String> addedStopIds,
+                               List<String> removedStopIds, List<String> movedStopIds) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.distanceDelta = distanceDelta;
+        this.addedStopIds = addedStopIds;
+        this.removedStopIds = removedStopIds;
+        this.movedStopIds = movedStopIds;
+    }
+
+    /**
+     * Compares two plans; a stop has moved when it is visited in both plans but at a different position.
+     */
+    public static RoutePlanComparison of(RoutePlanAsset from, RoutePlanAsset to) {
+        List<String> fromStops = Arrays.asList(from.getStopIds().orElse(new String[0]));
+        List<String> toStops = Arrays.asList(to.getStopIds().orElse(new String[0]));
+        Map<String, Integer> fromPositions = new HashMap<>();
+        for (int i = 0; i < fromStops.size(); i++) {
+            fromPositions.put(fromStops.get(i), i);
+        }
+
+        List<String> added = new ArrayList<>();
+        List<String> moved = new ArrayList<>();
+        for (int i = 0; i < toStops.size(); i++) {
+            Integer position = fromPositions.remove(toStops.get(i));
+            if (position == null) {
+                added.add(toStops.get(i));
+            } else if (position != i) {
+                moved.add(toStops.get(i));
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String stopId : fromStops) {
+            if (fromPositions.containsKey(stopId)) {
+                removed.add(stopId);
+            }
+        }
+
+        double distanceDelta = to.getTotalDistance().orElse(0d) - from.getTotalDistance().orElse(0d);
+        return new RoutePlanComparison(from.getPlanVersion().orElse(0), to.getPlanVersion().orElse(0), distanceDelta,
+                added, removed, moved);
+    }
+
+    public int getFromVersion() {
+        return fromVersion;
+    }
+
+    public int getToVersion() {
+        return toVersion;
+    }
+
+    /**
+     * @return The change in total distance in meters; negative when the newer plan is shorter.
+     */
+    public double getDistanceDelta() {
+        return distanceDelta;
+    }
+
+    public List<String> getAddedStopIds() {
+        return addedStopIds;
+    }
+
+    public List<String> getRemovedStopIds() {
+        return removedStopIds;
+    }
+
+    public List<String> getMovedStopIds() {
+        return movedStopIds;
+    }
+}
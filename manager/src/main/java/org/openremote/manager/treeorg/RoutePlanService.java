@@ -0,0 +1,294 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.event.ClientEventService;
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.geo.GeoJSONPoint;
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.query.filter.AttributePredicate;
+import org.openremote.model.query.filter.RealmPredicate;
+import org.openremote.model.query.filter.StringPredicate;
+import org.openremote.model.treeorg.RoutePlanAsset;
+import org.openremote.model.treeorg.RoutePlanEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Persists computed routes as versioned {@link RoutePlanAsset}s. Plans are kept per parent asset and depot, day plans
+ * per realm, day, depot and vehicle without a parent; only the most recent {@link #MAX_PLAN_VERSIONS} versions are
+ * retained. Every stored version is published as a
+ * {@link RoutePlanEvent}, so clients can follow plan changes without polling.
+ */
+public class RoutePlanService implements ContainerService {
+
+    public static final String SOLVER_NEAREST_NEIGHBOUR = "nearestNeighbour";
+    public static final String SOLVER_WARM_START = "warmStartLocalSearch";
+    public static final String SOLVER_PRIZE_COLLECTING = "prizeCollecting";
+    public static final String SOLVER_TIME_WINDOW_INSERTION = "timeWindowInsertion";
+    public static final String SOLVER_SPACE_FILLING_CURVE = "spaceFillingCurve";
+    public static final String SOLVER_HELD_KARP = "heldKarp";
+    public static final String SOLVER_BRANCH_AND_BOUND = "branchAndBound";
+    public static final int MAX_PLAN_VERSIONS = 10;
+
+    private static final Logger LOG = Logger.getLogger(RoutePlanService.class.getName());
+    /**
+     * Serialises the version numbering of the plans of one parent and depot, or of one day plan.
+     */
+    private final StripedLocks planLocks = new StripedLocks(64);
+    private AssetStorageService assetStorageService;
+    private ClientEventService clientEventService;
+
+    @Override
+    public void init(Container container) throws Exception {
+        this.assetStorageService = container.getService(AssetStorageService.class);
+        this.clientEventService = container.getService(ClientEventService.class);
+    }
+
+    @Override
+    public void start(Container container) {
+    }
+
+    @Override
+    public void stop(Container container) {
+    }
+
+    /**
+     * Stores a route as the next version of the plan for its parent and depot.
+     *
+     * @param realm         The realm of the visited assets.
+     * @param parentId      The parent of the visited assets.
+     * @param depotId       The depot the route starts from, or {@code null} for the default starting position.
+     * @param orderedAssets The visited assets in visiting order.
+     * @param route         The route coordinates in [longitude, latitude] format including the start and end position.
+     * @param totalDistance The length of the route in meters.
+     * @param solver        The name of the solver that produced the route.
+     * @return The stored plan.
+     * @throws IllegalArgumentException if the parent is missing.
+     */
+    public RoutePlanAsset savePlan(String realm, String parentId, String depotId, List<Asset<?>> orderedAssets,
+                                   List<double[]> route, double totalDistance, String solver) {
+        requireParent(parentId);
+        return planLocks.call(Arrays.asList(parentId, depotId),
+                () -> storePlan(realm, parentId, depotId, null, null, orderedAssets, route, totalDistance, solver));
+    }
+
+    /**
+     * Stores a route for a day ahead as the next version of the day plan for its depot and vehicle. The stops of a day
+     * route can belong to different parents, so day plans are stored in the realm without a parent.
+     *
+     * @param planDate  The day the route is planned for as an ISO-8601 date.
+     * @param depotId   The depot the route starts from, or {@code null} for the default starting position.
+     * @param vehicleId The vehicle that drives the route, or {@code null} when it is not assigned to a vehicle.
+     * @see #savePlan(String, String, String, List, List, double, String)
+     */
+    public RoutePlanAsset saveDayPlan(String realm, String planDate, String depotId, String vehicleId,
+                                      List<Asset<?>> orderedAssets, List<double[]> route, double totalDistance, String solver) {
+        return planLocks.call(Arrays.asList(realm, planDate, depotId, vehicleId),
+                () -> storePlan(realm, null, depotId, planDate, vehicleId, orderedAssets, route, totalDistance, solver));
+    }
+
+    private RoutePlanAsset storePlan(String realm, String parentId, String depotId, String planDate, String vehicleId,
+                                     List<Asset<?>> orderedAssets, List<double[]> route, double totalDistance, String solver) {
+        List<RoutePlanAsset> plans = planDate != null
+                ? findDayPlans(realm, planDate, depotId, vehicleId)
+                : findPlans(realm, parentId, depotId);
+        int version = plans.isEmpty() ? 1 : plans.get(0).getPlanVersion().orElse(0) + 1;
+
+        GeoJSONPoint[] geometry = new GeoJSONPoint[route.size()];
+        for (int i = 0; i < geometry.length; i++) {
+            geometry[i] = new GeoJSONPoint(route.get(i)[0], route.get(i)[1]);
+        }
+        RoutePlanAsset plan = new RoutePlanAsset((planDate != null ? "Route plan " + planDate + " v" : "Route plan v") + version)
+                .setStopIds(orderedAssets.stream().map(Asset::getId).toArray(String[]::new))
+                .setGeometry(geometry)
+                .setTotalDistance(totalDistance)
+                .setSolver(solver)
+                .setPlanVersion(version);
+        if (depotId != null) {
+            plan.setDepotId(depotId);
+        }
+        if (planDate != null) {
+            plan.setPlanDate(planDate);
+        }
+        if (vehicleId != null) {
+            plan.setVehicleId(vehicleId);
+        }
+        plan.setRealm(realm);
+        plan.setParentId(parentId);
+        plan = assetStorageService.merge(plan);
+        LOG.info("Stored route plan version " + version + (planDate != null ? " for " + planDate : " for parent " + parentId)
+                + " with " + orderedAssets.size() + " stops");
+
+        // Plans are sorted newest first; the new plan takes one of the retained slots
+        if (plans.size() >= MAX_PLAN_VERSIONS) {
+            List<String> expired = plans.subList(MAX_PLAN_VERSIONS - 1, plans.size()).stream()
+                    .map(Asset::getId)
+                    .collect(Collectors.toList());
+            assetStorageService.delete(expired);
+        }
+        publishPlan(plan, plans.isEmpty() ? new String[0] : plans.get(0).getStopIds().orElse(new String[0]));
+        return plan;
+    }
+
+    private void publishPlan(RoutePlanAsset plan, String[] previousStopIds) {
+        if (clientEventService == null || plan == null) {
+            return;
+        }
+        List<String> stopIds = Arrays.asList(plan.getStopIds().orElse(new String[0]));
+        List<String> previous = Arrays.asList(previousStopIds);
+        List<String> added = new ArrayList<>(stopIds);
+        added.removeAll(new HashSet<>(previous));
+        List<String> removed = new ArrayList<>(previous);
+        removed.removeAll(new HashSet<>(stopIds));
+        clientEventService.publishEvent(new RoutePlanEvent(plan.getRealm(), plan.getId(), plan.getParentId(),
+                plan.getDepotId().orElse(null), plan.getPlanVersion().orElse(0), stopIds, added, removed));
+    }
+
+    /**
+     * Finds the stored plans for a parent and depot.
+     *
+     * @param realm    The realm of the plans, or {@code null} to search all realms.
+     * @param parentId The parent of the visited assets.
+     * @param depotId  The depot, or {@code null} for routes from the default starting position.
+     * @return The plans of routes that are driven right away, newest version first.
+     * @throws IllegalArgumentException if the parent is missing.
+     */
+    public List<RoutePlanAsset> findPlans(String realm, String parentId, String depotId) {
+        requireParent(parentId);
+        // Only the plans of one parent are loaded, never all plans of the realm
+        AssetQuery query = new AssetQuery().types(RoutePlanAsset.class).parents(parentId);
+        if (realm != null) {
+            query.realm(new RealmPredicate(realm));
+        }
+        List<RoutePlanAsset> plans = new ArrayList<>();
+        for (RoutePlanAsset plan : routePlans(query, realm)) {
+            if (Objects.equals(plan.getParentId(), parentId)
+                    && Objects.equals(plan.getDepotId().orElse(null), depotId)
+                    && plan.getPlanDate().isEmpty()
+                    && plan.getVehicleId().isEmpty()) {
+                plans.add(plan);
+            }
+        }
+        plans.sort(Comparator.comparingInt((RoutePlanAsset plan) -> plan.getPlanVersion().orElse(0)).reversed());
+        return plans;
+    }
+
+    /**
+     * Finds the stored versions of the day plan of a depot and vehicle.
+     *
+     * @param planDate  The day as an ISO-8601 date.
+     * @param depotId   The depot, or {@code null} for routes from the default starting position.
+     * @param vehicleId The vehicle, or {@code null} for routes that are not assigned to a vehicle.
+     * @return The plans, newest version first.
+     */
+    public List<RoutePlanAsset> findDayPlans(String realm, String planDate, String depotId, String vehicleId) {
+        List<RoutePlanAsset> plans = new ArrayList<>();
+        for (RoutePlanAsset plan : dayPlans(realm, planDate)) {
+            if (Objects.equals(plan.getDepotId().orElse(null), depotId)
+                    && Objects.equals(plan.getVehicleId().orElse(null), vehicleId)) {
+                plans.add(plan);
+            }
+        }
+        plans.sort(Comparator.comparingInt((RoutePlanAsset plan) -> plan.getPlanVersion().orElse(0)).reversed());
+        return plans;
+    }
+
+    /**
+     * Finds the latest plan of every route of a day, across depots and vehicles.
+     *
+     * @param planDate The day as an ISO-8601 date.
+     * @return The plans, ordered by depot and vehicle.
+     */
+    public List<RoutePlanAsset> findDayPlans(String realm, String planDate) {
+        Map<List<String>, RoutePlanAsset> latest = new LinkedHashMap<>();
+        for (RoutePlanAsset plan : dayPlans(realm, planDate)) {
+            List<String> key = Arrays.asList(plan.getDepotId().orElse(null), plan.getVehicleId().orElse(null));
+            latest.merge(key, plan, (a, b) -> a.getPlanVersion().orElse(0) >= b.getPlanVersion().orElse(0) ? a : b);
+        }
+        List<RoutePlanAsset> plans = new ArrayList<>(latest.values());
+        plans.sort(Comparator.comparing((RoutePlanAsset plan) -> plan.getDepotId().orElse(""))
+                .thenComparing(plan -> plan.getVehicleId().orElse("")));
+        return plans;
+    }
+
+    private List<RoutePlanAsset> dayPlans(String realm, String planDate) {
+        // Only the plans of one day are loaded, never all plans of the realm
+        AssetQuery query = new AssetQuery().types(RoutePlanAsset.class).realm(new RealmPredicate(realm))
+                .attributes(new AttributePredicate(RoutePlanAsset.PLAN_DATE.getName(), new StringPredicate(planDate)));
+        List<RoutePlanAsset> plans = routePlans(query, realm);
+        plans.removeIf(plan -> plan.getParentId() != null || !planDate.equals(plan.getPlanDate().orElse(null)));
+        return plans;
+    }
+
+    private List<RoutePlanAsset> routePlans(AssetQuery query, String realm) {
+        List<Asset<?>> assets = assetStorageService.findAll(query);
+        List<RoutePlanAsset> plans = new ArrayList<>();
+        if (assets == null) {
+            return plans;
+        }
+        for (Asset<?> asset : assets) {
+            if (asset instanceof RoutePlanAsset && (realm == null || realm.equals(asset.getRealm()))) {
+                plans.add((RoutePlanAsset) asset);
+            }
+        }
+        return plans;
+    }
+
+    /**
+     * Finds a stored plan.
+     *
+     * @param version The plan version, or {@code null} for the latest version.
+     * @return The plan, or {@code null} if it does not exist.
+     */
+    public RoutePlanAsset findPlan(String realm, String parentId, String depotId, Integer version) {
+        for (RoutePlanAsset plan : findPlans(realm, parentId, depotId)) {
+            if (version == null || version.equals(plan.getPlanVersion().orElse(null))) {
+                return plan;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares two versions of a plan.
+     *
+     * @param fromVersion The older version, or {@code null} for the version before {@code toVersion}.
+     * @param toVersion   The newer version, or {@code null} for the latest version.
+     * @return The comparison, or {@code null} if either version does not exist.
+     */
+    public RoutePlanComparison comparePlans(String realm, String parentId, String depotId, Integer fromVersion, Integer toVersion) {
+        List<RoutePlanAsset> plans = findPlans(realm, parentId, depotId);
+        int toIndex = toVersion == null ? 0 : indexOfVersion(plans, toVersion);
+        int fromIndex = fromVersion == null ? toIndex + 1 : indexOfVersion(plans, fromVersion);
+        if (toIndex < 0 || fromIndex < 0 || toIndex >= plans.size() || fromIndex >= plans.size()) {
+            return null;
+        }
+        return RoutePlanComparison.of(plans.get(fromIndex), plans.get(toIndex));
+    }
+
+    private static void requireParent(String parentId) {
+        if (parentId == null || parentId.isBlank()) {
+            throw new IllegalArgumentException("Route plans require a parent");
+        }
+    }
+
+    private static int indexOfVersion(List<RoutePlanAsset> plans, int version) {
+        for (int i = 0; i < plans.size(); i++) {
+            if (plans.get(i).getPlanVersion().orElse(0) == version) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
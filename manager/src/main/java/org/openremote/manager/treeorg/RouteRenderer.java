@@ -0,0 +1,173 @@
+package org.openremote.manager.treeorg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders route coordinates for clients: Google Maps direction URLs split into navigable legs, Google encoded
+ * polylines and GeoJSON LineStrings. Coordinates are given in [longitude, latitude] format and written with a fixed
+ * number of decimals.
+ */
+public final class RouteRenderer {
+
+    public static final String GOOGLE_MAPS_DIR_URL = "https://www.google.com/maps/dir/";
+    /**
+     * Google Maps ignores direction waypoints beyond this number, including the origin and destination.
+     */
+    public static final int MAX_WAYPOINTS_PER_LEG = 25;
+    /**
+     * Six decimals is roughly 0.1 m, more than enough to identify a tree.
+     */
+    public static final int COORDINATE_DECIMALS = 6;
+    static final int POLYLINE_DECIMALS = 5;
+
+    // "-180." plus decimals for the longitude, "-90." plus decimals for the latitude and two separators
+    private static final int MAX_POINT_LENGTH = 5 + COORDINATE_DECIMALS + 4 + COORDINATE_DECIMALS + 2;
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L};
+
+    private RouteRenderer() {
+    }
+
+    /**
+     * Splits a route into Google Maps direction URLs of at most {@code maxWaypointsPerLeg} points each; every leg
+     * starts where the previous one ended.
+     *
+     * @param coordinates        The route coordinates in visiting order.
+     * @param maxWaypointsPerLeg The maximum number of points per URL, at least 2.
+     * @return The URLs in driving order; empty when there are no coordinates.
+     */
+    public static List<String> googleMapsLegURLs(List<double[]> coordinates, int maxWaypointsPerLeg) {
+        if (maxWaypointsPerLeg < 2) {
+            throw new IllegalArgumentException("A leg needs at least two waypoints: " + maxWaypointsPerLeg);
+        }
+        List<String> legs = new ArrayList<>(coordinates.size() / (maxWaypointsPerLeg - 1) + 1);
+        if (coordinates.isEmpty()) {
+            return legs;
+        }
+        int start = 0;
+        do {
+            int end = Math.min(start + maxWaypointsPerLeg, coordinates.size());
+            legs.add(googleMapsURL(coordinates.subList(start, end)));
+            start = end - 1;
+        } while (start < coordinates.size() - 1);
+        return legs;
+    }
+
+    /**
+     * Builds a single Google Maps direction URL through all coordinates.
+     */
+    public static String googleMapsURL(List<double[]> coordinates) {
+        StringBuilder url = new StringBuilder(GOOGLE_MAPS_DIR_URL.length() + coordinates.size() * MAX_POINT_LENGTH);
+        url.append(GOOGLE_MAPS_DIR_URL);
+        for (double[] coord : coordinates) {
+            appendFixed(url, coord[1], COORDINATE_DECIMALS).append(',');
+            appendFixed(url, coord[0], COORDINATE_DECIMALS).append('/');
+        }
+        return url.toString();
+    }
+
+    /**
+     * Encodes the coordinates with the Google encoded polyline algorithm at five decimals precision.
+     */
+    public static String encodePolyline(List<double[]> coordinates) {
+        // Each delta takes at most six characters per axis
+        StringBuilder polyline = new StringBuilder(coordinates.size() * 12);
+        long previousLat = 0;
+        long previousLon = 0;
+        for (double[] coord : coordinates) {
+            long lat = Math.round(coord[1] * POWERS_OF_TEN[POLYLINE_DECIMALS]);
+            long lon = Math.round(coord[0] * POWERS_OF_TEN[POLYLINE_DECIMALS]);
+            encodeSigned(polyline, lat - previousLat);
+            encodeSigned(polyline, lon - previousLon);
+            previousLat = lat;
+            previousLon = lon;
+        }
+        return polyline.toString();
+    }
+
+    /**
+     * Decodes a polyline produced by {@link #encodePolyline}.
+     *
+     * @return The coordinates in [longitude, latitude] format.
+     */
+    public static List<double[]> decodePolyline(String polyline) {
+        List<double[]> coordinates = new ArrayList<>();
+        long lat = 0;
+        long lon = 0;
+        int[] index = {0};
+        while (index[0] < polyline.length()) {
+            lat += decodeSigned(polyline, index);
+            lon += decodeSigned(polyline, index);
+            coordinates.add(new double[]{
+                    (double) lon / POWERS_OF_TEN[POLYLINE_DECIMALS],
+                    (double) lat / POWERS_OF_TEN[POLYLINE_DECIMALS]
+            });
+        }
+        return coordinates;
+    }
+
+    /**
+     * Writes the coordinates as a GeoJSON LineString geometry.
+     */
+    public static String geoJsonLineString(List<double[]> coordinates) {
+        StringBuilder json = new StringBuilder(48 + coordinates.size() * (MAX_POINT_LENGTH + 2));
+        json.append("{\"type\":\"LineString\",\"coordinates\":[");
+        for (int i = 0; i < coordinates.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('[');
+            appendFixed(json, coordinates.get(i)[0], COORDINATE_DECIMALS).append(',');
+            appendFixed(json, coordinates.get(i)[1], COORDINATE_DECIMALS).append(']');
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Appends a value rounded to a fixed number of decimals without going through {@link String#format}; trailing
+     * zeros are dropped.
+     */
+    static StringBuilder appendFixed(StringBuilder builder, double value, int decimals) {
+        long scaled = Math.round(value * POWERS_OF_TEN[decimals]);
+        if (scaled < 0) {
+            builder.append('-');
+            scaled = -scaled;
+        }
+        long integer = scaled / POWERS_OF_TEN[decimals];
+        long fraction = scaled % POWERS_OF_TEN[decimals];
+        builder.append(integer);
+        if (fraction == 0) {
+            return builder;
+        }
+        builder.append('.');
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            decimals--;
+        }
+        for (long power = POWERS_OF_TEN[decimals - 1]; power > fraction && power > 1; power /= 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction);
+    }
+
+    private static void encodeSigned(StringBuilder polyline, long value) {
+        long shifted = value < 0 ? ~(value << 1) : value << 1;
+        while (shifted >= 0x20) {
+            polyline.append((char) ((0x20 | (shifted & 0x1f)) + 63));
+            shifted >>= 5;
+        }
+        polyline.append((char) (shifted + 63));
+    }
+
+    private static long decodeSigned(String polyline, int[] index) {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = polyline.charAt(index[0]++) - 63;
+            result |= (long) (b & 0x1f) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+        return (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+    }
+}
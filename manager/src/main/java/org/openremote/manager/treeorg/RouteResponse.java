@@ -2,22 +2,58 @@ package org.openremote.manager.treeorg;
 
 import org.openremote.model.asset.Asset;
 
+import java.util.Collections;
 import java.util.List;
 
 public class RouteResponse {
     private String googleMapsURL;
+    private List<String> googleMapsLegURLs;
     private List<Asset<?>> orderedAssets;
+    private List<DepotRoute> depotRoutes;
 
     public RouteResponse(String googleMapsURL, List<Asset<?>> orderedAssets) {
+        this(googleMapsURL, orderedAssets, Collections.emptyList());
+    }
+
+    public RouteResponse(String googleMapsURL, List<Asset<?>> orderedAssets, List<DepotRoute> depotRoutes) {
+        this(googleMapsURL, googleMapsURL != null ? Collections.singletonList(googleMapsURL) : Collections.emptyList(),
+                orderedAssets, depotRoutes);
+    }
+
+    public RouteResponse(String googleMapsURL, List<String> googleMapsLegURLs, List<Asset<?>> orderedAssets, List<DepotRoute> depotRoutes) {
         this.googleMapsURL = googleMapsURL;
+        this.googleMapsLegURLs = googleMapsLegURLs;
         this.orderedAssets = orderedAssets;
+        this.depotRoutes = depotRoutes;
     }
 
+    /**
+     * @return The Google Maps URL of the first leg of the route, see {@link #getGoogleMapsLegURLs()}.
+     */
     public String getGoogleMapsURL() {
         return googleMapsURL;
     }
 
+    /**
+     * @return The Google Maps URLs of all legs in driving order; long routes and routes over several depots need more
+     * than one URL.
+     */
+    public List<String> getGoogleMapsLegURLs() {
+        return googleMapsLegURLs;
+    }
+
     public List<Asset<?>> getOrderedAssets() {
         return orderedAssets;
     }
+
+    /**
+     * @return One route per depot when the assets were split over several depots, otherwise empty.
+     */
+    public List<DepotRoute> getDepotRoutes() {
+        return depotRoutes;
+    }
+
+    static String firstLeg(List<String> googleMapsLegURLs) {
+        return googleMapsLegURLs.isEmpty() ? null : googleMapsLegURLs.get(0);
+    }
 }
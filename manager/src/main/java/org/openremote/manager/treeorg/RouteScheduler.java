@@ -0,0 +1,197 @@
+package org.openremote.manager.treeorg;
+
+/**
+ * Builds a single-vehicle route that respects per-stop time windows and service durations.
+ * <p>
+ * Stops are added by cheapest feasible insertion. Feasibility of an insertion is checked in constant time by keeping,
+ * for every position in the route, the earliest service start (forward pass) and the latest service start that keeps
+ * the rest of the route feasible (backward pass). The route is then improved by relocating stops and the insertion is
+ * retried for any stops that did not fit before.
+ * <p>
+ * All times are in seconds relative to the route start; node 0 is the depot.
+ */
+public class RouteScheduler {
+
+    private final double[][] travelTimes;
+    private final double[] serviceTimes;
+    private final double[] earliest;
+    private final double[] latest;
+
+    private int[] route;
+    private int length;
+    private double[] start;
+    private double[] latestStart;
+
+    /**
+     * @param travelTimes  Travel time matrix in seconds, index 0 is the depot.
+     * @param serviceTimes Time spent at each node in seconds.
+     * @param earliest     Earliest service start for each node.
+     * @param latest       Latest service start for each node; for the depot this is the latest return time.
+     */
+    public RouteScheduler(double[][] travelTimes, double[] serviceTimes, double[] earliest, double[] latest) {
+        this.travelTimes = travelTimes;
+        this.serviceTimes = serviceTimes;
+        this.earliest = earliest;
+        this.latest = latest;
+    }
+
+    /**
+     * Computes the route.
+     *
+     * @return Node indices of the scheduled stops in visiting order, without the depot. Stops that cannot be served
+     * within their time window are left out.
+     */
+    public int[] schedule() {
+        int nodes = serviceTimes.length;
+        route = new int[nodes + 1];
+        start = new double[nodes + 1];
+        latestStart = new double[nodes + 1];
+        route[0] = 0;
+        route[1] = 0;
+        length = 2;
+        boolean[] routed = new boolean[nodes];
+        routed[0] = true;
+
+        update();
+        insertAll(routed);
+        if (relocate()) {
+            insertAll(routed);
+        }
+
+        int[] stops = new int[length - 2];
+        System.arraycopy(route, 1, stops, 0, stops.length);
+        return stops;
+    }
+
+    /**
+     * Calculates the service start time of each stop for a route returned by {@link #schedule()}.
+     */
+    public double[] serviceStartTimes(int[] stops) {
+        double[] times = new double[stops.length];
+        double time = earliest[0];
+        int previous = 0;
+        for (int i = 0; i < stops.length; i++) {
+            time = Math.max(time + serviceTimes[previous] + travelTimes[previous][stops[i]], earliest[stops[i]]);
+            times[i] = time;
+            previous = stops[i];
+        }
+        return times;
+    }
+
+    /**
+     * Calculates the arrival time of each stop for a route returned by {@link #schedule()}; arrival can be earlier
+     * than the service start when the vehicle has to wait for the time window to open.
+     */
+    public double[] arrivalTimes(int[] stops) {
+        double[] times = new double[stops.length];
+        double[] serviceStart = serviceStartTimes(stops);
+        int previous = 0;
+        double departure = earliest[0];
+        for (int i = 0; i < stops.length; i++) {
+            times[i] = departure + travelTimes[previous][stops[i]];
+            departure = serviceStart[i] + serviceTimes[stops[i]];
+            previous = stops[i];
+        }
+        return times;
+    }
+
+    private void insertAll(boolean[] routed) {
+        while (true) {
+            int bestNode = -1;
+            int bestPosition = -1;
+            double bestCost = Double.MAX_VALUE;
+            for (int node = 1; node < routed.length; node++) {
+                if (routed[node]) {
+                    continue;
+                }
+                for (int p = 0; p < length - 1; p++) {
+                    double cost = insertionCost(node, p);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestNode = node;
+                        bestPosition = p;
+                    }
+                }
+            }
+            if (bestNode < 0) {
+                return;
+            }
+            RouteHeuristics.insertAfter(route, length, bestPosition, bestNode);
+            length++;
+            routed[bestNode] = true;
+            update();
+        }
+    }
+
+    /**
+     * @return The added travel time of inserting {@code node} after position {@code p}, or
+     * {@link Double#MAX_VALUE} when that breaks a time window.
+     */
+    private double insertionCost(int node, int p) {
+        int a = route[p];
+        int b = route[p + 1];
+        double arrival = start[p] + serviceTimes[a] + travelTimes[a][node];
+        if (arrival > latest[node]) {
+            return Double.MAX_VALUE;
+        }
+        double nextArrival = Math.max(arrival, earliest[node]) + serviceTimes[node] + travelTimes[node][b];
+        if (nextArrival > latestStart[p + 1]) {
+            return Double.MAX_VALUE;
+        }
+        return travelTimes[a][node] + travelTimes[node][b] - travelTimes[a][b];
+    }
+
+    private void update() {
+        start[0] = earliest[0];
+        for (int p = 1; p < length; p++) {
+            int previous = route[p - 1];
+            start[p] = Math.max(start[p - 1] + serviceTimes[previous] + travelTimes[previous][route[p]], earliest[route[p]]);
+        }
+        latestStart[length - 1] = latest[0];
+        for (int p = length - 2; p >= 0; p--) {
+            int node = route[p];
+            latestStart[p] = Math.min(p == 0 ? latest[0] : latest[node],
+                    latestStart[p + 1] - travelTimes[node][route[p + 1]] - serviceTimes[node]);
+        }
+    }
+
+    /**
+     * Relocates single stops while that shortens the route and keeps it feasible.
+     *
+     * @return {@code true} if the route changed.
+     */
+    private boolean relocate() {
+        boolean changed = false;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int p = 1; p < length - 1 && !improved; p++) {
+                int node = route[p];
+                int a = route[p - 1];
+                int b = route[p + 1];
+                double removeGain = travelTimes[a][node] + travelTimes[node][b] - travelTimes[a][b];
+                RouteHeuristics.removeAt(route, length, p);
+                length--;
+                update();
+                int bestPosition = p - 1;
+                double bestCost = removeGain - 1e-6;
+                for (int q = 0; q < length - 1; q++) {
+                    if (q == p - 1) {
+                        continue;
+                    }
+                    double cost = insertionCost(node, q);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestPosition = q;
+                        improved = true;
+                    }
+                }
+                RouteHeuristics.insertAfter(route, length, bestPosition, node);
+                length++;
+                update();
+            }
+            changed |= improved;
+        }
+        return changed;
+    }
+}
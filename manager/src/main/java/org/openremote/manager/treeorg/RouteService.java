@@ -1,5 +1,6 @@
 package org.openremote.manager.treeorg;
 
+import jakarta.persistence.OptimisticLockException;
 import org.openremote.manager.asset.AssetStorageService;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
@@ -7,17 +8,76 @@ import org.openremote.model.asset.Asset;
 import org.openremote.model.attribute.Attribute;
 import org.openremote.model.geo.GeoJSONPoint;
 import org.openremote.model.query.AssetQuery;
+import org.openremote.model.query.filter.AttributePredicate;
+import org.openremote.model.query.filter.NumberPredicate;
+import org.openremote.model.query.filter.RealmPredicate;
+import org.openremote.model.treeorg.DepotAsset;
+import org.openremote.model.treeorg.RoutePlanAsset;
+import org.openremote.model.treeorg.TreeAsset;
 import org.openremote.model.value.AttributeDescriptor;
 import org.openremote.model.value.ValueType;
 
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.model.asset.Asset.NOTES;
 
 public class RouteService implements ContainerService {
 
+    public static final double[] DEFAULT_STARTING_POSITION = {5.453487298268298, 51.45081456926727};
+    /**
+     * Average driving speed in meters per second, used to convert distances into travel times.
+     */
+    public static final double AVERAGE_SPEED = 25d / 3.6d;
+    public static final int DEFAULT_SERVICE_DURATION_MINUTES = 5;
+    public static final long SHIFT_LENGTH_SECONDS = 8 * 60 * 60;
+    /**
+     * Number of times a route write is retried when the asset was changed concurrently.
+     */
+    public static final int MAX_MERGE_ATTEMPTS = 3;
+    /**
+     * Parent asset attribute holding the Google Maps URLs of all legs of the latest route; the notes only hold the
+     * URL of the first leg.
+     */
+    public static final AttributeDescriptor<String[]> ROUTE_LEG_URLS = new AttributeDescriptor<>("routeLegURLs", ValueType.TEXT.asArray());
+    /**
+     * Number of stops from which a depot tour is built along a space-filling curve instead of from a distance matrix,
+     * see {@link SpaceFillingCurveRoute}.
+     */
+    public static final String TREEORG_CURVE_ROUTE_STOPS = "TREEORG_CURVE_ROUTE_STOPS";
+    public static final int TREEORG_CURVE_ROUTE_STOPS_DEFAULT = 2000;
+    /**
+     * Number of stops per window of the local improvement of space-filling curve tours; 0 disables the improvement.
+     */
+    public static final String TREEORG_CURVE_ROUTE_WINDOW = "TREEORG_CURVE_ROUTE_WINDOW";
+    public static final int TREEORG_CURVE_ROUTE_WINDOW_DEFAULT = 32;
+    /**
+     * Time budget of the exact solver for routes of up to {@link ExactRouteSolver#BRANCH_AND_BOUND_MAX_STOPS} stops;
+     * 0 disables the exact solvers.
+     */
+    public static final String TREEORG_EXACT_ROUTE_MILLIS = "TREEORG_EXACT_ROUTE_MILLIS";
+    public static final int TREEORG_EXACT_ROUTE_MILLIS_DEFAULT = 200;
+
     private AssetStorageService assetStorageService;
+    private ExecutorService executorService;
+    private RoadNetworkService roadNetworkService;
+    private RoutePlanService routePlanService;
+    private int curveRouteStops = TREEORG_CURVE_ROUTE_STOPS_DEFAULT;
+    private int curveRouteWindow = TREEORG_CURVE_ROUTE_WINDOW_DEFAULT;
+    private int exactRouteMillis = TREEORG_EXACT_ROUTE_MILLIS_DEFAULT;
+    /**
+     * Serialises the writes of routes that share a parent asset, so the URL, route IDs and plan of one route are not
+     * interleaved with those of another.
+     */
+    private final StripedLocks parentLocks = new StripedLocks(64);
     private static final Logger LOG = Logger.getLogger(RouteService.class.getName());
     public RouteService() {
     }
@@ -25,6 +85,14 @@ public class RouteService implements ContainerService {
     @Override
     public void init(Container container) throws Exception {
         this.assetStorageService = container.getService(AssetStorageService.class);
+        this.executorService = container.getExecutor();
+        this.roadNetworkService = container.getService(RoadNetworkService.class);
+        this.routePlanService = container.getService(RoutePlanService.class);
+        if (container.getConfig() != null) {
+            curveRouteStops = getInteger(container.getConfig(), TREEORG_CURVE_ROUTE_STOPS, TREEORG_CURVE_ROUTE_STOPS_DEFAULT);
+            curveRouteWindow = getInteger(container.getConfig(), TREEORG_CURVE_ROUTE_WINDOW, TREEORG_CURVE_ROUTE_WINDOW_DEFAULT);
+            exactRouteMillis = getInteger(container.getConfig(), TREEORG_EXACT_ROUTE_MILLIS, TREEORG_EXACT_ROUTE_MILLIS_DEFAULT);
+        }
     }
 
     @Override
@@ -36,12 +104,25 @@ public class RouteService implements ContainerService {
     }
 
     /**
-     * Optimizes the route for a list of sorted assets based on a specified attribute.
+     * Optimizes the route for a list of sorted assets based on a specified attribute. Each asset is assigned to the
+     * nearest {@link DepotAsset} in its realm and the tours of the depots are solved in parallel; without depots the
+     * default starting position is used.
      *
      * @param sortedAssets  A list of sorted assets to optimize the route for.
      * @return A RouteResponse containing the Google Maps URLs for the optimized routes and the ordered assets.
      */
     public RouteResponse optimizeRouteForSortedAssets(List<Asset<?>> sortedAssets, String attributeName) {
+        return optimizeRouteForSortedAssets(sortedAssets, attributeName, false);
+    }
+
+    /**
+     * Optimizes the route for a list of sorted assets, optionally starting from the previous tour of each depot.
+     *
+     * @param warmStart Start from the previous tour, read from the latest route plan or else from the stored route
+     *                  IDs, and improve it with local search; depots without a previous tour are solved cold.
+     * @see #optimizeRouteForSortedAssets(List, String)
+     */
+    public RouteResponse optimizeRouteForSortedAssets(List<Asset<?>> sortedAssets, String attributeName, boolean warmStart) {
         if (sortedAssets.isEmpty()) {
             LOG.severe("Sorted assets list is empty. Unable to optimize route.");
             return new RouteResponse(null, Collections.emptyList()); // Return a default RouteResponse or null
@@ -49,61 +130,540 @@ public class RouteService implements ContainerService {
 
         if (sortedAssets.size() == 1) {
             LOG.warning("Only one asset in the list. Route optimization may not be necessary.");
-            updateRouteIds(sortedAssets);
+            parentLocks.run(findParentId(sortedAssets), () -> updateRouteIds(sortedAssets));
             return new RouteResponse(null, sortedAssets);
         }
 
-        List<double[]> coordinates = extractCoordinates(sortedAssets);
-        double[] startingPosition = {5.453487298268298, 51.45081456926727};
+        List<Asset<?>> depots = findDepots(sortedAssets.get(0).getRealm());
+        Map<Integer, List<Asset<?>>> assetsByDepot = assignToDepots(sortedAssets, depots);
+        if (assetsByDepot.isEmpty()) {
+            LOG.severe("None of the sorted assets has a location. Unable to optimize route.");
+            return new RouteResponse(null, Collections.emptyList());
+        }
 
-        // Generate the new closest-next-point route
-        List<double[]> newOptimalRoute = findOptimalRoute(coordinates, startingPosition);
-        String newGoogleMapsURL = generateGoogleMapsURL(newOptimalRoute);
-        LOG.info("View new route on Google Maps: " + newGoogleMapsURL);
+        List<CompletableFuture<DepotRoute>> futures = new ArrayList<>(assetsByDepot.size());
+        assetsByDepot.forEach((depotIndex, depotAssets) -> {
+            Asset<?> depot = depotIndex >= 0 ? depots.get(depotIndex) : null;
+            if (assetsByDepot.size() == 1 || executorService == null) {
+                futures.add(CompletableFuture.completedFuture(solveDepotRoute(depot, depotAssets, warmStart)));
+            } else {
+                futures.add(CompletableFuture.supplyAsync(() -> solveDepotRoute(depot, depotAssets, warmStart), executorService));
+            }
+        });
 
-        // Update the parent asset with the Google Maps URL
-        updateParentAssetWithGoogleMapsURL(newGoogleMapsURL, sortedAssets);
+        List<DepotRoute> depotRoutes = new ArrayList<>(futures.size());
+        List<Asset<?>> orderedAssets = new ArrayList<>(sortedAssets.size());
+        List<String> googleMapsLegURLs = new ArrayList<>();
+        for (CompletableFuture<DepotRoute> future : futures) {
+            DepotRoute depotRoute = future.join();
+            depotRoutes.add(depotRoute);
+            orderedAssets.addAll(depotRoute.getOrderedAssets());
+            googleMapsLegURLs.addAll(depotRoute.getGoogleMapsLegURLs());
+        }
 
-        // Update route IDs for the assets
-        updateRouteIds(sortedAssets);
+        parentLocks.run(findParentId(orderedAssets), () -> {
+            storeRoute(googleMapsLegURLs, orderedAssets);
+            for (DepotRoute depotRoute : depotRoutes) {
+                storePlan(depotRoute.getDepotId(), depotRoute.getOrderedAssets(), depotRoute.getRoute(),
+                        depotRoute.getTotalDistance(), depotRoute.getSolver());
+            }
+        });
+
+        return new RouteResponse(RouteResponse.firstLeg(googleMapsLegURLs), googleMapsLegURLs, orderedAssets,
+                depotRoutes.size() > 1 ? depotRoutes : Collections.emptyList());
+    }
+
+    /**
+     * Finds the depots of a realm that have a location.
+     *
+     * @param realm The realm to search, or {@code null} to search all realms.
+     * @return The depot assets; empty if the realm has none.
+     */
+    public List<Asset<?>> findDepots(String realm) {
+        AssetQuery query = new AssetQuery().types(DepotAsset.class);
+        if (realm != null) {
+            query.realm(new RealmPredicate(realm));
+        }
+        List<Asset<?>> depots = assetStorageService.findAll(query);
+        if (depots == null) {
+            return Collections.emptyList();
+        }
+        return depots.stream()
+                .filter(asset -> asset instanceof DepotAsset)
+                .filter(asset -> asset.getAttributes().getValue(Asset.LOCATION).isPresent())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Resolves the start and end position for a single tour over the given assets: the depot nearest to their
+     * centroid, or the default starting position when the realm has no depots.
+     *
+     * @return The position in [longitude, latitude] format.
+     */
+    public double[] resolveDepotPosition(List<Asset<?>> assets) {
+        Asset<?> depot = resolveDepot(assets);
+        return depot != null ? extractCoordinates(Collections.singletonList(depot)).get(0) : DEFAULT_STARTING_POSITION;
+    }
+
+    /**
+     * Finds the depot nearest to the centroid of the given assets.
+     *
+     * @return The depot, or {@code null} when the realm has no depots.
+     */
+    public Asset<?> resolveDepot(List<Asset<?>> assets) {
+        if (assets.isEmpty()) {
+            return null;
+        }
+        return resolveDepot(assets.get(0).getRealm(), extractCoordinates(assets));
+    }
+
+    /**
+     * Finds the depot of a realm nearest to the centroid of the given coordinates.
+     *
+     * @return The depot, or {@code null} when the realm has no depots.
+     */
+    public Asset<?> resolveDepot(String realm, List<double[]> coordinates) {
+        List<Asset<?>> depots = findDepots(realm);
+        if (depots.isEmpty() || coordinates.isEmpty()) {
+            return null;
+        }
+        double[] centroid = new double[2];
+        coordinates.forEach(coord -> {
+            centroid[0] += coord[0] / coordinates.size();
+            centroid[1] += coord[1] / coordinates.size();
+        });
+        return depots.get(nearestIndex(centroid, extractCoordinates(depots)));
+    }
+
+    /**
+     * Groups assets by their nearest depot, keeping the input order within each group.
+     *
+     * @return Assets keyed by index into {@code depots}; key -1 is used for the default starting position.
+     */
+    Map<Integer, List<Asset<?>>> assignToDepots(List<Asset<?>> assets, List<Asset<?>> depots) {
+        Map<Integer, List<Asset<?>>> assetsByDepot = new LinkedHashMap<>();
+        List<double[]> depotPositions = extractCoordinates(depots);
+        assets.forEach(asset -> {
+            Optional<GeoJSONPoint> location = asset.getAttributes().getValue(Asset.LOCATION);
+            if (location.isEmpty()) {
+                return;
+            }
+            int depotIndex = depotPositions.isEmpty()
+                    ? -1
+                    : nearestIndex(new double[]{location.get().getX(), location.get().getY()}, depotPositions);
+            assetsByDepot.computeIfAbsent(depotIndex, index -> new ArrayList<>()).add(asset);
+        });
+        return assetsByDepot;
+    }
+
+    private static int nearestIndex(double[] point, List<double[]> candidates) {
+        int nearest = 0;
+        double minDistance = Double.MAX_VALUE;
+        for (int i = 0; i < candidates.size(); i++) {
+            double distance = RouteHeuristics.haversineDistance(point, candidates.get(i));
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Solves the tour for the assets of a single depot: exactly for small routes, see {@link ExactRouteSolver}, else
+     * closest-next-point, or improving the previous tour when warm starting; from {@link #TREEORG_CURVE_ROUTE_STOPS}
+     * stops on the tour follows a space-filling curve instead, as a distance matrix would no longer fit in memory.
+     *
+     * @param depot  The depot, or {@code null} to use the default starting position.
+     * @param assets The assets assigned to the depot; all must have a location.
+     */
+    private DepotRoute solveDepotRoute(Asset<?> depot, List<Asset<?>> assets, boolean warmStart) {
+        int[] previousOrder = warmStart && assets.size() < curveRouteStops ? previousTour(assets, depot != null ? depot.getId() : null) : null;
+        return solveDepotRoute(depot, assets, previousOrder);
+    }
+
+    /**
+     * Solves the tour for the assets of a single depot without storing it.
+     *
+     * @param previousOrder Node indices (asset index + 1) of a previous tour to improve, or {@code null} to solve cold.
+     * @see #solveDepotRoute(Asset, List, boolean)
+     */
+    DepotRoute solveDepotRoute(Asset<?> depot, List<Asset<?>> assets, int[] previousOrder) {
+        double[] startingPosition = depot != null
+                ? extractCoordinates(Collections.singletonList(depot)).get(0)
+                : DEFAULT_STARTING_POSITION;
+        List<double[]> coordinates = extractCoordinates(assets);
+        Tour tour = solveTour(startingPosition, coordinates, previousOrder);
+        int[] order = tour.order;
+
+        List<Asset<?>> orderedAssets = new ArrayList<>(order.length);
+        List<double[]> route = new ArrayList<>(order.length + 2);
+        route.add(startingPosition);
+        for (int index : order) {
+            orderedAssets.add(assets.get(index));
+            route.add(coordinates.get(index));
+        }
+        route.add(startingPosition); // Return to start
+
+        List<String> googleMapsLegURLs = generateGoogleMapsLegURLs(route);
+        LOG.info("View new route from depot " + (depot != null ? depot.getName() : "default") + " on Google Maps: " + googleMapsLegURLs);
+        return new DepotRoute(depot != null ? depot.getId() : null, googleMapsLegURLs, orderedAssets, route, tour.totalDistance, tour.solver);
+    }
+
+    /**
+     * A solved tour, see {@link #solveTour}.
+     */
+    static final class Tour {
+        /**
+         * Indices into the coordinates in visiting order.
+         */
+        final int[] order;
+        final String solver;
+        final double totalDistance;
+        /**
+         * The distance matrix the tour was solved on, or {@code null} for space-filling curve tours, whose distances
+         * are great-circle distances.
+         */
+        final double[][] distances;
+
+        Tour(int[] order, String solver, double totalDistance, double[][] distances) {
+            this.order = order;
+            this.solver = solver;
+            this.totalDistance = totalDistance;
+            this.distances = distances;
+        }
+    }
+
+    /**
+     * Solves a tour from the starting position over the coordinates and back, choosing the solver by the number of
+     * stops as described at {@link #solveDepotRoute(Asset, List, boolean)}. Nothing is stored.
+     *
+     * @param previousOrder Node indices (coordinate index + 1) of a previous tour to improve, or {@code null} to solve
+     *                      cold.
+     */
+    Tour solveTour(double[] startingPosition, List<double[]> coordinates, int[] previousOrder) {
+        int[] order;
+        String solver;
+        double totalDistance;
+        double[][] distances = null;
+        if (coordinates.size() >= curveRouteStops) {
+            order = SpaceFillingCurveRoute.order(startingPosition, coordinates);
+            // Tours are solved on the container executor themselves, joining windows on it could exhaust the pool
+            SpaceFillingCurveRoute.improve(startingPosition, coordinates, order, curveRouteWindow, ForkJoinPool.commonPool());
+            solver = RoutePlanService.SOLVER_SPACE_FILLING_CURVE;
+            totalDistance = SpaceFillingCurveRoute.tourLength(startingPosition, coordinates, order);
+        } else {
+            // Generate the new closest-next-point route, or improve the previous tour when warm starting
+            distances = distanceMatrix(startingPosition, coordinates);
+            order = previousOrder != null ? improveTour(previousOrder, distances) : findOptimalRoute(distances);
+            solver = previousOrder != null ? RoutePlanService.SOLVER_WARM_START : RoutePlanService.SOLVER_NEAREST_NEIGHBOUR;
+            totalDistance = tourLength(order, distances);
+            if (previousOrder == null && exactRouteMillis > 0 && order.length <= ExactRouteSolver.BRANCH_AND_BOUND_MAX_STOPS) {
+                int[] exact;
+                if (order.length <= ExactRouteSolver.HELD_KARP_MAX_STOPS) {
+                    exact = ExactRouteSolver.heldKarp(distances);
+                    solver = RoutePlanService.SOLVER_HELD_KARP;
+                } else {
+                    int[] nodes = new int[order.length];
+                    for (int i = 0; i < order.length; i++) {
+                        nodes[i] = order[i] + 1;
+                    }
+                    exact = ExactRouteSolver.branchAndBound(distances, improveTour(nodes, distances),
+                            System.nanoTime() + exactRouteMillis * 1_000_000L);
+                    solver = RoutePlanService.SOLVER_BRANCH_AND_BOUND;
+                }
+                // Keep the closest-next-point order when it is as short, so equally long tours do not reorder the stops
+                double exactDistance = tourLength(exact, distances);
+                if (exactDistance < totalDistance - 1e-6d) {
+                    order = exact;
+                    totalDistance = exactDistance;
+                }
+            }
+        }
+        return new Tour(order, solver, totalDistance, distances);
+    }
+
+    /**
+     * Reconstructs the previous visiting order of the assets from the latest route plan of their parent and depot, or
+     * else from their route IDs.
+     *
+     * @return Node indices (asset index + 1) in previous visiting order, or {@code null} when fewer than two of the
+     * assets were part of a previous tour.
+     */
+    private int[] previousTour(List<Asset<?>> assets, String depotId) {
+        Map<String, Integer> nodes = new HashMap<>(assets.size() * 2);
+        for (int i = 0; i < assets.size(); i++) {
+            nodes.put(assets.get(i).getId(), i + 1);
+        }
 
-        return new RouteResponse(newGoogleMapsURL, sortedAssets);
+        String[] stopIds = null;
+        String parentId = findParentId(assets);
+        if (routePlanService != null && parentId != null) {
+            RoutePlanAsset plan = routePlanService.findPlan(assets.get(0).getRealm(), parentId, depotId, null);
+            stopIds = plan != null ? plan.getStopIds().orElse(null) : null;
+        }
+        List<Integer> previous = new ArrayList<>(assets.size());
+        if (stopIds != null) {
+            for (String stopId : stopIds) {
+                Integer node = nodes.get(stopId);
+                if (node != null) {
+                    previous.add(node);
+                }
+            }
+        } else {
+            List<Asset<?>> routed = new ArrayList<>();
+            for (Asset<?> asset : assets) {
+                if (asset.getAttributes().getValue(TreeAsset.ROUTE_ID).orElse(0) > 0) {
+                    routed.add(asset);
+                }
+            }
+            routed.sort(Comparator.comparingInt(asset -> asset.getAttributes().getValue(TreeAsset.ROUTE_ID).orElse(0)));
+            routed.forEach(asset -> previous.add(nodes.get(asset.getId())));
+        }
+        if (previous.size() < 2) {
+            return null;
+        }
+        return previous.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Repairs the previous tour for the current assets and improves it with 2-opt and Or-opt. Starting from a good
+     * tour the local search only has to fix the changed part, so it converges much faster than from a cold start.
+     *
+     * @return Indices into the coordinates in visiting order.
+     */
+    static int[] improveTour(int[] previous, double[][] distances) {
+        int nodes = distances.length;
+        int[] tour = RouteHeuristics.repairTour(previous, nodes, distances);
+        int[] repaired = tour.clone();
+        RouteHeuristics.twoOpt(tour, nodes, distances);
+        RouteHeuristics.orOpt(tour, nodes, distances);
+        // 2-opt works on symmetrised distances, keep the repaired tour if the result is longer on the actual matrix
+        if (RouteHeuristics.tourLength(tour, nodes, distances) > RouteHeuristics.tourLength(repaired, nodes, distances)) {
+            tour = repaired;
+        }
+        int[] order = new int[nodes - 1];
+        for (int i = 1; i < nodes; i++) {
+            order[i - 1] = tour[i] - 1;
+        }
+        return order;
+    }
+
+    /**
+     * Repairs the previous order of an open path and improves it with Or-opt only. Node 0 is both the start and the end
+     * of the path, with different distances leaving and arriving, so 2-opt on the symmetrised matrix could reverse the
+     * path; Or-opt moves segments without reversing them and is evaluated on the directed distances.
+     *
+     * @param distances Matrix of the open path, see {@link #improveTour}, where row 0 leaves the start and column 0
+     *                  arrives at the end.
+     * @return Indices into the coordinates in visiting order.
+     */
+    static int[] improveOpenPath(int[] previous, double[][] distances) {
+        int nodes = distances.length;
+        int[] tour = RouteHeuristics.repairTour(previous, nodes, distances);
+        RouteHeuristics.orOpt(tour, nodes, distances);
+        int[] order = new int[nodes - 1];
+        for (int i = 1; i < nodes; i++) {
+            order[i - 1] = tour[i] - 1;
+        }
+        return order;
+    }
+
+    /**
+     * Schedules a route for a list of assets, honouring each tree's optional time window and service duration.
+     *
+     * @param sortedAssets The assets to schedule.
+     * @param startTime    The time the vehicle leaves the depot, in epoch milliseconds.
+     * @return A ScheduledRouteResponse containing the assets in visiting order with their arrival times.
+     */
+    public ScheduledRouteResponse scheduleRouteForSortedAssets(List<Asset<?>> sortedAssets, long startTime) {
+        List<Asset<?>> locatedAssets = new ArrayList<>();
+        List<String> unscheduledAssetIds = new ArrayList<>();
+        sortedAssets.forEach(asset -> {
+            if (asset.getAttributes().getValue(Asset.LOCATION).isPresent()) {
+                locatedAssets.add(asset);
+            } else {
+                unscheduledAssetIds.add(asset.getId());
+            }
+        });
+        if (locatedAssets.isEmpty()) {
+            LOG.severe("No assets with a location to schedule. Unable to schedule route.");
+            return new ScheduledRouteResponse(null, Collections.emptyList(), Collections.emptyList(), unscheduledAssetIds, startTime);
+        }
+
+        Asset<?> depotAsset = resolveDepot(locatedAssets);
+        double[] depot = depotAsset != null
+                ? extractCoordinates(Collections.singletonList(depotAsset)).get(0)
+                : DEFAULT_STARTING_POSITION;
+        double[][] travelTimes = distanceMatrix(depot, extractCoordinates(locatedAssets));
+        for (double[] row : travelTimes) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] /= AVERAGE_SPEED;
+            }
+        }
+
+        // Time windows are given in minutes since midnight UTC of the route day, like the planned days, convert them to seconds after start
+        long midnight = Instant.ofEpochMilli(startTime).atZone(ZoneOffset.UTC).toLocalDate()
+                .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        double offset = (midnight - startTime) / 1000d;
+        int nodes = locatedAssets.size() + 1;
+        double[] serviceTimes = new double[nodes];
+        double[] earliest = new double[nodes];
+        double[] latest = new double[nodes];
+        latest[0] = SHIFT_LENGTH_SECONDS;
+        for (int i = 1; i < nodes; i++) {
+            Asset<?> asset = locatedAssets.get(i - 1);
+            serviceTimes[i] = 60d * asset.getAttributes().getValue(TreeAsset.SERVICE_DURATION).orElse(DEFAULT_SERVICE_DURATION_MINUTES);
+            earliest[i] = asset.getAttributes().getValue(TreeAsset.TIME_WINDOW_START)
+                    .map(minutes -> Math.max(0d, offset + minutes * 60d)).orElse(0d);
+            latest[i] = asset.getAttributes().getValue(TreeAsset.TIME_WINDOW_END)
+                    .map(minutes -> Math.min(SHIFT_LENGTH_SECONDS, offset + minutes * 60d)).orElse((double) SHIFT_LENGTH_SECONDS);
+        }
+
+        RouteScheduler scheduler = new RouteScheduler(travelTimes, serviceTimes, earliest, latest);
+        int[] stops = scheduler.schedule();
+        double[] arrivals = scheduler.arrivalTimes(stops);
+        double[] serviceStarts = scheduler.serviceStartTimes(stops);
+
+        List<Asset<?>> orderedAssets = new ArrayList<>(stops.length);
+        List<RouteStopSchedule> schedule = new ArrayList<>(stops.length);
+        List<double[]> route = new ArrayList<>(stops.length + 2);
+        boolean[] scheduled = new boolean[nodes];
+        route.add(depot);
+        for (int i = 0; i < stops.length; i++) {
+            Asset<?> asset = locatedAssets.get(stops[i] - 1);
+            scheduled[stops[i]] = true;
+            orderedAssets.add(asset);
+            asset.getAttributes().getValue(Asset.LOCATION).ifPresent(point -> route.add(new double[]{point.getX(), point.getY()}));
+            schedule.add(new RouteStopSchedule(asset.getId(),
+                    startTime + Math.round(arrivals[i] * 1000d),
+                    startTime + Math.round(serviceStarts[i] * 1000d),
+                    startTime + Math.round((serviceStarts[i] + serviceTimes[stops[i]]) * 1000d)));
+        }
+        route.add(depot);
+        for (int i = 1; i < nodes; i++) {
+            if (!scheduled[i]) {
+                unscheduledAssetIds.add(locatedAssets.get(i - 1).getId());
+            }
+        }
+        if (!unscheduledAssetIds.isEmpty()) {
+            LOG.warning("Unable to fit " + unscheduledAssetIds.size() + " assets into their time windows: " + unscheduledAssetIds);
+        }
+
+        long returnTime = startTime;
+        double drivingTime = 0d;
+        if (stops.length > 0) {
+            int last = stops[stops.length - 1];
+            returnTime += Math.round((serviceStarts[stops.length - 1] + serviceTimes[last] + travelTimes[last][0]) * 1000d);
+            int previous = 0;
+            for (int stop : stops) {
+                drivingTime += travelTimes[previous][stop];
+                previous = stop;
+            }
+            drivingTime += travelTimes[previous][0];
+        }
+        List<String> googleMapsLegURLs = orderedAssets.isEmpty() ? Collections.emptyList()
+                : applyRoute(route, orderedAssets, depotAsset != null ? depotAsset.getId() : null,
+                        drivingTime * AVERAGE_SPEED, RoutePlanService.SOLVER_TIME_WINDOW_INSERTION);
+        return new ScheduledRouteResponse(googleMapsLegURLs, orderedAssets, schedule, unscheduledAssetIds, returnTime);
+    }
+
+    /**
+     * Stores a computed route: the Google Maps URLs are written to the parent asset, the route IDs are updated and a
+     * new version of the route plan is saved. Routes of the same parent are stored one at a time.
+     *
+     * @param route         The route coordinates including the start and end position.
+     * @param orderedAssets The assets in visiting order.
+     * @param depotId       The depot the route starts from, or {@code null} for the default starting position.
+     * @param totalDistance The length of the route in meters.
+     * @param solver        The name of the solver that produced the route.
+     * @return The Google Maps URLs of the legs of the route.
+     */
+    public List<String> applyRoute(List<double[]> route, List<Asset<?>> orderedAssets, String depotId, double totalDistance, String solver) {
+        List<String> googleMapsLegURLs = generateGoogleMapsLegURLs(route);
+        LOG.info("View new route on Google Maps: " + googleMapsLegURLs);
+        parentLocks.run(findParentId(orderedAssets), () -> {
+            storeRoute(googleMapsLegURLs, orderedAssets);
+            storePlan(depotId, orderedAssets, route, totalDistance, solver);
+        });
+        return googleMapsLegURLs;
+    }
+
+    private void storePlan(String depotId, List<Asset<?>> orderedAssets, List<double[]> route, double totalDistance, String solver) {
+        String parentId = findParentId(orderedAssets);
+        // Plans are kept per parent, routes over root assets are not versioned
+        if (routePlanService == null || orderedAssets.isEmpty() || parentId == null) {
+            return;
+        }
+        routePlanService.savePlan(orderedAssets.get(0).getRealm(), parentId, depotId, orderedAssets, route, totalDistance, solver);
+    }
+
+    private void storeRoute(List<String> googleMapsLegURLs, List<Asset<?>> orderedAssets) {
+        // Update the parent asset with the Google Maps URLs
+        updateParentAssetWithGoogleMapsURL(googleMapsLegURLs, orderedAssets);
+
+        // Update route IDs for the assets
+        updateRouteIds(orderedAssets);
     }
 
 
     /**
      * Finds the optimal route using the closest-next-point algorithm.
      *
-     * @param coordinates      List of coordinates.
-     * @param startingPosition Starting position.
-     * @return List of coordinates representing the optimal route.
+     * @param distances Distance matrix where index 0 is the starting position and index i + 1 is coordinate i.
+     * @return Indices into the coordinates in visiting order; the route returns to the starting position.
      */
-    private List<double[]> findOptimalRoute(List<double[]> coordinates, double[] startingPosition) {
-        List<double[]> route = new ArrayList<>();
-        boolean[] visited = new boolean[coordinates.size()];
-        double[] currentPosition = startingPosition;
-        route.add(currentPosition);
+    private int[] findOptimalRoute(double[][] distances) {
+        int count = distances.length - 1;
+        int[] order = new int[count];
+        boolean[] visited = new boolean[count];
+        int current = 0;
 
-        for (int i = 0; i < coordinates.size(); i++) {
+        for (int i = 0; i < count; i++) {
             double minDistance = Double.MAX_VALUE;
             int closestPointIndex = -1;
-            for (int j = 0; j < coordinates.size(); j++) {
+            for (int j = 0; j < count; j++) {
                 if (!visited[j]) {
-                    double distance = calculateDistance(currentPosition, coordinates.get(j));
+                    double distance = distances[current][j + 1];
                     if (distance < minDistance) {
                         minDistance = distance;
                         closestPointIndex = j;
                     }
                 }
             }
-            if (closestPointIndex != -1) {
-                visited[closestPointIndex] = true;
-                currentPosition = coordinates.get(closestPointIndex);
-                route.add(currentPosition);
-            }
+            visited[closestPointIndex] = true;
+            current = closestPointIndex + 1;
+            order[i] = closestPointIndex;
         }
-        route.add(startingPosition); // Return to start
-        return route;
+        return order;
+    }
+
+    /**
+     * Calculates the length of a tour from the starting position over the coordinates in the given order and back.
+     *
+     * @param distances Distance matrix where index 0 is the starting position and index i + 1 is coordinate i.
+     */
+    static double tourLength(int[] order, double[][] distances) {
+        double length = 0d;
+        int previous = 0;
+        for (int index : order) {
+            length += distances[previous][index + 1];
+            previous = index + 1;
+        }
+        return length + distances[previous][0];
+    }
+
+    /**
+     * Builds the distance matrix for a tour from {@code depot} over {@code points}, along the road network when one
+     * is configured.
+     *
+     * @return Distance matrix in meters where index 0 is the depot and index i + 1 is point i.
+     */
+    public double[][] distanceMatrix(double[] depot, List<double[]> points) {
+        DistanceMatrixProvider provider = roadNetworkService != null
+                ? roadNetworkService.getDistanceProvider()
+                : DistanceMatrixProvider.HAVERSINE;
+        return provider.distanceMatrix(depot, points);
     }
 
     /**
@@ -120,36 +680,92 @@ public class RouteService implements ContainerService {
     }
 
     /**
-     * Updates the Google Maps URL attribute for the relevant assets and clears it for others.
+     * Updates the Google Maps URL attributes of the parent asset: the notes hold the URL of the first leg and
+     * {@link #ROUTE_LEG_URLS} holds the URLs of all legs.
      *
-     * @param googleMapsURL The Google Maps URL to set.
+     * @param googleMapsLegURLs The Google Maps URLs of the legs in driving order.
      */
-    private void updateParentAssetWithGoogleMapsURL(String googleMapsURL, List<Asset<?>> sortedAssets) {
+    private void updateParentAssetWithGoogleMapsURL(List<String> googleMapsLegURLs, List<Asset<?>> sortedAssets) {
         Asset<?> parentAsset = findParentAsset(sortedAssets);
-        if (parentAsset != null) {
-            parentAsset.getAttributes().getOrCreate(NOTES).setValue(googleMapsURL);
-            assetStorageService.merge(parentAsset);
+        if (parentAsset == null || googleMapsLegURLs.isEmpty()) {
+            return;
+        }
+        String googleMapsURL = googleMapsLegURLs.get(0);
+        String[] legURLs = googleMapsLegURLs.toArray(new String[0]);
+        if (googleMapsURL.equals(parentAsset.getAttributes().getValue(NOTES).orElse(null))
+                && Arrays.equals(legURLs, parentAsset.getAttributes().getValue(ROUTE_LEG_URLS).orElse(null))) {
+            return;
+        }
+        if (mergeWithRetry(parentAsset, asset -> {
+            asset.getAttributes().getOrCreate(NOTES).setValue(googleMapsURL);
+            asset.getAttributes().getOrCreate(ROUTE_LEG_URLS).setValue(legURLs);
+        })) {
             LOG.info("Updated parent asset " + parentAsset.getName() + " ID: " + parentAsset.getId() + " with Google Maps URL");
         }
     }
 
     private Asset<?> findParentAsset(List<Asset<?>> sortedAssets) {
-        for (Asset<?> asset : sortedAssets) {
-            String parentId = asset.getParentId();
-            if (parentId != null) {
-                return assetStorageService.find(parentId);
-            }
+        String parentId = findParentId(sortedAssets);
+        if (parentId != null) {
+            return assetStorageService.find(parentId);
         }
         LOG.severe("Parent asset not found");
         return null;
     }
 
+    static String findParentId(List<Asset<?>> assets) {
+        for (Asset<?> asset : assets) {
+            if (asset.getParentId() != null) {
+                return asset.getParentId();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Applies a change to an asset and merges it. The merge is checked against the version of the asset, so a
+     * concurrent update of the same asset (for example a new sensor reading) is not overwritten; instead the latest
+     * version is loaded and the change is applied again.
+     *
+     * @return {@code true} if the change was stored.
+     */
+    private boolean mergeWithRetry(Asset<?> asset, Consumer<Asset<?>> change) {
+        Asset<?> current = asset;
+        for (int attempt = 1; current != null; attempt++) {
+            change.accept(current);
+            try {
+                assetStorageService.merge(current);
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_MERGE_ATTEMPTS || !isOptimisticLockFailure(e)) {
+                    throw e;
+                }
+                LOG.fine("Asset " + current.getId() + " was changed concurrently, retrying with the latest version");
+                current = assetStorageService.find(current.getId());
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOptimisticLockFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Updates the routeId attribute of each asset in the ordered list and resets routeId to 0 for other assets.
      *
      * @param orderedAssets The list of assets in the order of the optimized route.
      */
     private void updateRouteIds(List<Asset<?>> orderedAssets) {
+        if (orderedAssets.isEmpty()) {
+            // An empty ID list would match every asset
+            return;
+        }
         Map<String, Integer> assetIdToRouteIdMap = new HashMap<>();
         for (int i = 0; i < orderedAssets.size(); i++) {
             assetIdToRouteIdMap.put(orderedAssets.get(i).getId(), i + 1);
@@ -167,25 +783,28 @@ public class RouteService implements ContainerService {
             return;
         }
 
-        // Update routeId attributes for relevant assets
+        // Update routeId attributes for relevant assets, skipping assets that already have the right one
         for (Asset<?> asset : relevantAssets) {
             Integer newRouteId = assetIdToRouteIdMap.get(asset.getId());
-            AttributeDescriptor<Integer> routeIdDescriptor = new AttributeDescriptor<>("routeId", ValueType.POSITIVE_INTEGER);
-            asset.getAttributes().getOrCreate(routeIdDescriptor).setValue(newRouteId);
-            assetStorageService.merge(asset);
+            if (newRouteId.equals(asset.getAttributes().getValue(TreeAsset.ROUTE_ID).orElse(null))) {
+                continue;
+            }
+            mergeWithRetry(asset, current -> current.getAttributes().getOrCreate(TreeAsset.ROUTE_ID).setValue(newRouteId));
             LOG.info("Setting route ID " + newRouteId + " for asset: " + asset.getName());
         }
 
-        // Reset routeId for assets not in the ordered list
-        for (String assetId : assetIdToRouteIdMap.keySet()) {
-            if (!assetIdToRouteIdMap.containsKey(assetId)) {
-                Asset<?> asset = assetStorageService.find(assetId);
-                if (asset != null) {
-                    AttributeDescriptor<Integer> routeIdDescriptor = new AttributeDescriptor<>("routeId", ValueType.POSITIVE_INTEGER);
-                    asset.getAttributes().getOrCreate(routeIdDescriptor).setValue(0);
-                    assetStorageService.merge(asset);
-                    LOG.info("Resetting route ID to 0 for asset ID: " + asset.getId());
-                }
+        // Reset routeId for the other children of the parent, so they do not keep the IDs of an older route
+        String parentId = findParentId(orderedAssets);
+        if (parentId == null) {
+            return;
+        }
+        // Only the children that still have a route ID are loaded, not every child of the parent
+        AssetQuery withRouteId = new AssetQuery().parents(parentId)
+                .attributes(new AttributePredicate(TreeAsset.ROUTE_ID.getName(), new NumberPredicate(0, AssetQuery.Operator.GREATER_THAN)));
+        for (Asset<?> asset : assetStorageService.findAll(withRouteId)) {
+            if (!assetIdToRouteIdMap.containsKey(asset.getId()) && asset.getAttributes().getValue(TreeAsset.ROUTE_ID).orElse(0) > 0) {
+                mergeWithRetry(asset, current -> current.getAttributes().getOrCreate(TreeAsset.ROUTE_ID).setValue(0));
+                LOG.info("Resetting route ID to 0 for asset ID: " + asset.getId());
             }
         }
     }
@@ -211,14 +830,25 @@ public class RouteService implements ContainerService {
     }
 
     /**
-     * Generates a Google Maps URL for the given list of coordinates.
+     * Generates a Google Maps URL for the given list of coordinates. Routes with more than
+     * {@link RouteRenderer#MAX_WAYPOINTS_PER_LEG} points only get the URL of their first leg, see
+     * {@link #generateGoogleMapsLegURLs(List)}.
      *
      * @param coordinates List of coordinates to include in the URL.
      * @return Google Maps URL for the route.
      */
     public String generateGoogleMapsURL(List<double[]> coordinates) {
-        StringBuilder url = new StringBuilder("https://www.google.com/maps/dir/");
-        coordinates.forEach(coord -> url.append(coord[1]).append(",").append(coord[0]).append("/"));
-        return url.toString();
+        return RouteRenderer.googleMapsURL(coordinates.subList(0, Math.min(coordinates.size(), RouteRenderer.MAX_WAYPOINTS_PER_LEG)));
+    }
+
+    /**
+     * Generates the Google Maps URLs for the given list of coordinates, split into legs of at most
+     * {@link RouteRenderer#MAX_WAYPOINTS_PER_LEG} points.
+     *
+     * @param coordinates List of coordinates to include in the URLs.
+     * @return Google Maps URLs for the legs in driving order.
+     */
+    public List<String> generateGoogleMapsLegURLs(List<double[]> coordinates) {
+        return RouteRenderer.googleMapsLegURLs(coordinates, RouteRenderer.MAX_WAYPOINTS_PER_LEG);
     }
 }
@@ -0,0 +1,34 @@
+package org.openremote.manager.treeorg;
+
+/**
+ * Planned times for a single stop of a scheduled route; all times are epoch milliseconds.
+ */
+public class RouteStopSchedule {
+    private final String assetId;
+    private final long arrival;
+    private final long serviceStart;
+    private final long departure;
+
+    public RouteStopSchedule(String assetId, long arrival, long serviceStart, long departure) {
+        this.assetId = assetId;
+        this.arrival = arrival;
+        this.serviceStart = serviceStart;
+        this.departure = departure;
+    }
+
+    public String getAssetId() {
+        return assetId;
+    }
+
+    public long getArrival() {
+        return arrival;
+    }
+
+    public long getServiceStart() {
+        return serviceStart;
+    }
+
+    public long getDeparture() {
+        return departure;
+    }
+}
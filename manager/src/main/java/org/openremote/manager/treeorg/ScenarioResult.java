@@ -0,0 +1,98 @@
+package org.openremote.manager.treeorg;
+
+/**
+ * One row of the comparison table of {@link ScenarioService#evaluate}.
+ */
+public class ScenarioResult {
+    private final String name;
+    private final int vehicles;
+    private final int treesPerTank;
+    private final double waterLevelThreshold;
+    private final int dueTrees;
+    private final int coveredTrees;
+    private final int trips;
+    private final double totalDistance;
+    private final double totalDuration;
+    private final double longestDuration;
+
+    public ScenarioResult(String name, int vehicles, int treesPerTank, double waterLevelThreshold, int dueTrees, int coveredTrees, int trips, double totalDistance, double totalDuration, double longestDuration) {
+        this.name = name;
+        this.vehicles = vehicles;
+        this.treesPerTank = treesPerTank;
+        this.waterLevelThreshold = waterLevelThreshold;
+        this.dueTrees = dueTrees;
+        this.coveredTrees = coveredTrees;
+        this.trips = trips;
+        this.totalDistance = totalDistance;
+        this.totalDuration = totalDuration;
+        this.longestDuration = longestDuration;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * @return The number of trees a full tank waters, or 0 when the tank never has to be refilled.
+     */
+    public int getTreesPerTank() {
+        return treesPerTank;
+    }
+
+    public double getWaterLevelThreshold() {
+        return waterLevelThreshold;
+    }
+
+    /**
+     * @return The number of located trees below the water level threshold.
+     */
+    public int getDueTrees() {
+        return dueTrees;
+    }
+
+    /**
+     * @return The number of due trees that are watered within a shift of {@link RouteService#SHIFT_LENGTH_SECONDS}.
+     */
+    public int getCoveredTrees() {
+        return coveredTrees;
+    }
+
+    /**
+     * @return The share of the due trees that is covered, 1 when no trees are due.
+     */
+    public double getCoverage() {
+        return dueTrees == 0 ? 1d : (double) coveredTrees / dueTrees;
+    }
+
+    /**
+     * @return The number of trips from the depot, over all vehicles; a vehicle makes a new trip after every refill.
+     */
+    public int getTrips() {
+        return trips;
+    }
+
+    /**
+     * @return The distance driven by all vehicles in meters.
+     */
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    /**
+     * @return The driving, watering and refilling time of all vehicles in seconds.
+     */
+    public double getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * @return The duration of the longest vehicle route in seconds.
+     */
+    public double getLongestDuration() {
+        return longestDuration;
+    }
+}
@@ -0,0 +1,285 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.geo.GeoJSONPoint;
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.query.filter.RealmPredicate;
+import org.openremote.model.treeorg.RouteScenario;
+import org.openremote.model.treeorg.TreeAsset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+/**
+ * Evaluates what-if scenarios for fleet sizing: the number of vehicles, the size of their water tanks and the water
+ * level below which trees are watered. The trees of the realm are read once, from the {@link TreeSnapshotService}
+ * where possible, and shared by all scenarios of a batch, which are evaluated in parallel. Nothing is stored: route IDs,
+ * notes and route plans are left as they are.
+ * <p>
+ * In a scenario the due trees are split over the vehicles by bearing from the depot nearest to their centroid, see
+ * {@link VisitScheduler#split}, and every vehicle's tour is solved like a depot tour. A tank that holds fewer trees than
+ * a vehicle visits splits its tour into trips back to the depot, at the cuts that add the least distance.
+ */
+public class ScenarioService implements ContainerService {
+
+    public static final int MAX_SCENARIOS = 16;
+    public static final double DEFAULT_WATER_PER_TREE = 150d;
+    public static final int REFILL_MINUTES = 10;
+    private static final Logger LOG = Logger.getLogger(ScenarioService.class.getName());
+
+    private AssetStorageService assetStorageService;
+    private TreeSnapshotService treeSnapshotService;
+    private RouteService routeService;
+    private ExecutorService executorService;
+
+    @Override
+    public void init(Container container) throws Exception {
+        assetStorageService = container.getService(AssetStorageService.class);
+        treeSnapshotService = container.getService(TreeSnapshotService.class);
+        routeService = container.getService(RouteService.class);
+        executorService = container.getExecutor();
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+    }
+
+    /**
+     * Evaluates the scenarios against the current trees of a realm.
+     *
+     * @return One result per scenario, in the order of the scenarios.
+     * @throws IllegalArgumentException if there are more than {@link #MAX_SCENARIOS} scenarios or a parameter is out of
+     *                                  range.
+     */
+    public List<ScenarioResult> evaluate(String realm, List<RouteScenario> scenarios) {
+        if (scenarios == null || scenarios.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (scenarios.size() > MAX_SCENARIOS) {
+            throw new IllegalArgumentException("At most " + MAX_SCENARIOS + " scenarios can be evaluated at once: " + scenarios.size());
+        }
+        for (RouteScenario scenario : scenarios) {
+            validate(scenario);
+        }
+        long started = System.currentTimeMillis();
+        Trees trees = loadTrees(realm);
+        List<double[]> depots = new ArrayList<>();
+        for (Asset<?> depot : routeService.findDepots(realm)) {
+            depot.getAttributes().getValue(Asset.LOCATION).ifPresent(point -> depots.add(new double[]{point.getX(), point.getY()}));
+        }
+
+        List<CompletableFuture<ScenarioResult>> futures = new ArrayList<>(scenarios.size());
+        for (RouteScenario scenario : scenarios) {
+            if (scenarios.size() == 1 || executorService == null) {
+                futures.add(CompletableFuture.completedFuture(evaluate(trees, depots, scenario)));
+            } else {
+                futures.add(CompletableFuture.supplyAsync(() -> evaluate(trees, depots, scenario), executorService));
+            }
+        }
+        List<ScenarioResult> results = new ArrayList<>(futures.size());
+        futures.forEach(future -> results.add(future.join()));
+        LOG.info("Evaluated " + scenarios.size() + " scenarios over " + trees.size + " trees of realm " + realm
+                + " in " + (System.currentTimeMillis() - started) + " ms");
+        return results;
+    }
+
+    private static void validate(RouteScenario scenario) {
+        if (scenario == null) {
+            throw new IllegalArgumentException("Missing scenario");
+        }
+        if (scenario.getVehicles() != null && scenario.getVehicles() < 1) {
+            throw new IllegalArgumentException("Scenario " + scenario.getName() + " needs at least one vehicle");
+        }
+        if (scenario.getWaterPerTree() != null && scenario.getWaterPerTree() <= 0d) {
+            throw new IllegalArgumentException("Scenario " + scenario.getName() + " needs a positive amount of water per tree");
+        }
+        double waterPerTree = scenario.getWaterPerTree() != null ? scenario.getWaterPerTree() : DEFAULT_WATER_PER_TREE;
+        if (scenario.getTankCapacity() != null && scenario.getTankCapacity() < waterPerTree) {
+            throw new IllegalArgumentException("Scenario " + scenario.getName() + " has a tank that cannot water a single tree");
+        }
+    }
+
+    private ScenarioResult evaluate(Trees trees, List<double[]> depots, RouteScenario scenario) {
+        double threshold = scenario.getWaterLevelThreshold() != null ? scenario.getWaterLevelThreshold() : DroughtForecastService.CRITICAL_WATER_LEVEL;
+        int vehicles = scenario.getVehicles() != null ? scenario.getVehicles() : 1;
+        double waterPerTree = scenario.getWaterPerTree() != null ? scenario.getWaterPerTree() : DEFAULT_WATER_PER_TREE;
+        int treesPerTank = scenario.getTankCapacity() != null ? (int) Math.floor(scenario.getTankCapacity() / waterPerTree) : 0;
+
+        List<double[]> points = new ArrayList<>();
+        List<Integer> stops = new ArrayList<>();
+        double[] centroid = new double[2];
+        for (int i = 0; i < trees.size; i++) {
+            // Trees without a reading have a NaN water level and are never due
+            if (trees.waterLevels[i] < threshold) {
+                stops.add(points.size());
+                points.add(trees.points[i]);
+                centroid[0] += trees.points[i][0];
+                centroid[1] += trees.points[i][1];
+            }
+        }
+        if (points.isEmpty()) {
+            return new ScenarioResult(scenario.getName(), vehicles, treesPerTank, threshold, 0, 0, 0, 0d, 0d, 0d);
+        }
+        centroid[0] /= points.size();
+        centroid[1] /= points.size();
+        double[] depot = RouteService.DEFAULT_STARTING_POSITION;
+        double nearest = Double.POSITIVE_INFINITY;
+        for (double[] candidate : depots) {
+            double distance = RouteHeuristics.haversineDistance(centroid, candidate);
+            if (distance < nearest) {
+                nearest = distance;
+                depot = candidate;
+            }
+        }
+
+        double serviceSeconds = RouteService.DEFAULT_SERVICE_DURATION_MINUTES * 60d;
+        double[] service = new double[points.size()];
+        Arrays.fill(service, serviceSeconds);
+        int covered = 0, trips = 0;
+        double totalDistance = 0d, totalDuration = 0d, longestDuration = 0d;
+        for (List<Integer> part : VisitScheduler.split(depot, points, stops, service, vehicles)) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            List<double[]> coordinates = new ArrayList<>(part.size());
+            part.forEach(index -> coordinates.add(points.get(index)));
+            RouteService.Tour tour = routeService.solveTour(depot, coordinates, null);
+
+            // Distances along the tour by position: out of the depot, on to the next stop and back to the depot
+            int count = tour.order.length;
+            double[] out = new double[count];
+            double[] next = new double[count];
+            double[] back = new double[count];
+            for (int p = 0; p < count; p++) {
+                int stop = tour.order[p];
+                out[p] = distance(tour, depot, coordinates, -1, stop);
+                back[p] = distance(tour, depot, coordinates, stop, -1);
+                next[p] = p + 1 < count ? distance(tour, depot, coordinates, stop, tour.order[p + 1]) : 0d;
+            }
+            int[] tripEnds = splitTrips(out, next, back, treesPerTank > 0 ? treesPerTank : count);
+
+            double time = 0d;
+            int start = 0;
+            for (int t = 0; t < tripEnds.length; t++) {
+                if (t > 0) {
+                    time += REFILL_MINUTES * 60d;
+                }
+                for (int p = start; p < tripEnds[t]; p++) {
+                    double leg = p == start ? out[p] : next[p - 1];
+                    totalDistance += leg;
+                    time += leg / RouteService.AVERAGE_SPEED + serviceSeconds;
+                    if (time <= RouteService.SHIFT_LENGTH_SECONDS) {
+                        covered++;
+                    }
+                }
+                totalDistance += back[tripEnds[t] - 1];
+                time += back[tripEnds[t] - 1] / RouteService.AVERAGE_SPEED;
+                start = tripEnds[t];
+            }
+            trips += tripEnds.length;
+            totalDuration += time;
+            longestDuration = Math.max(longestDuration, time);
+        }
+        return new ScenarioResult(scenario.getName(), vehicles, treesPerTank, threshold, points.size(), covered, trips,
+                totalDistance, totalDuration, longestDuration);
+    }
+
+    /**
+     * Splits a tour into trips of at most {@code capacity} stops, keeping the visiting order and adding the least
+     * distance for the returns to the depot. Trip {@code t} ends where trip {@code t + 1} starts, so only the cut
+     * positions have to be chosen; a dynamic program over the positions does that in O(n capacity) time.
+     *
+     * @param out  Distance from the depot to the stop at each position of the tour.
+     * @param next Distance from the stop at each position to the stop at the next position.
+     * @param back Distance from the stop at each position back to the depot.
+     * @return The exclusive end position of every trip.
+     */
+    static int[] splitTrips(double[] out, double[] next, double[] back, int capacity) {
+        int count = out.length;
+        // along[p]: distance from the first stop of the tour to the stop at position p
+        double[] along = new double[count];
+        for (int p = 1; p < count; p++) {
+            along[p] = along[p - 1] + next[p - 1];
+        }
+        double[] best = new double[count + 1];
+        int[] previous = new int[count + 1];
+        for (int end = 1; end <= count; end++) {
+            best[end] = Double.POSITIVE_INFINITY;
+            for (int start = Math.max(0, end - capacity); start < end; start++) {
+                double trip = best[start] + out[start] + along[end - 1] - along[start] + back[end - 1];
+                if (trip < best[end]) {
+                    best[end] = trip;
+                    previous[end] = start;
+                }
+            }
+        }
+        List<Integer> ends = new ArrayList<>();
+        for (int end = count; end > 0; end = previous[end]) {
+            ends.add(0, end);
+        }
+        return ends.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param from Index into the coordinates, or -1 for the depot.
+     * @param to   Index into the coordinates, or -1 for the depot.
+     */
+    private static double distance(RouteService.Tour tour, double[] depot, List<double[]> coordinates, int from, int to) {
+        if (tour.distances != null) {
+            return tour.distances[from + 1][to + 1];
+        }
+        return RouteHeuristics.haversineDistance(from < 0 ? depot : coordinates.get(from), to < 0 ? depot : coordinates.get(to));
+    }
+
+    /**
+     * Reads the located trees of a realm with their water levels, from the snapshot when it is loaded.
+     */
+    private Trees loadTrees(String realm) {
+        TreeSnapshot.View view = treeSnapshotService != null ? treeSnapshotService.view(realm, TreeAsset.WATER_LEVEL.getName()) : null;
+        List<double[]> points = new ArrayList<>();
+        List<Double> waterLevels = new ArrayList<>();
+        if (view != null) {
+            for (int r = 0; r < view.size; r++) {
+                if (!Double.isNaN(view.longitudes[r]) && !Double.isNaN(view.latitudes[r])) {
+                    points.add(new double[]{view.longitudes[r], view.latitudes[r]});
+                    waterLevels.add(view.values[0][r]);
+                }
+            }
+        } else {
+            for (Asset<?> asset : assetStorageService.findAll(new AssetQuery().types(TreeAsset.class).realm(new RealmPredicate(realm)))) {
+                GeoJSONPoint point = asset.getAttributes().getValue(Asset.LOCATION).orElse(null);
+                if (point != null) {
+                    points.add(new double[]{point.getX(), point.getY()});
+                    waterLevels.add(asset.getAttributes().getValue(TreeAsset.WATER_LEVEL).map(Integer::doubleValue).orElse(Double.NaN));
+                }
+            }
+        }
+        return new Trees(points.toArray(new double[0][]), waterLevels.stream().mapToDouble(Double::doubleValue).toArray());
+    }
+
+    /**
+     * The located trees of a realm, shared read-only by the scenarios of a batch.
+     */
+    private static final class Trees {
+        final int size;
+        final double[][] points;
+        final double[] waterLevels;
+
+        Trees(double[][] points, double[] waterLevels) {
+            this.size = points.length;
+            this.points = points;
+            this.waterLevels = waterLevels;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.asset.Asset;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link RouteResponse} for a time-window aware route; the schedule has one entry per ordered asset and assets that
+ * could not be fitted into their time window are listed separately.
+ */
+public class ScheduledRouteResponse extends RouteResponse {
+    private final List<RouteStopSchedule> schedule;
+    private final List<String> unscheduledAssetIds;
+    private final long returnTime;
+
+    public ScheduledRouteResponse(List<String> googleMapsLegURLs, List<Asset<?>> orderedAssets, List<RouteStopSchedule> schedule,
+                                  List<String> unscheduledAssetIds, long returnTime) {
+        super(firstLeg(googleMapsLegURLs), googleMapsLegURLs, orderedAssets, Collections.emptyList());
+        this.schedule = schedule;
+        this.unscheduledAssetIds = unscheduledAssetIds;
+        this.returnTime = returnTime;
+    }
+
+    public List<RouteStopSchedule> getSchedule() {
+        return schedule;
+    }
+
+    public List<String> getUnscheduledAssetIds() {
+        return unscheduledAssetIds;
+    }
+
+    public long getReturnTime() {
+        return returnTime;
+    }
+}
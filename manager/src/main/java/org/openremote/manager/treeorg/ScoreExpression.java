@@ -0,0 +1,226 @@
+package org.openremote.manager.treeorg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A weighted sum of attributes such as {@code -0.6*waterLevel + 0.25*soilTemperature + 0.15*priority}, compiled into
+ * parallel arrays of attribute names and weights. Each attribute is min-max normalised over the ranked population
+ * before weighting, so weights compare attributes regardless of their units; a negative weight ranks low values
+ * first. A missing value counts as the mean of its attribute, so an asset without a reading ranks neither first nor
+ * last on that attribute.
+ */
+public final class ScoreExpression {
+
+    private final String expression;
+    private final String[] attributeNames;
+    private final double[] weights;
+
+    private ScoreExpression(String expression, String[] attributeNames, double[] weights) {
+        this.expression = expression;
+        this.attributeNames = attributeNames;
+        this.weights = weights;
+    }
+
+    /**
+     * Parses an expression of terms {@code [weight *] attributeName} separated by {@code +} or {@code -}; repeated
+     * attributes are merged.
+     *
+     * @throws IllegalArgumentException if the expression is empty or malformed.
+     */
+    public static ScoreExpression compile(String expression) {
+        if (expression == null || expression.isBlank()) {
+            throw new IllegalArgumentException("Score expression is empty");
+        }
+        if (expression.matches(".*[\\w.]\\s+[\\w.].*")) {
+            throw new IllegalArgumentException("Missing operator between terms of: " + expression);
+        }
+        List<String> names = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        String source = expression.replaceAll("\\s+", "");
+        int position = 0;
+        while (position < source.length()) {
+            double sign = 1d;
+            char c = source.charAt(position);
+            if (c == '+' || c == '-') {
+                sign = c == '-' ? -1d : 1d;
+                position++;
+            } else if (position > 0) {
+                throw new IllegalArgumentException("Expected '+' or '-' at position " + position + " of: " + expression);
+            }
+            int end = position;
+            while (end < source.length() && source.charAt(end) != '+' && source.charAt(end) != '-') {
+                // Allow exponents such as 1e-3 in weights
+                end += source.charAt(end) == 'e' && end + 1 < source.length() && isNumber(source.substring(position, end)) ? 2 : 1;
+            }
+            String term = source.substring(position, end);
+            int star = term.indexOf('*');
+            String name = star >= 0 ? term.substring(star + 1) : term;
+            double weight;
+            try {
+                weight = star >= 0 ? Double.parseDouble(term.substring(0, star)) : 1d;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid weight in term '" + term + "' of: " + expression);
+            }
+            if (name.isEmpty() || !name.chars().allMatch(Character::isJavaIdentifierPart)) {
+                throw new IllegalArgumentException("Invalid attribute in term '" + term + "' of: " + expression);
+            }
+            int index = names.indexOf(name);
+            if (index >= 0) {
+                weights.set(index, weights.get(index) + sign * weight);
+            } else {
+                names.add(name);
+                weights.add(sign * weight);
+            }
+            position = end;
+        }
+        return new ScoreExpression(expression, names.toArray(new String[0]), weights.stream().mapToDouble(Double::doubleValue).toArray());
+    }
+
+    private static boolean isNumber(String value) {
+        try {
+            Double.parseDouble(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public String[] getAttributeNames() {
+        return attributeNames.clone();
+    }
+
+    public int getAttributeCount() {
+        return attributeNames.length;
+    }
+
+    /**
+     * Finds the highest scoring rows in a single pass with a bounded min-heap.
+     *
+     * @param values Values per attribute and row, {@code values[attribute][row]}; {@code NaN} for missing values.
+     * @param rows   The number of rows.
+     * @param limit  The maximum number of rows to return.
+     * @param scores Receives the score of every row; must have at least {@code rows} elements.
+     * @return Row indices, highest score first.
+     */
+    public int[] top(double[][] values, int rows, int limit, double[] scores) {
+        return top(values, null, rows, limit, scores);
+    }
+
+    /**
+     * Finds the highest scoring of the selected rows, so callers can score a subset of shared columns in place.
+     *
+     * @param selected The rows to score, or {@code null} for the first {@code rows} rows.
+     * @param rows     The number of selected rows.
+     * @param scores   Receives the score of every selected row by position in {@code selected}; must have at least
+     *                 {@code rows} elements.
+     * @return Positions in {@code selected}, highest score first.
+     * @see #top(double[][], int, int, double[])
+     */
+    public int[] top(double[][] values, int[] selected, int rows, int limit, double[] scores) {
+        // Fold the normalisation into a scale per attribute; missing values get the weighted score of the column mean
+        int attributes = attributeNames.length;
+        double[] min = new double[attributes];
+        double[] scale = new double[attributes];
+        double[] missing = new double[attributes];
+        for (int a = 0; a < attributes; a++) {
+            double lo = Double.POSITIVE_INFINITY;
+            double hi = Double.NEGATIVE_INFINITY;
+            double sum = 0d;
+            int count = 0;
+            double[] column = values[a];
+            for (int r = 0; r < rows; r++) {
+                double v = column[selected != null ? selected[r] : r];
+                if (v == v) {
+                    sum += v;
+                    count++;
+                }
+                if (v < lo) {
+                    lo = v;
+                }
+                if (v > hi) {
+                    hi = v;
+                }
+            }
+            min[a] = lo;
+            scale[a] = hi > lo ? weights[a] / (hi - lo) : 0d;
+            missing[a] = scale[a] != 0d ? (sum / count - lo) * scale[a] : 0d;
+        }
+
+        int capacity = Math.max(0, Math.min(limit, rows));
+        int[] heap = new int[capacity];
+        int size = 0;
+        for (int r = 0; r < rows; r++) {
+            int row = selected != null ? selected[r] : r;
+            double score = 0d;
+            for (int a = 0; a < attributes; a++) {
+                double v = values[a][row];
+                score += v == v ? (v - min[a]) * scale[a] : missing[a];
+            }
+            scores[r] = score;
+            if (size < capacity) {
+                heap[size] = r;
+                siftUp(heap, size++, scores);
+            } else if (capacity > 0 && score > scores[heap[0]]) {
+                heap[0] = r;
+                siftDown(heap, size, scores);
+            }
+        }
+
+        // Pop the heap from lowest to highest score into the result from the back
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, scores);
+        }
+        return result;
+    }
+
+    private static void siftUp(int[] heap, int index, double[] scores) {
+        int row = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[heap[parent]] <= scores[row]) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = row;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        if (size == 0) {
+            return;
+        }
+        int index = 0;
+        int row = heap[0];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && scores[heap[child + 1]] < scores[heap[child]]) {
+                child++;
+            }
+            if (scores[heap[child]] >= scores[row]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = row;
+    }
+
+    @Override
+    public String toString() {
+        return ScoreExpression.class.getSimpleName() + "{attributes=" + Arrays.toString(attributeNames)
+                + ", weights=" + Arrays.toString(weights) + "}";
+    }
+}
@@ -0,0 +1,193 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.manager.asset.AssetProcessingService;
+import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.query.filter.RealmPredicate;
+import org.openremote.model.treeorg.SensorReading;
+import org.openremote.model.treeorg.TreeAsset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.container.util.MapAccess.getInteger;
+
+/**
+ * Buffers sensor readings posted by gateways and applies them in bulk. Readings for the same tree attribute that
+ * arrive within one flush interval are coalesced so only the latest one is written; every flush resolves the
+ * affected trees with a single query per realm and sends one attribute event per remaining reading. Readings are
+ * coalesced per submitting realm, so readings posted to another realm cannot displace those of the owning realm, and
+ * readings for trees outside the realm they were submitted to are dropped.
+ */
+public class SensorIngestService implements ContainerService {
+
+    public static final String TREEORG_INGEST_FLUSH_MILLIS = "TREEORG_INGEST_FLUSH_MILLIS";
+    public static final int TREEORG_INGEST_FLUSH_MILLIS_DEFAULT = 1000;
+    /**
+     * How far a reading may be ahead of the clock of this server; readings further in the future are rejected as they
+     * would shadow all real readings until that time.
+     */
+    public static final long MAX_CLOCK_SKEW_MILLIS = 60000L;
+    private static final Logger LOG = Logger.getLogger(SensorIngestService.class.getName());
+
+    private final Map<List<Object>, PendingReading> pending = new ConcurrentHashMap<>();
+    private AssetStorageService assetStorageService;
+    private AssetProcessingService assetProcessingService;
+    private ScheduledExecutorService scheduledExecutorService;
+    private ScheduledFuture<?> flushTask;
+    private int flushMillis;
+
+    @Override
+    public void init(Container container) throws Exception {
+        assetStorageService = container.getService(AssetStorageService.class);
+        assetProcessingService = container.getService(AssetProcessingService.class);
+        scheduledExecutorService = container.getScheduledExecutor();
+        flushMillis = container.getConfig() != null
+                ? getInteger(container.getConfig(), TREEORG_INGEST_FLUSH_MILLIS, TREEORG_INGEST_FLUSH_MILLIS_DEFAULT)
+                : TREEORG_INGEST_FLUSH_MILLIS_DEFAULT;
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+        if (scheduledExecutorService != null) {
+            flushTask = scheduledExecutorService.scheduleWithFixedDelay(() -> {
+                try {
+                    flush();
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Failed to flush sensor readings", e);
+                }
+            }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        flush();
+    }
+
+    /**
+     * Queues readings for the next flush. Only {@link TreeAsset#WATER_LEVEL} and {@link TreeAsset#SOIL_TEMPERATURE}
+     * readings are accepted; of several readings for the same attribute the one with the latest timestamp is kept.
+     * Readings stamped more than {@link #MAX_CLOCK_SKEW_MILLIS} in the future are rejected.
+     *
+     * @param realm The realm the trees must belong to, or {@code null} to accept trees of any realm.
+     */
+    public IngestResult submit(String realm, Collection<SensorReading> readings) {
+        long now = System.currentTimeMillis();
+        int accepted = 0;
+        int rejected = 0;
+        for (SensorReading reading : readings) {
+            if (!isValid(reading) || (reading.getTimestamp() != null && reading.getTimestamp() > now + MAX_CLOCK_SKEW_MILLIS)) {
+                rejected++;
+                continue;
+            }
+            SensorReading stamped = reading.getTimestamp() != null ? reading
+                    : new SensorReading(reading.getAssetId(), reading.getAttribute(), reading.getValue(), now);
+            pending.merge(Arrays.asList(realm, new AttributeRef(reading.getAssetId(), reading.getAttribute())),
+                    new PendingReading(realm, stamped),
+                    (previous, next) -> next.reading.getTimestamp() >= previous.reading.getTimestamp() ? next : previous);
+            accepted++;
+        }
+        return new IngestResult(accepted, rejected, pending.size());
+    }
+
+    /**
+     * Applies all pending readings.
+     *
+     * @return The number of attribute events sent.
+     */
+    public int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        Map<String, List<SensorReading>> batches = new HashMap<>();
+        int total = 0;
+        for (Map.Entry<List<Object>, PendingReading> entry : pending.entrySet()) {
+            // Only remove the reading we saw, a newer one may have been merged in the meantime
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batches.computeIfAbsent(entry.getValue().realm, realm -> new ArrayList<>()).add(entry.getValue().reading);
+                total++;
+            }
+        }
+
+        int sent = 0;
+        for (Map.Entry<String, List<SensorReading>> batch : batches.entrySet()) {
+            sent += send(batch.getKey(), batch.getValue());
+        }
+        if (sent < total) {
+            LOG.fine("Dropped " + (total - sent) + " sensor readings for unknown trees");
+        }
+        return sent;
+    }
+
+    private int send(String realm, List<SensorReading> batch) {
+        Set<String> assetIds = new HashSet<>();
+        batch.forEach(reading -> assetIds.add(reading.getAssetId()));
+        AssetQuery query = new AssetQuery().types(TreeAsset.class).ids(assetIds.toArray(new String[0]));
+        if (realm != null) {
+            query.realm(new RealmPredicate(realm));
+        }
+        Set<String> treeIds = new HashSet<>();
+        for (Asset<?> asset : assetStorageService.findAll(query)) {
+            if (realm == null || realm.equals(asset.getRealm())) {
+                treeIds.add(asset.getId());
+            }
+        }
+
+        int sent = 0;
+        for (SensorReading reading : batch) {
+            if (!treeIds.contains(reading.getAssetId())) {
+                continue;
+            }
+            // Water levels are integers
+            Object value = TreeAsset.WATER_LEVEL.getName().equals(reading.getAttribute())
+                    ? Integer.valueOf((int) Math.round(reading.getValue()))
+                    : reading.getValue();
+            assetProcessingService.sendAttributeEvent(
+                    new AttributeEvent(reading.getAssetId(), reading.getAttribute(), value, reading.getTimestamp()));
+            sent++;
+        }
+        return sent;
+    }
+
+    private static boolean isValid(SensorReading reading) {
+        if (reading == null || reading.getAssetId() == null || reading.getValue() == null || reading.getValue().isNaN()) {
+            return false;
+        }
+        if (TreeAsset.WATER_LEVEL.getName().equals(reading.getAttribute())) {
+            return reading.getValue() >= 0d;
+        }
+        return TreeAsset.SOIL_TEMPERATURE.getName().equals(reading.getAttribute());
+    }
+
+    private static final class PendingReading {
+        final String realm;
+        final SensorReading reading;
+
+        PendingReading(String realm, SensorReading reading) {
+            this.realm = realm;
+            this.reading = reading;
+        }
+    }
+}
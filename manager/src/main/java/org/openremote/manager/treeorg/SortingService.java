@@ -8,28 +8,43 @@ import org.openremote.model.asset.Asset;
 import org.openremote.model.attribute.Attribute;
 import org.openremote.model.query.AssetQuery;
 import org.openremote.model.query.filter.AttributePredicate;
+import org.openremote.model.query.filter.RealmPredicate;
 import org.openremote.model.treeorg.TreeAsset;
 
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 public class SortingService implements ContainerService {
+    /**
+     * Ranks dry, warm and priority trees first.
+     */
+    public static final String DEFAULT_SCORE_EXPRESSION = "-0.6*waterLevel + 0.25*soilTemperature + 0.15*priority";
+    protected static final int MAX_COMPILED_EXPRESSIONS = 64;
+    protected static final int MAX_SORTED_ASSETS = 10;
+    private final Map<String, ScoreExpression> compiledExpressions = new ConcurrentHashMap<>();
     private AssetStorageService assetStorageService;
+    private TreeSnapshotService treeSnapshotService;
+    private TreeOrgWarmupService treeOrgWarmupService;
     private static final Logger LOG = Logger.getLogger(ManagerWebService.class.getName());
 
     @Override
     public void init(Container container) throws Exception {
         this.assetStorageService = container.getService(AssetStorageService.class);
+        this.treeSnapshotService = container.getService(TreeSnapshotService.class);
+        this.treeOrgWarmupService = container.getService(TreeOrgWarmupService.class);
     }
 
     @Override
     public void start(Container container) throws Exception {
-        Class<?> assetType = TreeAsset.class;
-        var attributeName = new Attribute<>("waterLevel").getName();
-        findAllAssetsSortedByAttributeAndType(assetType, attributeName);
+        // Rankings are served from the tree snapshot once it is loaded, only the default expression is prepared upfront
+        if (treeOrgWarmupService != null) {
+            treeOrgWarmupService.submit("scoreExpressions", () -> compile(DEFAULT_SCORE_EXPRESSION));
+        }
     }
 
     @Override
@@ -39,29 +54,27 @@ public class SortingService implements ContainerService {
 
 
     /**
-     * Finds all assets of a specific type sorted by the specified attribute.
+     * Finds all assets of a specific type in all realms sorted by the specified attribute.
+     *
+     * @see #findAllAssetsSortedByAttributeAndType(String, Class, String)
+     */
+    public List<Asset<?>> findAllAssetsSortedByAttributeAndType(Class<?> assetType, String attributeName) {
+        return findAllAssetsSortedByAttributeAndType(null, assetType, attributeName);
+    }
+
+    /**
+     * Finds all assets of a specific type sorted by the specified attribute. Trees are ranked on the
+     * {@link TreeSnapshotService} snapshot when it holds the attribute, so only the returned trees are loaded.
+     * @param realm The realm to search, or {@code null} to search all realms.
      * @param attributeName The name of the attribute to sort on.
      * @param assetType The type of assets to filter.
-     * @param <T> The type of the attribute to sort on.
      * @return List of assets of the specified type sorted by the specified attribute.
      */
-    public <T extends Comparable<T>> List<Asset<?>> findAllAssetsSortedByAttributeAndType(Class<?> assetType, String attributeName) {
-        AssetQuery query = new AssetQuery()
-                .types((Class<? extends Asset<?>>) assetType)
-                .attributes(new AttributePredicate(attributeName, null));
-
-        List<Asset<?>> assets = assetStorageService.findAll(query).stream()
-                .filter(asset -> asset.getAttributes().get(attributeName).isPresent())
-                .filter(asset -> {
-                    Optional<Attribute<?>> attribute = asset.getAttributes().get(attributeName);
-                    return attribute.map(attr -> attr.getValue().orElse(null)).orElse(null) != null;
-                })
-                .sorted(Comparator.comparing(asset -> {
-                    Optional<Attribute<?>> attribute = asset.getAttributes().get(attributeName);
-                    return (T) attribute.get().getValue().get();
-                }))
-                .limit(10)
-                .collect(Collectors.toList());
+    public List<Asset<?>> findAllAssetsSortedByAttributeAndType(String realm, Class<?> assetType, String attributeName) {
+        List<String> lowest = usesSnapshot(assetType) ? treeSnapshotService.lowest(realm, attributeName, MAX_SORTED_ASSETS) : null;
+        List<Asset<?>> assets = lowest != null
+                ? treeSnapshotService.findAssets(lowest)
+                : findAllAssetsSortedByAttribute(realm, assetType, attributeName);
 
         if (assets.isEmpty()) {
             LOG.info("No assets with non-null values found for attribute: " + attributeName);
@@ -82,4 +95,130 @@ public class SortingService implements ContainerService {
         return assets;
     }
 
+    private List<Asset<?>> findAllAssetsSortedByAttribute(String realm, Class<?> assetType, String attributeName) {
+        AssetQuery query = new AssetQuery()
+                .types((Class<? extends Asset<?>>) assetType)
+                .attributes(new AttributePredicate(attributeName, null));
+        if (realm != null) {
+            query.realm(new RealmPredicate(realm));
+        }
+
+        return assetStorageService.findAll(query).stream()
+                .filter(asset -> asset.getAttributes().get(attributeName).isPresent())
+                .filter(asset -> {
+                    Optional<Attribute<?>> attribute = asset.getAttributes().get(attributeName);
+                    return attribute.map(attr -> attr.getValue().orElse(null)).orElse(null) != null;
+                })
+                .sorted((asset1, asset2) -> compareValues(
+                        asset1.getAttributes().get(attributeName).flatMap(Attribute::getValue).orElse(null),
+                        asset2.getAttributes().get(attributeName).flatMap(Attribute::getValue).orElse(null)))
+                .limit(MAX_SORTED_ASSETS)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return {@code true} when the assets can be ranked on the tree snapshot instead of being loaded.
+     */
+    private boolean usesSnapshot(Class<?> assetType) {
+        return treeSnapshotService != null && TreeAsset.class.equals(assetType);
+    }
+
+    /**
+     * Finds the assets with the highest composite score.
+     *
+     * @param realm      The realm to rank, or {@code null} to rank all realms.
+     * @param assetType  The type of assets to rank.
+     * @param expression The score expression, see {@link ScoreExpression}; {@code null} for
+     *                   {@link #DEFAULT_SCORE_EXPRESSION}.
+     * @param limit      The maximum number of assets to return.
+     * @return The assets and their scores, highest score first.
+     * @throws IllegalArgumentException if the expression is malformed.
+     */
+    public List<AssetScore> findTopAssetsByScore(String realm, Class<?> assetType, String expression, int limit) {
+        ScoreExpression score = compile(expression != null ? expression : DEFAULT_SCORE_EXPRESSION);
+        Map<String, Double> scoresById = usesSnapshot(assetType) ? treeSnapshotService.top(realm, score, limit) : null;
+        if (scoresById != null) {
+            List<AssetScore> ranking = new ArrayList<>(scoresById.size());
+            for (Asset<?> asset : treeSnapshotService.findAssets(new ArrayList<>(scoresById.keySet()))) {
+                ranking.add(new AssetScore(asset, scoresById.get(asset.getId())));
+            }
+            return ranking;
+        }
+
+        AssetQuery query = new AssetQuery().types((Class<? extends Asset<?>>) assetType);
+        if (realm != null) {
+            query.realm(new RealmPredicate(realm));
+        }
+        List<Asset<?>> assets = assetStorageService.findAll(query);
+        int rows = assets.size();
+
+        // Extract the attributes into primitive columns once, the score expression only works on these
+        String[] attributeNames = score.getAttributeNames();
+        double[][] values = new double[attributeNames.length][rows];
+        for (int r = 0; r < rows; r++) {
+            Asset<?> asset = assets.get(r);
+            for (int a = 0; a < attributeNames.length; a++) {
+                values[a][r] = toDouble(asset.getAttributes().get(attributeNames[a]).flatMap(Attribute::getValue).orElse(null));
+            }
+        }
+
+        double[] scores = new double[rows];
+        int[] top = score.top(values, rows, limit, scores);
+        List<AssetScore> ranking = new ArrayList<>(top.length);
+        for (int row : top) {
+            ranking.add(new AssetScore(assets.get(row), scores[row]));
+        }
+        return ranking;
+    }
+
+    /**
+     * @param expression The score expression, or {@code null} for {@link #DEFAULT_SCORE_EXPRESSION}.
+     * @return The attributes the expression reads.
+     * @throws IllegalArgumentException if the expression is malformed.
+     */
+    public String[] getScoreAttributeNames(String expression) {
+        return compile(expression != null ? expression : DEFAULT_SCORE_EXPRESSION).getAttributeNames();
+    }
+
+    private ScoreExpression compile(String expression) {
+        ScoreExpression compiled = compiledExpressions.get(expression);
+        if (compiled == null) {
+            compiled = ScoreExpression.compile(expression);
+            if (compiledExpressions.size() >= MAX_COMPILED_EXPRESSIONS) {
+                compiledExpressions.clear();
+            }
+            compiledExpressions.put(expression, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Converts an attribute value for scoring: numbers as is, booleans as 1 or 0 and anything else as missing.
+     */
+    protected static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1d : 0d;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Compares attribute values that may differ in type between assets: numbers by value, values of the same
+     * comparable type naturally and anything else by type name, so mixed values never throw.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected static int compareValues(Object value1, Object value2) {
+        if (value1 instanceof Number && value2 instanceof Number) {
+            return Double.compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+        }
+        if (value1 instanceof Comparable && value2 != null && value1.getClass() == value2.getClass()) {
+            return ((Comparable) value1).compareTo(value2);
+        }
+        String type1 = value1 != null ? value1.getClass().getName() : "";
+        String type2 = value2 != null ? value2.getClass().getName() : "";
+        return type1.compareTo(type2);
+    }
 }
@@ -0,0 +1,204 @@
+package org.openremote.manager.treeorg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Tour construction for very large stop sets, such as city-wide pruning or inspection rounds, where a dense distance
+ * matrix does not fit in memory. Stops are visited in the order of a Hilbert curve over their bounding box, which takes
+ * O(n log n) and keeps consecutive stops close together; the tour leaves the depot at its own position on the curve.
+ * <p>
+ * The curve order can then be improved with 2-opt and Or-opt within short windows of the tour. The first and last stop
+ * of a window stay in place, so the windows of one pass are independent and are improved in parallel; a second pass
+ * with windows shifted by half a window lets stops move across the boundaries of the first.
+ * <p>
+ * All distances are great-circle distances, see {@link RouteHeuristics#haversineDistance}.
+ */
+final class SpaceFillingCurveRoute {
+
+    /**
+     * Bits per axis of the Hilbert curve; 2^16 cells per axis is about a meter across a city.
+     */
+    static final int CURVE_BITS = 16;
+
+    private SpaceFillingCurveRoute() {
+    }
+
+    /**
+     * Orders the points along a Hilbert curve, starting after the depot.
+     *
+     * @return Indices into the points in visiting order.
+     */
+    static int[] order(double[] depot, List<double[]> points) {
+        int count = points.size();
+        double minX = depot[0], maxX = depot[0], minY = depot[1], maxY = depot[1];
+        for (double[] point : points) {
+            minX = Math.min(minX, point[0]);
+            maxX = Math.max(maxX, point[0]);
+            minY = Math.min(minY, point[1]);
+            maxY = Math.max(maxY, point[1]);
+        }
+        // Scale longitudes by the cosine of the latitude so one cell is about as wide as it is high
+        double xScale = Math.cos(Math.toRadians((minY + maxY) / 2d));
+        double extent = Math.max((maxX - minX) * xScale, maxY - minY);
+        double cells = (1 << CURVE_BITS) - 1;
+        double scale = extent > 0d ? cells / extent : 0d;
+
+        long[] keys = new long[count];
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            double[] point = points.get(i);
+            keys[i] = hilbertIndex((int) ((point[0] - minX) * xScale * scale), (int) ((point[1] - minY) * scale));
+            order[i] = i;
+        }
+        TreeTileIndex.sort(keys, order, count);
+
+        // The curve is treated as a cycle: start with the first stop after the depot and wrap around
+        long depotKey = hilbertIndex((int) ((depot[0] - minX) * xScale * scale), (int) ((depot[1] - minY) * scale));
+        int first = 0;
+        while (first < count && keys[first] < depotKey) {
+            first++;
+        }
+        int[] tour = new int[count];
+        System.arraycopy(order, first, tour, 0, count - first);
+        System.arraycopy(order, 0, tour, count - first, first);
+        return tour;
+    }
+
+    /**
+     * Improves a tour in place with 2-opt and Or-opt within windows of consecutive stops.
+     *
+     * @param order    Indices into the points in visiting order.
+     * @param window   Number of stops per window.
+     * @param executor Executor to improve the windows of a pass on in parallel, or {@code null} to run them on the
+     *                 calling thread. The calling thread waits for the windows, so this must not be a bounded pool the
+     *                 caller itself may be running on.
+     */
+    static void improve(double[] depot, List<double[]> points, int[] order, int window, ExecutorService executor) {
+        int count = order.length;
+        if (window < 3 || count < 3) {
+            return;
+        }
+        // Positions 0 and count + 1 are the depot, node i + 1 is point i
+        double[][] nodes = new double[count + 1][];
+        nodes[0] = depot;
+        for (int i = 0; i < count; i++) {
+            nodes[i + 1] = points.get(i);
+        }
+        int[] path = new int[count + 2];
+        for (int i = 0; i < count; i++) {
+            path[i + 1] = order[i] + 1;
+        }
+
+        improvePass(nodes, path, 0, window, executor);
+        improvePass(nodes, path, window / 2, window, executor);
+
+        for (int i = 0; i < count; i++) {
+            order[i] = path[i + 1] - 1;
+        }
+    }
+
+    /**
+     * Calculates the length of a tour from the depot over the points in the given order and back.
+     */
+    static double tourLength(double[] depot, List<double[]> points, int[] order) {
+        double length = 0d;
+        double[] previous = depot;
+        for (int index : order) {
+            length += RouteHeuristics.haversineDistance(previous, points.get(index));
+            previous = points.get(index);
+        }
+        return length + RouteHeuristics.haversineDistance(previous, depot);
+    }
+
+    /**
+     * Maps a cell to its distance along a Hilbert curve of {@link #CURVE_BITS} bits per axis.
+     */
+    static long hilbertIndex(int x, int y) {
+        int n = 1 << CURVE_BITS;
+        long index = 0;
+        for (int s = n >>> 1; s > 0; s >>>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+            // Rotate the quadrant so the curve continues in the right direction
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Improves the windows of the path that start at {@code offset} plus a multiple of the window size.
+     */
+    private static void improvePass(double[][] nodes, int[] path, int offset, int window, ExecutorService executor) {
+        List<Integer> starts = new ArrayList<>();
+        for (int start = offset; start < path.length - 3; start += window) {
+            starts.add(start);
+        }
+        if (executor == null || starts.size() < 2) {
+            starts.forEach(start -> improveWindow(nodes, path, start, Math.min(start + window, path.length - 1)));
+            return;
+        }
+        // Windows only share their fixed end points, so each task can rewrite its own part of the path
+        int tasks = Math.min(starts.size(), Runtime.getRuntime().availableProcessors());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(tasks);
+        for (int t = 0; t < tasks; t++) {
+            List<Integer> batch = starts.subList(starts.size() * t / tasks, starts.size() * (t + 1) / tasks);
+            futures.add(CompletableFuture.runAsync(() -> batch.forEach(start ->
+                    improveWindow(nodes, path, start, Math.min(start + window, path.length - 1))), executor));
+        }
+        futures.forEach(CompletableFuture::join);
+    }
+
+    /**
+     * Improves the stops between the fixed path positions {@code first} and {@code last}. The two fixed stops are
+     * merged into local node 0, leaving from the first and arriving at the last, so the closed tour helpers of
+     * {@link RouteHeuristics} apply to the open path.
+     */
+    private static void improveWindow(double[][] nodes, int[] path, int first, int last) {
+        int inner = last - first - 1;
+        if (inner < 2) {
+            return;
+        }
+        int size = inner + 1;
+        double[][] distances = new double[size][size];
+        double[] from = nodes[path[first]];
+        double[] to = nodes[path[last]];
+        for (int i = 1; i < size; i++) {
+            double[] point = nodes[path[first + i]];
+            distances[0][i] = RouteHeuristics.haversineDistance(from, point);
+            distances[i][0] = RouteHeuristics.haversineDistance(point, to);
+            for (int j = i + 1; j < size; j++) {
+                double distance = RouteHeuristics.haversineDistance(point, nodes[path[first + j]]);
+                distances[i][j] = distance;
+                distances[j][i] = distance;
+            }
+        }
+        int[] tour = new int[size];
+        for (int i = 0; i < size; i++) {
+            tour[i] = i;
+        }
+        double before = RouteHeuristics.tourLength(tour, size, distances);
+        RouteHeuristics.twoOpt(tour, size, distances);
+        RouteHeuristics.orOpt(tour, size, distances);
+        // 2-opt works on symmetrised distances and local node 0 is not symmetric, keep the window if it got longer
+        if (RouteHeuristics.tourLength(tour, size, distances) >= before) {
+            return;
+        }
+        int[] stops = new int[inner];
+        for (int i = 1; i < size; i++) {
+            stops[i - 1] = path[first + tour[i]];
+        }
+        System.arraycopy(stops, 0, path, first + 1, inner);
+    }
+}
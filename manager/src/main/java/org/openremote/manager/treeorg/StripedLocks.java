@@ -0,0 +1,54 @@
+package org.openremote.manager.treeorg;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed set of locks shared by hash, so work on the same key (for example the parent asset of a route) is
+ * serialised while work on different keys mostly runs in parallel, without keeping a lock per key alive.
+ */
+public class StripedLocks {
+
+    private final Lock[] locks;
+
+    public StripedLocks(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("At least one stripe is required");
+        }
+        locks = new Lock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param key The key to lock, {@code null} keys share one stripe.
+     */
+    public Lock get(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        // Spread the high bits, string hashes of similar ids differ mostly in the low bits
+        hash ^= hash >>> 16;
+        return locks[Math.floorMod(hash, locks.length)];
+    }
+
+    /**
+     * Runs the task while holding the lock of the key.
+     */
+    public <T> T call(Object key, Supplier<T> task) {
+        Lock lock = get(key);
+        lock.lock();
+        try {
+            return task.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void run(Object key, Runnable task) {
+        call(key, () -> {
+            task.run();
+            return null;
+        });
+    }
+}
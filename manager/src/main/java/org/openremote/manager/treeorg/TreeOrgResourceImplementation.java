@@ -1,52 +1,576 @@
 package org.openremote.manager.treeorg;
 
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import org.openremote.container.timer.TimerService;
+import org.openremote.manager.security.ManagerIdentityService;
+import org.openremote.manager.web.ManagerWebResource;
 import org.openremote.model.asset.Asset;
+import org.openremote.model.geo.GeoJSONPoint;
+import org.openremote.model.treeorg.RoutePlanAsset;
+import org.openremote.model.treeorg.RouteScenario;
+import org.openremote.model.treeorg.SensorReading;
 import org.openremote.model.treeorg.TreeOrgResource;
+import org.openremote.model.util.ValueUtil;
 
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 @Path("/")
-public class TreeOrgResourceImplementation implements TreeOrgResource {
+public class TreeOrgResourceImplementation extends ManagerWebResource implements TreeOrgResource {
+
+    public static final String NDJSON = "application/x-ndjson";
 
     private final SortingService sortingService;
     private final RouteOptimizationService routeOptimizationService;
+    private final RoutePlanService routePlanService;
+    private final SensorIngestService sensorIngestService;
+    private final DroughtForecastService droughtForecastService;
+    private final TreeTileService treeTileService;
+    private final TreeOrgVersionService treeOrgVersionService;
+    private final VehicleRouteService vehicleRouteService;
+    private final WateringPlanService wateringPlanService;
+    private final ScenarioService scenarioService;
+    private final TreeOrgWarmupService treeOrgWarmupService;
+    private final RealmConcurrencyLimiter realmConcurrencyLimiter;
+    @Context
+    protected Request jaxRsRequest;
+    @Context
+    protected HttpHeaders headers;
 
-    public TreeOrgResourceImplementation(SortingService sortingService, RouteOptimizationService routeOptimizationService) {
+    public TreeOrgResourceImplementation(TimerService timerService, ManagerIdentityService identityService, SortingService sortingService, RouteOptimizationService routeOptimizationService, RoutePlanService routePlanService, SensorIngestService sensorIngestService, DroughtForecastService droughtForecastService, TreeTileService treeTileService, TreeOrgVersionService treeOrgVersionService, VehicleRouteService vehicleRouteService, WateringPlanService wateringPlanService, ScenarioService scenarioService, TreeOrgWarmupService treeOrgWarmupService, RealmConcurrencyLimiter realmConcurrencyLimiter) {
+        super(timerService, identityService);
         this.sortingService = sortingService;
         this.routeOptimizationService = routeOptimizationService;
+        this.routePlanService = routePlanService;
+        this.sensorIngestService = sensorIngestService;
+        this.droughtForecastService = droughtForecastService;
+        this.treeTileService = treeTileService;
+        this.treeOrgVersionService = treeOrgVersionService;
+        this.vehicleRouteService = vehicleRouteService;
+        this.wateringPlanService = wateringPlanService;
+        this.scenarioService = scenarioService;
+        this.treeOrgWarmupService = treeOrgWarmupService;
+        this.realmConcurrencyLimiter = realmConcurrencyLimiter;
     }
 
     @GET
     @Path("sortbyattribute")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CompactRouteEncoding.MEDIA_TYPE})
     public Response sortAssetsByAttribute(@QueryParam("assetType") String assetType, @QueryParam("attribute") String attributeName) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
         Class<?> type = null;
         try {
             type = Class.forName(assetType);
         } catch (ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
-        List<Asset<?>> sortedAssets = sortingService.findAllAssetsSortedByAttributeAndType(type, attributeName);
-        return Response.ok(sortedAssets).build();
+        Class<?> finalType = type;
+        return varyOnAccept(conditional(assetVersion(realm, assetType), () -> inRealm(realm, () -> {
+            List<Asset<?>> sortedAssets = sortingService.findAllAssetsSortedByAttributeAndType(realm, finalType, attributeName);
+            if (acceptsCompact()) {
+                return Response.ok(CompactRouteEncoding.encodeAssets(sortedAssets), CompactRouteEncoding.MEDIA_TYPE).build();
+            }
+            return Response.ok(sortedAssets).build();
+        })));
     }
 
     @GET
     @Path("optimizeRoute")
+    @Produces({MediaType.APPLICATION_JSON, CompactRouteEncoding.MEDIA_TYPE})
+    public Response optimizeRouteForSensors(@QueryParam("assetType") String assetType, @QueryParam("attribute") String attributeName, @QueryParam("warmStart") Boolean warmStart) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        Class<?> type = null;
+        try {
+            type = Class.forName(assetType);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        Class<?> finalType = type;
+        return inRealm(realm, () -> {
+            RouteResponse routeResponse = routeOptimizationService.optimizeRouteForSensors(realm, finalType, attributeName, Boolean.TRUE.equals(warmStart));
+            return routeResponse(routeResponse);
+        });
+    }
+
+    @GET
+    @Path("optimizeRouteWithinBudget")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response optimizeRouteWithinBudget(@QueryParam("assetType") String assetType, @QueryParam("maxDistance") Double maxDistance, @QueryParam("maxDuration") Double maxDuration) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        Class<?> type = null;
+        try {
+            type = Class.forName(assetType);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        Class<?> finalType = type;
+        return inRealm(realm, () -> {
+            PrizeCollectingRouteResponse routeResponse = routeOptimizationService.optimizePrizeCollectingRoute(realm, finalType, maxDistance, maxDuration);
+            return Response.ok(routeResponse).build();
+        });
+    }
+
+    @GET
+    @Path("scheduleRoute")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response scheduleRoute(@QueryParam("assetType") String assetType, @QueryParam("attribute") String attributeName, @QueryParam("startTime") Long startTime) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        Class<?> type = null;
+        try {
+            type = Class.forName(assetType);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        Class<?> finalType = type;
+        return inRealm(realm, () -> {
+            ScheduledRouteResponse routeResponse = routeOptimizationService.scheduleRouteForSensors(realm, finalType, attributeName, startTime);
+            return Response.ok(routeResponse).build();
+        });
+    }
+
+    @GET
+    @Path("routePlan")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRoutePlan(@QueryParam("parentId") String parentId, @QueryParam("depotId") String depotId, @QueryParam("version") Integer version) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        if (isBlank(parentId)) {
+            return missingParentId();
+        }
+        return conditional(version(realm, null), () -> {
+            RoutePlanAsset plan = routePlanService.findPlan(realm, parentId, depotId, version);
+            if (plan == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            return Response.ok(plan).build();
+        });
+    }
+
+    @GET
+    @Path("compareRoutePlans")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response compareRoutePlans(@QueryParam("parentId") String parentId, @QueryParam("depotId") String depotId, @QueryParam("from") Integer fromVersion, @QueryParam("to") Integer toVersion) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        if (isBlank(parentId)) {
+            return missingParentId();
+        }
+        return conditional(version(realm, null), () -> {
+            RoutePlanComparison comparison = routePlanService.comparePlans(realm, parentId, depotId, fromVersion, toVersion);
+            if (comparison == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            return Response.ok(comparison).build();
+        });
+    }
+
+    @GET
+    @Path("routePlanGeometry")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN})
+    public Response getRoutePlanGeometry(@QueryParam("parentId") String parentId, @QueryParam("depotId") String depotId, @QueryParam("version") Integer version, @QueryParam("format") String format) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        if (isBlank(parentId)) {
+            return missingParentId();
+        }
+        return conditional(version(realm, null), () -> {
+            RoutePlanAsset plan = routePlanService.findPlan(realm, parentId, depotId, version);
+            if (plan == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            List<double[]> route = new ArrayList<>();
+            for (GeoJSONPoint point : plan.getGeometry().orElse(new GeoJSONPoint[0])) {
+                route.add(new double[]{point.getX(), point.getY()});
+            }
+            if ("polyline".equals(format)) {
+                return Response.ok(RouteRenderer.encodePolyline(route), MediaType.TEXT_PLAIN).build();
+            }
+            if ("googleMaps".equals(format)) {
+                return Response.ok(RouteRenderer.googleMapsLegURLs(route, RouteRenderer.MAX_WAYPOINTS_PER_LEG), MediaType.APPLICATION_JSON).build();
+            }
+            return Response.ok(RouteRenderer.geoJsonLineString(route), MediaType.APPLICATION_JSON).build();
+        });
+    }
+
+    @POST
+    @Path("readings")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response ingestReadings(List<SensorReading> readings) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        IngestResult result = sensorIngestService.submit(realm, readings);
+        return Response.accepted(result).build();
+    }
+
+    @POST
+    @Path("readings")
+    @Consumes(NDJSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response optimizeRouteForSensors(@QueryParam("assetType") String assetType, @QueryParam("attribute") String attributeName) {
+    public Response ingestReadingsNdjson(String body) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        List<SensorReading> readings = new ArrayList<>();
+        int malformed = 0;
+        for (String line : body.split("\\r?\\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            SensorReading reading = ValueUtil.parse(line, SensorReading.class).orElse(null);
+            if (reading != null) {
+                readings.add(reading);
+            } else {
+                malformed++;
+            }
+        }
+        IngestResult result = sensorIngestService.submit(realm, readings);
+        return Response.accepted(new IngestResult(result.getAccepted(), result.getRejected() + malformed, result.getPending())).build();
+    }
+
+    @GET
+    @Path("droughtForecast")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getDroughtForecast(@QueryParam("horizon") Double horizonHours, @QueryParam("limit") Integer limit) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        return inRealm(realm, () -> {
+            List<DroughtForecast> forecasts = droughtForecastService.findMostUrgent(realm, horizonHours, limit);
+            return Response.ok(forecasts).build();
+        });
+    }
+
+    @GET
+    @Path("optimizeRouteForForecast")
+    @Produces({MediaType.APPLICATION_JSON, CompactRouteEncoding.MEDIA_TYPE})
+    public Response optimizeRouteForForecast(@QueryParam("assetType") String assetType, @QueryParam("horizon") Double horizonHours) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
         Class<?> type = null;
         try {
             type = Class.forName(assetType);
         } catch (ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
-        RouteResponse routeResponse = routeOptimizationService.optimizeRouteForSensors(type, attributeName);
-        return Response.ok(routeResponse).build();
+        Class<?> finalType = type;
+        return inRealm(realm, () -> {
+            RouteResponse routeResponse = routeOptimizationService.optimizeRouteForForecast(realm, finalType, horizonHours);
+            return routeResponse(routeResponse);
+        });
+    }
+
+    @GET
+    @Path("rankByScore")
+    @Produces({MediaType.APPLICATION_JSON, CompactRouteEncoding.MEDIA_TYPE})
+    public Response rankAssetsByScore(@QueryParam("assetType") String assetType, @QueryParam("expression") String expression, @QueryParam("limit") Integer limit) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        Class<?> type = null;
+        try {
+            type = Class.forName(assetType);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        Class<?> finalType = type;
+        try {
+            // Reject malformed expressions before a cached response could be validated
+            sortingService.getScoreAttributeNames(expression);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+        }
+        return varyOnAccept(conditional(assetVersion(realm, assetType), () -> inRealm(realm, () -> {
+            try {
+                List<AssetScore> ranking = sortingService.findTopAssetsByScore(realm, finalType, expression, limit != null ? limit : 10);
+                if (acceptsCompact()) {
+                    return Response.ok(CompactRouteEncoding.encodeScores(ranking), CompactRouteEncoding.MEDIA_TYPE).build();
+                }
+                return Response.ok(ranking).build();
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+            }
+        })));
+    }
+
+    @GET
+    @Path("tiles/{z}/{x}/{y}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getTreeTile(@PathParam("z") Integer zoom, @PathParam("x") Integer x, @PathParam("y") Integer y) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        String tile;
+        try {
+            tile = treeTileService.getTile(realm, zoom, x, y);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+        }
+        if (tile == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Trees are still loading").type(MediaType.TEXT_PLAIN).build();
+        }
+        return Response.ok(tile, MediaType.APPLICATION_JSON).build();
+    }
+
+    @POST
+    @Path("vehicles/{vehicleId}/reroute")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response rerouteVehicle(@PathParam("vehicleId") String vehicleId, List<String> urgentIds) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        return inRealm(realm, () -> {
+            try {
+                RerouteResponse reroute = vehicleRouteService.reroute(realm, vehicleId, urgentIds);
+                if (reroute == null) {
+                    return Response.status(Response.Status.NOT_FOUND).build();
+                }
+                return Response.ok(reroute).build();
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+            }
+        });
+    }
+
+    @POST
+    @Path("wateringPlan")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response planWatering(@QueryParam("startDate") String startDate, @QueryParam("days") Integer days) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        LocalDate start;
+        try {
+            start = startDate != null ? LocalDate.parse(startDate) : LocalDate.now(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+        }
+        return inRealm(realm, () -> {
+            try {
+                WateringPlanResponse plan = wateringPlanService.planDays(realm, start, days != null ? days : WateringPlanService.DEFAULT_PLAN_DAYS);
+                return Response.ok(plan).build();
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+            }
+        });
+    }
+
+    @POST
+    @Path("wateringPlan/{date}/reoptimize")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response reoptimizeWateringDay(@PathParam("date") String date) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        LocalDate day;
+        try {
+            day = LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+        }
+        return inRealm(realm, () -> {
+            WateringPlanResponse plan = wateringPlanService.reoptimizeDay(realm, day);
+            if (plan == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            return Response.ok(plan).build();
+        });
+    }
+
+    @POST
+    @Path("scenarios")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response evaluateScenarios(List<RouteScenario> scenarios) {
+        String realm = accessibleRealm();
+        if (realm == null) {
+            return forbiddenRealm();
+        }
+        return inRealm(realm, () -> {
+            try {
+                List<ScenarioResult> results = scenarioService.evaluate(realm, scenarios);
+                return Response.ok(results).build();
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+            }
+        });
+    }
+
+    /**
+     * Reports whether the treeorg caches are warmed up, with {@code 503 Service Unavailable} until they are so it can
+     * serve as a readiness probe. Requests are also answered while warming up, only slower.
+     */
+    @GET
+    @Path("status")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getStatus() {
+        TreeOrgStatus status = treeOrgWarmupService.getStatus();
+        return Response.status(status.isReady() ? Response.Status.OK : Response.Status.SERVICE_UNAVAILABLE).entity(status).build();
+    }
+
+    /**
+     * Answers {@code 304 Not Modified} when the client already has the response for this version, otherwise builds the
+     * response and tags successful ones with the version.
+     *
+     * @param version The version stamp of the data, or {@code null} when the response cannot be tagged.
+     */
+    protected Response conditional(String version, Supplier<Response> response) {
+        if (version == null) {
+            return response.get();
+        }
+        EntityTag tag = new EntityTag(version);
+        if (jaxRsRequest != null) {
+            Response.ResponseBuilder notModified = jaxRsRequest.evaluatePreconditions(tag);
+            if (notModified != null) {
+                return notModified.build();
+            }
+        }
+        Response built = response.get();
+        return built.getStatus() == Response.Status.OK.getStatusCode() ? Response.fromResponse(built).tag(tag).build() : built;
+    }
+
+    /**
+     * @return The version stamp of the data of a realm, or {@code null} when there is none. Compact responses get a
+     * stamp of their own, so a cached JSON response never validates a compact one or the other way around.
+     */
+    protected String version(String realm, String assetType, String... attributeNames) {
+        if (treeOrgVersionService == null || isBlank(realm)) {
+            return null;
+        }
+        return compactVersion(treeOrgVersionService.getVersion(realm, assetType, attributeNames));
+    }
+
+    /**
+     * @return The version stamp of responses that contain whole assets of a realm, see
+     * {@link TreeOrgVersionService#getAssetVersion}, or {@code null} when there is none.
+     */
+    protected String assetVersion(String realm, String assetType) {
+        if (treeOrgVersionService == null || isBlank(realm)) {
+            return null;
+        }
+        return compactVersion(treeOrgVersionService.getAssetVersion(realm, assetType));
+    }
+
+    protected String compactVersion(String version) {
+        return version != null && acceptsCompact() ? version + "-compact" : version;
+    }
+
+    protected Response routeResponse(RouteResponse routeResponse) {
+        if (acceptsCompact()) {
+            return varyOnAccept(Response.ok(CompactRouteEncoding.encodeRoute(routeResponse), CompactRouteEncoding.MEDIA_TYPE).build());
+        }
+        return varyOnAccept(Response.ok(routeResponse).build());
+    }
+
+    /**
+     * Marks a response whose representation is negotiated on the Accept header, see {@link #acceptsCompact}, so shared
+     * caches keep the JSON and the compact variant apart. Also applies to {@code 304 Not Modified} answers.
+     */
+    protected Response varyOnAccept(Response response) {
+        return Response.fromResponse(response).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+    }
+
+    /**
+     * Negotiates the {@link CompactRouteEncoding}: the most preferred type of the Accept header that matches either JSON
+     * or the compact encoding decides, and wildcards select JSON so existing clients are unaffected.
+     */
+    protected boolean acceptsCompact() {
+        if (headers == null) {
+            return false;
+        }
+        MediaType compact = MediaType.valueOf(CompactRouteEncoding.MEDIA_TYPE);
+        for (MediaType accepted : headers.getAcceptableMediaTypes()) {
+            if (accepted.isWildcardType() || accepted.isWildcardSubtype()) {
+                if (accepted.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                    return false;
+                }
+            } else if (accepted.isCompatible(compact)) {
+                return true;
+            } else if (accepted.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs a ranking or routing computation within the concurrency limit of its realm.
+     */
+    protected Response inRealm(String realm, Supplier<Response> computation) {
+        try {
+            return realmConcurrencyLimiter.call(realm, computation);
+        } catch (RejectedExecutionException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+        }
+    }
+
+    /**
+     * Resolves the realm from the authenticated request like the other manager resources: the realm of the user, or
+     * the realm a super user selected for the request.
+     *
+     * @return The realm, or {@code null} when it is inactive or the user may not access it.
+     */
+    protected String accessibleRealm() {
+        String realm = getRequestRealmName();
+        return !isBlank(realm) && isRealmActiveAndAccessible(realm) ? realm : null;
+    }
+
+    protected static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    protected static Response forbiddenRealm() {
+        return Response.status(Response.Status.FORBIDDEN).entity("Realm is not accessible").type(MediaType.TEXT_PLAIN).build();
+    }
+
+    protected static Response missingParentId() {
+        return Response.status(Response.Status.BAD_REQUEST).entity("Missing parentId").type(MediaType.TEXT_PLAIN).build();
     }
 }
@@ -1,29 +1,59 @@
 package org.openremote.manager.treeorg;
 
+import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
 
 import java.util.logging.Logger;
 
+import static org.openremote.container.util.MapAccess.getInteger;
+
 public class TreeOrgRestService implements ContainerService {
     private static final Logger LOG = Logger.getLogger(ManagerWebService.class.getName());
     protected AssetStorageService assetStorageService;
     protected SortingService sortingService;
     protected RouteOptimizationService routeOptimizationService;
     protected RouteService routeService;
+    protected RoutePlanService routePlanService;
+    protected SensorIngestService sensorIngestService;
+    protected DroughtForecastService droughtForecastService;
+    protected TreeTileService treeTileService;
+    protected TreeOrgVersionService treeOrgVersionService;
+    protected VehicleRouteService vehicleRouteService;
+    protected WateringPlanService wateringPlanService;
+    protected ScenarioService scenarioService;
+    protected TreeOrgWarmupService treeOrgWarmupService;
     protected RouteApiClient routeApiClient;
+    protected RealmConcurrencyLimiter realmConcurrencyLimiter;
     @Override
     public void init(Container container) throws Exception {
         ManagerWebService webService = container.getService(ManagerWebService.class);
+        TimerService timerService = container.getService(TimerService.class);
+        ManagerIdentityService identityService = container.getService(ManagerIdentityService.class);
         assetStorageService = container.getService(AssetStorageService.class);
         sortingService = container.getService(SortingService.class);
 
         routeService = container.getService(RouteService.class);
         routeOptimizationService = container.getService(RouteOptimizationService.class);
+        routePlanService = container.getService(RoutePlanService.class);
+        sensorIngestService = container.getService(SensorIngestService.class);
+        droughtForecastService = container.getService(DroughtForecastService.class);
+        treeTileService = container.getService(TreeTileService.class);
+        treeOrgVersionService = container.getService(TreeOrgVersionService.class);
+        vehicleRouteService = container.getService(VehicleRouteService.class);
+        wateringPlanService = container.getService(WateringPlanService.class);
+        scenarioService = container.getService(ScenarioService.class);
+        treeOrgWarmupService = container.getService(TreeOrgWarmupService.class);
         routeApiClient = container.getService(RouteApiClient.class);
-        webService.addApiSingleton(new TreeOrgResourceImplementation(sortingService, routeOptimizationService));
+        realmConcurrencyLimiter = container.getConfig() != null
+                ? new RealmConcurrencyLimiter(
+                        getInteger(container.getConfig(), RealmConcurrencyLimiter.TREEORG_REALM_CONCURRENCY, RealmConcurrencyLimiter.TREEORG_REALM_CONCURRENCY_DEFAULT),
+                        getInteger(container.getConfig(), RealmConcurrencyLimiter.TREEORG_REALM_QUEUE_MILLIS, RealmConcurrencyLimiter.TREEORG_REALM_QUEUE_MILLIS_DEFAULT))
+                : new RealmConcurrencyLimiter(RealmConcurrencyLimiter.TREEORG_REALM_CONCURRENCY_DEFAULT, RealmConcurrencyLimiter.TREEORG_REALM_QUEUE_MILLIS_DEFAULT);
+        webService.addApiSingleton(new TreeOrgResourceImplementation(timerService, identityService, sortingService, routeOptimizationService, routePlanService, sensorIngestService, droughtForecastService, treeTileService, treeOrgVersionService, vehicleRouteService, wateringPlanService, scenarioService, treeOrgWarmupService, realmConcurrencyLimiter));
         LOG.info("Registered custom API classes: " + sortingService);
     }
 
@@ -0,0 +1,36 @@
+package org.openremote.manager.treeorg;
+
+import java.util.List;
+
+/**
+ * The readiness of the treeorg caches, see {@link TreeOrgWarmupService#getStatus}.
+ */
+public class TreeOrgStatus {
+    private final boolean ready;
+    private final Long readyMillis;
+    private final List<WarmupTask> tasks;
+
+    public TreeOrgStatus(boolean ready, Long readyMillis, List<WarmupTask> tasks) {
+        this.ready = ready;
+        this.readyMillis = readyMillis;
+        this.tasks = tasks;
+    }
+
+    /**
+     * @return {@code true} once every warm-up task has finished, also when one failed.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return How long after the start of the warm-up the last task finished, or {@code null} while it is running.
+     */
+    public Long getReadyMillis() {
+        return readyMillis;
+    }
+
+    public List<WarmupTask> getTasks() {
+        return tasks;
+    }
+}
@@ -0,0 +1,106 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.manager.event.ClientEventService;
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+import org.openremote.model.asset.AssetEvent;
+import org.openremote.model.attribute.AttributeEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps cheap version stamps of the data behind the treeorg read endpoints, so unchanged responses can be answered
+ * with {@code 304 Not Modified} without querying storage. There is a counter per realm and attribute, bumped by
+ * attribute events, a counter per realm, bumped by asset events (assets created, updated or deleted, including
+ * route plans), and a counter per realm bumped by every attribute event, for responses that contain whole assets.
+ * <p>
+ * Stamps start with the startup time of the service, so stamps handed out before a restart never match.
+ */
+public class TreeOrgVersionService implements ContainerService {
+
+    private final String epoch = Long.toHexString(System.currentTimeMillis());
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> attributeVersions = new ConcurrentHashMap<>();
+    /**
+     * Bumped by events without a realm, which may concern any realm.
+     */
+    private final AtomicLong unscoped = new AtomicLong();
+    private ClientEventService clientEventService;
+
+    @Override
+    public void init(Container container) throws Exception {
+        clientEventService = container.getService(ClientEventService.class);
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+        if (clientEventService != null) {
+            clientEventService.addInternalSubscription(AttributeEvent.class, null, this::onAttributeEvent);
+            clientEventService.addInternalSubscription(AssetEvent.class, null, this::onAssetEvent);
+        }
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+    }
+
+    protected void onAttributeEvent(AttributeEvent event) {
+        bump(event.getRealm(), event.getName());
+        if (event.getRealm() != null) {
+            attributeVersions.computeIfAbsent(event.getRealm(), k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    protected void onAssetEvent(AssetEvent event) {
+        bump(event.getAsset() != null ? event.getAsset().getRealm() : null, null);
+    }
+
+    private void bump(String realm, String attributeName) {
+        if (realm == null) {
+            unscoped.incrementAndGet();
+            return;
+        }
+        versions.computeIfAbsent(key(realm, attributeName), k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Gets the version stamp of data in a realm that depends on the assets of a type and the given attributes.
+     *
+     * @param assetType      The asset type, part of the stamp so types never share one.
+     * @param attributeNames The attributes the data depends on.
+     */
+    public String getVersion(String realm, String assetType, String... attributeNames) {
+        StringBuilder version = new StringBuilder(epoch)
+                .append('-').append(unscoped.get())
+                .append('-').append(version(realm, null));
+        for (String attributeName : attributeNames) {
+            version.append('-').append(version(realm, attributeName));
+        }
+        if (assetType != null) {
+            version.append('-').append(Integer.toHexString(assetType.hashCode()));
+        }
+        return version.toString();
+    }
+
+    /**
+     * Gets the version stamp of data in a realm that contains whole assets of a type, so any attribute change of the
+     * realm changes it.
+     *
+     * @param assetType The asset type, part of the stamp so types never share one.
+     */
+    public String getAssetVersion(String realm, String assetType) {
+        AtomicLong attributeVersion = attributeVersions.get(realm);
+        return getVersion(realm, assetType) + '-' + (attributeVersion != null ? attributeVersion.get() : 0L) + "-assets";
+    }
+
+    private long version(String realm, String attributeName) {
+        AtomicLong version = versions.get(key(realm, attributeName));
+        return version != null ? version.get() : 0L;
+    }
+
+    private static String key(String realm, String attributeName) {
+        return attributeName != null ? realm + '/' + attributeName : realm + '/';
+    }
+}
@@ -0,0 +1,102 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the work that fills the treeorg caches, such as the tree snapshot and the water level history, in the
+ * background once every treeorg service has started, so none of it delays the start of the manager. Services submit
+ * their tasks from {@code start}; this service is registered after them and only hands the tasks to the executor from
+ * its own {@code start}.
+ * <p>
+ * Requests that arrive while a task is still running are served without its cache, by reading the database or the
+ * live readings instead. {@link #getStatus()} reports which caches are ready.
+ */
+public class TreeOrgWarmupService implements ContainerService {
+
+    private static final Logger LOG = Logger.getLogger(TreeOrgWarmupService.class.getName());
+
+    private final Map<String, WarmupTask> tasks = new LinkedHashMap<>();
+    private final Map<String, Runnable> pending = new LinkedHashMap<>();
+    private ExecutorService executorService;
+    private boolean started;
+    private long startMillis;
+    private Long readyMillis;
+
+    @Override
+    public void init(Container container) throws Exception {
+        executorService = container.getExecutor();
+    }
+
+    @Override
+    public synchronized void start(Container container) throws Exception {
+        started = true;
+        startMillis = System.currentTimeMillis();
+        pending.forEach(this::run);
+        pending.clear();
+        if (tasks.isEmpty()) {
+            readyMillis = 0L;
+        }
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+    }
+
+    /**
+     * Runs a task in the background after the treeorg services have started, or right away when they already have.
+     * Nothing is run without an executor.
+     *
+     * @param name The name the task is reported under; a task replaces an earlier one with the same name.
+     */
+    public synchronized void submit(String name, Runnable task) {
+        if (executorService == null) {
+            return;
+        }
+        tasks.put(name, new WarmupTask(name, WarmupTask.State.PENDING, null));
+        readyMillis = null;
+        if (started) {
+            run(name, task);
+        } else {
+            pending.put(name, task);
+        }
+    }
+
+    public synchronized boolean isReady() {
+        return started && tasks.values().stream().allMatch(WarmupTask::isFinished);
+    }
+
+    public synchronized TreeOrgStatus getStatus() {
+        return new TreeOrgStatus(isReady(), readyMillis, new ArrayList<>(tasks.values()));
+    }
+
+    private void run(String name, Runnable task) {
+        executorService.submit(() -> {
+            long start = System.currentTimeMillis();
+            update(name, WarmupTask.State.RUNNING, null);
+            WarmupTask.State state = WarmupTask.State.DONE;
+            try {
+                task.run();
+            } catch (Exception e) {
+                state = WarmupTask.State.FAILED;
+                LOG.log(Level.WARNING, "Warm-up of " + name + " failed, requests are served without it", e);
+            }
+            update(name, state, System.currentTimeMillis() - start);
+        });
+    }
+
+    private synchronized void update(String name, WarmupTask.State state, Long durationMillis) {
+        tasks.put(name, new WarmupTask(name, state, durationMillis));
+        if (state != WarmupTask.State.RUNNING && isReady()) {
+            readyMillis = System.currentTimeMillis() - startMillis;
+            LOG.info("Finished treeorg warm-up " + readyMillis + "ms after start");
+        }
+    }
+}
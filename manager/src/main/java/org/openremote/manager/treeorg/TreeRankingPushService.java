@@ -0,0 +1,181 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.container.security.AuthContext;
+import org.openremote.manager.event.ClientEventService;
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+import org.openremote.model.event.shared.EventSubscription;
+import org.openremote.model.treeorg.RoutePlanEvent;
+import org.openremote.model.treeorg.TreeAsset;
+import org.openremote.model.treeorg.TreeRankingEvent;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.container.util.MapAccess.getInteger;
+
+/**
+ * Pushes changes of the tree rankings to subscribed clients as {@link TreeRankingEvent}s, so dashboards do not have
+ * to poll the sort by attribute endpoint. A realm is tracked from its first subscription on; tree changes in a tracked
+ * realm mark it dirty and dirty realms are re-ranked on the {@link #TREEORG_RANKING_PUSH_MILLIS} interval, so a burst
+ * of readings results in at most one event per attribute.
+ * <p>
+ * Rankings are computed on the {@link TreeSnapshotService} snapshot in the same order as
+ * {@link SortingService#findAllAssetsSortedByAttributeAndType}, lowest value first.
+ */
+public class TreeRankingPushService implements ContainerService {
+
+    private static final Logger LOG = Logger.getLogger(TreeRankingPushService.class.getName());
+    public static final String TREEORG_RANKING_PUSH_MILLIS = "TREEORG_RANKING_PUSH_MILLIS";
+    public static final int TREEORG_RANKING_PUSH_MILLIS_DEFAULT = 1000;
+    static final String[] RANKED_ATTRIBUTES = {
+            TreeAsset.WATER_LEVEL.getName(),
+            TreeAsset.SOIL_TEMPERATURE.getName()
+    };
+
+    /**
+     * Current ranking per tracked realm and attribute.
+     */
+    private final Map<String, Map<String, List<String>>> rankings = new ConcurrentHashMap<>();
+    private final Set<String> dirtyRealms = ConcurrentHashMap.newKeySet();
+    private TreeSnapshotService treeSnapshotService;
+    private ClientEventService clientEventService;
+    private ScheduledExecutorService scheduledExecutorService;
+    private ScheduledFuture<?> pushTask;
+    private int pushMillis;
+
+    @Override
+    public void init(Container container) throws Exception {
+        treeSnapshotService = container.getService(TreeSnapshotService.class);
+        clientEventService = container.getService(ClientEventService.class);
+        scheduledExecutorService = container.getScheduledExecutor();
+        pushMillis = container.getConfig() != null
+                ? getInteger(container.getConfig(), TREEORG_RANKING_PUSH_MILLIS, TREEORG_RANKING_PUSH_MILLIS_DEFAULT)
+                : TREEORG_RANKING_PUSH_MILLIS_DEFAULT;
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+        if (clientEventService != null) {
+            clientEventService.addSubscriptionAuthorizer(this::authorise);
+        }
+        if (treeSnapshotService != null) {
+            treeSnapshotService.addChangeListener(this::onTreeChanged);
+        }
+        if (scheduledExecutorService != null) {
+            pushTask = scheduledExecutorService.scheduleWithFixedDelay(() -> {
+                try {
+                    publishChanges();
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Failed to publish tree ranking changes", e);
+                }
+            }, pushMillis, pushMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+        if (pushTask != null) {
+            pushTask.cancel(false);
+            pushTask = null;
+        }
+    }
+
+    /**
+     * Authorises subscriptions to the tree org events, {@link TreeRankingEvent}s and {@link RoutePlanEvent}s, of the
+     * realm the client is authenticated in; super users may subscribe to any realm. A ranking subscription starts
+     * tracking the realm.
+     */
+    protected boolean authorise(String realm, AuthContext auth, EventSubscription<?> subscription) {
+        boolean ranking = subscription.isEventType(TreeRankingEvent.class);
+        if (!ranking && !subscription.isEventType(RoutePlanEvent.class)) {
+            return false;
+        }
+        if (realm == null || auth == null || !(auth.isSuperUser() || realm.equals(auth.getAuthenticatedRealmName()))) {
+            return false;
+        }
+        if (ranking) {
+            track(realm);
+        }
+        return true;
+    }
+
+    /**
+     * Starts tracking the rankings of a realm, if not tracked yet.
+     */
+    public void track(String realm) {
+        if (rankings.putIfAbsent(realm, new ConcurrentHashMap<>()) == null) {
+            // Rank without publishing, subscribers start from the ranking they fetch
+            rank(realm, false);
+        }
+    }
+
+    /**
+     * @return The current ranking of a tracked realm, or {@code null} when the realm is not tracked or the snapshot is
+     * not loaded yet.
+     */
+    public List<String> getRanking(String realm, String attributeName) {
+        Map<String, List<String>> realmRankings = rankings.get(realm);
+        return realmRankings != null ? realmRankings.get(attributeName) : null;
+    }
+
+    protected void onTreeChanged(String id) {
+        TreeSnapshot.View tree = treeSnapshotService.row(id);
+        if (tree == null) {
+            // Removed trees no longer have a realm
+            dirtyRealms.addAll(rankings.keySet());
+        } else if (rankings.containsKey(tree.realms[0])) {
+            dirtyRealms.add(tree.realms[0]);
+        }
+    }
+
+    /**
+     * Re-ranks the realms with changed trees and publishes the rankings that changed.
+     *
+     * @return The number of events published.
+     */
+    public int publishChanges() {
+        int published = 0;
+        for (String realm : new ArrayList<>(dirtyRealms)) {
+            dirtyRealms.remove(realm);
+            published += rank(realm, true);
+        }
+        return published;
+    }
+
+    private int rank(String realm, boolean publish) {
+        Map<String, List<String>> realmRankings = rankings.get(realm);
+        if (realmRankings == null || treeSnapshotService == null) {
+            return 0;
+        }
+        int published = 0;
+        for (String attributeName : RANKED_ATTRIBUTES) {
+            List<String> ranking = treeSnapshotService.lowest(realm, attributeName, SortingService.MAX_SORTED_ASSETS);
+            if (ranking == null) {
+                // Not loaded yet, try again with the next change
+                dirtyRealms.add(realm);
+                return published;
+            }
+            List<String> previous = realmRankings.put(attributeName, ranking);
+            if (!publish || previous == null || previous.equals(ranking) || clientEventService == null) {
+                continue;
+            }
+            List<String> entered = new ArrayList<>(ranking);
+            entered.removeAll(new HashSet<>(previous));
+            List<String> left = new ArrayList<>(previous);
+            left.removeAll(new HashSet<>(ranking));
+            clientEventService.publishEvent(new TreeRankingEvent(realm, attributeName, ranking, entered, left));
+            published++;
+        }
+        return published;
+    }
+}
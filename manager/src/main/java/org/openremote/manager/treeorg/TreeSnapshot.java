@@ -0,0 +1,302 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.asset.Asset;
+import org.openremote.model.attribute.Attribute;
+import org.openremote.model.geo.GeoJSONPoint;
+import org.openremote.model.treeorg.TreeAsset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read model of all trees in parallel primitive arrays: id, parent, realm, location and the sensor values that the
+ * ranking and routing endpoints read. Rows are updated in place from attribute events. Rankings read the columns in
+ * place under the lock through {@link #lowest} and {@link #top}; other readers take a {@link View} that copies the rows
+ * of one realm, so they never see a row change while they work on it.
+ * <p>
+ * Missing values are stored as {@link Double#NaN}; booleans are stored as 1 or 0.
+ */
+final class TreeSnapshot {
+
+    /**
+     * Attributes kept per tree, in column order.
+     */
+    static final String[] COLUMNS = {
+            TreeAsset.WATER_LEVEL.getName(),
+            TreeAsset.SOIL_TEMPERATURE.getName(),
+            TreeAsset.PRIORITY.getName(),
+            TreeAsset.ROUTE_ID.getName()
+    };
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private String[] parentIds = new String[INITIAL_CAPACITY];
+    private String[] realms = new String[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private final double[][] values = new double[COLUMNS.length][INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @return The column of an attribute, or -1 when the attribute is not kept.
+     */
+    static int column(String attributeName) {
+        for (int c = 0; c < COLUMNS.length; c++) {
+            if (COLUMNS[c].equals(attributeName)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a tree or replaces all values of a known tree.
+     */
+    synchronized void put(Asset<?> asset) {
+        Integer slot = slots.get(asset.getId());
+        int i = slot != null ? slot : allocate(asset.getId());
+        parentIds[i] = asset.getParentId();
+        realms[i] = asset.getRealm();
+        setLocation(i, asset.getAttributes().getValue(Asset.LOCATION).orElse(null));
+        for (int c = 0; c < COLUMNS.length; c++) {
+            values[c][i] = SortingService.toDouble(asset.getAttributes().get(COLUMNS[c]).flatMap(Attribute::getValue).orElse(null));
+        }
+    }
+
+    /**
+     * Updates one attribute of a known tree.
+     *
+     * @return {@code false} when the tree or the attribute is not kept.
+     */
+    synchronized boolean update(String id, String attributeName, Object value) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            return false;
+        }
+        if (Asset.LOCATION.getName().equals(attributeName)) {
+            setLocation(slot, value instanceof GeoJSONPoint ? (GeoJSONPoint) value : null);
+            return true;
+        }
+        int c = column(attributeName);
+        if (c < 0) {
+            return false;
+        }
+        values[c][slot] = SortingService.toDouble(value);
+        return true;
+    }
+
+    synchronized void remove(String id) {
+        Integer slot = slots.remove(id);
+        if (slot == null) {
+            return;
+        }
+        // Move the last row into the gap to keep the arrays dense
+        int i = slot;
+        int moved = --size;
+        if (i != moved) {
+            ids[i] = ids[moved];
+            parentIds[i] = parentIds[moved];
+            realms[i] = realms[moved];
+            longitudes[i] = longitudes[moved];
+            latitudes[i] = latitudes[moved];
+            for (double[] column : values) {
+                column[i] = column[moved];
+            }
+            slots.put(ids[i], i);
+        }
+        ids[moved] = null;
+        parentIds[moved] = null;
+        realms[moved] = null;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized boolean contains(String id) {
+        return slots.containsKey(id);
+    }
+
+    /**
+     * Copies the rows of a realm.
+     *
+     * @param realm   The realm to copy, or {@code null} for all realms.
+     * @param columns The columns to copy, see {@link #column}.
+     */
+    synchronized View view(String realm, int... columns) {
+        int rows = 0;
+        int[] selected = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (realm == null || realm.equals(realms[i])) {
+                selected[rows++] = i;
+            }
+        }
+        View view = new View(rows, columns.length);
+        for (int r = 0; r < rows; r++) {
+            int i = selected[r];
+            view.ids[r] = ids[i];
+            view.parentIds[r] = parentIds[i];
+            view.realms[r] = realms[i];
+            view.longitudes[r] = longitudes[i];
+            view.latitudes[r] = latitudes[i];
+            for (int c = 0; c < columns.length; c++) {
+                view.values[c][r] = values[columns[c]][i];
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Selects the trees with the lowest values of a column, skipping missing values. The column is read in place, so
+     * nothing is copied per tree.
+     *
+     * @param realm  The realm to select from, or {@code null} for all realms.
+     * @param column The column to rank on, see {@link #column}.
+     * @return The IDs of the trees, lowest value first.
+     */
+    synchronized List<String> lowest(String realm, int column, int limit) {
+        double[] ranked = values[column];
+        if (limit <= 0 || size == 0) {
+            return new ArrayList<>();
+        }
+        // Insertion into a small sorted buffer, the limit is tiny compared to the number of trees
+        int[] rows = new int[Math.min(limit, size)];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            double value = ranked[i];
+            if (Double.isNaN(value) || (count == rows.length && value >= ranked[rows[count - 1]])
+                    || (realm != null && !realm.equals(realms[i]))) {
+                continue;
+            }
+            int position = count < rows.length ? count++ : count - 1;
+            while (position > 0 && ranked[rows[position - 1]] > value) {
+                rows[position] = rows[position - 1];
+                position--;
+            }
+            rows[position] = i;
+        }
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(ids[rows[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Scores the trees of a realm on the columns in place; only the row numbers of the realm are collected.
+     *
+     * @param realm   The realm to score, or {@code null} for all realms.
+     * @param columns The columns of the attributes of the expression, in expression order, see {@link #column}.
+     * @return The IDs of the highest scoring trees and their scores, highest score first.
+     */
+    synchronized Map<String, Double> top(String realm, ScoreExpression score, int[] columns, int limit) {
+        int[] selected = null;
+        int rows = size;
+        if (realm != null) {
+            selected = new int[size];
+            rows = 0;
+            for (int i = 0; i < size; i++) {
+                if (realm.equals(realms[i])) {
+                    selected[rows++] = i;
+                }
+            }
+        }
+        double[][] scored = new double[columns.length][];
+        for (int c = 0; c < columns.length; c++) {
+            scored[c] = values[columns[c]];
+        }
+        double[] scores = new double[rows];
+        int[] top = score.top(scored, selected, rows, limit, scores);
+        Map<String, Double> result = new LinkedHashMap<>(top.length * 2);
+        for (int position : top) {
+            result.put(ids[selected != null ? selected[position] : position], scores[position]);
+        }
+        return result;
+    }
+
+    /**
+     * Copies a single tree.
+     *
+     * @param columns The columns to copy, see {@link #column}.
+     * @return The row of the tree, or {@code null} when the tree is not kept.
+     */
+    synchronized View row(String id, int... columns) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            return null;
+        }
+        int i = slot;
+        View view = new View(1, columns.length);
+        view.ids[0] = ids[i];
+        view.parentIds[0] = parentIds[i];
+        view.realms[0] = realms[i];
+        view.longitudes[0] = longitudes[i];
+        view.latitudes[0] = latitudes[i];
+        for (int c = 0; c < columns.length; c++) {
+            view.values[c][0] = values[columns[c]][i];
+        }
+        return view;
+    }
+
+    /**
+     * Estimates the heap used by the arrays, excluding the id strings that are shared with the rest of the manager.
+     */
+    synchronized long estimatedBytes() {
+        int capacity = ids.length;
+        return (long) capacity * (3 * 4 + (2 + COLUMNS.length) * 8) + slots.size() * 48L;
+    }
+
+    private void setLocation(int i, GeoJSONPoint point) {
+        longitudes[i] = point != null ? point.getX() : Double.NaN;
+        latitudes[i] = point != null ? point.getY() : Double.NaN;
+    }
+
+    private int allocate(String id) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            parentIds = Arrays.copyOf(parentIds, capacity);
+            realms = Arrays.copyOf(realms, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            for (int c = 0; c < values.length; c++) {
+                values[c] = Arrays.copyOf(values[c], capacity);
+            }
+        }
+        int i = size++;
+        ids[i] = id;
+        slots.put(id, i);
+        return i;
+    }
+
+    /**
+     * Rows of the snapshot copied for one request. Locations and values are {@link Double#NaN} when missing.
+     */
+    static final class View {
+        final int size;
+        final String[] ids;
+        final String[] parentIds;
+        final String[] realms;
+        final double[] longitudes;
+        final double[] latitudes;
+        /**
+         * Values indexed by requested column, then row.
+         */
+        final double[][] values;
+
+        private View(int size, int columns) {
+            this.size = size;
+            ids = new String[size];
+            parentIds = new String[size];
+            realms = new String[size];
+            longitudes = new double[size];
+            latitudes = new double[size];
+            values = new double[columns][size];
+        }
+    }
+}
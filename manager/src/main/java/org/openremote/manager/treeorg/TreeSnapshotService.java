@@ -0,0 +1,283 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.event.ClientEventService;
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.AssetEvent;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.treeorg.TreeAsset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a {@link TreeSnapshot} of all trees so ranking and routing can work on primitive columns instead of loading
+ * every tree with its attributes and meta items for each request. The snapshot is loaded in the background by the
+ * {@link TreeOrgWarmupService} and then kept current from attribute and asset events; full assets are only loaded for
+ * the few trees a request returns.
+ */
+public class TreeSnapshotService implements ContainerService {
+
+    private static final Logger LOG = Logger.getLogger(TreeSnapshotService.class.getName());
+
+    private final TreeSnapshot snapshot = new TreeSnapshot();
+    private final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean loaded;
+    /**
+     * Events received while the trees are loaded, applied in order once the load has finished; {@code null} when no
+     * load is running.
+     */
+    private volatile List<Runnable> pendingEvents;
+    private final Object pendingLock = new Object();
+    private AssetStorageService assetStorageService;
+    private ClientEventService clientEventService;
+    private TreeOrgWarmupService treeOrgWarmupService;
+
+    @Override
+    public void init(Container container) throws Exception {
+        assetStorageService = container.getService(AssetStorageService.class);
+        clientEventService = container.getService(ClientEventService.class);
+        treeOrgWarmupService = container.getService(TreeOrgWarmupService.class);
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+        // Subscribe before loading, so changes made while the trees are loaded are not missed
+        if (clientEventService != null) {
+            clientEventService.addInternalSubscription(AttributeEvent.class, null, this::onAttributeEvent);
+            clientEventService.addInternalSubscription(AssetEvent.class, null, this::onAssetEvent);
+        }
+        if (treeOrgWarmupService != null) {
+            treeOrgWarmupService.submit("treeSnapshot", this::load);
+        }
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+    }
+
+    protected void onAttributeEvent(AttributeEvent event) {
+        if (!deferred(() -> applyAttributeEvent(event))) {
+            applyAttributeEvent(event);
+        }
+    }
+
+    protected void onAssetEvent(AssetEvent event) {
+        if (!deferred(() -> applyAssetEvent(event))) {
+            applyAssetEvent(event);
+        }
+    }
+
+    /**
+     * Queues an event while the trees are loaded; the loaded values may be older than the event, so applying it right
+     * away could be undone by the load.
+     *
+     * @return {@code true} if the event was queued.
+     */
+    private boolean deferred(Runnable event) {
+        if (pendingEvents == null) {
+            return false;
+        }
+        synchronized (pendingLock) {
+            if (pendingEvents == null) {
+                return false;
+            }
+            pendingEvents.add(event);
+            return true;
+        }
+    }
+
+    private void applyAttributeEvent(AttributeEvent event) {
+        if (snapshot.update(event.getId(), event.getName(), event.getValue().orElse(null))) {
+            notifyChanged(event.getId());
+        }
+    }
+
+    private void applyAssetEvent(AssetEvent event) {
+        if (event.getCause() == AssetEvent.Cause.DELETE) {
+            if (snapshot.contains(event.getId())) {
+                snapshot.remove(event.getId());
+                notifyChanged(event.getId());
+            }
+        } else if (event.getAsset() instanceof TreeAsset) {
+            snapshot.put(event.getAsset());
+            notifyChanged(event.getId());
+        }
+    }
+
+    /**
+     * Adds a listener that is called with the ID of a tree after it was added, changed or removed.
+     */
+    void addChangeListener(Consumer<String> listener) {
+        changeListeners.add(listener);
+    }
+
+    private void notifyChanged(String id) {
+        for (Consumer<String> listener : changeListeners) {
+            try {
+                listener.accept(id);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Tree snapshot change listener failed for tree: " + id, e);
+            }
+        }
+    }
+
+    /**
+     * Loads all trees; until it has, and when it fails, ranking and routing read trees from the database. Events that
+     * arrive during the load are queued and applied on top of the loaded trees, so a tree deleted or changed while
+     * loading does not come back with its stored values.
+     */
+    protected void load() {
+        synchronized (pendingLock) {
+            pendingEvents = new ArrayList<>();
+        }
+        try {
+            for (Asset<?> asset : assetStorageService.findAll(new AssetQuery().types(TreeAsset.class))) {
+                snapshot.put(asset);
+            }
+        } finally {
+            // Apply the queued events outside the lock and switch back to applying events directly once none are left
+            while (true) {
+                List<Runnable> events;
+                synchronized (pendingLock) {
+                    events = pendingEvents;
+                    if (events.isEmpty()) {
+                        pendingEvents = null;
+                        break;
+                    }
+                    pendingEvents = new ArrayList<>();
+                }
+                events.forEach(Runnable::run);
+            }
+        }
+        loaded = true;
+        LOG.info("Loaded snapshot of " + snapshot.size() + " trees using about " + snapshot.estimatedBytes() / 1024 + " KiB");
+    }
+
+    /**
+     * Adds or replaces a tree in the snapshot.
+     */
+    public void put(Asset<?> asset) {
+        snapshot.put(asset);
+        notifyChanged(asset.getId());
+    }
+
+    /**
+     * Marks the snapshot as complete; for use when it is filled through {@link #put} instead of {@link #load}.
+     */
+    public void setLoaded(boolean loaded) {
+        this.loaded = loaded;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Copies the trees of a realm with the requested attribute values.
+     *
+     * @param realm          The realm, or {@code null} for all realms.
+     * @param attributeNames The attributes to copy, in the order of {@link TreeSnapshot.View#values}.
+     * @return The view, or {@code null} when the snapshot is not loaded yet or does not keep one of the attributes.
+     */
+    TreeSnapshot.View view(String realm, String... attributeNames) {
+        if (!loaded) {
+            return null;
+        }
+        int[] columns = new int[attributeNames.length];
+        for (int a = 0; a < attributeNames.length; a++) {
+            columns[a] = TreeSnapshot.column(attributeNames[a]);
+            if (columns[a] < 0) {
+                return null;
+            }
+        }
+        return snapshot.view(realm, columns);
+    }
+
+    /**
+     * Selects the trees of a realm with the lowest values of an attribute without copying the realm, see
+     * {@link TreeSnapshot#lowest}.
+     *
+     * @param realm The realm, or {@code null} for all realms.
+     * @return The IDs of the trees, lowest value first, or {@code null} when the snapshot is not loaded yet or does not
+     * keep the attribute.
+     */
+    List<String> lowest(String realm, String attributeName, int limit) {
+        int column = TreeSnapshot.column(attributeName);
+        if (!loaded || column < 0) {
+            return null;
+        }
+        return snapshot.lowest(realm, column, limit);
+    }
+
+    /**
+     * Finds the highest scoring trees of a realm without copying the realm, see {@link TreeSnapshot#top}.
+     *
+     * @param realm The realm, or {@code null} for all realms.
+     * @return The IDs of the trees and their scores, highest score first, or {@code null} when the snapshot is not
+     * loaded yet or does not keep one of the attributes of the expression.
+     */
+    Map<String, Double> top(String realm, ScoreExpression score, int limit) {
+        if (!loaded) {
+            return null;
+        }
+        String[] attributeNames = score.getAttributeNames();
+        int[] columns = new int[attributeNames.length];
+        for (int a = 0; a < attributeNames.length; a++) {
+            columns[a] = TreeSnapshot.column(attributeNames[a]);
+            if (columns[a] < 0) {
+                return null;
+            }
+        }
+        return snapshot.top(realm, score, columns, limit);
+    }
+
+    /**
+     * Copies a single tree with the requested attribute values.
+     *
+     * @return The row, or {@code null} when the tree is not in the snapshot or an attribute is not kept.
+     */
+    TreeSnapshot.View row(String id, String... attributeNames) {
+        int[] columns = new int[attributeNames.length];
+        for (int a = 0; a < attributeNames.length; a++) {
+            columns[a] = TreeSnapshot.column(attributeNames[a]);
+            if (columns[a] < 0) {
+                return null;
+            }
+        }
+        return snapshot.row(id, columns);
+    }
+
+    /**
+     * Loads the assets with the given IDs in a single query.
+     *
+     * @return The assets in the order of the IDs; assets that no longer exist are left out.
+     */
+    public List<Asset<?>> findAssets(List<String> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Asset<?>> assetsById = new HashMap<>(ids.size() * 2);
+        for (Asset<?> asset : assetStorageService.findAll(new AssetQuery().ids(ids.toArray(new String[0])))) {
+            assetsById.put(asset.getId(), asset);
+        }
+        List<Asset<?>> assets = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Asset<?> asset = assetsById.get(id);
+            if (asset != null) {
+                assets.add(asset);
+            }
+        }
+        return assets;
+    }
+}
@@ -0,0 +1,179 @@
+package org.openremote.manager.treeorg;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spatial index of the trees of one realm for map tiles. Trees are sorted by the Morton (Z-order) code of their Web
+ * Mercator tile at {@link #MAX_ZOOM}; because a Morton code starts with the codes of all coarser tiles that contain it,
+ * the trees of any tile, and of any cell within a tile, are a contiguous range found by binary search.
+ * <p>
+ * The locations and the set of trees are fixed once built; sensor values can be updated in place. Trees without a
+ * location are left out.
+ */
+final class TreeTileIndex {
+
+    /**
+     * Zoom level of the Morton codes; one tile at this zoom is a few meters wide.
+     */
+    static final int MAX_ZOOM = 24;
+    private static final double MAX_LATITUDE = 85.05112878d;
+
+    final int size;
+    final String[] ids;
+    final double[] longitudes;
+    final double[] latitudes;
+    /**
+     * Values indexed by column of the view the index was built from, then row.
+     */
+    final double[][] values;
+    private final long[] codes;
+    private final Map<String, Integer> rows;
+
+    /**
+     * Builds the index from the rows of a snapshot view.
+     */
+    TreeTileIndex(TreeSnapshot.View view) {
+        int located = 0;
+        long[] sortKeys = new long[view.size];
+        int[] order = new int[view.size];
+        for (int r = 0; r < view.size; r++) {
+            if (Double.isNaN(view.longitudes[r]) || Double.isNaN(view.latitudes[r])) {
+                continue;
+            }
+            sortKeys[located] = locationCode(view.longitudes[r], view.latitudes[r]);
+            order[located++] = r;
+        }
+        sort(sortKeys, order, located);
+
+        size = located;
+        ids = new String[size];
+        longitudes = new double[size];
+        latitudes = new double[size];
+        values = new double[view.values.length][size];
+        codes = new long[size];
+        rows = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            int r = order[i];
+            ids[i] = view.ids[r];
+            longitudes[i] = view.longitudes[r];
+            latitudes[i] = view.latitudes[r];
+            for (int c = 0; c < values.length; c++) {
+                values[c][i] = view.values[c][r];
+            }
+            codes[i] = sortKeys[i];
+            rows.put(ids[i], i);
+        }
+    }
+
+    /**
+     * @return The row of a tree, or -1 when the tree is not in the index.
+     */
+    int row(String id) {
+        Integer row = rows.get(id);
+        return row != null ? row : -1;
+    }
+
+    /**
+     * Finds the first row at or after the start of a tile; the rows of the tile end at the start of the next tile.
+     *
+     * @param zoom The zoom level, at most {@link #MAX_ZOOM}.
+     * @param code The Morton code of the tile at that zoom, see {@link #tileCode}.
+     */
+    int firstRow(int zoom, long code) {
+        long start = code << (2 * (MAX_ZOOM - zoom));
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (codes[mid] < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The Morton code of a row at the given zoom level.
+     */
+    long code(int row, int zoom) {
+        return codes[row] >>> (2 * (MAX_ZOOM - zoom));
+    }
+
+    /**
+     * @return The Morton code of the tile at {@link #MAX_ZOOM} that contains the location.
+     */
+    static long locationCode(double longitude, double latitude) {
+        return tileCode(tileX(longitude, MAX_ZOOM), tileY(latitude, MAX_ZOOM));
+    }
+
+    /**
+     * Interleaves the bits of tile coordinates, x before y.
+     */
+    static long tileCode(int x, int y) {
+        return (spread(x) << 1) | spread(y);
+    }
+
+    static int tileX(double longitude, int zoom) {
+        int tiles = 1 << zoom;
+        int x = (int) Math.floor((longitude + 180d) / 360d * tiles);
+        return Math.max(0, Math.min(tiles - 1, x));
+    }
+
+    static int tileY(double latitude, int zoom) {
+        int tiles = 1 << zoom;
+        double lat = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        int y = (int) Math.floor((1d - Math.log(Math.tan(lat) + 1d / Math.cos(lat)) / Math.PI) / 2d * tiles);
+        return Math.max(0, Math.min(tiles - 1, y));
+    }
+
+    private static long spread(int value) {
+        long v = value & 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    /**
+     * Sorts the keys and applies the same permutation to the rows, without boxing.
+     */
+    static void sort(long[] keys, int[] rows, int length) {
+        if (length < 2) {
+            return;
+        }
+        long[] keyBuffer = new long[length];
+        int[] rowBuffer = new int[length];
+        // Bottom-up merge sort, stable so trees on the same spot keep the snapshot order
+        for (int width = 1; width < length; width *= 2) {
+            for (int from = 0; from < length; from += 2 * width) {
+                int middle = Math.min(from + width, length);
+                int to = Math.min(from + 2 * width, length);
+                int left = from, right = middle, out = from;
+                while (left < middle && right < to) {
+                    if (keys[right] < keys[left]) {
+                        keyBuffer[out] = keys[right];
+                        rowBuffer[out++] = rows[right++];
+                    } else {
+                        keyBuffer[out] = keys[left];
+                        rowBuffer[out++] = rows[left++];
+                    }
+                }
+                while (left < middle) {
+                    keyBuffer[out] = keys[left];
+                    rowBuffer[out++] = rows[left++];
+                }
+                while (right < to) {
+                    keyBuffer[out] = keys[right];
+                    rowBuffer[out++] = rows[right++];
+                }
+            }
+            System.arraycopy(keyBuffer, 0, keys, 0, length);
+            System.arraycopy(rowBuffer, 0, rows, 0, length);
+        }
+    }
+}
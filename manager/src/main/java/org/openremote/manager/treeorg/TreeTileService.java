@@ -0,0 +1,285 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+import org.openremote.model.treeorg.TreeAsset;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.openremote.container.util.MapAccess.getInteger;
+
+/**
+ * Serves the trees of a realm as clustered GeoJSON per z/x/y map tile, so maps never have to load every tree. Tiles
+ * are rendered from a {@link TreeTileIndex} built on the {@link TreeSnapshotService} snapshot and kept in an LRU cache.
+ * When a tree changes only the tiles that contain it are evicted, one per zoom level.
+ * <p>
+ * Below {@link #CLUSTER_MAX_ZOOM} the trees of each cell of a 64 by 64 grid per tile are merged into one cluster
+ * feature. A cluster is placed at the mean location of its trees and carries the lowest water level, the highest soil
+ * temperature and the number of priority trees, so a map can style a cluster by its most urgent tree.
+ */
+public class TreeTileService implements ContainerService {
+
+    private static final Logger LOG = Logger.getLogger(TreeTileService.class.getName());
+    public static final String TREEORG_TILE_CACHE_SIZE = "TREEORG_TILE_CACHE_SIZE";
+    public static final int TREEORG_TILE_CACHE_SIZE_DEFAULT = 4096;
+    public static final int MAX_TILE_ZOOM = 22;
+    /**
+     * From this zoom level on every tree is a feature of its own.
+     */
+    public static final int CLUSTER_MAX_ZOOM = 17;
+    /**
+     * Tiles are split into 2^6 = 64 cells per axis for clustering, 4 pixels on a 256 pixel tile.
+     */
+    static final int CLUSTER_GRID_BITS = 6;
+    static final String[] TILE_ATTRIBUTES = {
+            TreeAsset.WATER_LEVEL.getName(),
+            TreeAsset.SOIL_TEMPERATURE.getName(),
+            TreeAsset.PRIORITY.getName()
+    };
+    private static final int VALUE_DECIMALS = 2;
+
+    private final Map<String, TreeTileIndex> indexes = new ConcurrentHashMap<>();
+    private final Set<String> staleRealms = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private Map<String, String> tiles;
+    private TreeSnapshotService treeSnapshotService;
+
+    @Override
+    public void init(Container container) throws Exception {
+        treeSnapshotService = container.getService(TreeSnapshotService.class);
+        int cacheSize = container.getConfig() != null
+                ? getInteger(container.getConfig(), TREEORG_TILE_CACHE_SIZE, TREEORG_TILE_CACHE_SIZE_DEFAULT)
+                : TREEORG_TILE_CACHE_SIZE_DEFAULT;
+        tiles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+        if (treeSnapshotService != null) {
+            treeSnapshotService.addChangeListener(this::onTreeChanged);
+        }
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+    }
+
+    /**
+     * Gets the trees of a realm within a Web Mercator tile as a GeoJSON FeatureCollection.
+     *
+     * @return The tile, or {@code null} while the tree snapshot is still loading.
+     * @throws IllegalArgumentException if the tile does not exist.
+     */
+    public String getTile(String realm, int zoom, int x, int y) {
+        if (zoom < 0 || zoom > MAX_TILE_ZOOM || x < 0 || y < 0 || x >= 1 << zoom || y >= 1 << zoom) {
+            throw new IllegalArgumentException("Invalid tile: " + zoom + "/" + x + "/" + y);
+        }
+        String key = tileKey(realm, zoom, x, y);
+        synchronized (tiles) {
+            String tile = tiles.get(key);
+            if (tile != null) {
+                return tile;
+            }
+        }
+
+        AtomicLong generation = generation(realm);
+        long renderedGeneration = generation.get();
+        TreeTileIndex index = index(realm);
+        if (index == null) {
+            return null;
+        }
+        String tile = render(index, zoom, x, y);
+        // A tree changed while rendering: serve the tile but do not cache it, it may already be outdated
+        synchronized (tiles) {
+            if (generation.get() == renderedGeneration) {
+                tiles.put(key, tile);
+            }
+        }
+        return tile;
+    }
+
+    public int getCachedTiles() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    protected void onTreeChanged(String id) {
+        TreeSnapshot.View current = treeSnapshotService.row(id, TILE_ATTRIBUTES);
+        String previousRealm = null;
+        TreeTileIndex previousIndex = null;
+        int previousRow = -1;
+        for (Map.Entry<String, TreeTileIndex> entry : indexes.entrySet()) {
+            int row = entry.getValue().row(id);
+            if (row >= 0) {
+                previousRealm = entry.getKey();
+                previousIndex = entry.getValue();
+                previousRow = row;
+                break;
+            }
+        }
+        String realm = current != null ? current.realms[0] : null;
+        if (previousRealm != null) {
+            generation(previousRealm).incrementAndGet();
+        }
+        if (realm != null) {
+            generation(realm).incrementAndGet();
+        }
+
+        if (previousIndex != null && current != null && previousRealm.equals(realm)
+                && previousIndex.longitudes[previousRow] == current.longitudes[0]
+                && previousIndex.latitudes[previousRow] == current.latitudes[0]) {
+            // Only values changed, the index stays valid
+            for (int c = 0; c < TILE_ATTRIBUTES.length; c++) {
+                previousIndex.values[c][previousRow] = current.values[c][0];
+            }
+            evict(realm, current.longitudes[0], current.latitudes[0]);
+            return;
+        }
+        if (previousIndex != null) {
+            staleRealms.add(previousRealm);
+            evict(previousRealm, previousIndex.longitudes[previousRow], previousIndex.latitudes[previousRow]);
+        }
+        if (current != null && !Double.isNaN(current.longitudes[0]) && !Double.isNaN(current.latitudes[0])) {
+            staleRealms.add(realm);
+            evict(realm, current.longitudes[0], current.latitudes[0]);
+        }
+    }
+
+    /**
+     * Evicts the cached tiles that contain a location, one per zoom level.
+     */
+    private void evict(String realm, double longitude, double latitude) {
+        synchronized (tiles) {
+            for (int zoom = 0; zoom <= MAX_TILE_ZOOM; zoom++) {
+                tiles.remove(tileKey(realm, zoom, TreeTileIndex.tileX(longitude, zoom), TreeTileIndex.tileY(latitude, zoom)));
+            }
+        }
+    }
+
+    private TreeTileIndex index(String realm) {
+        TreeTileIndex index = indexes.get(realm);
+        if (index != null && !staleRealms.contains(realm)) {
+            return index;
+        }
+        if (treeSnapshotService == null) {
+            return null;
+        }
+        // Clear the flag before copying the snapshot, so changes made while building mark the index stale again
+        staleRealms.remove(realm);
+        TreeSnapshot.View view = treeSnapshotService.view(realm, TILE_ATTRIBUTES);
+        if (view == null) {
+            return null;
+        }
+        index = new TreeTileIndex(view);
+        indexes.put(realm, index);
+        LOG.fine("Built tile index of " + index.size + " trees for realm: " + realm);
+        return index;
+    }
+
+    private AtomicLong generation(String realm) {
+        return generations.computeIfAbsent(realm, r -> new AtomicLong());
+    }
+
+    private static String tileKey(String realm, int zoom, int x, int y) {
+        return realm + '/' + zoom + '/' + x + '/' + y;
+    }
+
+    /**
+     * Renders a tile; the rows of one cluster are a contiguous range of the index.
+     */
+    static String render(TreeTileIndex index, int zoom, int x, int y) {
+        long tile = TreeTileIndex.tileCode(x, y);
+        int from = index.firstRow(zoom, tile);
+        int to = index.firstRow(zoom, tile + 1);
+        int cellZoom = zoom < CLUSTER_MAX_ZOOM ? Math.min(zoom + CLUSTER_GRID_BITS, TreeTileIndex.MAX_ZOOM) : -1;
+
+        StringBuilder json = new StringBuilder(64 + (to - from) * 64);
+        json.append("{\"type\":\"FeatureCollection\",\"features\":[");
+        boolean first = true;
+        int start = from;
+        while (start < to) {
+            int end = start + 1;
+            if (cellZoom >= 0) {
+                long cell = index.code(start, cellZoom);
+                while (end < to && index.code(end, cellZoom) == cell) {
+                    end++;
+                }
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            if (end - start == 1) {
+                appendTree(json, index, start);
+            } else {
+                appendCluster(json, index, start, end);
+            }
+            start = end;
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void appendTree(StringBuilder json, TreeTileIndex index, int row) {
+        json.append("{\"type\":\"Feature\",\"id\":\"").append(index.ids[row]).append('"');
+        appendPoint(json, index.longitudes[row], index.latitudes[row]);
+        json.append(",\"properties\":{\"id\":\"").append(index.ids[row]).append('"');
+        appendValue(json, "waterLevel", index.values[0][row]);
+        appendValue(json, "soilTemperature", index.values[1][row]);
+        json.append(",\"priority\":").append(index.values[2][row] > 0d);
+        json.append("}}");
+    }
+
+    private static void appendCluster(StringBuilder json, TreeTileIndex index, int from, int to) {
+        double longitude = 0d, latitude = 0d;
+        double waterLevel = Double.NaN, soilTemperature = Double.NaN;
+        int priority = 0;
+        for (int row = from; row < to; row++) {
+            longitude += index.longitudes[row];
+            latitude += index.latitudes[row];
+            // Math.min and Math.max return NaN when either value is NaN, so missing values are skipped explicitly
+            double level = index.values[0][row];
+            if (!Double.isNaN(level) && (Double.isNaN(waterLevel) || level < waterLevel)) {
+                waterLevel = level;
+            }
+            double temperature = index.values[1][row];
+            if (!Double.isNaN(temperature) && (Double.isNaN(soilTemperature) || temperature > soilTemperature)) {
+                soilTemperature = temperature;
+            }
+            if (index.values[2][row] > 0d) {
+                priority++;
+            }
+        }
+        int count = to - from;
+        json.append("{\"type\":\"Feature\"");
+        appendPoint(json, longitude / count, latitude / count);
+        json.append(",\"properties\":{\"cluster\":true,\"count\":").append(count);
+        appendValue(json, "waterLevel", waterLevel);
+        appendValue(json, "soilTemperature", soilTemperature);
+        json.append(",\"priority\":").append(priority);
+        json.append("}}");
+    }
+
+    private static void appendPoint(StringBuilder json, double longitude, double latitude) {
+        json.append(",\"geometry\":{\"type\":\"Point\",\"coordinates\":[");
+        RouteRenderer.appendFixed(json, longitude, RouteRenderer.COORDINATE_DECIMALS).append(',');
+        RouteRenderer.appendFixed(json, latitude, RouteRenderer.COORDINATE_DECIMALS).append("]}");
+    }
+
+    private static void appendValue(StringBuilder json, String name, double value) {
+        if (!Double.isNaN(value)) {
+            json.append(",\"").append(name).append("\":");
+            RouteRenderer.appendFixed(json, value, VALUE_DECIMALS);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.openremote.manager.treeorg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rolling water level aggregates per tree in parallel primitive arrays. Each reading updates an exponentially
+ * weighted moving average, an exponentially weighted least squares fit of level against time and the minimum and
+ * maximum of the current and previous window in constant time.
+ * <p>
+ * The regression sums are kept relative to the time of the latest reading so they stay small: when a reading arrives
+ * {@code dt} hours later the sums are shifted by {@code -dt}, decayed by {@code exp(-dt / tau)} and the new point is
+ * added at time zero.
+ */
+final class TreeTrendStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final double MILLIS_PER_HOUR = 3_600_000d;
+    /**
+     * Minimum total weight before a trend is reported, i.e. roughly two recent readings.
+     */
+    private static final double MIN_TREND_WEIGHT = 1.5d;
+
+    private final double tauHours;
+    private final long windowMillis;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private String[] realms = new String[INITIAL_CAPACITY];
+    private long[] lastTime = new long[INITIAL_CAPACITY];
+    private long[] windowStart = new long[INITIAL_CAPACITY];
+    private double[] last = new double[INITIAL_CAPACITY];
+    private double[] ewma = new double[INITIAL_CAPACITY];
+    private double[] min = new double[INITIAL_CAPACITY];
+    private double[] max = new double[INITIAL_CAPACITY];
+    private double[] previousMin = new double[INITIAL_CAPACITY];
+    private double[] previousMax = new double[INITIAL_CAPACITY];
+    // Weighted sums of 1, t, t^2, v and t * v for the regression
+    private double[] sw = new double[INITIAL_CAPACITY];
+    private double[] st = new double[INITIAL_CAPACITY];
+    private double[] stt = new double[INITIAL_CAPACITY];
+    private double[] sv = new double[INITIAL_CAPACITY];
+    private double[] stv = new double[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @param tauHours     Time constant of the moving average and the regression weights.
+     * @param windowMillis Length of a min/max window.
+     */
+    TreeTrendStore(double tauHours, long windowMillis) {
+        this.tauHours = tauHours;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Adds a reading; readings older than the latest reading of the tree are ignored.
+     *
+     * @param realm The realm of the tree, or {@code null} to keep the known realm.
+     */
+    synchronized void record(String id, String realm, long time, double value) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            int i = allocate(id);
+            realms[i] = realm;
+            lastTime[i] = time;
+            windowStart[i] = time;
+            last[i] = value;
+            ewma[i] = value;
+            min[i] = max[i] = previousMin[i] = previousMax[i] = value;
+            sw[i] = 1d;
+            sv[i] = value;
+            return;
+        }
+        int i = slot;
+        if (realm != null) {
+            realms[i] = realm;
+        }
+        if (time < lastTime[i]) {
+            return;
+        }
+        double dt = (time - lastTime[i]) / MILLIS_PER_HOUR;
+        double decay = Math.exp(-dt / tauHours);
+
+        ewma[i] += (1d - decay) * (value - ewma[i]);
+
+        stt[i] = decay * (stt[i] - 2d * dt * st[i] + dt * dt * sw[i]);
+        stv[i] = decay * (stv[i] - dt * sv[i]);
+        st[i] = decay * (st[i] - dt * sw[i]);
+        sv[i] = decay * sv[i] + value;
+        sw[i] = decay * sw[i] + 1d;
+
+        if (time - windowStart[i] >= windowMillis) {
+            previousMin[i] = min[i];
+            previousMax[i] = max[i];
+            min[i] = max[i] = value;
+            windowStart[i] = time;
+        } else {
+            min[i] = Math.min(min[i], value);
+            max[i] = Math.max(max[i], value);
+        }
+        last[i] = value;
+        lastTime[i] = time;
+    }
+
+    synchronized void remove(String id) {
+        Integer slot = slots.remove(id);
+        if (slot == null) {
+            return;
+        }
+        // Move the last slot into the gap to keep the arrays dense
+        int i = slot;
+        int moved = --size;
+        if (i != moved) {
+            ids[i] = ids[moved];
+            realms[i] = realms[moved];
+            lastTime[i] = lastTime[moved];
+            windowStart[i] = windowStart[moved];
+            last[i] = last[moved];
+            ewma[i] = ewma[moved];
+            min[i] = min[moved];
+            max[i] = max[moved];
+            previousMin[i] = previousMin[moved];
+            previousMax[i] = previousMax[moved];
+            sw[i] = sw[moved];
+            st[i] = st[moved];
+            stt[i] = stt[moved];
+            sv[i] = sv[moved];
+            stv[i] = stv[moved];
+            slots.put(ids[i], i);
+        }
+        ids[moved] = null;
+        realms[moved] = null;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The forecast for a tree, or {@code null} when it has no readings.
+     */
+    synchronized DroughtForecast forecast(String id, double criticalLevel, long now) {
+        Integer slot = slots.get(id);
+        return slot != null ? forecast(slot, criticalLevel, now) : null;
+    }
+
+    /**
+     * @param realm The realm to include, or {@code null} for all realms.
+     * @return The forecasts of the trees, in no particular order.
+     */
+    synchronized List<DroughtForecast> forecasts(String realm, double criticalLevel, long now) {
+        List<DroughtForecast> forecasts = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (realm == null || realm.equals(realms[i])) {
+                forecasts.add(forecast(i, criticalLevel, now));
+            }
+        }
+        return forecasts;
+    }
+
+    private DroughtForecast forecast(int i, double criticalLevel, long now) {
+        double slope = slope(i);
+        Double hoursUntilCritical = null;
+        if (last[i] <= criticalLevel) {
+            hoursUntilCritical = 0d;
+        } else if (slope < 0d) {
+            // Extrapolate the fitted level at the latest reading
+            double level = sv[i] / sw[i] - slope * st[i] / sw[i];
+            double hoursSinceReading = Math.max(0d, (now - lastTime[i]) / MILLIS_PER_HOUR);
+            hoursUntilCritical = Math.max(0d, (level - criticalLevel) / -slope - hoursSinceReading);
+        }
+        return new DroughtForecast(ids[i], last[i], ewma[i], Math.min(min[i], previousMin[i]),
+                Math.max(max[i], previousMax[i]), Double.isNaN(slope) ? 0d : slope, hoursUntilCritical, lastTime[i]);
+    }
+
+    private double slope(int i) {
+        double denominator = sw[i] * stt[i] - st[i] * st[i];
+        if (sw[i] < MIN_TREND_WEIGHT || denominator <= 1e-12) {
+            return Double.NaN;
+        }
+        return (sw[i] * stv[i] - st[i] * sv[i]) / denominator;
+    }
+
+    private int allocate(String id) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            realms = Arrays.copyOf(realms, capacity);
+            lastTime = Arrays.copyOf(lastTime, capacity);
+            windowStart = Arrays.copyOf(windowStart, capacity);
+            last = Arrays.copyOf(last, capacity);
+            ewma = Arrays.copyOf(ewma, capacity);
+            min = Arrays.copyOf(min, capacity);
+            max = Arrays.copyOf(max, capacity);
+            previousMin = Arrays.copyOf(previousMin, capacity);
+            previousMax = Arrays.copyOf(previousMax, capacity);
+            sw = Arrays.copyOf(sw, capacity);
+            st = Arrays.copyOf(st, capacity);
+            stt = Arrays.copyOf(stt, capacity);
+            sv = Arrays.copyOf(sv, capacity);
+            stv = Arrays.copyOf(stv, capacity);
+        }
+        int i = size++;
+        ids[i] = id;
+        st[i] = stt[i] = stv[i] = 0d;
+        slots.put(id, i);
+        return i;
+    }
+}
@@ -0,0 +1,72 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.model.asset.Asset;
+import org.openremote.model.treeorg.TreeAsset;
+
+/**
+ * Urgency of visiting a tree, built from its water deficit, soil temperature and priority flag. Each component is
+ * normalised to [0, 1] before weighting so the total stays comparable between trees.
+ */
+public class TreeUrgency {
+
+    public static final int WATER_LEVEL_TARGET = 10000;
+    public static final double SOIL_TEMPERATURE_COMFORT = 15d;
+    public static final double SOIL_TEMPERATURE_CRITICAL = 40d;
+
+    public static final double DEFICIT_WEIGHT = 0.6d;
+    public static final double TEMPERATURE_WEIGHT = 0.25d;
+    public static final double PRIORITY_WEIGHT = 0.15d;
+
+    private final double deficit;
+    private final double temperature;
+    private final double priority;
+
+    protected TreeUrgency(double deficit, double temperature, double priority) {
+        this.deficit = deficit;
+        this.temperature = temperature;
+        this.priority = priority;
+    }
+
+    /**
+     * Computes the urgency for an asset; missing attributes contribute nothing.
+     */
+    public static TreeUrgency of(Asset<?> asset) {
+        return of(
+                asset.getAttributes().getValue(TreeAsset.WATER_LEVEL).map(Integer::doubleValue).orElse(Double.NaN),
+                asset.getAttributes().getValue(TreeAsset.SOIL_TEMPERATURE).orElse(Double.NaN),
+                asset.getAttributes().getValue(TreeAsset.PRIORITY).map(flag -> flag ? 1d : 0d).orElse(Double.NaN));
+    }
+
+    /**
+     * Computes the urgency from attribute values; {@link Double#NaN} marks a missing value, which contributes nothing.
+     *
+     * @param priority 1 for priority trees, 0 otherwise.
+     */
+    public static TreeUrgency of(double waterLevel, double soilTemperature, double priority) {
+        double deficit = Double.isNaN(waterLevel) ? 0d : clamp((WATER_LEVEL_TARGET - waterLevel) / WATER_LEVEL_TARGET);
+        double temperature = Double.isNaN(soilTemperature) ? 0d
+                : clamp((soilTemperature - SOIL_TEMPERATURE_COMFORT) / (SOIL_TEMPERATURE_CRITICAL - SOIL_TEMPERATURE_COMFORT));
+        double flag = priority > 0d ? 1d : 0d;
+        return new TreeUrgency(DEFICIT_WEIGHT * deficit, TEMPERATURE_WEIGHT * temperature, PRIORITY_WEIGHT * flag);
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0d, Math.min(1d, value));
+    }
+
+    public double getDeficit() {
+        return deficit;
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public double getPriority() {
+        return priority;
+    }
+
+    public double getTotal() {
+        return deficit + temperature + priority;
+    }
+}
@@ -0,0 +1,221 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.manager.asset.AssetProcessingService;
+import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.geo.GeoJSONPoint;
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.treeorg.VehicleAsset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Re-optimizes the route of a {@link VehicleAsset} while it is being driven. Only the stops the crew has not finished
+ * are routed, from the live location of the vehicle to its depot. The current order is the starting point: urgent
+ * trees are added by cheapest insertion and the result is improved with Or-opt, or solved exactly when few stops
+ * remain, so a re-route takes milliseconds and the crew's route only changes where it pays off. The path is open, so
+ * moves that would reverse it are not used, see {@link RouteService#improveOpenPath}.
+ * <p>
+ * Stop locations come from the {@link TreeSnapshotService}; only stops that are not in the snapshot are loaded.
+ */
+public class VehicleRouteService implements ContainerService {
+
+    private static final Logger LOG = Logger.getLogger(VehicleRouteService.class.getName());
+
+    private AssetStorageService assetStorageService;
+    private AssetProcessingService assetProcessingService;
+    private TreeSnapshotService treeSnapshotService;
+    private RouteService routeService;
+
+    @Override
+    public void init(Container container) throws Exception {
+        assetStorageService = container.getService(AssetStorageService.class);
+        assetProcessingService = container.getService(AssetProcessingService.class);
+        treeSnapshotService = container.getService(TreeSnapshotService.class);
+        routeService = container.getService(RouteService.class);
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+    }
+
+    /**
+     * Re-optimizes the unfinished stops of a vehicle from its current location and stores the new order in its
+     * {@link VehicleAsset#STOP_IDS}, after the finished stops.
+     *
+     * @param urgentIds Trees to add to the route; trees that are already on it are ignored.
+     * @return The new route, or {@code null} when the realm has no such vehicle.
+     * @throws IllegalArgumentException if the vehicle has no location.
+     */
+    public RerouteResponse reroute(String realm, String vehicleId, List<String> urgentIds) {
+        Asset<?> asset = assetStorageService.find(vehicleId);
+        if (!(asset instanceof VehicleAsset) || !realm.equals(asset.getRealm())) {
+            return null;
+        }
+        VehicleAsset vehicle = (VehicleAsset) asset;
+        GeoJSONPoint location = vehicle.getAttributes().getValue(Asset.LOCATION)
+                .orElseThrow(() -> new IllegalArgumentException("Vehicle has no location: " + vehicleId));
+        double[] start = {location.getX(), location.getY()};
+        double[] depot = depotPosition(realm, vehicle);
+
+        Set<String> completed = new LinkedHashSet<>(Arrays.asList(vehicle.getCompletedStopIds().orElse(new String[0])));
+        List<String> finished = new ArrayList<>();
+        Set<String> remaining = new LinkedHashSet<>();
+        for (String id : vehicle.getStopIds().orElse(new String[0])) {
+            if (completed.contains(id)) {
+                finished.add(id);
+            } else {
+                remaining.add(id);
+            }
+        }
+        int planned = remaining.size();
+        if (urgentIds != null) {
+            for (String id : urgentIds) {
+                if (id != null && !completed.contains(id)) {
+                    remaining.add(id);
+                }
+            }
+        }
+
+        // Planned stops come first, so node i + 1 is stop i and nodes 1..planned are the current order
+        Map<String, double[]> locations = locate(realm, new ArrayList<>(remaining));
+        List<String> stops = new ArrayList<>(remaining.size());
+        List<double[]> points = new ArrayList<>(remaining.size() + 1);
+        List<String> unrouted = new ArrayList<>();
+        int plannedNodes = 0;
+        int index = 0;
+        for (String id : remaining) {
+            double[] point = locations.get(id);
+            if (point == null) {
+                unrouted.add(id);
+            } else {
+                stops.add(id);
+                points.add(point);
+                if (index < planned) {
+                    plannedNodes++;
+                }
+            }
+            index++;
+        }
+
+        int[] order = new int[0];
+        String solver = RoutePlanService.SOLVER_WARM_START;
+        double totalDistance = RouteHeuristics.haversineDistance(start, depot);
+        if (!stops.isEmpty()) {
+            double[][] distances = openPathDistances(start, points, depot);
+            int[] previous = new int[plannedNodes];
+            for (int i = 0; i < plannedNodes; i++) {
+                previous[i] = i + 1;
+            }
+            order = RouteService.improveOpenPath(previous, distances);
+            totalDistance = RouteService.tourLength(order, distances);
+            if (stops.size() <= ExactRouteSolver.HELD_KARP_MAX_STOPS) {
+                int[] exact = ExactRouteSolver.heldKarp(distances);
+                double exactDistance = RouteService.tourLength(exact, distances);
+                if (exactDistance < totalDistance - 1e-6d) {
+                    order = exact;
+                    totalDistance = exactDistance;
+                    solver = RoutePlanService.SOLVER_HELD_KARP;
+                }
+            }
+        }
+
+        List<String> stopIds = new ArrayList<>(order.length);
+        List<double[]> route = new ArrayList<>(order.length + 2);
+        route.add(start);
+        for (int i : order) {
+            stopIds.add(stops.get(i));
+            route.add(points.get(i));
+        }
+        route.add(depot);
+
+        List<String> assigned = new ArrayList<>(finished);
+        assigned.addAll(stopIds);
+        if (assetProcessingService != null) {
+            assetProcessingService.sendAttributeEvent(new AttributeEvent(vehicleId, VehicleAsset.STOP_IDS.getName(),
+                    assigned.toArray(new String[0]), System.currentTimeMillis()));
+        }
+        if (!unrouted.isEmpty()) {
+            LOG.warning("Left " + unrouted.size() + " stops without a location out of the route of vehicle " + vehicleId + ": " + unrouted);
+        }
+        return new RerouteResponse(vehicleId, stopIds, unrouted, route, totalDistance, routeService.generateGoogleMapsLegURLs(route), solver);
+    }
+
+    /**
+     * @return The location of the depot of the vehicle, or the default starting position when the vehicle has no depot
+     * in its realm.
+     */
+    private double[] depotPosition(String realm, VehicleAsset vehicle) {
+        String depotId = vehicle.getDepotId().orElse(null);
+        Asset<?> depot = depotId != null ? assetStorageService.find(depotId) : null;
+        if (depot == null || !realm.equals(depot.getRealm())) {
+            return RouteService.DEFAULT_STARTING_POSITION;
+        }
+        return depot.getAttributes().getValue(Asset.LOCATION)
+                .map(point -> new double[]{point.getX(), point.getY()})
+                .orElse(RouteService.DEFAULT_STARTING_POSITION);
+    }
+
+    /**
+     * Finds the locations of the stops in a realm, from the tree snapshot where possible.
+     *
+     * @return Locations in [longitude, latitude] format by ID; stops without a location or in another realm are left
+     * out.
+     */
+    private Map<String, double[]> locate(String realm, List<String> ids) {
+        Map<String, double[]> locations = new HashMap<>(ids.size() * 2);
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            TreeSnapshot.View row = treeSnapshotService != null ? treeSnapshotService.row(id) : null;
+            if (row == null) {
+                missing.add(id);
+            } else if (realm.equals(row.realms[0]) && !Double.isNaN(row.longitudes[0]) && !Double.isNaN(row.latitudes[0])) {
+                locations.put(id, new double[]{row.longitudes[0], row.latitudes[0]});
+            }
+        }
+        List<Asset<?>> assets = missing.isEmpty() ? Collections.emptyList()
+                : assetStorageService.findAll(new AssetQuery().ids(missing.toArray(new String[0])));
+        for (Asset<?> asset : assets) {
+            if (realm.equals(asset.getRealm())) {
+                asset.getAttributes().getValue(Asset.LOCATION)
+                        .ifPresent(point -> locations.put(asset.getId(), new double[]{point.getX(), point.getY()}));
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Builds the distance matrix of an open path from the vehicle over the stops to the depot. Both ends are merged
+     * into node 0, leaving from the vehicle and arriving at the depot, so the closed tour solvers apply.
+     */
+    private double[][] openPathDistances(double[] start, List<double[]> points, double[] depot) {
+        List<double[]> targets = new ArrayList<>(points);
+        targets.add(depot);
+        double[][] full = routeService.distanceMatrix(start, targets);
+        int size = points.size() + 1;
+        double[][] distances = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(full[i], 0, distances[i], 0, size);
+            if (i > 0) {
+                distances[i][0] = full[i][size];
+            }
+        }
+        distances[0][0] = 0d;
+        return distances;
+    }
+}
@@ -0,0 +1,193 @@
+package org.openremote.manager.treeorg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Assigns the visits of a planning horizon to days. Every tree has a first visit that is due on a given day and, when
+ * it has a visit interval, further visits at most that many days after the previous one. Visits are taken in order of
+ * their due day, so the tightest visits are placed first, and each goes to the day within its window with the least
+ * workload after adding it. The workload of a visit is its service time plus the drive from the nearest stop already
+ * planned that day, so visits spread evenly over the days while near trees tend to end up on the same day.
+ * <p>
+ * The nearest stop is looked up in a grid of {@link #CELL_DEGREES} cells per day; when the surrounding cells are empty
+ * the drive from the nearest depot is counted instead.
+ */
+final class VisitScheduler {
+
+    /**
+     * Grid cell size in degrees, a few hundred meters at the latitudes of the Netherlands.
+     */
+    static final double CELL_DEGREES = 0.005d;
+
+    private final List<double[]> points;
+    private final double[] serviceSeconds;
+    private final int[] firstDue;
+    private final int[] intervals;
+    private final int days;
+    private final List<double[]> depots;
+    private final double[] workloads;
+    private final List<Map<Long, List<Integer>>> grids;
+
+    /**
+     * @param points         Tree locations in [longitude, latitude] format.
+     * @param serviceSeconds The time needed to water each tree.
+     * @param firstDue       The last day each tree can be visited first, counted from the first day of the horizon.
+     * @param intervals      The maximum number of days between two visits of each tree, or 0 to visit it once.
+     * @param days           The number of days of the horizon.
+     * @param depots         Depot locations in [longitude, latitude] format; must not be empty.
+     */
+    VisitScheduler(List<double[]> points, double[] serviceSeconds, int[] firstDue, int[] intervals, int days, List<double[]> depots) {
+        this.points = points;
+        this.serviceSeconds = serviceSeconds;
+        this.firstDue = firstDue;
+        this.intervals = intervals;
+        this.days = days;
+        this.depots = depots;
+        this.workloads = new double[days];
+        this.grids = new ArrayList<>(days);
+        for (int d = 0; d < days; d++) {
+            grids.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * @return The indices into the points visited on each day, in the order they were planned.
+     */
+    List<List<Integer>> schedule() {
+        List<List<Integer>> stops = new ArrayList<>(days);
+        for (int d = 0; d < days; d++) {
+            stops.add(new ArrayList<>());
+        }
+        // A visit is {tree, first day, last day}
+        PriorityQueue<int[]> visits = new PriorityQueue<>(Comparator.<int[]>comparingInt(visit -> visit[2])
+                .thenComparingInt(visit -> visit[1])
+                .thenComparingInt(visit -> visit[0]));
+        for (int i = 0; i < points.size(); i++) {
+            visits.add(new int[]{i, 0, Math.max(0, Math.min(firstDue[i], days - 1))});
+        }
+        while (!visits.isEmpty()) {
+            int[] visit = visits.poll();
+            int tree = visit[0];
+            double[] point = points.get(tree);
+            int day = visit[1];
+            double best = Double.POSITIVE_INFINITY;
+            for (int d = visit[1]; d <= visit[2]; d++) {
+                double workload = workloads[d] + serviceSeconds[tree] + nearestDistance(d, point) / RouteService.AVERAGE_SPEED;
+                if (workload < best) {
+                    best = workload;
+                    day = d;
+                }
+            }
+            workloads[day] = best;
+            stops.get(day).add(tree);
+            grids.get(day).computeIfAbsent(cell(point[0], point[1]), key -> new ArrayList<>()).add(tree);
+            // The next visit is only planned when it falls due within the horizon
+            if (intervals[tree] > 0 && day + intervals[tree] < days) {
+                visits.add(new int[]{tree, day + 1, day + intervals[tree]});
+            }
+        }
+        return stops;
+    }
+
+    /**
+     * @return The estimated workload of each day in seconds, after {@link #schedule()}.
+     */
+    double[] getWorkloads() {
+        return workloads;
+    }
+
+    /**
+     * Splits the stops of a depot over its vehicles. The stops are swept by their bearing from the depot, starting at
+     * the widest gap, and cut into consecutive sectors of about equal service time, so every vehicle gets a compact
+     * area and a similar share of the work.
+     *
+     * @param stops Indices into the points.
+     * @return The stops of each vehicle; some may be empty when there are fewer stops than vehicles.
+     */
+    static List<List<Integer>> split(double[] depot, List<double[]> points, List<Integer> stops, double[] serviceSeconds, int vehicles) {
+        List<List<Integer>> parts = new ArrayList<>(vehicles);
+        for (int v = 0; v < vehicles; v++) {
+            parts.add(new ArrayList<>());
+        }
+        if (vehicles == 1 || stops.size() < 2) {
+            parts.get(0).addAll(stops);
+            return parts;
+        }
+        double xScale = Math.cos(Math.toRadians(depot[1]));
+        int count = stops.size();
+        double[] bearings = new double[count];
+        Integer[] sorted = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            double[] point = points.get(stops.get(i));
+            bearings[i] = Math.atan2(point[1] - depot[1], (point[0] - depot[0]) * xScale);
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, Comparator.comparingDouble(i -> bearings[i]));
+
+        // Start the sweep after the widest gap between consecutive bearings, so no sector spans it
+        int first = 0;
+        double widest = bearings[sorted[0]] + 2 * Math.PI - bearings[sorted[count - 1]];
+        for (int i = 1; i < count; i++) {
+            double gap = bearings[sorted[i]] - bearings[sorted[i - 1]];
+            if (gap > widest) {
+                widest = gap;
+                first = i;
+            }
+        }
+        double total = 0d;
+        for (int stop : stops) {
+            total += serviceSeconds[stop];
+        }
+        double assigned = 0d;
+        int vehicle = 0;
+        for (int i = 0; i < count; i++) {
+            int stop = stops.get(sorted[(first + i) % count]);
+            // Move to the next vehicle once this one has its share, taking the stop where it is closer to the share
+            while (vehicle < vehicles - 1 && assigned + serviceSeconds[stop] / 2d > total * (vehicle + 1) / vehicles) {
+                vehicle++;
+            }
+            parts.get(vehicle).add(stop);
+            assigned += serviceSeconds[stop];
+        }
+        return parts;
+    }
+
+    private double nearestDistance(int day, double[] point) {
+        Map<Long, List<Integer>> grid = grids.get(day);
+        long x = (long) Math.floor(point[0] / CELL_DEGREES);
+        long y = (long) Math.floor(point[1] / CELL_DEGREES);
+        double nearest = Double.POSITIVE_INFINITY;
+        for (long dx = -1; dx <= 1; dx++) {
+            for (long dy = -1; dy <= 1; dy++) {
+                List<Integer> trees = grid.get(key(x + dx, y + dy));
+                if (trees == null) {
+                    continue;
+                }
+                for (int tree : trees) {
+                    nearest = Math.min(nearest, RouteHeuristics.haversineDistance(point, points.get(tree)));
+                }
+            }
+        }
+        if (nearest < Double.POSITIVE_INFINITY) {
+            return nearest;
+        }
+        for (double[] depot : depots) {
+            nearest = Math.min(nearest, RouteHeuristics.haversineDistance(point, depot));
+        }
+        return nearest;
+    }
+
+    private static long cell(double longitude, double latitude) {
+        return key((long) Math.floor(longitude / CELL_DEGREES), (long) Math.floor(latitude / CELL_DEGREES));
+    }
+
+    private static long key(long x, long y) {
+        return (x << 32) ^ (y & 0xFFFFFFFFL);
+    }
+}
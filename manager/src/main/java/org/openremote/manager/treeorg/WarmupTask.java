@@ -0,0 +1,43 @@
+package org.openremote.manager.treeorg;
+
+/**
+ * The state of one task of {@link TreeOrgWarmupService}.
+ */
+public class WarmupTask {
+
+    public enum State {
+        PENDING,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    private final String name;
+    private final State state;
+    private final Long durationMillis;
+
+    public WarmupTask(String name, State state, Long durationMillis) {
+        this.name = name;
+        this.state = state;
+        this.durationMillis = durationMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return How long the task ran, or {@code null} while it has not finished.
+     */
+    public Long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public boolean isFinished() {
+        return state == State.DONE || state == State.FAILED;
+    }
+}
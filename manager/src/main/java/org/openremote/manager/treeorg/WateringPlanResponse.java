@@ -0,0 +1,46 @@
+package org.openremote.manager.treeorg;
+
+import java.util.List;
+
+/**
+ * The routes of every vehicle on every day of a planning horizon, see {@link WateringPlanService}.
+ */
+public class WateringPlanResponse {
+    private final String startDate;
+    private final int days;
+    private final List<PlannedRoute> routes;
+    private final List<String> unplannedIds;
+
+    public WateringPlanResponse(String startDate, int days, List<PlannedRoute> routes, List<String> unplannedIds) {
+        this.startDate = startDate;
+        this.days = days;
+        this.routes = routes;
+        this.unplannedIds = unplannedIds;
+    }
+
+    /**
+     * @return The first day of the horizon as an ISO-8601 date.
+     */
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * @return The routes ordered by day, depot and vehicle; days without visits have no routes.
+     */
+    public List<PlannedRoute> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @return The IDs of trees that were due but left out because they have no location, or no longer exist when a
+     * day is re-optimized.
+     */
+    public List<String> getUnplannedIds() {
+        return unplannedIds;
+    }
+}
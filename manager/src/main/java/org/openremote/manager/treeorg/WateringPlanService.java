@@ -0,0 +1,301 @@
+package org.openremote.manager.treeorg;
+
+import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.geo.GeoJSONPoint;
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.query.filter.RealmPredicate;
+import org.openremote.model.treeorg.RoutePlanAsset;
+import org.openremote.model.treeorg.TreeAsset;
+import org.openremote.model.treeorg.VehicleAsset;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+/**
+ * Plans the watering of a realm for several days ahead. Trees are due from their drought forecast and from their
+ * {@link TreeAsset#VISIT_INTERVAL}; the {@link VisitScheduler} spreads the visits over the days, the stops of every
+ * depot are split over its {@link VehicleAsset}s and the routes of all days and vehicles are solved in parallel.
+ * <p>
+ * Every route is stored as a day plan with its {@link RoutePlanAsset#PLAN_DATE} and
+ * {@link RoutePlanAsset#VEHICLE_ID}, see {@link RoutePlanService#saveDayPlan}, so a single day can later be re-optimized from its stored routes without planning
+ * the other days again.
+ */
+public class WateringPlanService implements ContainerService {
+
+    public static final int DEFAULT_PLAN_DAYS = 7;
+    public static final int MAX_PLAN_DAYS = 28;
+    private static final Logger LOG = Logger.getLogger(WateringPlanService.class.getName());
+
+    private AssetStorageService assetStorageService;
+    private DroughtForecastService droughtForecastService;
+    private RouteService routeService;
+    private RoutePlanService routePlanService;
+    private ExecutorService executorService;
+
+    @Override
+    public void init(Container container) throws Exception {
+        assetStorageService = container.getService(AssetStorageService.class);
+        droughtForecastService = container.getService(DroughtForecastService.class);
+        routeService = container.getService(RouteService.class);
+        routePlanService = container.getService(RoutePlanService.class);
+        executorService = container.getExecutor();
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+    }
+
+    /**
+     * Plans and stores the routes of a realm for a number of days.
+     *
+     * @param startDate The first day to plan, in UTC.
+     * @param days      The number of days to plan.
+     * @throws IllegalArgumentException if the number of days is not between 1 and {@link #MAX_PLAN_DAYS}.
+     */
+    public WateringPlanResponse planDays(String realm, LocalDate startDate, int days) {
+        if (days < 1 || days > MAX_PLAN_DAYS) {
+            throw new IllegalArgumentException("Number of days must be between 1 and " + MAX_PLAN_DAYS + ": " + days);
+        }
+        // Forecasts count from now, visits are due on days counted from the start of the first day
+        double hoursUntilStart = (startDate.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli() - System.currentTimeMillis()) / 3_600_000d;
+        Map<String, Double> hoursUntilCritical = new HashMap<>();
+        if (droughtForecastService != null) {
+            for (DroughtForecast forecast : droughtForecastService.findMostUrgent(realm, Math.max(0d, hoursUntilStart) + days * 24d, null)) {
+                hoursUntilCritical.put(forecast.getAssetId(), forecast.getHoursUntilCritical());
+            }
+        }
+
+        List<Asset<?>> trees = new ArrayList<>();
+        List<double[]> points = new ArrayList<>();
+        List<Integer> firstDue = new ArrayList<>();
+        List<Integer> intervals = new ArrayList<>();
+        List<String> unplanned = new ArrayList<>();
+        for (Asset<?> asset : assetStorageService.findAll(new AssetQuery().types(TreeAsset.class).realm(new RealmPredicate(realm)))) {
+            Double hours = hoursUntilCritical.get(asset.getId());
+            int interval = Math.max(0, asset.getAttributes().getValue(TreeAsset.VISIT_INTERVAL).orElse(0));
+            if (hours == null && interval == 0) {
+                continue;
+            }
+            GeoJSONPoint location = asset.getAttributes().getValue(Asset.LOCATION).orElse(null);
+            if (location == null) {
+                unplanned.add(asset.getId());
+                continue;
+            }
+            int due = hours != null ? (int) Math.floor(Math.max(0d, hours - hoursUntilStart) / 24d) : days - 1;
+            trees.add(asset);
+            points.add(new double[]{location.getX(), location.getY()});
+            firstDue.add(interval > 0 ? Math.min(due, interval - 1) : due);
+            intervals.add(interval);
+        }
+
+        List<Asset<?>> depots = routeService.findDepots(realm);
+        List<double[]> depotPositions = new ArrayList<>();
+        for (Asset<?> depot : depots) {
+            depotPositions.add(position(depot));
+        }
+        double[] serviceSeconds = serviceSeconds(trees);
+        VisitScheduler scheduler = new VisitScheduler(points, serviceSeconds,
+                firstDue.stream().mapToInt(Integer::intValue).toArray(),
+                intervals.stream().mapToInt(Integer::intValue).toArray(),
+                days, depotPositions.isEmpty() ? Collections.singletonList(RouteService.DEFAULT_STARTING_POSITION) : depotPositions);
+        List<List<Integer>> stopsByDay = scheduler.schedule();
+
+        Map<String, List<String>> vehiclesByDepot = new HashMap<>();
+        for (Asset<?> asset : assetStorageService.findAll(new AssetQuery().types(VehicleAsset.class).realm(new RealmPredicate(realm)))) {
+            if (asset instanceof VehicleAsset && realm.equals(asset.getRealm())) {
+                vehiclesByDepot.computeIfAbsent(((VehicleAsset) asset).getDepotId().orElse(null), depotId -> new ArrayList<>()).add(asset.getId());
+            }
+        }
+        vehiclesByDepot.values().forEach(Collections::sort);
+
+        List<RouteTask> tasks = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            String date = startDate.plusDays(day).toString();
+            List<Asset<?>> dayTrees = new ArrayList<>(stopsByDay.get(day).size());
+            stopsByDay.get(day).forEach(index -> dayTrees.add(trees.get(index)));
+            routeService.assignToDepots(dayTrees, depots).forEach((depotIndex, depotTrees) -> {
+                Asset<?> depot = depotIndex >= 0 ? depots.get(depotIndex) : null;
+                List<String> vehicles = vehiclesByDepot.getOrDefault(depot != null ? depot.getId() : null, Collections.emptyList());
+                List<double[]> depotPoints = new ArrayList<>(depotTrees.size());
+                List<Integer> depotStops = new ArrayList<>(depotTrees.size());
+                for (int i = 0; i < depotTrees.size(); i++) {
+                    depotPoints.add(position(depotTrees.get(i)));
+                    depotStops.add(i);
+                }
+                List<List<Integer>> parts = VisitScheduler.split(depot != null ? position(depot) : RouteService.DEFAULT_STARTING_POSITION,
+                        depotPoints, depotStops, serviceSeconds(depotTrees), Math.max(1, vehicles.size()));
+                for (int v = 0; v < parts.size(); v++) {
+                    if (parts.get(v).isEmpty()) {
+                        continue;
+                    }
+                    List<Asset<?>> vehicleTrees = new ArrayList<>(parts.get(v).size());
+                    parts.get(v).forEach(index -> vehicleTrees.add(depotTrees.get(index)));
+                    tasks.add(new RouteTask(date, depot, vehicles.isEmpty() ? null : vehicles.get(v), vehicleTrees, null));
+                }
+            });
+        }
+
+        List<PlannedRoute> routes = solveAndStore(realm, tasks);
+        // Routes of an earlier plan for these days that are no longer driven are stored empty, so they are not re-optimized
+        if (routePlanService != null) {
+            for (int day = 0; day < days; day++) {
+                String date = startDate.plusDays(day).toString();
+                Set<List<String>> planned = new HashSet<>();
+                for (RouteTask task : tasks) {
+                    if (task.date.equals(date)) {
+                        planned.add(Arrays.asList(task.depot != null ? task.depot.getId() : null, task.vehicleId));
+                    }
+                }
+                for (RoutePlanAsset plan : routePlanService.findDayPlans(realm, date)) {
+                    if (plan.getStopIds().orElse(new String[0]).length > 0
+                            && !planned.contains(Arrays.asList(plan.getDepotId().orElse(null), plan.getVehicleId().orElse(null)))) {
+                        routePlanService.saveDayPlan(realm, date, plan.getDepotId().orElse(null), plan.getVehicleId().orElse(null),
+                                Collections.emptyList(), Collections.emptyList(), 0d, plan.getSolver().orElse(null));
+                    }
+                }
+            }
+        }
+        double[] workloads = scheduler.getWorkloads();
+        LOG.info("Planned " + routes.size() + " routes over " + days + " days from " + startDate + " for realm " + realm
+                + ", estimated workload per day between " + Math.round(Arrays.stream(workloads).min().orElse(0d) / 60d)
+                + " and " + Math.round(Arrays.stream(workloads).max().orElse(0d) / 60d) + " minutes");
+        return new WateringPlanResponse(startDate.toString(), days, routes, unplanned);
+    }
+
+    /**
+     * Re-optimizes the stored routes of a day, starting from their stored order and using the current locations of the
+     * trees. Trees that no longer exist are left out.
+     *
+     * @return The new routes, or {@code null} when no routes are stored for the day.
+     */
+    public WateringPlanResponse reoptimizeDay(String realm, LocalDate date) {
+        List<RoutePlanAsset> plans = routePlanService.findDayPlans(realm, date.toString());
+        if (plans.isEmpty()) {
+            return null;
+        }
+        List<RouteTask> tasks = new ArrayList<>();
+        List<String> unplanned = new ArrayList<>();
+        for (RoutePlanAsset plan : plans) {
+            String[] stopIds = plan.getStopIds().orElse(new String[0]);
+            if (stopIds.length == 0) {
+                continue;
+            }
+            Map<String, Asset<?>> assetsById = new HashMap<>();
+            for (Asset<?> asset : assetStorageService.findAll(new AssetQuery().ids(stopIds))) {
+                if (realm.equals(asset.getRealm()) && asset.getAttributes().getValue(Asset.LOCATION).isPresent()) {
+                    assetsById.put(asset.getId(), asset);
+                }
+            }
+            List<Asset<?>> stops = new ArrayList<>(stopIds.length);
+            for (String stopId : stopIds) {
+                Asset<?> asset = assetsById.remove(stopId);
+                if (asset != null) {
+                    stops.add(asset);
+                } else if (!unplanned.contains(stopId)) {
+                    unplanned.add(stopId);
+                }
+            }
+            if (stops.isEmpty()) {
+                continue;
+            }
+            int[] previousOrder = null;
+            if (stops.size() > 1) {
+                previousOrder = new int[stops.size()];
+                for (int i = 0; i < previousOrder.length; i++) {
+                    previousOrder[i] = i + 1;
+                }
+            }
+            String depotId = plan.getDepotId().orElse(null);
+            Asset<?> depot = depotId != null ? assetStorageService.find(depotId) : null;
+            if (depot != null && depot.getAttributes().getValue(Asset.LOCATION).isEmpty()) {
+                depot = null;
+            }
+            tasks.add(new RouteTask(date.toString(), depot, plan.getVehicleId().orElse(null), stops, previousOrder));
+        }
+        return new WateringPlanResponse(date.toString(), 1, solveAndStore(realm, tasks), unplanned);
+    }
+
+    /**
+     * Solves the routes in parallel and stores them as day plans, in the order of the tasks.
+     */
+    private List<PlannedRoute> solveAndStore(String realm, List<RouteTask> tasks) {
+        List<CompletableFuture<DepotRoute>> futures = new ArrayList<>(tasks.size());
+        for (RouteTask task : tasks) {
+            if (tasks.size() == 1 || executorService == null) {
+                futures.add(CompletableFuture.completedFuture(routeService.solveDepotRoute(task.depot, task.trees, task.previousOrder)));
+            } else {
+                futures.add(CompletableFuture.supplyAsync(() -> routeService.solveDepotRoute(task.depot, task.trees, task.previousOrder), executorService));
+            }
+        }
+        List<PlannedRoute> routes = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            RouteTask task = tasks.get(i);
+            DepotRoute depotRoute = futures.get(i).join();
+            List<Asset<?>> orderedAssets = depotRoute.getOrderedAssets();
+            int planVersion = 0;
+            if (routePlanService != null) {
+                RoutePlanAsset plan = routePlanService.saveDayPlan(realm, task.date, depotRoute.getDepotId(),
+                        task.vehicleId, orderedAssets, depotRoute.getRoute(), depotRoute.getTotalDistance(), depotRoute.getSolver());
+                planVersion = plan != null ? plan.getPlanVersion().orElse(0) : 0;
+            }
+            List<String> stopIds = new ArrayList<>(orderedAssets.size());
+            orderedAssets.forEach(asset -> stopIds.add(asset.getId()));
+            double workload = depotRoute.getTotalDistance() / RouteService.AVERAGE_SPEED + Arrays.stream(serviceSeconds(orderedAssets)).sum();
+            routes.add(new PlannedRoute(task.date, depotRoute.getDepotId(), task.vehicleId, stopIds, depotRoute.getRoute(),
+                    depotRoute.getTotalDistance(), workload, depotRoute.getGoogleMapsLegURLs(), depotRoute.getSolver(), planVersion));
+        }
+        return routes;
+    }
+
+    private static double[] serviceSeconds(List<Asset<?>> trees) {
+        double[] seconds = new double[trees.size()];
+        for (int i = 0; i < seconds.length; i++) {
+            seconds[i] = trees.get(i).getAttributes().getValue(TreeAsset.SERVICE_DURATION)
+                    .orElse(RouteService.DEFAULT_SERVICE_DURATION_MINUTES) * 60d;
+        }
+        return seconds;
+    }
+
+    private static double[] position(Asset<?> asset) {
+        return asset.getAttributes().getValue(Asset.LOCATION)
+                .map(point -> new double[]{point.getX(), point.getY()})
+                .orElse(RouteService.DEFAULT_STARTING_POSITION);
+    }
+
+    /**
+     * The trees one vehicle visits from one depot on one day.
+     */
+    private static final class RouteTask {
+        final String date;
+        final Asset<?> depot;
+        final String vehicleId;
+        final List<Asset<?>> trees;
+        final int[] previousOrder;
+
+        RouteTask(String date, Asset<?> depot, String vehicleId, List<Asset<?>> trees, int[] previousOrder) {
+            this.date = date;
+            this.depot = depot;
+            this.vehicleId = vehicleId;
+            this.trees = trees;
+            this.previousOrder = previousOrder;
+        }
+    }
+}
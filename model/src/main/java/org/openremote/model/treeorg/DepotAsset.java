@@ -0,0 +1,24 @@
+package org.openremote.model.treeorg;
+
+import jakarta.persistence.Entity;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.AssetDescriptor;
+
+/**
+ * A location from which watering routes start and end; the route optimizer assigns each {@link TreeAsset} to the
+ * nearest depot in its realm.
+ */
+@Entity
+public class DepotAsset extends Asset<DepotAsset> {
+
+    public static final AssetDescriptor<DepotAsset> DESCRIPTOR = new AssetDescriptor<>("warehouse", "8a6d3b", DepotAsset.class);
+
+    /**
+     * For use by hydrators (i.e. JPA/Jackson)
+     */
+    protected DepotAsset() {
+    }
+    public DepotAsset(String name) {
+        super(name);
+    }
+}
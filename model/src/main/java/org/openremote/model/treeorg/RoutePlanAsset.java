@@ -0,0 +1,115 @@
+package org.openremote.model.treeorg;
+
+import jakarta.persistence.Entity;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.AssetDescriptor;
+import org.openremote.model.attribute.MetaItem;
+import org.openremote.model.geo.GeoJSONPoint;
+import org.openremote.model.value.AttributeDescriptor;
+import org.openremote.model.value.MetaItemType;
+import org.openremote.model.value.ValueFormat;
+import org.openremote.model.value.ValueType;
+
+import java.util.Optional;
+
+import static org.openremote.model.Constants.UNITS_METRE;
+
+/**
+ * A computed watering route. Every optimization stores a new plan with an incremented {@link #PLAN_VERSION} as a
+ * child of the group the trees belong to, so clients can read a complete tour in one request and compare versions.
+ */
+@Entity
+public class RoutePlanAsset extends Asset<RoutePlanAsset> {
+
+    /**
+     * IDs of the visited assets in visiting order.
+     */
+    public static final AttributeDescriptor<String[]> STOP_IDS = new AttributeDescriptor<>("stopIds", ValueType.TEXT.asArray(),
+            new MetaItem<>(MetaItemType.READ_ONLY)
+    );
+    /**
+     * The tour as a line through the depot, the stops and back to the depot.
+     */
+    public static final AttributeDescriptor<GeoJSONPoint[]> GEOMETRY = new AttributeDescriptor<>("geometry", ValueType.GEO_JSON_POINT.asArray(),
+            new MetaItem<>(MetaItemType.READ_ONLY)
+    );
+    public static final AttributeDescriptor<Double> TOTAL_DISTANCE = new AttributeDescriptor<>("totalDistance", ValueType.NUMBER,
+            new MetaItem<>(MetaItemType.READ_ONLY)
+    ).withUnits(UNITS_METRE).withFormat(ValueFormat.NUMBER_0_DP());
+    public static final AttributeDescriptor<String> SOLVER = new AttributeDescriptor<>("solver", ValueType.TEXT,
+            new MetaItem<>(MetaItemType.READ_ONLY)
+    );
+    public static final AttributeDescriptor<Integer> PLAN_VERSION = new AttributeDescriptor<>("planVersion", ValueType.POSITIVE_INTEGER,
+            new MetaItem<>(MetaItemType.READ_ONLY)
+    );
+    /**
+     * The depot the tour starts from; absent when the default starting position was used.
+     */
+    public static final AttributeDescriptor<String> DEPOT_ID = new AttributeDescriptor<>("depotId", ValueType.TEXT,
+            new MetaItem<>(MetaItemType.READ_ONLY)
+    ).withOptional(true);
+    /**
+     * The day the tour is planned for, as an ISO-8601 date; absent for routes that are driven right away. Day plans
+     * can visit trees of several groups and are stored in the realm without a parent.
+     */
+    public static final AttributeDescriptor<String> PLAN_DATE = new AttributeDescriptor<>("planDate", ValueType.TEXT,
+            new MetaItem<>(MetaItemType.READ_ONLY)
+    ).withOptional(true);
+    /**
+     * The vehicle that drives the tour; absent when the tour is not assigned to a {@link VehicleAsset}.
+     */
+    public static final AttributeDescriptor<String> VEHICLE_ID = new AttributeDescriptor<>("vehicleId", ValueType.TEXT,
+            new MetaItem<>(MetaItemType.READ_ONLY)
+    ).withOptional(true);
+
+    public static final AssetDescriptor<RoutePlanAsset> DESCRIPTOR = new AssetDescriptor<>("map-marker-path", "2f7ab9", RoutePlanAsset.class);
+
+    /**
+     * For use by hydrators (i.e. JPA/Jackson)
+     */
+    protected RoutePlanAsset() {
+    }
+    public RoutePlanAsset(String name) {
+        super(name);
+    }
+    public Optional<String[]> getStopIds() { return getAttributes().getValue(STOP_IDS);}
+    public RoutePlanAsset setStopIds(String[] value) {
+        getAttributes().getOrCreate(STOP_IDS).setValue(value);
+        return this;
+    }
+    public Optional<GeoJSONPoint[]> getGeometry() { return getAttributes().getValue(GEOMETRY);}
+    public RoutePlanAsset setGeometry(GeoJSONPoint[] value) {
+        getAttributes().getOrCreate(GEOMETRY).setValue(value);
+        return this;
+    }
+    public Optional<Double> getTotalDistance() { return getAttributes().getValue(TOTAL_DISTANCE);}
+    public RoutePlanAsset setTotalDistance(Double value) {
+        getAttributes().getOrCreate(TOTAL_DISTANCE).setValue(value);
+        return this;
+    }
+    public Optional<String> getSolver() { return getAttributes().getValue(SOLVER);}
+    public RoutePlanAsset setSolver(String value) {
+        getAttributes().getOrCreate(SOLVER).setValue(value);
+        return this;
+    }
+    public Optional<Integer> getPlanVersion() { return getAttributes().getValue(PLAN_VERSION);}
+    public RoutePlanAsset setPlanVersion(Integer value) {
+        getAttributes().getOrCreate(PLAN_VERSION).setValue(value);
+        return this;
+    }
+    public Optional<String> getDepotId() { return getAttributes().getValue(DEPOT_ID);}
+    public RoutePlanAsset setDepotId(String value) {
+        getAttributes().getOrCreate(DEPOT_ID).setValue(value);
+        return this;
+    }
+    public Optional<String> getPlanDate() { return getAttributes().getValue(PLAN_DATE);}
+    public RoutePlanAsset setPlanDate(String value) {
+        getAttributes().getOrCreate(PLAN_DATE).setValue(value);
+        return this;
+    }
+    public Optional<String> getVehicleId() { return getAttributes().getValue(VEHICLE_ID);}
+    public RoutePlanAsset setVehicleId(String value) {
+        getAttributes().getOrCreate(VEHICLE_ID).setValue(value);
+        return this;
+    }
+}
@@ -0,0 +1,68 @@
+package org.openremote.model.treeorg;
+
+import org.openremote.model.event.shared.RealmScopedEvent;
+
+import java.util.List;
+
+/**
+ * Published when a new version of a route plan is stored. Carries the new stop order and the stops that were added to
+ * or removed from the previous version.
+ */
+public class RoutePlanEvent extends RealmScopedEvent {
+
+    protected String planId;
+    protected String parentId;
+    protected String depotId;
+    protected int planVersion;
+    protected List<String> stopIds;
+    protected List<String> added;
+    protected List<String> removed;
+
+    protected RoutePlanEvent() {
+    }
+
+    public RoutePlanEvent(String realm, String planId, String parentId, String depotId, int planVersion, List<String> stopIds, List<String> added, List<String> removed) {
+        super(realm);
+        this.planId = planId;
+        this.parentId = parentId;
+        this.depotId = depotId;
+        this.planVersion = planVersion;
+        this.stopIds = stopIds;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    public String getPlanId() {
+        return planId;
+    }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    /**
+     * @return The depot of the plan, or {@code null} for the default starting position.
+     */
+    public String getDepotId() {
+        return depotId;
+    }
+
+    public int getPlanVersion() {
+        return planVersion;
+    }
+
+    /**
+     * @return The IDs of the stops in visiting order.
+     */
+    public List<String> getStopIds() {
+        return stopIds;
+    }
+
+    public List<String> getAdded() {
+        return added;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+}
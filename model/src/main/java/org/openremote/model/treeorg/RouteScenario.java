@@ -0,0 +1,57 @@
+package org.openremote.model.treeorg;
+
+/**
+ * A set of planning parameters to evaluate without storing any route, e.g. to compare fleet sizes or tank sizes.
+ * Parameters that are {@code null} take the defaults of the evaluation.
+ */
+public class RouteScenario {
+
+    protected String name;
+    protected Integer vehicles;
+    protected Double tankCapacity;
+    protected Double waterPerTree;
+    protected Double waterLevelThreshold;
+
+    protected RouteScenario() {
+    }
+
+    public RouteScenario(String name, Integer vehicles, Double tankCapacity, Double waterPerTree, Double waterLevelThreshold) {
+        this.name = name;
+        this.vehicles = vehicles;
+        this.tankCapacity = tankCapacity;
+        this.waterPerTree = waterPerTree;
+        this.waterLevelThreshold = waterLevelThreshold;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The number of vehicles that share the trees, or {@code null} for one.
+     */
+    public Integer getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * @return The water tank size of a vehicle in liters, or {@code null} for a tank that never has to be refilled.
+     */
+    public Double getTankCapacity() {
+        return tankCapacity;
+    }
+
+    /**
+     * @return The water given to a tree in liters, or {@code null} for the default.
+     */
+    public Double getWaterPerTree() {
+        return waterPerTree;
+    }
+
+    /**
+     * @return The water level below which a tree is watered, or {@code null} for the critical water level.
+     */
+    public Double getWaterLevelThreshold() {
+        return waterLevelThreshold;
+    }
+}
@@ -0,0 +1,41 @@
+package org.openremote.model.treeorg;
+
+/**
+ * A single sensor value for an attribute of a tree, as posted by a gateway.
+ */
+public class SensorReading {
+
+    protected String assetId;
+    protected String attribute;
+    protected Double value;
+    protected Long timestamp;
+
+    protected SensorReading() {
+    }
+
+    public SensorReading(String assetId, String attribute, Double value, Long timestamp) {
+        this.assetId = assetId;
+        this.attribute = attribute;
+        this.value = value;
+        this.timestamp = timestamp;
+    }
+
+    public String getAssetId() {
+        return assetId;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public Double getValue() {
+        return value;
+    }
+
+    /**
+     * @return The time of the measurement in epoch milliseconds, or {@code null} when it is the time of receipt.
+     */
+    public Long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -12,6 +12,7 @@ import org.openremote.model.value.ValueType;
 import java.util.Optional;
 
 import static org.openremote.model.Constants.UNITS_CELSIUS;
+import static org.openremote.model.Constants.UNITS_MINUTE;
 
 @Entity
 public class TreeAsset extends Asset<TreeAsset> {
@@ -29,6 +30,23 @@ public class TreeAsset extends Asset<TreeAsset> {
     public static final AttributeDescriptor<Boolean> PRIORITY = new AttributeDescriptor<>("priority", ValueType.BOOLEAN,
             new MetaItem<>(MetaItemType.READ_ONLY, true)
     );
+    /**
+     * Optional window in which the tree can be visited, in minutes since midnight UTC (e.g. 960 for 16:00 UTC).
+     */
+    public static final AttributeDescriptor<Integer> TIME_WINDOW_START = new AttributeDescriptor<>("timeWindowStart", ValueType.POSITIVE_INTEGER)
+            .withUnits(UNITS_MINUTE).withOptional(true);
+    public static final AttributeDescriptor<Integer> TIME_WINDOW_END = new AttributeDescriptor<>("timeWindowEnd", ValueType.POSITIVE_INTEGER)
+            .withUnits(UNITS_MINUTE).withOptional(true);
+    /**
+     * Optional time needed to water the tree once the crew has arrived.
+     */
+    public static final AttributeDescriptor<Integer> SERVICE_DURATION = new AttributeDescriptor<>("serviceDuration", ValueType.POSITIVE_INTEGER)
+            .withUnits(UNITS_MINUTE).withOptional(true);
+    /**
+     * Optional maximum number of days between two waterings, e.g. 7 for young trees that are watered weekly.
+     */
+    public static final AttributeDescriptor<Integer> VISIT_INTERVAL = new AttributeDescriptor<>("visitInterval", ValueType.POSITIVE_INTEGER)
+            .withOptional(true);
 
     public static final AssetDescriptor<TreeAsset> DESCRIPTOR = new AssetDescriptor<>("tree", "396d22", TreeAsset.class);
 
@@ -49,4 +67,8 @@ public class TreeAsset extends Asset<TreeAsset> {
     public Optional<String> getTreeType() { return getAttributes().getValue(TREE_TYPE);}
     public Optional<Integer> getRouteId() { return getAttributes().getValue(ROUTE_ID);}
     public Optional<Boolean> getPriority() { return getAttributes().getValue(PRIORITY);}
+    public Optional<Integer> getTimeWindowStart() { return getAttributes().getValue(TIME_WINDOW_START);}
+    public Optional<Integer> getTimeWindowEnd() { return getAttributes().getValue(TIME_WINDOW_END);}
+    public Optional<Integer> getServiceDuration() { return getAttributes().getValue(SERVICE_DURATION);}
+    public Optional<Integer> getVisitInterval() { return getAttributes().getValue(VISIT_INTERVAL);}
 }
\ No newline at end of file
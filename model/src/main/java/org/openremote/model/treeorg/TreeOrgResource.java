@@ -2,10 +2,44 @@ package org.openremote.model.treeorg;
 
 import jakarta.ws.rs.core.Response;
 
+import java.util.List;
+
 
 public interface TreeOrgResource {
 
     Response sortAssetsByAttribute(String assetType, String attributeName);
 
-    Response optimizeRouteForSensors(String assetType, String attributeName);
+    Response optimizeRouteForSensors(String assetType, String attributeName, Boolean warmStart);
+
+    Response optimizeRouteWithinBudget(String assetType, Double maxDistance, Double maxDuration);
+
+    Response scheduleRoute(String assetType, String attributeName, Long startTime);
+
+    Response getRoutePlan(String parentId, String depotId, Integer version);
+
+    Response compareRoutePlans(String parentId, String depotId, Integer fromVersion, Integer toVersion);
+
+    Response getRoutePlanGeometry(String parentId, String depotId, Integer version, String format);
+
+    Response ingestReadings(List<SensorReading> readings);
+
+    Response ingestReadingsNdjson(String body);
+
+    Response getDroughtForecast(Double horizonHours, Integer limit);
+
+    Response optimizeRouteForForecast(String assetType, Double horizonHours);
+
+    Response rankAssetsByScore(String assetType, String expression, Integer limit);
+
+    Response getTreeTile(Integer zoom, Integer x, Integer y);
+
+    Response rerouteVehicle(String vehicleId, List<String> urgentIds);
+
+    Response planWatering(String startDate, Integer days);
+
+    Response reoptimizeWateringDay(String date);
+
+    Response evaluateScenarios(List<RouteScenario> scenarios);
+
+    Response getStatus();
 }
@@ -0,0 +1,54 @@
+package org.openremote.model.treeorg;
+
+import org.openremote.model.event.shared.RealmScopedEvent;
+
+import java.util.List;
+
+/**
+ * Published when the top ranked trees of a realm for an attribute change, as returned by the sort by attribute
+ * endpoint. Carries the full new ranking and the trees that entered or left it, so clients can apply the change
+ * without fetching the ranking again.
+ */
+public class TreeRankingEvent extends RealmScopedEvent {
+
+    protected String attributeName;
+    protected List<String> ranking;
+    protected List<String> entered;
+    protected List<String> left;
+
+    protected TreeRankingEvent() {
+    }
+
+    public TreeRankingEvent(String realm, String attributeName, List<String> ranking, List<String> entered, List<String> left) {
+        super(realm);
+        this.attributeName = attributeName;
+        this.ranking = ranking;
+        this.entered = entered;
+        this.left = left;
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    /**
+     * @return The IDs of the ranked trees, lowest value first.
+     */
+    public List<String> getRanking() {
+        return ranking;
+    }
+
+    /**
+     * @return The IDs of the trees that were not in the previous ranking.
+     */
+    public List<String> getEntered() {
+        return entered;
+    }
+
+    /**
+     * @return The IDs of the trees that are no longer in the ranking.
+     */
+    public List<String> getLeft() {
+        return left;
+    }
+}
@@ -0,0 +1,56 @@
+package org.openremote.model.treeorg;
+
+import jakarta.persistence.Entity;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.AssetDescriptor;
+import org.openremote.model.value.AttributeDescriptor;
+import org.openremote.model.value.ValueType;
+
+import java.util.Optional;
+
+/**
+ * A crew vehicle driving a watering route. The vehicle reports its live {@link #LOCATION} and the trees it has
+ * finished, so the rest of its route can be re-optimized from where it is instead of from the depot.
+ */
+@Entity
+public class VehicleAsset extends Asset<VehicleAsset> {
+
+    /**
+     * IDs of the trees of the route being driven, in visiting order; rewritten when the route is re-optimized.
+     */
+    public static final AttributeDescriptor<String[]> STOP_IDS = new AttributeDescriptor<>("stopIds", ValueType.TEXT.asArray());
+    /**
+     * IDs of the trees the crew has finished.
+     */
+    public static final AttributeDescriptor<String[]> COMPLETED_STOP_IDS = new AttributeDescriptor<>("completedStopIds", ValueType.TEXT.asArray());
+    /**
+     * The depot the vehicle returns to; absent when it returns to the default starting position.
+     */
+    public static final AttributeDescriptor<String> DEPOT_ID = new AttributeDescriptor<>("depotId", ValueType.TEXT).withOptional(true);
+
+    public static final AssetDescriptor<VehicleAsset> DESCRIPTOR = new AssetDescriptor<>("truck", "c26b1f", VehicleAsset.class);
+
+    /**
+     * For use by hydrators (i.e. JPA/Jackson)
+     */
+    protected VehicleAsset() {
+    }
+    public VehicleAsset(String name) {
+        super(name);
+    }
+    public Optional<String[]> getStopIds() { return getAttributes().getValue(STOP_IDS);}
+    public VehicleAsset setStopIds(String[] value) {
+        getAttributes().getOrCreate(STOP_IDS).setValue(value);
+        return this;
+    }
+    public Optional<String[]> getCompletedStopIds() { return getAttributes().getValue(COMPLETED_STOP_IDS);}
+    public VehicleAsset setCompletedStopIds(String[] value) {
+        getAttributes().getOrCreate(COMPLETED_STOP_IDS).setValue(value);
+        return this;
+    }
+    public Optional<String> getDepotId() { return getAttributes().getValue(DEPOT_ID);}
+    public VehicleAsset setDepotId(String value) {
+        getAttributes().getOrCreate(DEPOT_ID).setValue(value);
+        return this;
+    }
+}
@@ -9,24 +9,37 @@ import org.openremote.model.attribute.Attribute;
 import org.openremote.model.attribute.MetaItem;
 import org.openremote.model.geo.GeoJSONPoint;
 import org.openremote.model.security.Realm;
+import org.openremote.model.treeorg.DepotAsset;
 import org.openremote.model.treeorg.TreeAsset;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.model.value.MetaItemType.READ_ONLY;
 import static org.openremote.model.value.MetaItemType.RULE_STATE;
 
 public class TreeOrgManagerSetup extends ManagerSetup {
 
+    private static final Logger LOG = Logger.getLogger(TreeOrgManagerSetup.class.getName());
+    public static final String TREEORG_DEMO_TREES = "TREEORG_DEMO_TREES";
+    public static final int TREEORG_DEMO_TREES_DEFAULT = 100;
     private static final double BASE_LATITUDE = 51.43848672819468;
     private static final double BASE_LONGITUDE = 5.47967205919616;
     private static final double MAX_RADIUS = 7;
-    private static final int BATCH_SIZE = 20;
+
+    protected final int amountOfTrees;
+    protected final ExecutorService executorService;
 
     public TreeOrgManagerSetup(Container container) {
         super(container);
+        amountOfTrees = container.getConfig() != null
+                ? getInteger(container.getConfig(), TREEORG_DEMO_TREES, TREEORG_DEMO_TREES_DEFAULT)
+                : TREEORG_DEMO_TREES_DEFAULT;
+        executorService = container.getExecutor();
     }
 
     @Override
@@ -49,54 +62,76 @@ public class TreeOrgManagerSetup extends ManagerSetup {
         treeOrgAssets.setId(UniqueIdentifierGenerator.generateId(treeOrgAssets.getName()));
         assetStorageService.merge(treeOrgAssets);
 
-        int amountOfAssets = 100;
-        CreateTreeAssets(amountOfAssets, treeOrgAssets);
+        CreateDepotAsset("Depot Centrum", new GeoJSONPoint(5.453487298268298, 51.45081456926727), treeOrgAssets);
+        CreateDepotAsset("Depot Zuid", calculateNewLocation(0, -4), treeOrgAssets);
+
+        CreateTreeAssets(amountOfTrees, treeOrgAssets);
+
+    }
 
+    private void CreateDepotAsset(String name, GeoJSONPoint location, Asset<?> parentAsset) {
+        DepotAsset depotAsset = new DepotAsset(name);
+        depotAsset.setParent(parentAsset);
+        depotAsset.getAttributes().addOrReplace(new Attribute<>(Asset.LOCATION, location));
+        depotAsset.setId(UniqueIdentifierGenerator.generateId(depotAsset.getName()));
+        assetStorageService.merge(depotAsset);
     }
 
+    /**
+     * Creates the trees from a single background task, so a large demo dataset neither holds up the start of the
+     * manager nor floods the shared executor with tasks. The treeorg services pick up each tree from its asset event as
+     * it is merged.
+     */
     private void CreateTreeAssets(int amountOfAssets, Asset<?> parentAsset) {
-        List<TreeAsset> assetList = new ArrayList<>();
-
-        for (int i = 0; i < amountOfAssets; i++) {
-            GeoJSONPoint randomLocation = generateRandomLocation();
-
-            TreeAsset treeAsset = new TreeAsset("TreeAsset " + (i + 1));
-            treeAsset.setParent(parentAsset);
-            treeAsset.getAttributes().addOrReplace(new Attribute<>(Asset.LOCATION, randomLocation));
-
-            // Generate a random water level between 1 and 10000
-            Random random = new Random();
-            int waterLevel = 1 + random.nextInt(10000);
-            double soilTemperature = 1 + random.nextInt(100);
-
-            treeAsset.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL)
-                    .addMeta(new MetaItem<>(RULE_STATE, true)).addMeta(new MetaItem<>(READ_ONLY, false))
-                    .setValue(waterLevel);
-
-            treeAsset.getAttributes().getOrCreate(TreeAsset.SOIL_TEMPERATURE)
-                    .addMeta(new MetaItem<>(RULE_STATE, true)).addMeta(new MetaItem<>(READ_ONLY, false))
-                    .setValue(soilTemperature);
-
-            treeAsset.getAttributes().getOrCreate(TreeAsset.ROUTE_ID)
-                    .addMeta(new MetaItem<>(RULE_STATE, true))
-                    .addMeta(new MetaItem<>(READ_ONLY, true))
-                    .setValue(0);
-
-            treeAsset.getAttributes().getOrCreate(TreeAsset.PRIORITY)
-                    .addMeta(new MetaItem<>(RULE_STATE, true))
-                    .addMeta(new MetaItem<>(READ_ONLY, true))
-                    .setValue(false);
-            treeAsset.setId(UniqueIdentifierGenerator.generateId(treeAsset.getName()));
-            assetList.add(treeAsset);
-
-            // If the batch size is reached, merge the batch and clear the list
-            if (assetList.size() >= BATCH_SIZE) {
-                for (TreeAsset asset : assetList) {
-                    assetStorageService.merge(asset);
-                }
-                assetList.clear();
+        Runnable create = () -> {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < amountOfAssets; i++) {
+                assetStorageService.merge(createTreeAsset(i, parentAsset));
             }
+            LOG.info("Created " + amountOfAssets + " tree assets in " + (System.currentTimeMillis() - start) + "ms");
+        };
+        if (executorService == null) {
+            create.run();
+            return;
         }
+        CompletableFuture.runAsync(create, executorService).whenComplete((result, e) -> {
+            if (e != null) {
+                LOG.log(Level.WARNING, "Failed to create all " + amountOfAssets + " tree assets", e);
+            }
+        });
+    }
+
+    private TreeAsset createTreeAsset(int i, Asset<?> parentAsset) {
+        GeoJSONPoint randomLocation = generateRandomLocation();
+
+        TreeAsset treeAsset = new TreeAsset("TreeAsset " + (i + 1));
+        treeAsset.setParent(parentAsset);
+        treeAsset.getAttributes().addOrReplace(new Attribute<>(Asset.LOCATION, randomLocation));
+
+        // Generate a random water level between 1 and 10000
+        Random random = new Random();
+        int waterLevel = 1 + random.nextInt(10000);
+        double soilTemperature = 1 + random.nextInt(100);
+
+        treeAsset.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL)
+                .addMeta(new MetaItem<>(RULE_STATE, true)).addMeta(new MetaItem<>(READ_ONLY, false))
+                .setValue(waterLevel);
+
+        treeAsset.getAttributes().getOrCreate(TreeAsset.SOIL_TEMPERATURE)
+                .addMeta(new MetaItem<>(RULE_STATE, true)).addMeta(new MetaItem<>(READ_ONLY, false))
+                .setValue(soilTemperature);
+
+        treeAsset.getAttributes().getOrCreate(TreeAsset.ROUTE_ID)
+                .addMeta(new MetaItem<>(RULE_STATE, true))
+                .addMeta(new MetaItem<>(READ_ONLY, true))
+                .setValue(0);
+
+        treeAsset.getAttributes().getOrCreate(TreeAsset.PRIORITY)
+                .addMeta(new MetaItem<>(RULE_STATE, true))
+                .addMeta(new MetaItem<>(READ_ONLY, true))
+                .setValue(false);
+        treeAsset.setId(UniqueIdentifierGenerator.generateId(treeAsset.getName()));
+        return treeAsset;
     }
 
     /**
@@ -21,10 +21,12 @@ package org.openremote.test.custom
 
 import org.openremote.agent.custom.CustomAgent
 import org.openremote.agent.custom.CustomProtocol
+import org.openremote.agent.custom.TreeSensorSimulation
 import org.openremote.manager.agent.AgentService
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.model.Constants
 import org.openremote.model.asset.agent.ConnectionStatus
+import org.openremote.model.attribute.AttributeRef
 import org.openremote.test.ManagerContainerTrait
 import spock.lang.Specification
 import spock.util.concurrent.PollingConditions
@@ -61,4 +63,32 @@ class CustomTest extends Specification implements ManagerContainerTrait {
             assert (agentService.protocolInstanceMap.get(agent.id) as CustomProtocol).running
         }
     }
+
+    def "Check tree sensor simulation"() {
+
+        given: "a simulation without rain and a thousand trees"
+        def simulation = new TreeSensorSimulation(100d, 0d, 0d, 0.2d, 12d, 1L)
+        (1..1000).each {
+            assert simulation.add(new AttributeRef("tree" + it, TreeSensorSimulation.WATER_LEVEL), 5000d)
+            assert simulation.add(new AttributeRef("tree" + it, TreeSensorSimulation.SOIL_TEMPERATURE), null)
+        }
+
+        expect: "only tree sensor attributes to be simulated"
+        !simulation.add(new AttributeRef("tree1", "treeType"), null)
+        simulation.size() == 2000
+
+        when: "a simulated day passes"
+        def values = [:]
+        24.times {
+            simulation.advance(3600d, { ref, value -> values[ref] = value })
+        }
+        def waterLevels = values.findAll { it.key.name == TreeSensorSimulation.WATER_LEVEL }.values()
+        def temperatures = values.findAll { it.key.name == TreeSensorSimulation.SOIL_TEMPERATURE }.values()
+
+        then: "every tree should have lost water at its own rate"
+        waterLevels.size() == 1000
+        waterLevels.every { it instanceof Integer && it < 5000 && it > 0 }
+        waterLevels.toSet().size() > 1
+        temperatures.every { it instanceof Double && it > -10d && it < 40d }
+    }
 }
@@ -0,0 +1,104 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.treeorg.AssetScore
+import org.openremote.manager.treeorg.CompactRouteEncoding
+import org.openremote.manager.treeorg.RouteService
+import org.openremote.model.asset.Asset
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.treeorg.TreeAsset
+import org.openremote.model.util.ValueUtil
+import spock.lang.Specification
+
+import java.util.logging.Logger
+
+/**
+ * Benchmarks the {@link CompactRouteEncoding} against the JSON responses it replaces, on the 1000 stop dataset of
+ * {@link RouteQualityTests}.
+ */
+class CompactRouteEncodingTests extends Specification {
+
+    private static final Logger LOG = Logger.getLogger(CompactRouteEncodingTests.class.getName())
+    static final int ITERATIONS = 50
+
+    def "CompactRouteEncoding should round trip a route in a fraction of the JSON size and CPU time"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+        assetStorageService.findAll(_ as AssetQuery) >> []
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+        def route = routeService.optimizeRouteForSortedAssets(RouteQualityTests.trees(1000), "waterLevel")
+
+        when:
+        def compact = CompactRouteEncoding.encodeRoute(route)
+        def json = ValueUtil.JSON.writeValueAsBytes(route)
+        def legs = CompactRouteEncoding.decode(compact)
+        def stops = route.getOrderedAssets()
+
+        then:
+        legs.size() == 1
+        legs[0].getDepotId() == ""
+        legs[0].getDepotLocation() == null
+        legs[0].getIds() == stops*.getId()
+        (0..<stops.size()).every { i ->
+            def point = stops[i].getAttributes().getValue(Asset.LOCATION).get()
+            Math.abs(legs[0].getLocations()[i][0] - point.getX()) <= 5e-7d && Math.abs(legs[0].getLocations()[i][1] - point.getY()) <= 5e-7d
+        }
+
+        when:
+        long compactNanos = time { CompactRouteEncoding.encodeRoute(route) }
+        long jsonNanos = time { ValueUtil.JSON.writeValueAsBytes(route) }
+        LOG.info(String.format("Route of 1000 stops: compact %d bytes in %.3f ms, JSON %d bytes in %.3f ms",
+                compact.length, compactNanos / 1e6d, json.length, jsonNanos / 1e6d))
+
+        then:
+        compact.length * 10 < json.length
+        compactNanos < jsonNanos
+    }
+
+    def "CompactRouteEncoding should encode rankings in rank order and keep trees without a location"() {
+        setup:
+        def trees = RouteQualityTests.trees(10)
+        def unlocated = new TreeAsset("Tree 3")
+        unlocated.setId("tree3")
+        trees[3] = unlocated
+        def scores = trees.withIndex().collect { tree, i -> new AssetScore(tree, 10 - i) }
+
+        when:
+        def compact = CompactRouteEncoding.encodeScores(scores)
+        def legs = CompactRouteEncoding.decode(compact)
+        def json = ValueUtil.JSON.writeValueAsBytes(scores)
+        LOG.info("Ranking of 10 trees: compact " + compact.length + " bytes, JSON " + json.length + " bytes")
+
+        then:
+        legs.size() == 1
+        legs[0].getDepotLocation() == null
+        legs[0].getIds() == trees*.getId()
+        legs[0].getLocations()[3] == null
+        legs[0].getLocations()[4] != null
+        compact.length * 10 < json.length
+
+        when:
+        CompactRouteEncoding.decode(Arrays.copyOf(compact, compact.length - 1))
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    /**
+     * @return The fastest of a number of runs after warming up, in nanoseconds.
+     */
+    static long time(Closure<?> run) {
+        ITERATIONS.times { run() }
+        long fastest = Long.MAX_VALUE
+        ITERATIONS.times {
+            long started = System.nanoTime()
+            run()
+            fastest = Math.min(fastest, System.nanoTime() - started)
+        }
+        fastest
+    }
+}
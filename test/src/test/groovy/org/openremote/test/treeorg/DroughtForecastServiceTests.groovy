@@ -0,0 +1,75 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.event.ClientEventService
+import org.openremote.manager.treeorg.DroughtForecastService
+import org.openremote.model.asset.AssetEvent
+import org.openremote.model.treeorg.TreeAsset
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+class DroughtForecastServiceTests extends Specification implements ManagerContainerTrait {
+
+    def "DroughtForecastService should rank trees by the predicted time until critical"() {
+        setup:
+        def container = Mock(Container)
+        DroughtForecastService droughtForecastService = new DroughtForecastService()
+        droughtForecastService.init(container)
+
+        def hour = 3600000L
+        def now = System.currentTimeMillis()
+        (0..<24).each {
+            def time = now - (23 - it) * hour
+            // Fast drying tree at a high level, slowly drying tree at a lower level and a stable tree
+            droughtForecastService.record("fast", "master", time, 9000d - 200d * it)
+            droughtForecastService.record("slow", "master", time, 5000d - 10d * it)
+            droughtForecastService.record("stable", "master", time, 3000d)
+            droughtForecastService.record("elsewhere", "other", time, 9000d - 300d * it)
+        }
+
+        when:
+        def fast = droughtForecastService.getForecast("fast")
+        def urgent = droughtForecastService.findMostUrgent("master", null, null)
+
+        then:
+        Math.abs(fast.getTrend() + 200d) < 1d
+        Math.abs(fast.getHoursUntilCritical() - (4400d - DroughtForecastService.CRITICAL_WATER_LEVEL) / 200d) < 0.5d
+        fast.getMinWaterLevel() == 4400d
+        fast.getMaxWaterLevel() == 9000d
+        droughtForecastService.getForecast("stable").getHoursUntilCritical() == null
+        droughtForecastService.getForecast("unknown") == null
+        urgent*.getAssetId() == ["fast", "slow"]
+        droughtForecastService.findMostUrgent("master", 24d, null)*.getAssetId() == ["fast"]
+        droughtForecastService.findMostUrgent("other", null, null)*.getAssetId() == ["elsewhere"]
+        droughtForecastService.findMostUrgent(null, null, null)*.getAssetId() == ["elsewhere", "fast", "slow"]
+    }
+
+    def "DroughtForecastService should forget deleted trees"() {
+        setup:
+        def container = Mock(Container)
+        def clientEventService = Mock(ClientEventService)
+        container.getService(ClientEventService) >> clientEventService
+        def assetEventHandler = null
+        clientEventService.addInternalSubscription(AssetEvent, null, _) >> { args -> assetEventHandler = args[2] }
+        DroughtForecastService droughtForecastService = new DroughtForecastService()
+        droughtForecastService.init(container)
+        droughtForecastService.start(container)
+
+        def hour = 3600000L
+        def now = System.currentTimeMillis()
+        (0..<3).each {
+            droughtForecastService.record("deleted", "master", now - (2 - it) * hour, 3000d - 200d * it)
+            droughtForecastService.record("kept", "master", now - (2 - it) * hour, 3000d - 100d * it)
+        }
+        def deleted = new TreeAsset("Deleted")
+        deleted.setId("deleted")
+        deleted.setRealm("master")
+
+        when:
+        assetEventHandler.accept(new AssetEvent(AssetEvent.Cause.DELETE, deleted, null))
+
+        then:
+        droughtForecastService.getForecast("deleted") == null
+        droughtForecastService.findMostUrgent("master", null, null)*.getAssetId() == ["kept"]
+    }
+}
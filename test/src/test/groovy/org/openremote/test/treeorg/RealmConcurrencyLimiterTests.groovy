@@ -0,0 +1,37 @@
+package org.openremote.test.treeorg
+
+import org.openremote.manager.treeorg.RealmConcurrencyLimiter
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+
+class RealmConcurrencyLimiterTests extends Specification {
+
+    def "RealmConcurrencyLimiter should reject a busy realm without blocking other realms"() {
+        setup:
+        def limiter = new RealmConcurrencyLimiter(1, 50)
+        def started = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def busy = Thread.start {
+            limiter.call("large", {
+                started.countDown()
+                release.await()
+                return "done"
+            })
+        }
+        started.await()
+
+        when:
+        limiter.call("large", { "second" })
+
+        then:
+        thrown(RejectedExecutionException)
+        limiter.getActive("large") == 1
+        limiter.call("small", { "small" }) == "small"
+
+        cleanup:
+        release.countDown()
+        busy.join()
+    }
+}
@@ -0,0 +1,138 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.treeorg.ContractionHierarchy
+import org.openremote.manager.treeorg.DistanceMatrixProvider
+import org.openremote.manager.treeorg.RoadGraph
+import org.openremote.manager.treeorg.RoadNetworkDistanceProvider
+import org.openremote.manager.treeorg.RoadNetworkService
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class RoadNetworkDistanceProviderTests extends Specification implements ManagerContainerTrait {
+
+    def "RoadNetworkDistanceProvider should follow one-way streets"() {
+        setup:
+        // Three nodes on a line: 0 -> 1 -> 2 is one-way, the way back from 2 to 0 is a long detour
+        def graphFile = Files.createTempFile("road-graph", ".bin")
+        RoadGraph.write(graphFile,
+                [5.4500, 5.4510, 5.4520] as double[],
+                [51.4500, 51.4500, 51.4500] as double[],
+                [0, 1, 2, 1] as int[],
+                [1, 2, 0, 0] as int[],
+                [70f, 70f, 1000f, 70f] as float[])
+        def graph = RoadGraph.load(graphFile)
+        def provider = new RoadNetworkDistanceProvider(graph, null, null, null)
+
+        when:
+        def matrix = provider.distanceMatrix([5.4500, 51.4500] as double[], [[5.4520, 51.4500] as double[]])
+
+        then:
+        matrix[0][1] == 140d
+        matrix[1][0] == 1000d
+
+        cleanup:
+        Files.deleteIfExists(graphFile)
+    }
+
+    def "RoadNetworkDistanceProvider should give the same distances with a contraction hierarchy and from the cache"() {
+        setup:
+        // A small grid with some one-way streets
+        def size = 12
+        def random = new Random(7)
+        def longitudes = new double[size * size]
+        def latitudes = new double[size * size]
+        def sources = []
+        def targets = []
+        def lengths = []
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int node = y * size + x
+                longitudes[node] = 5.45 + x * 0.001
+                latitudes[node] = 51.45 + y * 0.0007
+                if (x + 1 < size) {
+                    sources << node; targets << node + 1; lengths << 70f
+                    if (random.nextInt(4) > 0) {
+                        sources << node + 1; targets << node; lengths << 70f
+                    }
+                }
+                if (y + 1 < size) {
+                    sources << node; targets << node + size; lengths << 78f
+                    sources << node + size; targets << node; lengths << 78f
+                }
+            }
+        }
+        def graphFile = Files.createTempFile("road-graph", ".bin")
+        def cacheDir = Files.createTempDirectory("road-cache")
+        RoadGraph.write(graphFile, longitudes, latitudes, sources as int[], targets as int[], lengths as float[])
+        def graph = RoadGraph.load(graphFile)
+        def hierarchyFile = cacheDir.resolve("hierarchy.bin")
+        ContractionHierarchy.build(graph).write(hierarchyFile)
+        def hierarchy = ContractionHierarchy.load(hierarchyFile, graph)
+
+        def depot = [5.4505, 51.4503] as double[]
+        def points = (0..<40).collect { [5.45 + random.nextDouble() * 0.011, 51.45 + random.nextDouble() * 0.0077] as double[] }
+
+        when:
+        def dijkstra = new RoadNetworkDistanceProvider(graph, null, null, null).distanceMatrix(depot, points)
+        def contracted = new RoadNetworkDistanceProvider(graph, hierarchy, cacheDir, null).distanceMatrix(depot, points)
+        def cached = new RoadNetworkDistanceProvider(graph, hierarchy, cacheDir, null).distanceMatrix(depot, points)
+
+        then:
+        hierarchy != null
+        Files.list(cacheDir).count() == 2
+        (0..points.size()).every { i -> (0..points.size()).every { j -> Math.abs(dijkstra[i][j] - contracted[i][j]) < 0.01d } }
+        cached == contracted
+
+        cleanup:
+        Files.deleteIfExists(graphFile)
+        cacheDir.toFile().deleteDir()
+    }
+
+    def "RoadNetworkDistanceProvider should remove the least recently used matrices above the cache size"() {
+        setup:
+        def graphFile = Files.createTempFile("road-graph", ".bin")
+        def cacheDir = Files.createTempDirectory("road-cache")
+        RoadGraph.write(graphFile,
+                [5.4500, 5.4510, 5.4520] as double[],
+                [51.4500, 51.4500, 51.4500] as double[],
+                [0, 1, 2, 1] as int[],
+                [1, 2, 0, 0] as int[],
+                [70f, 70f, 1000f, 70f] as float[])
+        def graph = RoadGraph.load(graphFile)
+        // A matrix of two points takes 32 bytes and one of three points 56 bytes, so only one fits
+        def provider = new RoadNetworkDistanceProvider(graph, null, cacheDir, null, 60L)
+        def depot = [5.4500, 51.4500] as double[]
+
+        when:
+        provider.distanceMatrix(depot, [[5.4520, 51.4500] as double[]])
+        Thread.sleep(20)
+        provider.distanceMatrix(depot, [[5.4520, 51.4500] as double[], [5.4510, 51.4500] as double[]])
+        def files = Files.list(cacheDir).collect { it.getFileName().toString() }
+
+        then: "the newest matrix is kept and no temporary file is left behind"
+        files.size() == 1
+        files[0].startsWith("matrix-") && files[0].contains("-3-")
+
+        cleanup:
+        Files.deleteIfExists(graphFile)
+        cacheDir.toFile().deleteDir()
+    }
+
+    def "RoadNetworkService should use straight-line distances when the road graph cannot be loaded"() {
+        setup:
+        def container = Mock(Container)
+        container.getConfig() >> [(RoadNetworkService.TREEORG_ROAD_GRAPH_FILE): "/nonexistent/road-graph.bin"]
+        RoadNetworkService roadNetworkService = new RoadNetworkService()
+
+        when:
+        roadNetworkService.init(container)
+        roadNetworkService.start(container)
+
+        then:
+        noExceptionThrown()
+        roadNetworkService.getDistanceProvider() == DistanceMatrixProvider.HAVERSINE
+    }
+}
@@ -1,15 +1,21 @@
 package org.openremote.test.treeorg
 
 import org.openremote.container.Container
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.treeorg.DistanceMatrixProvider
 import org.openremote.manager.treeorg.RouteOptimizationService
 import org.openremote.manager.treeorg.RouteResponse
 import org.openremote.manager.treeorg.RouteService
 import org.openremote.manager.treeorg.SortingService
 import org.openremote.model.asset.Asset
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.query.AssetQuery
 import org.openremote.model.treeorg.TreeAsset
 import org.openremote.test.ManagerContainerTrait
 import spock.lang.Specification
 
+import java.util.concurrent.CountDownLatch
+
 class RouteOptimizationServiceTests extends Specification implements ManagerContainerTrait {
 
     def "RouteOptimizationService should optimize route for sensors"() {
@@ -42,7 +48,7 @@ class RouteOptimizationServiceTests extends Specification implements ManagerCont
         sortingService.findAllAssetsSortedByAttributeAndType(_ as Class<?>, _ as String) >> [assetA, assetC, assetB]
 
         // Mock the behavior of the RouteService
-        routeService.optimizeRouteForSortedAssets(_ as List<Asset<?>>, _ as String) >> new RouteResponse("url", [assetA, assetC, assetB])
+        routeService.optimizeRouteForSortedAssets(_ as List<Asset<?>>, _ as String, false) >> new RouteResponse("url", [assetA, assetC, assetB])
 
         // Initialize RouteOptimizationService with the mocked services
         RouteOptimizationService routeOptimizationService = new RouteOptimizationService()
@@ -74,7 +80,7 @@ class RouteOptimizationServiceTests extends Specification implements ManagerCont
         sortingService.findAllAssetsSortedByAttributeAndType(_ as Class<?>, _ as String) >> []
 
         // Mock the behavior of the RouteService
-        routeService.optimizeRouteForSortedAssets(_ as List<Asset<?>>, _ as String) >> new RouteResponse("url", [])
+        routeService.optimizeRouteForSortedAssets(_ as List<Asset<?>>, _ as String, false) >> new RouteResponse("url", [])
 
         // Initialize RouteOptimizationService with the mocked services
         RouteOptimizationService routeOptimizationService = new RouteOptimizationService()
@@ -151,7 +157,7 @@ class RouteOptimizationServiceTests extends Specification implements ManagerCont
         sortingService.findAllAssetsSortedByAttributeAndType(_ as Class<?>, _ as String) >> [assetA]
 
         // Mock the behavior of the RouteService
-        routeService.optimizeRouteForSortedAssets(_ as List<Asset<?>>, _ as String) >> new RouteResponse("url", [assetA])
+        routeService.optimizeRouteForSortedAssets(_ as List<Asset<?>>, _ as String, false) >> new RouteResponse("url", [assetA])
 
         // Initialize RouteOptimizationService with the mocked services
         RouteOptimizationService routeOptimizationService = new RouteOptimizationService()
@@ -192,7 +198,7 @@ class RouteOptimizationServiceTests extends Specification implements ManagerCont
         sortingService.findAllAssetsSortedByAttributeAndType(_ as Class<?>, "soilTemperature") >> [assetA, assetB]
 
         // Mock the behavior of the RouteService
-        routeService.optimizeRouteForSortedAssets(_ as List<Asset<?>>, "soilTemperature") >> new RouteResponse("url", [assetA, assetB])
+        routeService.optimizeRouteForSortedAssets(_ as List<Asset<?>>, "soilTemperature", false) >> new RouteResponse("url", [assetA, assetB])
 
         // Initialize RouteOptimizationService with the mocked services
         RouteOptimizationService routeOptimizationService = new RouteOptimizationService()
@@ -261,5 +267,108 @@ class RouteOptimizationServiceTests extends Specification implements ManagerCont
         result.getOrderedAssets().isEmpty()
     }
 
+    def "RouteOptimizationService should select urgent trees within the distance budget"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        def routeService = Mock(RouteService)
+        container.getService(AssetStorageService) >> assetStorageService
+        container.getService(RouteService) >> routeService
+
+        // Two dry trees close to the depot and a dry tree roughly 6 km away
+        def nearA = new TreeAsset("Near A")
+        nearA.setId("1")
+        nearA.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(5.4540, 51.4510))
+        nearA.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(100)
+
+        def nearB = new TreeAsset("Near B")
+        nearB.setId("2")
+        nearB.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(5.4550, 51.4515))
+        nearB.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(500)
+        nearB.getAttributes().getOrCreate(TreeAsset.PRIORITY).setValue(true)
+
+        def far = new TreeAsset("Far")
+        far.setId("3")
+        far.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(5.5400, 51.4508))
+        far.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(50)
+
+        assetStorageService.findAll(_ as AssetQuery) >> [nearA, nearB, far]
+        routeService.distanceMatrix(_, _) >> { args -> DistanceMatrixProvider.HAVERSINE.distanceMatrix(args[0], args[1]) }
+        routeService.applyRoute(_, _, _, _, _) >> ["url"]
+
+        RouteOptimizationService routeOptimizationService = new RouteOptimizationService()
+        routeOptimizationService.init(container)
+
+        when:
+        def result = routeOptimizationService.optimizePrizeCollectingRoute(null, TreeAsset, 2000d, null)
+
+        then:
+        result.getOrderedAssets()*.getId() as Set == ["1", "2"] as Set
+        result.getCandidateCount() == 3
+        result.getTotalDistance() <= 2000d
+        result.getPriorityUrgency() > 0d
+        result.getTotalUrgency() == result.getDeficitUrgency() + result.getTemperatureUrgency() + result.getPriorityUrgency()
+    }
+
+    def "RouteOptimizationService should only route urgent trees that fit within the budget"() {
+        given:
+        def depot = [5.4535d, 51.4508d] as double[]
+        def points = [
+                [5.4540d, 51.4510d] as double[],
+                [5.4550d, 51.4515d] as double[],
+                [5.5400d, 51.4508d] as double[],
+                [5.4545d, 51.4512d] as double[],
+                [5.4560d, 51.4520d] as double[]
+        ]
+        def prizes = [1d, 3d, 5d, 0d, 2d] as double[]
+
+        expect: "the far and the satisfied tree are dropped and the most urgent are kept"
+        RouteOptimizationService.selectCandidates(depot, points, prizes, 2000d, 10) as List == [1, 4, 0]
+        RouteOptimizationService.selectCandidates(depot, points, prizes, 2000d, 2) as List == [1, 4]
+        RouteOptimizationService.selectCandidates(depot, points, prizes, 20000d, 10) as List == [2, 1, 4, 0]
+    }
+
+    def "RouteOptimizationService should share one computation between identical concurrent requests"() {
+        setup:
+        def container = Mock(Container)
+        def sortingService = Mock(SortingService)
+        def routeService = Mock(RouteService)
+        container.getService(SortingService) >> sortingService
+        container.getService(RouteService) >> routeService
 
+        def asset = new TreeAsset("Tree")
+        asset.setId("1")
+        def otherAsset = new TreeAsset("Other tree")
+        otherAsset.setId("2")
+        def started = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        sortingService.findAllAssetsSortedByAttributeAndType("master", _ as Class<?>, "waterLevel") >> [asset]
+        sortingService.findAllAssetsSortedByAttributeAndType("other", _ as Class<?>, "waterLevel") >> [otherAsset]
+
+        RouteOptimizationService routeOptimizationService = new RouteOptimizationService()
+        routeOptimizationService.init(container)
+
+        when:
+        def first = null
+        def firstThread = Thread.start { first = routeOptimizationService.optimizeRouteForSensors("master", TreeAsset, "waterLevel") }
+        started.await()
+        def second = null
+        def secondThread = Thread.start { second = routeOptimizationService.optimizeRouteForSensors("master", TreeAsset, "waterLevel") }
+        // Give the second request time to join the running computation
+        Thread.sleep(200)
+        release.countDown()
+        firstThread.join()
+        secondThread.join()
+        def other = routeOptimizationService.optimizeRouteForSensors("other", TreeAsset, "waterLevel")
+
+        then:
+        1 * routeService.optimizeRouteForSortedAssets({ it[0].is(asset) }, "waterLevel", false) >> {
+            started.countDown()
+            release.await()
+            new RouteResponse("url", [asset])
+        }
+        1 * routeService.optimizeRouteForSortedAssets({ it[0].is(otherAsset) }, "waterLevel", false) >> new RouteResponse("other", [otherAsset])
+        first.is(second)
+        other.getGoogleMapsURL() == "other"
+    }
 }
@@ -0,0 +1,166 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.event.ClientEventService
+import org.openremote.manager.treeorg.RoutePlanService
+import org.openremote.model.asset.Asset
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.treeorg.RoutePlanAsset
+import org.openremote.model.treeorg.RoutePlanEvent
+import org.openremote.model.treeorg.TreeAsset
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+class RoutePlanServiceTests extends Specification implements ManagerContainerTrait {
+
+    static RoutePlanAsset plan(String id, int version, List<String> stopIds, double totalDistance) {
+        def plan = new RoutePlanAsset("Route plan v" + version)
+                .setStopIds(stopIds as String[])
+                .setTotalDistance(totalDistance)
+                .setSolver(RoutePlanService.SOLVER_NEAREST_NEIGHBOUR)
+                .setPlanVersion(version)
+        plan.setId(id)
+        plan.setRealm("master")
+        plan.setParentId("parent")
+        return plan
+    }
+
+    static TreeAsset tree(String id) {
+        def tree = new TreeAsset("Tree " + id)
+        tree.setId(id)
+        tree.setParentId("parent")
+        return tree
+    }
+
+    def "RoutePlanService should store the next plan version and drop expired versions"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        def clientEventService = Mock(ClientEventService)
+        container.getService(AssetStorageService) >> assetStorageService
+        container.getService(ClientEventService) >> clientEventService
+
+        def existing = (1..RoutePlanService.MAX_PLAN_VERSIONS).collect { plan("plan" + it, it, ["a"], 100d) }
+        assetStorageService.findAll(_ as AssetQuery) >> existing
+        RoutePlanAsset stored = null
+        assetStorageService.merge(_ as Asset) >> { args -> stored = args[0]; args[0] }
+
+        RoutePlanService routePlanService = new RoutePlanService()
+        routePlanService.init(container)
+
+        when:
+        def result = routePlanService.savePlan("master", "parent", null, [tree("b"), tree("a")],
+                [[5.45d, 51.45d] as double[], [5.46d, 51.45d] as double[], [5.47d, 51.45d] as double[], [5.45d, 51.45d] as double[]],
+                1234d, RoutePlanService.SOLVER_NEAREST_NEIGHBOUR)
+
+        then:
+        1 * assetStorageService.delete(["plan1"])
+        1 * clientEventService.publishEvent({ RoutePlanEvent event ->
+            event.getRealm() == "master" && event.getPlanVersion() == RoutePlanService.MAX_PLAN_VERSIONS + 1
+                    && event.getStopIds() == ["b", "a"] && event.getAdded() == ["b"] && event.getRemoved().isEmpty()
+        })
+        result.is(stored)
+        result.getPlanVersion().get() == RoutePlanService.MAX_PLAN_VERSIONS + 1
+        result.getStopIds().get() as List == ["b", "a"]
+        result.getGeometry().get().length == 4
+        result.getTotalDistance().get() == 1234d
+        result.getParentId() == "parent"
+        !result.getDepotId().isPresent()
+    }
+
+    def "RoutePlanService should only store and find plans of a parent"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+        RoutePlanService routePlanService = new RoutePlanService()
+        routePlanService.init(container)
+
+        when:
+        routePlanService.findPlans("master", null, null)
+
+        then:
+        thrown(IllegalArgumentException)
+        0 * assetStorageService.findAll(_)
+
+        when:
+        routePlanService.savePlan("master", null, null, [tree("a")], [[5.45d, 51.45d] as double[]], 0d, RoutePlanService.SOLVER_NEAREST_NEIGHBOUR)
+
+        then:
+        thrown(IllegalArgumentException)
+        0 * assetStorageService.merge(_)
+
+        when:
+        routePlanService.findPlans("master", "parent", null)
+
+        then:
+        1 * assetStorageService.findAll({ AssetQuery query -> query.parents != null && query.parents[0].id == "parent" }) >> []
+    }
+
+    def "RoutePlanService should serve the latest plan and compare versions"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+
+        def first = plan("plan1", 1, ["a", "b", "c"], 1500d)
+        def second = plan("plan2", 2, ["b", "a", "d"], 1200d)
+        def otherDepot = plan("plan3", 3, ["e"], 300d).setDepotId("depot")
+        assetStorageService.findAll(_ as AssetQuery) >> [first, otherDepot, second]
+
+        RoutePlanService routePlanService = new RoutePlanService()
+        routePlanService.init(container)
+
+        when:
+        def latest = routePlanService.findPlan(null, "parent", null, null)
+        def comparison = routePlanService.comparePlans(null, "parent", null, null, null)
+
+        then:
+        latest.is(second)
+        routePlanService.findPlan(null, "parent", null, 1).is(first)
+        routePlanService.findPlan(null, "parent", "depot", null).is(otherDepot)
+        routePlanService.findPlan(null, "parent", null, 5) == null
+        comparison.getFromVersion() == 1
+        comparison.getToVersion() == 2
+        comparison.getDistanceDelta() == -300d
+        comparison.getAddedStopIds() == ["d"]
+        comparison.getRemovedStopIds() == ["c"]
+        comparison.getMovedStopIds() == ["b", "a"]
+    }
+
+    def "RoutePlanService should store day plans without a parent, keyed by day, depot and vehicle"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+
+        def earlier = plan("day1", 1, ["a"], 100d).setPlanDate("2026-10-20").setVehicleId("truck-a")
+        earlier.setParentId(null)
+        def otherVehicle = plan("day2", 4, ["c"], 100d).setPlanDate("2026-10-20").setVehicleId("truck-b")
+        otherVehicle.setParentId(null)
+        def rootTree = tree("root")
+        rootTree.setParentId(null)
+        List<AssetQuery> queries = []
+        assetStorageService.findAll(_ as AssetQuery) >> { AssetQuery query -> queries << query; [earlier, otherVehicle] }
+        assetStorageService.merge(_ as Asset) >> { args -> args[0] }
+
+        RoutePlanService routePlanService = new RoutePlanService()
+        routePlanService.init(container)
+
+        when: "a route of root level trees and another parent is stored"
+        def result = routePlanService.saveDayPlan("master", "2026-10-20", null, "truck-a", [rootTree, tree("b")],
+                [[5.45d, 51.45d] as double[], [5.45d, 51.45d] as double[]], 100d, RoutePlanService.SOLVER_NEAREST_NEIGHBOUR)
+
+        then: "it is the next version of the day plan of its vehicle"
+        result.getParentId() == null
+        result.getPlanVersion().get() == 2
+        result.getPlanDate().get() == "2026-10-20"
+        result.getVehicleId().get() == "truck-a"
+        queries.every { it.attributes != null }
+
+        expect: "the day plans are found per depot and vehicle"
+        routePlanService.findDayPlans("master", "2026-10-20")*.getId() == ["day1", "day2"]
+        routePlanService.findDayPlans("master", "2026-10-20", null, "truck-b")*.getId() == ["day2"]
+    }
+}
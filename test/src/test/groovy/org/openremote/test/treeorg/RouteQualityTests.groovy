@@ -0,0 +1,163 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.treeorg.RouteService
+import org.openremote.model.asset.Asset
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.treeorg.TreeAsset
+import spock.lang.Specification
+
+/**
+ * Guards tour quality and solver speed of {@link RouteService} on fixed datasets. The datasets are generated from a
+ * fixed seed, so they are identical on every run: 70% of the trees stand in parks around the default starting position
+ * and the rest line the streets in between.
+ * <p>
+ * Reference lengths are the best tours found for each dataset by a long iterated 2-opt/Or-opt search; the one for 10
+ * stops is the exact optimum. When the solver improves, lower the maximum gaps so the improvement is kept. From
+ * {@link RouteService#TREEORG_CURVE_ROUTE_STOPS} stops on the tour follows a space-filling curve, which needs no
+ * distance matrix, so the large datasets run on a default heap.
+ */
+class RouteQualityTests extends Specification {
+
+    def "RouteService should route #stops stops within #maxGap of the reference length and #maxMillis ms"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+        // No depots and no stored trees, only the solver is measured
+        assetStorageService.findAll(_ as AssetQuery) >> []
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+        routeService.optimizeRouteForSortedAssets(trees(10), "waterLevel")
+        def assets = trees(stops)
+
+        when:
+        long started = System.nanoTime()
+        def result = routeService.optimizeRouteForSortedAssets(assets, "waterLevel")
+        long millis = (System.nanoTime() - started).intdiv(1_000_000)
+        double length = tourLength(result.getOrderedAssets())
+
+        then:
+        result.getOrderedAssets().size() == stops
+        result.getOrderedAssets()*.getId() as Set == assets*.getId() as Set
+        length >= referenceLength * 0.999d
+        length / referenceLength - 1d <= maxGap
+        millis <= maxMillis
+
+        where:
+        stops | referenceLength | maxGap | maxMillis
+        10    | 8698.5d         | 0.001d | 500
+        100   | 35631.5d        | 0.25d  | 1000
+        1000  | 130144.3d       | 0.30d  | 5000
+    }
+
+    def "RouteService should route 10000 stops within the maximum gap and runtime"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+        assetStorageService.findAll(_ as AssetQuery) >> []
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+        def assets = trees(10_000)
+        double referenceLength = 489711.3d
+
+        when:
+        long started = System.nanoTime()
+        def result = routeService.optimizeRouteForSortedAssets(assets, "waterLevel")
+        long millis = (System.nanoTime() - started).intdiv(1_000_000)
+        double length = tourLength(result.getOrderedAssets())
+
+        then:
+        result.getOrderedAssets().size() == 10_000
+        length >= referenceLength * 0.999d
+        length / referenceLength - 1d <= 0.20d
+        millis <= 5_000
+    }
+
+    def "RouteService should sweep 50000 stops along a space-filling curve within a second"() {
+        setup:
+        def route = { Map<String, String> config ->
+            def container = Mock(Container)
+            def assetStorageService = Mock(AssetStorageService)
+            container.getService(AssetStorageService) >> assetStorageService
+            container.getConfig() >> config
+            assetStorageService.findAll(_ as AssetQuery) >> []
+            RouteService routeService = new RouteService()
+            routeService.init(container)
+            routeService
+        }
+        def assets = trees(50_000)
+        def curveOnly = route([(RouteService.TREEORG_CURVE_ROUTE_WINDOW): "0"])
+        def improved = route([:])
+        improved.optimizeRouteForSortedAssets(trees(5_000), "waterLevel")
+
+        when:
+        double curveLength = tourLength(curveOnly.optimizeRouteForSortedAssets(assets, "waterLevel").getOrderedAssets())
+        long started = System.nanoTime()
+        def result = improved.optimizeRouteForSortedAssets(assets, "waterLevel")
+        long millis = (System.nanoTime() - started).intdiv(1_000_000)
+        double length = tourLength(result.getOrderedAssets())
+
+        then:
+        result.getOrderedAssets()*.getId() as Set == assets*.getId() as Set
+        length <= curveLength * 0.9d
+        millis <= 1_000
+    }
+
+    /**
+     * Calculates the great-circle length of the tour from the default starting position over the assets and back.
+     */
+    static double tourLength(List<Asset<?>> assets) {
+        double length = 0d
+        double[] previous = RouteService.DEFAULT_STARTING_POSITION
+        for (asset in assets) {
+            def point = asset.getAttributes().getValue(Asset.LOCATION).get()
+            double[] current = [point.getX(), point.getY()] as double[]
+            length += haversine(previous, current)
+            previous = current
+        }
+        length + haversine(previous, RouteService.DEFAULT_STARTING_POSITION)
+    }
+
+    static double haversine(double[] from, double[] to) {
+        double lat1 = Math.toRadians(from[1])
+        double lat2 = Math.toRadians(to[1])
+        double dLat = lat2 - lat1
+        double dLon = Math.toRadians(to[0] - from[0])
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2)
+        2 * 6_371_000d * Math.asin(Math.min(1d, Math.sqrt(a)))
+    }
+
+    /**
+     * Generates the dataset for a number of stops; the number of stops is the seed.
+     */
+    static List<Asset<?>> trees(int stops) {
+        def start = RouteService.DEFAULT_STARTING_POSITION
+        def random = new Random(stops)
+        int parks = Math.max(1, stops.intdiv(50))
+        def centers = (0..<parks).collect {
+            [start[0] + (random.nextDouble() - 0.5d) * 0.1d, start[1] + (random.nextDouble() - 0.5d) * 0.06d] as double[]
+        }
+        (0..<stops).collect { i ->
+            double x, y
+            if (random.nextInt(10) < 7) {
+                def center = centers[random.nextInt(parks)]
+                x = center[0] + random.nextGaussian() * 0.002d
+                y = center[1] + random.nextGaussian() * 0.0012d
+            } else {
+                x = start[0] + (random.nextDouble() - 0.5d) * 0.1d
+                y = start[1] + (random.nextDouble() - 0.5d) * 0.06d
+            }
+            def tree = new TreeAsset("Tree " + i)
+            tree.setId("tree" + i)
+            tree.setParentId("park")
+            tree.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(x, y))
+            tree as Asset<?>
+        }
+    }
+}
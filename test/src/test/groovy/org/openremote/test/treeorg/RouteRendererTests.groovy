@@ -0,0 +1,34 @@
+package org.openremote.test.treeorg
+
+import org.openremote.manager.treeorg.RouteRenderer
+import spock.lang.Specification
+
+class RouteRendererTests extends Specification {
+
+    def "RouteRenderer should split long routes into connected legs"() {
+        setup:
+        def route = (0..<50).collect { [5.45d + it * 0.001d, 51.45d] as double[] }
+
+        when:
+        def legs = RouteRenderer.googleMapsLegURLs(route, RouteRenderer.MAX_WAYPOINTS_PER_LEG)
+        def waypoints = legs.collect { it.substring(RouteRenderer.GOOGLE_MAPS_DIR_URL.length()).split("/") as List }
+
+        then:
+        legs.size() == 3
+        waypoints.every { it.size() <= RouteRenderer.MAX_WAYPOINTS_PER_LEG }
+        waypoints[0].last() == waypoints[1].first()
+        waypoints[1].last() == waypoints[2].first()
+        waypoints.sum { it.size() } - (legs.size() - 1) == route.size()
+    }
+
+    def "RouteRenderer should round coordinates and encode polylines"() {
+        setup:
+        def route = [[-120.2d, 38.5d] as double[], [-120.95d, 40.7d] as double[], [-126.453d, 43.252d] as double[]]
+
+        expect:
+        RouteRenderer.googleMapsURL([[5.453487298268298d, 51.45081456926727d] as double[]]) == "https://www.google.com/maps/dir/51.450815,5.453487/"
+        RouteRenderer.encodePolyline(route) == "_p~iF~ps|U_ulLnnqC_mqNvxq`@"
+        RouteRenderer.decodePolyline(RouteRenderer.encodePolyline(route)).collect { it as List } == route.collect { it as List }
+        RouteRenderer.geoJsonLineString(route) == '{"type":"LineString","coordinates":[[-120.2,38.5],[-120.95,40.7],[-126.453,43.252]]}'
+    }
+}
@@ -1,15 +1,23 @@
 package org.openremote.test.treeorg
 
+import jakarta.persistence.OptimisticLockException
 import org.openremote.container.Container
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.treeorg.RouteApiClient
+import org.openremote.manager.treeorg.RoutePlanService
 import org.openremote.manager.treeorg.RouteService
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.impl.ThingAsset
 import org.openremote.model.geo.GeoJSONPoint
 import org.openremote.model.query.AssetQuery
+import org.openremote.model.treeorg.DepotAsset
 import org.openremote.model.treeorg.TreeAsset
 import org.openremote.test.ManagerContainerTrait
 import spock.lang.Specification
 
+import java.time.LocalDate
+import java.time.ZoneOffset
+
 class RouteServiceTests extends Specification implements ManagerContainerTrait {
 
     def "RouteService should optimize route for sorted assets"() {
@@ -111,6 +119,33 @@ class RouteServiceTests extends Specification implements ManagerContainerTrait {
         result.getOrderedAssets().isEmpty()
     }
 
+    def "RouteService should not touch any asset when none of them has a location"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        def routePlanService = Mock(RoutePlanService)
+        container.getService(AssetStorageService) >> assetStorageService
+        container.getService(RoutePlanService) >> routePlanService
+        def assets = ["1", "2"].collect { id ->
+            def asset = new TreeAsset("Unlocated " + id)
+            asset.setId(id)
+            asset
+        }
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+
+        when:
+        def result = routeService.optimizeRouteForSortedAssets(assets, "waterLevel")
+
+        then:
+        result != null
+        result.getOrderedAssets().isEmpty()
+        0 * assetStorageService.findAll({ it.ids != null })
+        0 * assetStorageService.merge(_)
+        0 * routePlanService.savePlan(*_)
+    }
+
     def "RouteService should handle one coordinate"() {
         setup:
         def container = Mock(Container)
@@ -144,4 +179,225 @@ class RouteServiceTests extends Specification implements ManagerContainerTrait {
         routeService.calculateDistance([0, 0] as double[], [0, 0] as double[]) == 0.0
         routeService.calculateDistance([1, 1] as double[], [4, 5] as double[]) == 5.0
     }
+
+    def "RouteService should schedule stops within their time windows"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+
+        // Depart at 08:00, tree B can only be visited after 10:00 and tree C closes at 07:00
+        def startTime = LocalDate.now(ZoneOffset.UTC).atTime(8, 0).atZone(ZoneOffset.UTC).toInstant().toEpochMilli()
+
+        def assetA = new TreeAsset("Asset A")
+        assetA.setId("1")
+        assetA.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(5.4540, 51.4510))
+        assetA.getAttributes().getOrCreate(TreeAsset.SERVICE_DURATION).setValue(10)
+
+        def assetB = new TreeAsset("Asset B")
+        assetB.setId("2")
+        assetB.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(5.4545, 51.4512))
+        assetB.getAttributes().getOrCreate(TreeAsset.TIME_WINDOW_START).setValue(10 * 60)
+        assetB.getAttributes().getOrCreate(TreeAsset.TIME_WINDOW_END).setValue(12 * 60)
+
+        def assetC = new TreeAsset("Asset C")
+        assetC.setId("3")
+        assetC.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(5.4550, 51.4515))
+        assetC.getAttributes().getOrCreate(TreeAsset.TIME_WINDOW_END).setValue(7 * 60)
+
+        assetStorageService.findAll(_ as AssetQuery) >> [assetA, assetB]
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+
+        when:
+        def result = routeService.scheduleRouteForSortedAssets([assetB, assetC, assetA], startTime)
+
+        then:
+        def stopA = result.getSchedule().find { it.getAssetId() == "1" }
+        def stopB = result.getSchedule().find { it.getAssetId() == "2" }
+        result.getOrderedAssets()*.getId() as Set == ["1", "2"] as Set
+        result.getUnscheduledAssetIds() == ["3"]
+        stopA.getDeparture() - stopA.getServiceStart() == 10 * 60 * 1000
+        stopB.getServiceStart() == startTime + 2 * 60 * 60 * 1000
+        result.getReturnTime() > result.getSchedule().last().getDeparture()
+    }
+
+    def "RouteService should route each asset from its nearest depot"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+
+        def depotNorth = new DepotAsset("Depot North")
+        depotNorth.setId("north")
+        depotNorth.getAttributes().getOrCreate(DepotAsset.LOCATION).setValue(new GeoJSONPoint(5.4800, 51.4700))
+
+        def depotSouth = new DepotAsset("Depot South")
+        depotSouth.setId("south")
+        depotSouth.getAttributes().getOrCreate(DepotAsset.LOCATION).setValue(new GeoJSONPoint(5.4800, 51.4000))
+
+        def assets = [
+                [id: "1", point: new GeoJSONPoint(5.4810, 51.4710)],
+                [id: "2", point: new GeoJSONPoint(5.4790, 51.4010)],
+                [id: "3", point: new GeoJSONPoint(5.4820, 51.4690)],
+                [id: "4", point: new GeoJSONPoint(5.4780, 51.3990)]
+        ].collect { data ->
+            def asset = new TreeAsset("Asset " + data.id)
+            asset.setId(data.id)
+            asset.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(data.point)
+            asset
+        }
+
+        assetStorageService.findAll(_ as AssetQuery) >> { AssetQuery query ->
+            query.types != null && query.types.contains(DepotAsset) ? [depotNorth, depotSouth] : []
+        }
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+
+        when:
+        def result = routeService.optimizeRouteForSortedAssets(assets, "waterLevel")
+
+        then:
+        result.getDepotRoutes().size() == 2
+        result.getDepotRoutes().find { it.getDepotId() == "north" }.getOrderedAssets()*.getId() as Set == ["1", "3"] as Set
+        result.getDepotRoutes().find { it.getDepotId() == "south" }.getOrderedAssets()*.getId() as Set == ["2", "4"] as Set
+        result.getOrderedAssets().size() == 4
+        result.getDepotRoutes().every { it.getGoogleMapsURL().startsWith("https://www.google.com/maps/dir/51.4") }
+        result.getGoogleMapsLegURLs() == result.getDepotRoutes()*.getGoogleMapsLegURLs().flatten()
+        result.getGoogleMapsURL() == result.getGoogleMapsLegURLs()[0]
+    }
+
+    def "RouteService should retry stale writes and reset route IDs of trees left out of the route"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+
+        def parent = new ThingAsset("Park")
+        parent.setId("park")
+        def freshParent = new ThingAsset("Park")
+        freshParent.setId("park")
+        def trees = ["1", "2", "3"].collect { id ->
+            def tree = new TreeAsset("Tree " + id)
+            tree.setId(id)
+            tree.setParentId("park")
+            tree
+        }
+        trees[2].getAttributes().getOrCreate(TreeAsset.ROUTE_ID).setValue(5)
+
+        assetStorageService.find("park") >>> [parent, freshParent]
+        List<AssetQuery> childQueries = []
+        assetStorageService.findAll(_ as AssetQuery) >> { AssetQuery query ->
+            if (query.parents == null) {
+                return trees.subList(0, 2)
+            }
+            childQueries << query
+            trees.findAll { it.getRouteId().orElse(0) > 0 }
+        }
+        def staleWrites = 1
+        assetStorageService.merge(_) >> { args ->
+            if (args[0].is(parent) && staleWrites-- > 0) {
+                throw new OptimisticLockException("Asset was modified by another transaction")
+            }
+            args[0]
+        }
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+
+        when:
+        def route = (0..<30).collect { [5.4500d + it * 0.0001d, 51.4500d] as double[] }
+        def urls = routeService.applyRoute(route, trees.subList(0, 2), null, 300d, "test")
+
+        then:
+        urls.size() == 2
+        freshParent.getAttributes().getValue(Asset.NOTES).orElse(null) == urls[0]
+        freshParent.getAttributes().getValue(RouteService.ROUTE_LEG_URLS).orElse(null) as List == urls
+        trees[0].getRouteId().orElse(null) == 1
+        trees[1].getRouteId().orElse(null) == 2
+        trees[2].getRouteId().orElse(null) == 0
+
+        and: "only the children with a route ID are loaded"
+        childQueries.size() == 1
+        childQueries[0].attributes.items[0].name.value == TreeAsset.ROUTE_ID.getName()
+    }
+
+    def "RouteService should warm start from the previous tour and insert new trees into it"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+        assetStorageService.findAll(_ as AssetQuery) >> []
+        // A single depot route is not part of the response, read the solver from the stored plans
+        def routePlanService = Mock(RoutePlanService)
+        container.getService(RoutePlanService) >> routePlanService
+        List<String> solvers = []
+        routePlanService.savePlan(*_) >> { args -> solvers << args[6]; null }
+
+        // Trees on a line east of the starting position, previously visited from the far end back
+        def start = RouteService.DEFAULT_STARTING_POSITION
+        def offsets = ["1": 0.01d, "2": 0.02d, "3": 0.03d, "4": 0.04d, "5": 0.05d, "6": 0.025d]
+        def trees = offsets.collect { id, offset ->
+            def tree = new TreeAsset("Tree " + id)
+            tree.setId(id)
+            tree.setParentId("parent")
+            tree.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(start[0] + offset, start[1]))
+            tree
+        }
+        (0..4).each { trees[it].getAttributes().getOrCreate(TreeAsset.ROUTE_ID).setValue(5 - it) }
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+
+        when:
+        def warm = routeService.optimizeRouteForSortedAssets(trees, "waterLevel", true)
+
+        then:
+        warm.getOrderedAssets()*.getId().findAll { it != "6" } == ["5", "4", "3", "2", "1"]
+        warm.getOrderedAssets()*.getId().contains("6")
+        solvers == ["warmStartLocalSearch"]
+
+        when:
+        def cold = routeService.optimizeRouteForSortedAssets(trees, "waterLevel")
+
+        then:
+        cold.getOrderedAssets()*.getId() == ["1", "2", "6", "3", "4", "5"]
+        solvers == ["warmStartLocalSearch", "heldKarp"]
+    }
+
+    def "RouteService should solve small routes exactly and fall back to closest-next-point by size and budget"() {
+        setup:
+        List<String> solvers = []
+        def route = { Map<String, String> config ->
+            def container = Mock(Container)
+            def assetStorageService = Mock(AssetStorageService)
+            def routePlanService = Mock(RoutePlanService)
+            container.getService(AssetStorageService) >> assetStorageService
+            container.getService(RoutePlanService) >> routePlanService
+            container.getConfig() >> config
+            assetStorageService.findAll(_ as AssetQuery) >> []
+            routePlanService.savePlan(*_) >> { args -> solvers << args[6]; null }
+            RouteService routeService = new RouteService()
+            routeService.init(container)
+            routeService
+        }
+        def exact = route([:])
+        def heuristic = route([(RouteService.TREEORG_EXACT_ROUTE_MILLIS): "0"])
+
+        when:
+        def small = RouteQualityTests.trees(12)
+        double exactSmall = RouteQualityTests.tourLength(exact.optimizeRouteForSortedAssets(small, "waterLevel").getOrderedAssets())
+        double greedySmall = RouteQualityTests.tourLength(heuristic.optimizeRouteForSortedAssets(small, "waterLevel").getOrderedAssets())
+        def medium = RouteQualityTests.trees(20)
+        double exactMedium = RouteQualityTests.tourLength(exact.optimizeRouteForSortedAssets(medium, "waterLevel").getOrderedAssets())
+        double greedyMedium = RouteQualityTests.tourLength(heuristic.optimizeRouteForSortedAssets(medium, "waterLevel").getOrderedAssets())
+        exact.optimizeRouteForSortedAssets(RouteQualityTests.trees(30), "waterLevel")
+
+        then:
+        solvers == ["heldKarp", "nearestNeighbour", "branchAndBound", "nearestNeighbour", "nearestNeighbour"]
+        exactSmall < greedySmall
+        exactMedium < greedyMedium
+    }
 }
@@ -0,0 +1,100 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.treeorg.RoutePlanService
+import org.openremote.manager.treeorg.RouteService
+import org.openremote.manager.treeorg.ScenarioService
+import org.openremote.manager.treeorg.TreeSnapshotService
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.treeorg.RouteScenario
+import org.openremote.model.treeorg.TreeAsset
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+import java.util.concurrent.Executors
+
+class ScenarioServiceTests extends Specification implements ManagerContainerTrait {
+
+    def "ScenarioService should compare scenarios in parallel without storing any route"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        def routePlanService = Mock(RoutePlanService)
+        def executor = Executors.newFixedThreadPool(4)
+        container.getService(AssetStorageService) >> assetStorageService
+        container.getService(RoutePlanService) >> routePlanService
+        container.getExecutor() >> executor
+        assetStorageService.findAll(_ as AssetQuery) >> []
+
+        def random = new Random(11)
+        def start = RouteService.DEFAULT_STARTING_POSITION
+        def levels = []
+        TreeSnapshotService treeSnapshotService = new TreeSnapshotService()
+        treeSnapshotService.init(container)
+        (0..<400).each { i ->
+            def tree = new TreeAsset("Tree " + i)
+            tree.setId("tree" + i)
+            tree.setRealm("master")
+            tree.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(start[0] + random.nextDouble() * 0.06d - 0.03d, start[1] + random.nextDouble() * 0.04d - 0.02d))
+            int level = 1000 + random.nextInt(2000)
+            tree.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(level)
+            levels << level
+            treeSnapshotService.put(tree)
+        }
+        treeSnapshotService.setLoaded(true)
+        container.getService(TreeSnapshotService) >> treeSnapshotService
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+        container.getService(RouteService) >> routeService
+        ScenarioService scenarioService = new ScenarioService()
+        scenarioService.init(container)
+
+        when:
+        def results = scenarioService.evaluate("master", [
+                new RouteScenario("two trucks", 2, 3000d, null, null),
+                new RouteScenario("three trucks", 3, 3000d, null, null),
+                new RouteScenario("small tanks", 2, 1500d, null, null),
+                new RouteScenario("lower threshold", 2, 3000d, null, 1500d)
+        ])
+        def (two, three, small, lower) = results
+
+        then: "the scenarios are answered in order"
+        results*.getName() == ["two trucks", "three trucks", "small tanks", "lower threshold"]
+        two.getDueTrees() == levels.count { it < 2000 }
+        lower.getDueTrees() == levels.count { it < 1500 }
+
+        and: "a third truck shortens the longest route and covers at least as many trees"
+        three.getLongestDuration() < two.getLongestDuration()
+        three.getCoveredTrees() >= two.getCoveredTrees()
+
+        and: "smaller tanks need more trips back to the depot"
+        two.getTreesPerTank() == 20
+        small.getTreesPerTank() == 10
+        small.getTrips() >= (int) Math.ceil(small.getDueTrees() / 10d)
+        small.getTrips() > two.getTrips()
+        small.getTotalDistance() > two.getTotalDistance()
+        results.every { it.getCoverage() >= 0d && it.getCoverage() <= 1d && it.getTotalDuration() >= it.getLongestDuration() }
+
+        and: "nothing is stored"
+        0 * assetStorageService.merge(_)
+        0 * routePlanService.savePlan(*_)
+
+        when:
+        scenarioService.evaluate("master", [new RouteScenario("no trucks", 0, null, null, null)])
+
+        then:
+        thrown(IllegalArgumentException)
+
+        when:
+        scenarioService.evaluate("master", (0..ScenarioService.MAX_SCENARIOS).collect { new RouteScenario("scenario " + it, 1, null, null, null) })
+
+        then:
+        thrown(IllegalArgumentException)
+
+        cleanup:
+        executor.shutdownNow()
+    }
+}
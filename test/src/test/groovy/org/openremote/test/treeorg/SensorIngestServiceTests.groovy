@@ -0,0 +1,93 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.asset.AssetProcessingService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.treeorg.SensorIngestService
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.treeorg.SensorReading
+import org.openremote.model.treeorg.TreeAsset
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+class SensorIngestServiceTests extends Specification implements ManagerContainerTrait {
+
+    def "SensorIngestService should coalesce readings and apply only the latest per tree attribute"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        def assetProcessingService = Mock(AssetProcessingService)
+        container.getService(AssetStorageService) >> assetStorageService
+        container.getService(AssetProcessingService) >> assetProcessingService
+
+        def tree = new TreeAsset("Tree")
+        tree.setId("tree1")
+        assetStorageService.findAll(_ as AssetQuery) >> [tree]
+
+        SensorIngestService sensorIngestService = new SensorIngestService()
+        sensorIngestService.init(container)
+        List<AttributeEvent> events = []
+
+        when:
+        def result = sensorIngestService.submit(null, [
+                new SensorReading("tree1", "waterLevel", 900d, 2000L),
+                new SensorReading("tree1", "waterLevel", 1000d, 1000L),
+                new SensorReading("tree1", "waterLevel", 800.4d, 3000L),
+                new SensorReading("tree1", "soilTemperature", 21.5d, 3000L),
+                new SensorReading("unknown", "soilTemperature", 18d, 3000L),
+                new SensorReading("tree1", "treeType", 1d, 3000L),
+                new SensorReading("tree1", "waterLevel", -5d, 3000L),
+                new SensorReading(null, "waterLevel", 5d, 3000L)
+        ])
+        def sent = sensorIngestService.flush()
+
+        then:
+        2 * assetProcessingService.sendAttributeEvent(_ as AttributeEvent) >> { args -> events << args[0] }
+        result.getAccepted() == 5
+        result.getRejected() == 3
+        result.getPending() == 3
+        sent == 2
+        events.find { it.name == "waterLevel" }.value.get() == 800
+        events.find { it.name == "waterLevel" }.timestamp == 3000L
+        events.find { it.name == "soilTemperature" }.value.get() == 21.5d
+        sensorIngestService.flush() == 0
+    }
+
+    def "SensorIngestService should not let readings of another realm or from the future displace a reading"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        def assetProcessingService = Mock(AssetProcessingService)
+        container.getService(AssetStorageService) >> assetStorageService
+        container.getService(AssetProcessingService) >> assetProcessingService
+
+        def tree = new TreeAsset("Tree")
+        tree.setId("tree1")
+        tree.setRealm("master")
+        assetStorageService.findAll(_ as AssetQuery) >> [tree]
+
+        SensorIngestService sensorIngestService = new SensorIngestService()
+        sensorIngestService.init(container)
+        def now = System.currentTimeMillis()
+        List<AttributeEvent> events = []
+
+        when: "another realm posts a later reading for the tree and a reading far in the future is posted"
+        def master = sensorIngestService.submit("master", [
+                new SensorReading("tree1", "waterLevel", 900d, now),
+                new SensorReading("tree1", "waterLevel", 0d, now + 24 * 3600 * 1000L)
+        ])
+        def other = sensorIngestService.submit("other", [new SensorReading("tree1", "waterLevel", 0d, now + 1000L)])
+        def sent = sensorIngestService.flush()
+
+        then: "only the reading of the owning realm is applied"
+        1 * assetProcessingService.sendAttributeEvent(_ as AttributeEvent) >> { args -> events << args[0] }
+        master.getAccepted() == 1
+        master.getRejected() == 1
+        other.getAccepted() == 1
+        other.getPending() == 2
+        sent == 1
+        events[0].value.get() == 900
+        events[0].timestamp == now
+    }
+}
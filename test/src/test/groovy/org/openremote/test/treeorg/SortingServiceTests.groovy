@@ -3,8 +3,10 @@ package org.openremote.test.treeorg
 import org.openremote.container.Container
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.treeorg.SortingService
+import org.openremote.model.attribute.Attribute
 import org.openremote.model.query.AssetQuery
 import org.openremote.model.treeorg.TreeAsset
+import org.openremote.model.value.ValueType
 import org.openremote.test.ManagerContainerTrait
 import spock.lang.Specification
 
@@ -158,4 +160,99 @@ class SortingServiceTests extends Specification implements ManagerContainerTrait
         sortedAssets[1].getId() == "3" // assetC with waterLevel 20
         sortedAssets[2].getId() == "2" // assetB with waterLevel 30
     }
+
+    def "SortingService should sort attributes with mixed value types without failing"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+
+        def assetA = new TreeAsset("Asset A")
+        assetA.setId("1")
+        // A stale attribute definition with a decimal value next to the integer water level of other trees
+        assetA.getAttributes().addOrReplace(new Attribute<>("waterLevel", ValueType.NUMBER, 20.5d))
+        def assetB = new TreeAsset("Asset B")
+        assetB.setId("2")
+        assetB.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(10)
+        assetStorageService.findAll(_ as AssetQuery) >> [assetA, assetB]
+
+        SortingService sortingService = new SortingService()
+        sortingService.init(container)
+
+        when:
+        def sortedAssets = sortingService.findAllAssetsSortedByAttributeAndType(TreeAsset.class, "waterLevel")
+
+        then:
+        sortedAssets*.getId() == ["2", "1"]
+    }
+
+    def "SortingService should rank assets by a composite score"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+
+        def wet = new TreeAsset("Wet")
+        wet.setId("1")
+        wet.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(9000)
+        wet.getAttributes().getOrCreate(TreeAsset.SOIL_TEMPERATURE).setValue(15d)
+        wet.getAttributes().getOrCreate(TreeAsset.PRIORITY).setValue(false)
+        def dry = new TreeAsset("Dry")
+        dry.setId("2")
+        dry.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(1000)
+        dry.getAttributes().getOrCreate(TreeAsset.SOIL_TEMPERATURE).setValue(15d)
+        dry.getAttributes().getOrCreate(TreeAsset.PRIORITY).setValue(false)
+        def hotPriority = new TreeAsset("Hot priority")
+        hotPriority.setId("3")
+        hotPriority.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(5000)
+        hotPriority.getAttributes().getOrCreate(TreeAsset.SOIL_TEMPERATURE).setValue(35d)
+        hotPriority.getAttributes().getOrCreate(TreeAsset.PRIORITY).setValue(true)
+        assetStorageService.findAll(_ as AssetQuery) >> [wet, dry, hotPriority]
+
+        SortingService sortingService = new SortingService()
+        sortingService.init(container)
+
+        when:
+        def ranking = sortingService.findTopAssetsByScore(null, TreeAsset.class, null, 2)
+        def waterOnly = sortingService.findTopAssetsByScore(null, TreeAsset.class, "-waterLevel", 3)
+
+        then:
+        ranking*.getAsset()*.getId() == ["3", "2"]
+        ranking[0].getScore() > ranking[1].getScore()
+        waterOnly*.getAsset()*.getId() == ["2", "3", "1"]
+
+        when:
+        sortingService.findTopAssetsByScore(null, TreeAsset.class, "0.5*", 2)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "SortingService should rank assets without a value as average instead of as the minimum"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+
+        def wet = new TreeAsset("Wet")
+        wet.setId("1")
+        wet.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(9000)
+        def dry = new TreeAsset("Dry")
+        dry.setId("2")
+        dry.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(1000)
+        def unknown = new TreeAsset("Unknown")
+        unknown.setId("3")
+        assetStorageService.findAll(_ as AssetQuery) >> [wet, dry, unknown]
+
+        SortingService sortingService = new SortingService()
+        sortingService.init(container)
+
+        when:
+        def ranking = sortingService.findTopAssetsByScore(null, TreeAsset.class, "-waterLevel", 3)
+
+        then:
+        ranking*.getAsset()*.getId() == ["2", "3", "1"]
+        ranking[0].getScore() > ranking[1].getScore()
+        ranking[1].getScore() > ranking[2].getScore()
+    }
 }
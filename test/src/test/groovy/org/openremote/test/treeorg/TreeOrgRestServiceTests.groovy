@@ -1,14 +1,39 @@
 package org.openremote.test.treeorg
 
+import jakarta.ws.rs.core.EntityTag
+import jakarta.ws.rs.core.HttpHeaders
+import jakarta.ws.rs.core.MediaType
+import jakarta.ws.rs.core.Request
+import jakarta.ws.rs.core.Response
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.treeorg.*
 import org.openremote.manager.web.ManagerWebService
 import org.openremote.model.Container
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.treeorg.TreeAsset
 import org.openremote.test.ManagerContainerTrait
 import spock.lang.Specification
 
 class TreeOrgRestServiceTests extends Specification implements ManagerContainerTrait {
 
+    /**
+     * Creates the resource for a request in the given realm by a user who may only access the master realm.
+     */
+    static TreeOrgResourceImplementation resourceFor(String requestRealm, SortingService sortingService, TreeOrgVersionService treeOrgVersionService) {
+        return new TreeOrgResourceImplementation(null, null, sortingService, null, null, null, null, null, treeOrgVersionService, null, null, null, null, new RealmConcurrencyLimiter(2, 1000)) {
+            @Override
+            String getRequestRealmName() {
+                return requestRealm
+            }
+
+            @Override
+            boolean isRealmActiveAndAccessible(String realm) {
+                return realm == "master"
+            }
+        }
+    }
+
     def "TreeOrgRestService should initialize and register API classes"() {
         setup:
         // Mock the Container and services
@@ -43,4 +68,130 @@ class TreeOrgRestServiceTests extends Specification implements ManagerContainerT
         treeOrgRestService.routeOptimizationService == routeOptimizationService
         treeOrgRestService.routeApiClient == routeApiClient
     }
+
+    def "TreeOrgResourceImplementation should answer unchanged rankings with 304 without ranking again"() {
+        setup:
+        SortingService sortingService = Mock(SortingService)
+        TreeOrgVersionService treeOrgVersionService = new TreeOrgVersionService()
+        def resource = resourceFor("master", sortingService, treeOrgVersionService)
+        // The client sends back the last ETag it received
+        EntityTag clientTag = null
+        resource.jaxRsRequest = Stub(Request) {
+            evaluatePreconditions(_ as EntityTag) >> { EntityTag tag -> tag == clientTag ? Response.notModified(tag) : null }
+        }
+        def reading = { String realm, String attribute ->
+            Stub(AttributeEvent) {
+                getRealm() >> realm
+                getName() >> attribute
+            }
+        }
+
+        when:
+        def first = resource.sortAssetsByAttribute(TreeAsset.name, "waterLevel")
+        clientTag = first.getEntityTag()
+        def unchanged = resource.sortAssetsByAttribute(TreeAsset.name, "waterLevel")
+
+        then:
+        1 * sortingService.findAllAssetsSortedByAttributeAndType("master", TreeAsset, "waterLevel") >> []
+        first.getStatus() == 200
+        first.getHeaderString(HttpHeaders.ETAG) != null
+        unchanged.getStatus() == 304
+        unchanged.getHeaderString(HttpHeaders.VARY) == HttpHeaders.ACCEPT
+
+        when: "other realms change"
+        treeOrgVersionService.onAttributeEvent(reading("other", "waterLevel"))
+        unchanged = resource.sortAssetsByAttribute(TreeAsset.name, "waterLevel")
+
+        then:
+        0 * sortingService.findAllAssetsSortedByAttributeAndType(*_)
+        unchanged.getStatus() == 304
+
+        when: "another attribute changes, which is part of the returned assets"
+        treeOrgVersionService.onAttributeEvent(reading("master", "soilTemperature"))
+        def otherAttribute = resource.sortAssetsByAttribute(TreeAsset.name, "waterLevel")
+        clientTag = otherAttribute.getEntityTag()
+
+        then:
+        1 * sortingService.findAllAssetsSortedByAttributeAndType("master", TreeAsset, "waterLevel") >> []
+        otherAttribute.getStatus() == 200
+        otherAttribute.getEntityTag() != first.getEntityTag()
+
+        when: "the ranked attribute changes"
+        treeOrgVersionService.onAttributeEvent(reading("master", "waterLevel"))
+        def changed = resource.sortAssetsByAttribute(TreeAsset.name, "waterLevel")
+
+        then:
+        1 * sortingService.findAllAssetsSortedByAttributeAndType("master", TreeAsset, "waterLevel") >> []
+        changed.getStatus() == 200
+        changed.getEntityTag() != clientTag
+    }
+
+    def "TreeOrgResourceImplementation should take the realm from the request and reject inaccessible realms"() {
+        setup:
+        SortingService sortingService = Mock(SortingService)
+        def allowed = resourceFor("master", sortingService, null)
+        def denied = resourceFor("other", sortingService, null)
+
+        when:
+        def ranking = allowed.sortAssetsByAttribute(TreeAsset.name, "waterLevel")
+        def forbidden = denied.sortAssetsByAttribute(TreeAsset.name, "waterLevel")
+        def forbiddenPlan = denied.getRoutePlan("parent", null, null)
+
+        then:
+        1 * sortingService.findAllAssetsSortedByAttributeAndType("master", TreeAsset, "waterLevel") >> []
+        0 * sortingService.findAllAssetsSortedByAttributeAndType("other", *_)
+        ranking.getStatus() == 200
+        forbidden.getStatus() == 403
+        forbiddenPlan.getStatus() == 403
+    }
+
+    def "TreeOrgResourceImplementation should only serve the compact encoding when it is preferred"() {
+        setup:
+        SortingService sortingService = Mock(SortingService)
+        TreeOrgVersionService treeOrgVersionService = new TreeOrgVersionService()
+        def resource = resourceFor("master", sortingService, treeOrgVersionService)
+        def tree = new TreeAsset("Tree")
+        tree.setId("tree1")
+        tree.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(5.45d, 51.45d))
+        sortingService.findAllAssetsSortedByAttributeAndType("master", TreeAsset, "waterLevel") >> [tree]
+        List<MediaType> accepted = []
+        resource.headers = Stub(HttpHeaders) {
+            getAcceptableMediaTypes() >> { accepted }
+        }
+
+        when:
+        accepted = [MediaType.valueOf(CompactRouteEncoding.MEDIA_TYPE), MediaType.APPLICATION_JSON_TYPE]
+        def compact = resource.sortAssetsByAttribute(TreeAsset.name, "waterLevel")
+        accepted = [MediaType.WILDCARD_TYPE]
+        def json = resource.sortAssetsByAttribute(TreeAsset.name, "waterLevel")
+
+        then:
+        compact.getMediaType().toString() == CompactRouteEncoding.MEDIA_TYPE
+        CompactRouteEncoding.decode(compact.getEntity() as byte[])[0].getIds() == ["tree1"]
+        json.getEntity() == [tree]
+        compact.getEntityTag() != json.getEntityTag()
+
+        and: "both variants tell caches that they depend on the Accept header"
+        compact.getHeaderString(HttpHeaders.VARY) == HttpHeaders.ACCEPT
+        json.getHeaderString(HttpHeaders.VARY) == HttpHeaders.ACCEPT
+    }
+
+    def "TreeOrgResourceImplementation should report the warm-up status as a readiness probe"() {
+        setup:
+        def container = Mock(Container)
+        TreeOrgWarmupService warmupService = new TreeOrgWarmupService()
+        warmupService.init(container)
+        def resource = new TreeOrgResourceImplementation(null, null, null, null, null, null, null, null, null, null, null, null, warmupService, new RealmConcurrencyLimiter(2, 1000))
+
+        expect: "the warm-up has not started yet"
+        resource.getStatus().getStatus() == 503
+
+        when:
+        warmupService.start(container)
+        def ready = resource.getStatus()
+
+        then:
+        ready.getStatus() == 200
+        (ready.getEntity() as TreeOrgStatus).isReady()
+    }
 }
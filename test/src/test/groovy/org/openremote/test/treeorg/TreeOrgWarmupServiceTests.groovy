@@ -0,0 +1,88 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.treeorg.TreeOrgWarmupService
+import org.openremote.manager.treeorg.WarmupTask
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+
+class TreeOrgWarmupServiceTests extends Specification implements ManagerContainerTrait {
+
+    def "TreeOrgWarmupService should only run the tasks once started and report when they have finished"() {
+        setup:
+        def container = Mock(Container)
+        def executor = Executors.newFixedThreadPool(2)
+        container.getExecutor() >> executor
+        def conditions = new PollingConditions(timeout: 10)
+        def release = new CountDownLatch(1)
+        def ran = []
+        TreeOrgWarmupService warmupService = new TreeOrgWarmupService()
+        warmupService.init(container)
+
+        when: "tasks are submitted while the services are starting"
+        warmupService.submit("slow", { release.await(); ran << "slow" })
+        warmupService.submit("broken", { throw new IllegalStateException("Database unavailable") })
+
+        then: "they wait for the warm-up to start"
+        !warmupService.isReady()
+        warmupService.getStatus().getTasks()*.getState() == [WarmupTask.State.PENDING, WarmupTask.State.PENDING]
+        warmupService.getStatus().getReadyMillis() == null
+        ran.isEmpty()
+
+        when:
+        warmupService.start(container)
+
+        then: "a failed task finishes while a slow one keeps the warm-up running"
+        conditions.eventually {
+            assert warmupService.getStatus().getTasks()*.getState() == [WarmupTask.State.RUNNING, WarmupTask.State.FAILED]
+        }
+        !warmupService.isReady()
+
+        when:
+        release.countDown()
+
+        then:
+        conditions.eventually {
+            assert warmupService.isReady()
+        }
+        ran == ["slow"]
+        def status = warmupService.getStatus()
+        status.isReady()
+        status.getReadyMillis() != null
+        status.getTasks()*.getName() == ["slow", "broken"]
+        status.getTasks()*.getState() == [WarmupTask.State.DONE, WarmupTask.State.FAILED]
+        status.getTasks().every { it.getDurationMillis() != null }
+
+        when: "a task is submitted after the start"
+        warmupService.submit("late", { ran << "late" })
+
+        then: "it runs right away"
+        conditions.eventually {
+            assert warmupService.isReady()
+        }
+        ran == ["slow", "late"]
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "TreeOrgWarmupService should be ready without an executor"() {
+        setup:
+        def container = Mock(Container)
+        TreeOrgWarmupService warmupService = new TreeOrgWarmupService()
+        warmupService.init(container)
+
+        when:
+        warmupService.submit("snapshot", { throw new IllegalStateException("Never runs") })
+        warmupService.start(container)
+
+        then:
+        warmupService.isReady()
+        warmupService.getStatus().getTasks().isEmpty()
+        warmupService.getStatus().getReadyMillis() == 0L
+    }
+}
@@ -0,0 +1,115 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.container.security.AuthContext
+import org.openremote.manager.event.ClientEventService
+import org.openremote.manager.treeorg.TreeRankingPushService
+import org.openremote.manager.treeorg.TreeSnapshotService
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.event.shared.EventSubscription
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.treeorg.RoutePlanEvent
+import org.openremote.model.treeorg.TreeAsset
+import org.openremote.model.treeorg.TreeRankingEvent
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+class TreeRankingPushServiceTests extends Specification implements ManagerContainerTrait {
+
+    def "TreeRankingPushService should only publish the ranking changes of tracked realms"() {
+        setup:
+        def container = Mock(Container)
+        def clientEventService = Mock(ClientEventService)
+        container.getService(ClientEventService) >> clientEventService
+
+        // Twelve trees in master, tree 1 is the driest; the top 10 leaves out trees 11 and 12
+        def trees = (1..12).collect { i ->
+            def tree = new TreeAsset("Tree " + i)
+            tree.setId(i.toString())
+            tree.setRealm("master")
+            tree.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(5.45, 51.45))
+            tree.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(i * 100d)
+            tree
+        }
+        def other = new TreeAsset("Other")
+        other.setId("other")
+        other.setRealm("other")
+        other.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(50d)
+        trees << other
+
+        TreeSnapshotService treeSnapshotService = new TreeSnapshotService()
+        treeSnapshotService.init(container)
+        trees.each { treeSnapshotService.put(it) }
+        treeSnapshotService.setLoaded(true)
+        container.getService(TreeSnapshotService) >> treeSnapshotService
+
+        TreeRankingPushService pushService = new TreeRankingPushService()
+        pushService.init(container)
+        pushService.start(container)
+        pushService.track("master")
+        List<TreeRankingEvent> events = []
+
+        expect:
+        pushService.getRanking("master", "waterLevel") == (1..10)*.toString()
+
+        when: "trees outside the ranking and in untracked realms change"
+        treeSnapshotService.onAttributeEvent(new AttributeEvent("12", TreeAsset.WATER_LEVEL.getName(), 1300d, System.currentTimeMillis()))
+        treeSnapshotService.onAttributeEvent(new AttributeEvent("other", TreeAsset.WATER_LEVEL.getName(), 10d, System.currentTimeMillis()))
+        def published = pushService.publishChanges()
+
+        then:
+        published == 0
+        0 * clientEventService.publishEvent(_)
+
+        when: "a dry tree enters the ranking, several readings in one interval"
+        treeSnapshotService.onAttributeEvent(new AttributeEvent("11", TreeAsset.WATER_LEVEL.getName(), 500d, System.currentTimeMillis()))
+        treeSnapshotService.onAttributeEvent(new AttributeEvent("11", TreeAsset.WATER_LEVEL.getName(), 50d, System.currentTimeMillis()))
+        published = pushService.publishChanges()
+
+        then:
+        published == 1
+        1 * clientEventService.publishEvent(_ as TreeRankingEvent) >> { args -> events << args[0] }
+        events[0].getRealm() == "master"
+        events[0].getAttributeName() == "waterLevel"
+        events[0].getRanking() == ["11"] + (1..9)*.toString()
+        events[0].getEntered() == ["11"]
+        events[0].getLeft() == ["10"]
+        pushService.publishChanges() == 0
+    }
+
+    def "TreeRankingPushService should authorise tree org event subscriptions of the authenticated realm"() {
+        setup:
+        def container = Mock(Container)
+        def clientEventService = Mock(ClientEventService)
+        container.getService(ClientEventService) >> clientEventService
+        def authorizer = null
+        clientEventService.addSubscriptionAuthorizer(_) >> { args -> authorizer = args[0] }
+
+        def masterUser = Mock(AuthContext)
+        masterUser.getAuthenticatedRealmName() >> "master"
+        masterUser.isSuperUser() >> false
+        def superUser = Mock(AuthContext)
+        superUser.getAuthenticatedRealmName() >> "master"
+        superUser.isSuperUser() >> true
+
+        TreeRankingPushService pushService = new TreeRankingPushService()
+        pushService.init(container)
+        pushService.start(container)
+
+        expect: "the service registered its authorizer"
+        authorizer != null
+
+        and: "route plan events are authorised for the own realm and for super users only"
+        authorizer.authorise("master", masterUser, new EventSubscription(RoutePlanEvent))
+        !authorizer.authorise("other", masterUser, new EventSubscription(RoutePlanEvent))
+        authorizer.authorise("other", superUser, new EventSubscription(RoutePlanEvent))
+        !authorizer.authorise("master", null, new EventSubscription(RoutePlanEvent))
+
+        and: "ranking events follow the same rules"
+        authorizer.authorise("master", masterUser, new EventSubscription(TreeRankingEvent))
+        !authorizer.authorise("other", masterUser, new EventSubscription(TreeRankingEvent))
+
+        and: "other events are left to the other authorizers"
+        !authorizer.authorise("master", superUser, new EventSubscription(AttributeEvent))
+    }
+}
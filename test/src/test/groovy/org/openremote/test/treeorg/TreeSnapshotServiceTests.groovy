@@ -0,0 +1,153 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.treeorg.ScoreExpression
+import org.openremote.manager.treeorg.SortingService
+import org.openremote.manager.treeorg.TreeSnapshotService
+import org.openremote.model.asset.AssetEvent
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.treeorg.TreeAsset
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+
+class TreeSnapshotServiceTests extends Specification implements ManagerContainerTrait {
+
+    def "SortingService should rank on the tree snapshot and only load the returned trees"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+
+        def trees = [
+                [id: "1", realm: "master", waterLevel: 5000],
+                [id: "2", realm: "master", waterLevel: 3000],
+                [id: "3", realm: "master", waterLevel: 4000],
+                [id: "4", realm: "other", waterLevel: 100]
+        ].collect { data ->
+            def tree = new TreeAsset("Tree " + data.id)
+            tree.setId(data.id)
+            tree.setRealm(data.realm)
+            tree.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(5.45, 51.45))
+            tree.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(data.waterLevel)
+            tree
+        }
+
+        TreeSnapshotService treeSnapshotService = new TreeSnapshotService()
+        treeSnapshotService.init(container)
+        trees.each { treeSnapshotService.put(it) }
+        treeSnapshotService.setLoaded(true)
+        container.getService(TreeSnapshotService) >> treeSnapshotService
+
+        SortingService sortingService = new SortingService()
+        sortingService.init(container)
+        List<AssetQuery> queries = []
+
+        when:
+        // A new reading makes tree 1 the driest, the stored asset is not touched
+        treeSnapshotService.onAttributeEvent(new AttributeEvent("1", TreeAsset.WATER_LEVEL.getName(), 1000, System.currentTimeMillis()))
+        def sorted = sortingService.findAllAssetsSortedByAttributeAndType("master", TreeAsset, "waterLevel")
+
+        then:
+        1 * assetStorageService.findAll(_ as AssetQuery) >> { AssetQuery query ->
+            queries << query
+            trees.findAll { query.ids.contains(it.id) }.reverse()
+        }
+        sorted*.getId() == ["1", "2", "3"]
+        queries.size() == 1
+        queries[0].types == null
+    }
+
+    def "TreeSnapshotService should apply events that arrive while the trees are loaded"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+
+        def trees = ["1", "2", "3"].collect { id ->
+            def tree = new TreeAsset("Tree " + id)
+            tree.setId(id)
+            tree.setRealm("master")
+            tree.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(5000)
+            tree
+        }
+        TreeSnapshotService treeSnapshotService = new TreeSnapshotService()
+        treeSnapshotService.init(container)
+
+        when: "tree 1 gets a new reading and tree 2 is deleted after the query read them"
+        treeSnapshotService.load()
+
+        then:
+        1 * assetStorageService.findAll(_ as AssetQuery) >> {
+            treeSnapshotService.onAttributeEvent(new AttributeEvent("1", TreeAsset.WATER_LEVEL.getName(), 1000, System.currentTimeMillis()))
+            treeSnapshotService.onAssetEvent(Stub(AssetEvent) {
+                getCause() >> AssetEvent.Cause.DELETE
+                getId() >> "2"
+            })
+            trees
+        }
+        treeSnapshotService.isLoaded()
+        treeSnapshotService.row("1", "waterLevel").values[0][0] == 1000d
+        treeSnapshotService.row("2", "waterLevel") == null
+        treeSnapshotService.row("3", "waterLevel").values[0][0] == 5000d
+
+        when: "events after the load are applied directly"
+        treeSnapshotService.onAttributeEvent(new AttributeEvent("3", TreeAsset.WATER_LEVEL.getName(), 2000, System.currentTimeMillis()))
+
+        then:
+        treeSnapshotService.row("3", "waterLevel").values[0][0] == 2000d
+    }
+
+    static long allocatedBytes(Closure action) {
+        def threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()
+        def thread = Thread.currentThread().getId()
+        // Warm up so class loading and compilation are not measured
+        5.times { action() }
+        long before = threads.getThreadAllocatedBytes(thread)
+        10.times { action() }
+        return (threads.getThreadAllocatedBytes(thread) - before).intdiv(10)
+    }
+
+    @Requires({ ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean && ManagementFactory.getThreadMXBean().isThreadAllocatedMemoryEnabled() })
+    def "TreeSnapshotService should rank a realm without copying its rows"() {
+        setup:
+        def container = Mock(Container)
+        TreeSnapshotService treeSnapshotService = new TreeSnapshotService()
+        treeSnapshotService.init(container)
+        (0..<20000).each { i ->
+            def tree = new TreeAsset("Tree " + i)
+            tree.setId("tree" + i)
+            tree.setRealm(i % 2 == 0 ? "master" : "other")
+            tree.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue((i * 7919) % 10000)
+            tree.getAttributes().getOrCreate(TreeAsset.SOIL_TEMPERATURE).setValue(10d + i % 20)
+            tree.getAttributes().getOrCreate(TreeAsset.PRIORITY).setValue(i % 5)
+            treeSnapshotService.put(tree)
+        }
+        treeSnapshotService.setLoaded(true)
+        def score = ScoreExpression.compile(SortingService.DEFAULT_SCORE_EXPRESSION)
+        def attributes = score.getAttributeNames()
+
+        when: "the heap allocated per ranking is measured for the copied view and for the in place ranking"
+        def viewBytes = allocatedBytes { treeSnapshotService.view("master", "waterLevel") }
+        def lowestBytes = allocatedBytes { treeSnapshotService.lowest("master", "waterLevel", 10) }
+        def scoreViewBytes = allocatedBytes { treeSnapshotService.view("master", attributes) }
+        def topBytes = allocatedBytes { treeSnapshotService.top("master", score, 10) }
+        println "Heap per ranking of 10000 trees: lowest " + lowestBytes + " bytes instead of a " + viewBytes
+                + " bytes view, score " + topBytes + " bytes instead of a " + scoreViewBytes + " bytes view"
+
+        then: "ranking on one column allocates next to nothing, scoring only the row numbers and scores of the realm"
+        lowestBytes * 100 < viewBytes
+        topBytes * 2 < scoreViewBytes
+
+        and: "both rank the same trees as the view"
+        def view = treeSnapshotService.view("master", "waterLevel")
+        treeSnapshotService.lowest("master", "waterLevel", 10) == (0..<view.size).findAll { !Double.isNaN(view.values[0][it]) }
+                .sort { a, b -> view.values[0][a] <=> view.values[0][b] ?: a <=> b }.take(10).collect { view.ids[it] }
+        treeSnapshotService.top("master", score, 10).keySet().every { it.startsWith("tree") && (it.substring(4) as int) % 2 == 0 }
+    }
+}
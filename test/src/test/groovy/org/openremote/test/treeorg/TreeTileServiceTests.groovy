@@ -0,0 +1,87 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.treeorg.TreeSnapshotService
+import org.openremote.manager.treeorg.TreeTileService
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.treeorg.TreeAsset
+import org.openremote.model.util.ValueUtil
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+class TreeTileServiceTests extends Specification implements ManagerContainerTrait {
+
+    static int tileX(double longitude, int zoom) {
+        (int) Math.floor((longitude + 180d) / 360d * (1 << zoom))
+    }
+
+    static int tileY(double latitude, int zoom) {
+        def lat = Math.toRadians(latitude)
+        (int) Math.floor((1d - Math.log(Math.tan(lat) + 1d / Math.cos(lat)) / Math.PI) / 2d * (1 << zoom))
+    }
+
+    def "TreeTileService should cluster trees per tile and only evict the tiles of a changed tree"() {
+        setup:
+        def container = Mock(Container)
+        def trees = [
+                [id: "1", realm: "master", x: 5.4500d, y: 51.4500d, waterLevel: 3000, priority: true],
+                [id: "2", realm: "master", x: 5.4600d, y: 51.4500d, waterLevel: 1500, priority: false],
+                [id: "3", realm: "other", x: 5.4500d, y: 51.4500d, waterLevel: 100, priority: true]
+        ].collect { data ->
+            def tree = new TreeAsset("Tree " + data.id)
+            tree.setId(data.id)
+            tree.setRealm(data.realm)
+            tree.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(data.x, data.y))
+            tree.getAttributes().getOrCreate(TreeAsset.WATER_LEVEL).setValue(data.waterLevel)
+            tree.getAttributes().getOrCreate(TreeAsset.PRIORITY).setValue(data.priority)
+            tree
+        }
+
+        TreeSnapshotService treeSnapshotService = new TreeSnapshotService()
+        treeSnapshotService.init(container)
+        trees.each { treeSnapshotService.put(it) }
+        treeSnapshotService.setLoaded(true)
+        container.getService(TreeSnapshotService) >> treeSnapshotService
+
+        TreeTileService treeTileService = new TreeTileService()
+        treeTileService.init(container)
+        treeTileService.start(container)
+
+        when:
+        def world = ValueUtil.JSON.readTree(treeTileService.getTile("master", 0, 0, 0))
+        def tree1Tile = treeTileService.getTile("master", 18, tileX(5.45d, 18), tileY(51.45d, 18))
+        def tree2Tile = treeTileService.getTile("master", 18, tileX(5.46d, 18), tileY(51.45d, 18))
+        def tree1 = ValueUtil.JSON.readTree(tree1Tile)
+
+        then:
+        world.get("features").size() == 1
+        world.get("features").get(0).get("properties").get("cluster").asBoolean()
+        world.get("features").get(0).get("properties").get("count").asInt() == 2
+        world.get("features").get(0).get("properties").get("waterLevel").asInt() == 1500
+        world.get("features").get(0).get("properties").get("priority").asInt() == 1
+        tree1.get("features").size() == 1
+        tree1.get("features").get(0).get("id").asText() == "1"
+        tree1.get("features").get(0).get("properties").get("waterLevel").asInt() == 3000
+        tree1.get("features").get(0).get("properties").get("priority").asBoolean()
+        treeTileService.getTile("master", 18, tileX(5.45d, 18), tileY(51.45d, 18)).is(tree1Tile)
+        treeTileService.getCachedTiles() == 3
+
+        when:
+        treeSnapshotService.onAttributeEvent(new AttributeEvent("1", TreeAsset.WATER_LEVEL.getName(), 500, System.currentTimeMillis()))
+
+        then:
+        treeTileService.getCachedTiles() == 1
+        treeTileService.getTile("master", 18, tileX(5.46d, 18), tileY(51.45d, 18)).is(tree2Tile)
+        ValueUtil.JSON.readTree(treeTileService.getTile("master", 18, tileX(5.45d, 18), tileY(51.45d, 18)))
+                .get("features").get(0).get("properties").get("waterLevel").asInt() == 500
+        ValueUtil.JSON.readTree(treeTileService.getTile("master", 0, 0, 0))
+                .get("features").get(0).get("properties").get("waterLevel").asInt() == 500
+
+        when:
+        treeTileService.getTile("master", 23, 0, 0)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
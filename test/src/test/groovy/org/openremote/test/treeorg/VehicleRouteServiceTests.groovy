@@ -0,0 +1,144 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.asset.AssetProcessingService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.treeorg.RouteService
+import org.openremote.manager.treeorg.TreeSnapshotService
+import org.openremote.manager.treeorg.VehicleRouteService
+import org.openremote.model.asset.Asset
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.treeorg.DepotAsset
+import org.openremote.model.treeorg.TreeAsset
+import org.openremote.model.treeorg.VehicleAsset
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+class VehicleRouteServiceTests extends Specification implements ManagerContainerTrait {
+
+    def "VehicleRouteService should route the unfinished stops from the vehicle and insert urgent trees"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        def assetProcessingService = Mock(AssetProcessingService)
+        container.getService(AssetStorageService) >> assetStorageService
+        container.getService(AssetProcessingService) >> assetProcessingService
+        assetStorageService.findAll(_ as AssetQuery) >> []
+
+        // Trees on a line east of the depot, the crew has finished trees 1 and 2 and is now east of tree 5
+        def start = RouteService.DEFAULT_STARTING_POSITION
+        def offsets = ["1": 0.01d, "2": 0.02d, "3": 0.03d, "4": 0.04d, "5": 0.05d, "urgent": 0.035d, "other": 0.045d]
+        def trees = offsets.collect { id, offset ->
+            def tree = new TreeAsset("Tree " + id)
+            tree.setId(id)
+            tree.setRealm(id == "other" ? "other" : "master")
+            tree.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(start[0] + offset, start[1]))
+            tree
+        }
+        TreeSnapshotService treeSnapshotService = new TreeSnapshotService()
+        treeSnapshotService.init(container)
+        trees.each { treeSnapshotService.put(it) }
+        treeSnapshotService.setLoaded(true)
+        container.getService(TreeSnapshotService) >> treeSnapshotService
+
+        def vehicle = new VehicleAsset("Truck")
+        vehicle.setId("truck")
+        vehicle.setRealm("master")
+        vehicle.getAttributes().getOrCreate(Asset.LOCATION).setValue(new GeoJSONPoint(start[0] + 0.06d, start[1]))
+        vehicle.setStopIds(["1", "2", "3", "5", "4"] as String[])
+        vehicle.setCompletedStopIds(["1", "2"] as String[])
+        // The depot of another realm is not used, the route ends at the default starting position
+        vehicle.setDepotId("foreignDepot")
+        def foreignDepot = new DepotAsset("Foreign depot")
+        foreignDepot.setId("foreignDepot")
+        foreignDepot.setRealm("other")
+        foreignDepot.getAttributes().getOrCreate(Asset.LOCATION).setValue(new GeoJSONPoint(start[0] + 1d, start[1] + 1d))
+        assetStorageService.find("truck") >> vehicle
+        assetStorageService.find("foreignDepot") >> foreignDepot
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+        container.getService(RouteService) >> routeService
+        VehicleRouteService vehicleRouteService = new VehicleRouteService()
+        vehicleRouteService.init(container)
+        AttributeEvent stored = null
+
+        when:
+        def result = vehicleRouteService.reroute("master", "truck", ["urgent", "other", "1"])
+
+        then:
+        1 * assetProcessingService.sendAttributeEvent(_ as AttributeEvent) >> { args -> stored = args[0] }
+        result.getStopIds() == ["5", "4", "urgent", "3"]
+        result.getUnroutedStopIds() == ["other"]
+        result.getRoute().size() == 6
+        result.getRoute().first() == [start[0] + 0.06d, start[1]] as double[]
+        result.getRoute().last() == start
+        stored.getName() == VehicleAsset.STOP_IDS.getName()
+        stored.getValue().orElse(null) == ["1", "2", "5", "4", "urgent", "3"] as String[]
+
+        expect:
+        vehicleRouteService.reroute("other", "truck", []) == null
+    }
+
+    def "VehicleRouteService should re-route 50 stops within 100 ms"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        container.getService(AssetStorageService) >> assetStorageService
+        assetStorageService.findAll(_ as AssetQuery) >> []
+
+        def trees = RouteQualityTests.trees(60)
+        trees.each { it.setRealm("master") }
+        TreeSnapshotService treeSnapshotService = new TreeSnapshotService()
+        treeSnapshotService.init(container)
+        trees.each { treeSnapshotService.put(it) }
+        treeSnapshotService.setLoaded(true)
+        container.getService(TreeSnapshotService) >> treeSnapshotService
+
+        def vehicle = new VehicleAsset("Truck")
+        vehicle.setId("truck")
+        vehicle.setRealm("master")
+        vehicle.getAttributes().getOrCreate(Asset.LOCATION).setValue(trees[4].getAttributes().getValue(Asset.LOCATION).get())
+        vehicle.setStopIds(trees.subList(0, 55)*.getId() as String[])
+        vehicle.setCompletedStopIds(trees.subList(0, 5)*.getId() as String[])
+        assetStorageService.find("truck") >> vehicle
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+        container.getService(RouteService) >> routeService
+        VehicleRouteService vehicleRouteService = new VehicleRouteService()
+        vehicleRouteService.init(container)
+        def urgent = trees.subList(55, 60)*.getId()
+        5.times { vehicleRouteService.reroute("master", "truck", urgent) }
+
+        when:
+        long started = System.nanoTime()
+        def result = vehicleRouteService.reroute("master", "truck", urgent)
+        long millis = (System.nanoTime() - started).intdiv(1_000_000)
+
+        then:
+        result.getStopIds() as Set == trees.subList(5, 60)*.getId() as Set
+        result.getStopIds().size() == 55
+        millis < 100
+    }
+
+    def "RouteService should improve an open path without reversing it"() {
+        given: "stops on a line from the start at 0 to the end at 5, node 0 leaves the start and arrives at the end"
+        def x = [0d, 1d, 2d, 3d, 4d]
+        def size = x.size()
+        double[][] distances = new double[size][size]
+        (0..<size).each { i ->
+            (0..<size).each { j ->
+                def to = j == 0 ? 5d : x[j]
+                distances[i][j] = i == j ? 0d : Math.abs(to - x[i])
+            }
+        }
+
+        expect: "a planned order in the wrong direction is turned around into the shortest path"
+        def order = RouteService.improveOpenPath([4, 3, 2, 1] as int[], distances)
+        order == [0, 1, 2, 3] as int[]
+        RouteService.tourLength(order, distances) == 5d
+    }
+}
@@ -0,0 +1,164 @@
+package org.openremote.test.treeorg
+
+import org.openremote.container.Container
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.treeorg.DroughtForecast
+import org.openremote.manager.treeorg.DroughtForecastService
+import org.openremote.manager.treeorg.RoutePlanService
+import org.openremote.manager.treeorg.RouteService
+import org.openremote.manager.treeorg.WateringPlanService
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.treeorg.RoutePlanAsset
+import org.openremote.model.treeorg.TreeAsset
+import org.openremote.model.treeorg.VehicleAsset
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+import java.time.LocalDate
+import java.time.ZoneOffset
+import java.util.concurrent.Executors
+
+class WateringPlanServiceTests extends Specification implements ManagerContainerTrait {
+
+    static TreeAsset tree(String id, double dx, double dy) {
+        def start = RouteService.DEFAULT_STARTING_POSITION
+        def tree = new TreeAsset("Tree " + id)
+        tree.setId(id)
+        tree.setRealm("master")
+        tree.setParentId("parent")
+        tree.getAttributes().getOrCreate(TreeAsset.LOCATION).setValue(new GeoJSONPoint(start[0] + dx, start[1] + dy))
+        tree
+    }
+
+    def "WateringPlanService should spread the visits over the days and vehicles and store every route"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        def droughtForecastService = Mock(DroughtForecastService)
+        def routePlanService = Mock(RoutePlanService)
+        def executor = Executors.newFixedThreadPool(4)
+        container.getService(AssetStorageService) >> assetStorageService
+        container.getService(DroughtForecastService) >> droughtForecastService
+        container.getService(RoutePlanService) >> routePlanService
+        container.getExecutor() >> executor
+
+        // Two trees run dry today, twelve young trees are watered at least every other day
+        def trees = [tree("dry1", 0.02d, 0.01d), tree("dry2", -0.02d, 0.01d)]
+        (0..<12).each { i ->
+            def young = tree("young" + i, 0.005d * (i % 4) - 0.01d, 0.004d * (int) (i / 4) - 0.005d)
+            young.getAttributes().getOrCreate(TreeAsset.VISIT_INTERVAL).setValue(2)
+            trees << young
+        }
+        def unlocated = new TreeAsset("Unlocated")
+        unlocated.setId("unlocated")
+        unlocated.setRealm("master")
+        unlocated.getAttributes().getOrCreate(TreeAsset.VISIT_INTERVAL).setValue(3)
+        trees << unlocated << tree("ignored", 0.01d, 0.01d)
+        def vehicles = ["truck-b", "truck-a"].collect { id ->
+            def vehicle = new VehicleAsset(id)
+            vehicle.setId(id)
+            vehicle.setRealm("master")
+            vehicle
+        }
+        assetStorageService.findAll(_ as AssetQuery) >> { AssetQuery query ->
+            query.types != null && query.types.contains(TreeAsset) ? trees
+                    : query.types != null && query.types.contains(VehicleAsset) ? vehicles : []
+        }
+        def now = System.currentTimeMillis()
+        droughtForecastService.findMostUrgent("master", _, null) >> [
+                new DroughtForecast("dry1", 2100d, 2200d, 2100d, 2400d, -50d, 2d, now),
+                new DroughtForecast("dry2", 2050d, 2150d, 2050d, 2300d, -50d, 1d, now)
+        ]
+        def saved = []
+        routePlanService.saveDayPlan(*_) >> { args -> saved << args; null }
+        routePlanService.findDayPlans(*_) >> []
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+        container.getService(RouteService) >> routeService
+        WateringPlanService wateringPlanService = new WateringPlanService()
+        wateringPlanService.init(container)
+        def startDate = LocalDate.now(ZoneOffset.UTC).plusDays(1)
+
+        when:
+        def plan = wateringPlanService.planDays("master", startDate, 7)
+        def visitDays = [:].withDefault { [] }
+        plan.getRoutes().each { route ->
+            route.getStopIds().each { visitDays[it] << (int) (LocalDate.parse(route.getDate()).toEpochDay() - startDate.toEpochDay()) }
+        }
+
+        then:
+        plan.getStartDate() == startDate.toString()
+        plan.getUnplannedIds() == ["unlocated"]
+        !visitDays.containsKey("ignored")
+        visitDays["dry1"] == [0]
+        visitDays["dry2"] == [0]
+        (0..<12).every { i ->
+            def days = visitDays["young" + i].sort()
+            days.first() <= 1 && days.last() >= 5 && (1..<days.size()).every { days[it] - days[it - 1] in 1..2 }
+        }
+
+        and: "the stops of every day are shared evenly by both vehicles"
+        plan.getRoutes().groupBy { it.getDate() }.every { date, routes ->
+            routes*.getVehicleId() == ["truck-a", "truck-b"] && Math.abs(routes[0].getStopIds().size() - routes[1].getStopIds().size()) <= 1
+        }
+        plan.getRoutes().every { it.getWorkload() > it.getStopIds().size() * RouteService.DEFAULT_SERVICE_DURATION_MINUTES * 60d }
+
+        and: "every route is stored as a plan of its day and vehicle"
+        saved.size() == plan.getRoutes().size()
+        saved.collect { [it[1], it[3], it[4]*.getId()] } == plan.getRoutes().collect { [it.getDate(), it.getVehicleId(), it.getStopIds()] }
+
+        when:
+        wateringPlanService.planDays("master", startDate, WateringPlanService.MAX_PLAN_DAYS + 1)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "WateringPlanService should re-optimize a stored day from its stored order"() {
+        setup:
+        def container = Mock(Container)
+        def assetStorageService = Mock(AssetStorageService)
+        def routePlanService = Mock(RoutePlanService)
+        container.getService(AssetStorageService) >> assetStorageService
+        container.getService(RoutePlanService) >> routePlanService
+
+        def trees = [tree("a", 0.01d, 0d), tree("b", 0.02d, 0d), tree("c", 0.03d, 0d), tree("d", 0.04d, 0d)]
+        assetStorageService.findAll(_ as AssetQuery) >> { AssetQuery query -> trees.findAll { it.getId() in query.ids } }
+        def stored = new RoutePlanAsset("Route plan 2026-10-20 v1")
+                .setStopIds(["c", "a", "gone", "b", "d"] as String[])
+                .setPlanDate("2026-10-20")
+                .setVehicleId("truck-a")
+                .setPlanVersion(1)
+        stored.setRealm("master")
+        routePlanService.findDayPlans("master", "2026-10-20") >> [stored]
+        routePlanService.findDayPlans("master", "2026-10-21") >> []
+        def saved = []
+        routePlanService.saveDayPlan(*_) >> { args -> saved << args; null }
+
+        RouteService routeService = new RouteService()
+        routeService.init(container)
+        container.getService(RouteService) >> routeService
+        WateringPlanService wateringPlanService = new WateringPlanService()
+        wateringPlanService.init(container)
+
+        when:
+        def plan = wateringPlanService.reoptimizeDay("master", LocalDate.parse("2026-10-20"))
+
+        then:
+        plan.getRoutes().size() == 1
+        plan.getRoutes()[0].getStopIds() in [["a", "b", "c", "d"], ["d", "c", "b", "a"]]
+        plan.getRoutes()[0].getSolver() == RoutePlanService.SOLVER_WARM_START
+        plan.getUnplannedIds() == ["gone"]
+        saved.size() == 1
+        saved[0][1] == "2026-10-20"
+        saved[0][3] == "truck-a"
+
+        expect:
+        wateringPlanService.reoptimizeDay("master", LocalDate.parse("2026-10-21")) == null
+    }
+}